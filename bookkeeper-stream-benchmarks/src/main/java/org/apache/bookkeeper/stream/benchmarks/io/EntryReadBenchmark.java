@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.stream.benchmarks.io;
+
+import com.google.common.util.concurrent.SettableFuture;
+import org.apache.bookkeeper.stream.SSN;
+import org.apache.bookkeeper.stream.exceptions.CorruptedEntryException;
+import org.apache.bookkeeper.stream.io.Entry;
+import org.apache.bookkeeper.stream.io.Entry.EntryBuilder;
+import org.apache.bookkeeper.stream.io.Entry.EntryData;
+import org.apache.bookkeeper.stream.io.Record;
+import org.apache.bookkeeper.stream.io.RecordFormat;
+import org.apache.bookkeeper.stream.io.RecordReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark on parsing entries and reading records out of them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2G", "-Xmx2G" })
+public class EntryReadBenchmark {
+
+    private static final long SEGMENT_ID = 1L;
+    private static final long ENTRY_ID = 0L;
+
+    @Param({ "16", "256", "4096", "65536", "1048576" })
+    int recordSize;
+
+    @Param({ "1", "10", "100" })
+    int numRecordsPerEntry;
+
+    @Param({ "false", "true" })
+    boolean zeroCopy;
+
+    @Param({ "false", "true" })
+    boolean checksum;
+
+    @Param({ "FIXED", "COMPACT" })
+    RecordFormat recordFormat;
+
+    // bytes as received from a ledger entry
+    private byte[] entryBytes;
+    private SSN lastSSN;
+
+    @Setup
+    public void prepare() throws IOException {
+        Random random = new Random(System.currentTimeMillis());
+        EntryBuilder builder = Entry.newBuilder(SEGMENT_ID, ENTRY_ID, 0L, 0L,
+                recordSize * numRecordsPerEntry + 1024)
+                .setChecksumEnabled(checksum)
+                .setRecordFormat(recordFormat);
+        for (int i = 0; i < numRecordsPerEntry; i++) {
+            byte[] data = new byte[recordSize];
+            random.nextBytes(data);
+            Record record = Record.newBuilder()
+                    .setRecordId(i)
+                    .setData(data)
+                    .build();
+            builder.addRecord(record, SettableFuture.<SSN>create());
+        }
+        EntryData entryData = builder.asDataEntry().build().getEntryData();
+        entryBytes = Arrays.copyOfRange(entryData.data, entryData.offset, entryData.offset + entryData.len);
+        lastSSN = SSN.of(SEGMENT_ID, ENTRY_ID, numRecordsPerEntry - 1);
+    }
+
+    private Entry parseEntry0() throws CorruptedEntryException {
+        return Entry.of(SEGMENT_ID, ENTRY_ID, entryBytes, 0, entryBytes.length);
+    }
+
+    @Benchmark
+    public Entry parseEntry() throws CorruptedEntryException {
+        return parseEntry0();
+    }
+
+    @Benchmark
+    public void readRecords(Blackhole bh) throws IOException, CorruptedEntryException {
+        RecordReader reader = parseEntry0().asRecordReader(zeroCopy);
+        Record record;
+        while (null != (record = reader.readRecord())) {
+            bh.consume(record);
+        }
+    }
+
+    @Benchmark
+    public Record skipToLastRecord() throws IOException, CorruptedEntryException {
+        RecordReader reader = parseEntry0().asRecordReader(zeroCopy);
+        if (!reader.skipTo(lastSSN)) {
+            throw new IllegalStateException("Failed to skip to " + lastSSN);
+        }
+        return reader.readRecord();
+    }
+
+}
@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.stream.benchmarks.io;
+
+import com.google.common.util.concurrent.SettableFuture;
+import org.apache.bookkeeper.stream.SSN;
+import org.apache.bookkeeper.stream.io.Entry;
+import org.apache.bookkeeper.stream.io.Entry.EntryBuilder;
+import org.apache.bookkeeper.stream.io.Record;
+import org.apache.bookkeeper.stream.io.RecordFormat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark on building entries with {@link EntryBuilder}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2G", "-Xmx2G" })
+public class EntryWriteBenchmark {
+
+    @Param({ "16", "256", "4096", "65536", "1048576" })
+    int recordSize;
+
+    @Param({ "1", "10", "100" })
+    int numRecordsPerEntry;
+
+    // initial buffer size of entry builder, see segment.writer.entry.buffer.size
+    @Param({ "1024", "131072" })
+    int initialBufferSize;
+
+    @Param({ "FIXED", "COMPACT" })
+    RecordFormat recordFormat;
+
+    private Record[] records;
+    // the writer creates one future per record; share a single one here to
+    // only measure the encode path.
+    private SettableFuture<SSN> recordFuture;
+
+    @Setup
+    public void prepare() {
+        Random random = new Random(System.currentTimeMillis());
+        records = new Record[numRecordsPerEntry];
+        for (int i = 0; i < numRecordsPerEntry; i++) {
+            byte[] data = new byte[recordSize];
+            random.nextBytes(data);
+            records[i] = Record.newBuilder()
+                    .setRecordId(i)
+                    .setData(data)
+                    .build();
+        }
+        recordFuture = SettableFuture.create();
+    }
+
+    @Benchmark
+    public Entry buildEntry() throws IOException {
+        EntryBuilder builder = Entry.newBuilder(1L, 0L, 0L, 0L, initialBufferSize)
+                .setRecordFormat(recordFormat);
+        for (Record record : records) {
+            builder.addRecord(record, recordFuture);
+        }
+        return builder.asDataEntry().build();
+    }
+
+}
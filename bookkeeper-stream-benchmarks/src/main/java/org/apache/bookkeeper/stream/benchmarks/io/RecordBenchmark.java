@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.stream.benchmarks.io;
+
+import org.apache.bookkeeper.stream.io.DataOutputBuffer;
+import org.apache.bookkeeper.stream.io.Record;
+import org.apache.bookkeeper.stream.io.RecordReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark on serializing and deserializing a single {@link Record}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2G", "-Xmx2G" })
+public class RecordBenchmark {
+
+    @Param({ "16", "256", "4096", "65536", "1048576" })
+    int recordSize;
+
+    private Record record;
+    private DataOutputBuffer outBuf;
+    private DataOutputStream out;
+    private byte[] recordBytes;
+
+    @Setup
+    public void prepare() throws IOException {
+        byte[] data = new byte[recordSize];
+        new Random(System.currentTimeMillis()).nextBytes(data);
+        record = Record.newBuilder()
+                .setRecordId(1L)
+                .setData(data)
+                .build();
+        outBuf = new DataOutputBuffer(recordSize + 1024);
+        out = new DataOutputStream(outBuf);
+        record.write(out);
+        recordBytes = outBuf.toByteArray();
+    }
+
+    @Benchmark
+    public int writeRecord() throws IOException {
+        outBuf.reset();
+        record.write(out);
+        return outBuf.size();
+    }
+
+    @Benchmark
+    public Record readRecord() throws IOException {
+        return RecordReader.of(new DataInputStream(new ByteArrayInputStream(recordBytes))).readRecord();
+    }
+
+}
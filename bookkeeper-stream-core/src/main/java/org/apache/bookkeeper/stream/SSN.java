@@ -56,6 +56,27 @@ public final class SSN implements Comparable<SSN> {
         this.slotId = slotId;
     }
 
+    /**
+     * @return segment id
+     */
+    public long getSegmentId() {
+        return segmentId;
+    }
+
+    /**
+     * @return entry id
+     */
+    public long getEntryId() {
+        return entryId;
+    }
+
+    /**
+     * @return slot id
+     */
+    public long getSlotId() {
+        return slotId;
+    }
+
     @Override
     public int compareTo(SSN that) {
         if (this.segmentId != that.segmentId) {
@@ -23,6 +23,8 @@ import com.google.common.util.concurrent.ListenableFuture;
 import org.apache.bookkeeper.stream.common.FutureCloseable;
 import org.apache.bookkeeper.stream.io.Record;
 
+import java.util.List;
+
 /**
  * Reader to read {@link Record}s from a given stream.
  */
@@ -43,4 +45,15 @@ public interface StreamReader extends FutureCloseable<Void> {
      */
     ListenableFuture<Record> readNext();
 
+    /**
+     * Read a batch of records from the given stream. The future is satisfied with up to <i>maxRecords</i>
+     * records once <i>maxRecords</i> records are readable or <i>maxWaitMs</i> milliseconds have elapsed
+     * since the first record is readable, whichever comes first. The returned list is never empty.
+     *
+     * @param maxRecords max number of records to read.
+     * @param maxWaitMs max time in milliseconds to wait for more records after the first one is readable.
+     * @return a future listening on the arrival of a batch of records in the given stream.
+     */
+    ListenableFuture<List<Record>> readBulk(int maxRecords, long maxWaitMs);
+
 }
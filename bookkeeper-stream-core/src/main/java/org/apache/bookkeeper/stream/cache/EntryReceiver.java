@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.stream.cache;
+
+import org.apache.bookkeeper.stream.common.Resumeable;
+import org.apache.bookkeeper.stream.io.Entry;
+
+/**
+ * Receiver of the entries read by segment readers.
+ */
+public interface EntryReceiver {
+
+    /**
+     * Add <i>entry</i> to the entry cache.
+     *
+     * @param entry received entry.
+     */
+    void addEntry(Entry entry);
+
+    /**
+     * Add the records of <i>entry</i> starting from slot <i>startSlotId</i> to the entry cache.
+     *
+     * @param entry received entry.
+     * @param startSlotId slot id of the first record to add.
+     */
+    void addEntry(Entry entry, long startSlotId);
+
+    /**
+     * whether the cache is full or not.
+     *
+     * @return true if cache is full, otherwise false.
+     */
+    boolean isCacheFull();
+
+    /**
+     * whether the cache holds no records or not. The bytes reserved for the entries
+     * being read aren't counted.
+     *
+     * @return true if cache holds no records, otherwise false.
+     */
+    boolean isCacheEmpty();
+
+    /**
+     * Reserve <i>numBytes</i> of cache space for the entries being read. The reserved
+     * space is counted as used until it is released, so readers could size their reads
+     * to the available space before issuing them.
+     *
+     * @param numBytes number of bytes to reserve.
+     */
+    void reserveBytes(long numBytes);
+
+    /**
+     * Release <i>numBytes</i> of cache space reserved by {@link #reserveBytes(long)}.
+     *
+     * @param numBytes number of bytes to release.
+     */
+    void releaseBytes(long numBytes);
+
+    /**
+     * Get the number of bytes available in the cache, excluding the reserved bytes.
+     *
+     * @return number of available bytes, or {@link Long#MAX_VALUE} if the cache isn't
+     *         bounded by bytes.
+     */
+    long getAvailableBytes();
+
+    /**
+     * Set callback <i>resumeable</i>. It would trigger the read callback
+     * when cache entries decrease to below cache threshold.
+     *
+     * @param resumeable resumable callback
+     */
+    void setReadCallback(Resumeable resumeable);
+
+    /**
+     * Set callback <i>resumeable</i>. It would trigger the read callback once
+     * <i>numBytes</i> are available in the cache, or once the cache holds no records
+     * and isn't full, so a reader waiting for an entry larger than the space of
+     * the cache still makes progress.
+     *
+     * @param resumeable resumable callback
+     * @param numBytes number of bytes to wait for.
+     */
+    void setReadCallback(Resumeable resumeable, long numBytes);
+
+}
@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.stream.cache;
+
+import com.google.common.base.Preconditions;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Arena storing entry data in direct buffers.
+ *
+ * <p>
+ * Entry data is appended to the current chunk, a direct buffer of fixed size. A chunk is
+ * recycled once all the entries stored in it are released, and a new chunk is taken once
+ * the current chunk can't fit the next entry. Entries larger than a chunk aren't stored
+ * in the arena, so a backlog of large entries doesn't turn into a direct allocation per
+ * entry. {@link #allocate(byte[], int, int)} must only be called by a single thread at a
+ * time, while slices could be read and released by other threads. The arena keeps a few
+ * released chunks for reuse until it is closed.
+ * </p>
+ *
+ * <p>
+ * The direct memory of a chunk that isn't kept for reuse is only freed once the garbage
+ * collector reclaims the chunk, so it may outlive the arena for a while after closing.
+ * </p>
+ */
+class OffHeapEntryArena {
+
+    /**
+     * Direct buffer holding the data of multiple entries.
+     */
+    private static class Chunk {
+        private final ByteBuffer buffer;
+        // references of the stored entries and of the arena while it is the current chunk
+        private final AtomicInteger refCnt = new AtomicInteger(0);
+        // accessed by the allocating thread
+        private int writeOffset = 0;
+
+        private Chunk(int capacity) {
+            this.buffer = ByteBuffer.allocateDirect(capacity);
+        }
+    }
+
+    /**
+     * Entry data stored in a chunk.
+     */
+    static class Slice {
+        private final Chunk chunk;
+        private final int offset;
+        private final int length;
+
+        private Slice(Chunk chunk, int offset, int length) {
+            this.chunk = chunk;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        int getLength() {
+            return length;
+        }
+    }
+
+    private final int chunkSize;
+    private final ArrayBlockingQueue<Chunk> freeChunks;
+    private Chunk currentChunk = null;
+    private volatile boolean closed = false;
+
+    /**
+     * Create an arena allocating chunks of <i>chunkSize</i> bytes, keeping at most
+     * <i>maxFreeChunks</i> released chunks for reuse.
+     *
+     * @param chunkSize size of a chunk.
+     * @param maxFreeChunks max number of free chunks kept for reuse.
+     */
+    OffHeapEntryArena(int chunkSize, int maxFreeChunks) {
+        Preconditions.checkArgument(chunkSize > 0, "Non-positive chunk size : " + chunkSize);
+        Preconditions.checkArgument(maxFreeChunks > 0, "Non-positive number of free chunks : " + maxFreeChunks);
+        this.chunkSize = chunkSize;
+        this.freeChunks = new ArrayBlockingQueue<>(maxFreeChunks);
+    }
+
+    /**
+     * Copy <i>len</i> bytes of <i>data</i> starting at <i>offset</i> into the arena.
+     *
+     * @param data data to copy.
+     * @param offset offset of the data.
+     * @param len length of the data.
+     * @return slice storing the data, or null if the data is larger than a chunk.
+     */
+    Slice allocate(byte[] data, int offset, int len) {
+        if (len > chunkSize) {
+            return null;
+        }
+        if (null == currentChunk || currentChunk.writeOffset + len > chunkSize) {
+            if (null != currentChunk) {
+                release(currentChunk);
+            }
+            currentChunk = newChunk();
+            currentChunk.refCnt.incrementAndGet();
+        }
+        Chunk chunk = currentChunk;
+        ByteBuffer buffer = chunk.buffer.duplicate();
+        buffer.position(chunk.writeOffset);
+        buffer.put(data, offset, len);
+        Slice slice = new Slice(chunk, chunk.writeOffset, len);
+        chunk.writeOffset += len;
+        chunk.refCnt.incrementAndGet();
+        return slice;
+    }
+
+    private Chunk newChunk() {
+        Chunk chunk = freeChunks.poll();
+        if (null == chunk) {
+            return new Chunk(chunkSize);
+        }
+        chunk.writeOffset = 0;
+        return chunk;
+    }
+
+    /**
+     * Copy the data stored in <i>slice</i> back to heap and release the slice.
+     *
+     * @param slice slice to read.
+     * @return data stored in the slice.
+     */
+    byte[] readAndRelease(Slice slice) {
+        byte[] data = new byte[slice.length];
+        ByteBuffer buffer = slice.chunk.buffer.duplicate();
+        buffer.position(slice.offset);
+        buffer.get(data);
+        release(slice.chunk);
+        return data;
+    }
+
+    private void release(Chunk chunk) {
+        if (0 == chunk.refCnt.decrementAndGet() && !closed) {
+            // drop the chunk if there are enough free chunks
+            freeChunks.offer(chunk);
+        }
+    }
+
+    /**
+     * Close the arena, dropping the free chunks and the current chunk. The chunks still
+     * referenced by slices are dropped once the slices are released.
+     */
+    void close() {
+        closed = true;
+        if (null != currentChunk) {
+            release(currentChunk);
+            currentChunk = null;
+        }
+        freeChunks.clear();
+    }
+
+    /**
+     * @return number of free chunks kept for reuse.
+     */
+    int getNumFreeChunks() {
+        return freeChunks.size();
+    }
+}
@@ -18,15 +18,15 @@
  */
 package org.apache.bookkeeper.stream.cache;
 
-import org.apache.bookkeeper.stream.common.Resumeable;
 import org.apache.bookkeeper.stream.exceptions.StreamException;
-import org.apache.bookkeeper.stream.io.Entry;
 import org.apache.bookkeeper.stream.io.Record;
 
+import java.util.Collection;
+
 /**
  * Cache to cache entries
  */
-public interface RecordCache {
+public interface RecordCache extends EntryReceiver {
 
     /**
      * Register <i>listener</i> to listen on record available event.
@@ -42,28 +42,6 @@ public interface RecordCache {
      */
     void removeListener(RecordCacheListener listener);
 
-    /**
-     * Add <i>entry</i> to the entry cache.
-     *
-     * @param entry received entry.
-     */
-    void addEntry(Entry entry);
-
-    /**
-     * whether the cache is full or not.
-     *
-     * @return true if cache is full, otherwise false.
-     */
-    boolean isCacheFull();
-
-    /**
-     * Set callback <i>resumeable</i>. It would trigger the read callback
-     * when cache entries decrease to below cache threshold.
-     *
-     * @param resumeable resumable callback
-     */
-    void setReadCallback(Resumeable resumeable);
-
     /**
      * Retrieves and removes next record from the records cache, or returns
      * <i>null</i> if the record cache is empty.
@@ -73,4 +51,15 @@ public interface RecordCache {
      */
     Record pollNextRecord() throws StreamException;
 
+    /**
+     * Retrieves and removes up to <i>maxRecords</i> records from the records cache and
+     * adds them to <i>records</i> in order, with a single synchronization on the cache.
+     *
+     * @param records collection to add the records to.
+     * @param maxRecords max number of records to retrieve.
+     * @return number of records added to <i>records</i>.
+     * @throws org.apache.bookkeeper.stream.exceptions.StreamException when encountered exception in cache
+     */
+    int drainTo(Collection<? super Record> records, int maxRecords) throws StreamException;
+
 }
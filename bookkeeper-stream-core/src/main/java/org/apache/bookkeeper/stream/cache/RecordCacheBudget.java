@@ -0,0 +1,195 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.stream.cache;
+
+import com.google.common.base.Preconditions;
+import org.apache.bookkeeper.stream.common.Resumeable;
+import org.apache.bookkeeper.stream.conf.StreamConfiguration;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Byte budget shared by the reader caches of all the streams in a process.
+ *
+ * <p>
+ * The budget bounds the bytes cached and reserved by all the {@link RecordCacheSharedBytesPolicy}s
+ * created from it, regardless of the number of streams. The budget is shared fairly: each
+ * stream is entitled to a fair share of the budget (budget / number of streams). A stream could
+ * use more than its fair share only when at least a fair share of the budget is still free, so
+ * the streams under their fair share are always able to make progress. Since the readers reserve
+ * bytes before reading entries, the bytes over the fair share are returned as the consumers poll
+ * the records, rather than by evicting the unconsumed records. The readers only read entries
+ * when the bytes available to their streams cover an entry, so the budget is a hard bound as
+ * long as the fair share of each stream holds an entry.
+ *
+ * <p>
+ * The readers waiting for space wait for the bytes of an entry. They are resumed in the order
+ * they started waiting, once the bytes returned to the budget make that many bytes available
+ * to their streams, rather than on every record polled.
+ */
+public class RecordCacheBudget {
+
+    /**
+     * Callback waiting for <i>numBytes</i> available to the stream of <i>policy</i>.
+     */
+    private static class Waiter {
+        private final RecordCacheSharedBytesPolicy policy;
+        private final long numBytes;
+
+        private Waiter(RecordCacheSharedBytesPolicy policy, long numBytes) {
+            this.policy = policy;
+            this.numBytes = numBytes;
+        }
+    }
+
+    private final long maxNumBytes;
+    private final AtomicLong numBytes = new AtomicLong(0L);
+    private final AtomicInteger numStreams = new AtomicInteger(0);
+    // callbacks waiting for bytes returned to the budget, in the order they started waiting
+    private final Map<Resumeable, Waiter> waiters = new LinkedHashMap<>();
+    // number of waiters, checked without locking when bytes are returned
+    private final AtomicInteger numWaiters = new AtomicInteger(0);
+
+    public RecordCacheBudget(StreamConfiguration conf) {
+        this.maxNumBytes = conf.getReaderCacheGlobalMaxNumBytes();
+        Preconditions.checkArgument(maxNumBytes > 0, "Invalid global reader cache size : " + maxNumBytes);
+    }
+
+    /**
+     * @return max number of bytes of the budget.
+     */
+    public long getMaxNumBytes() {
+        return maxNumBytes;
+    }
+
+    /**
+     * @return number of bytes cached or reserved by all the streams.
+     */
+    public long getNumBytes() {
+        return numBytes.get();
+    }
+
+    /**
+     * @return fair share of the budget of each stream.
+     */
+    public long getFairShareNumBytes() {
+        return maxNumBytes / Math.max(1, numStreams.get());
+    }
+
+    void register() {
+        numStreams.incrementAndGet();
+    }
+
+    void unregister(RecordCacheSharedBytesPolicy policy, long streamNumBytes) {
+        synchronized (waiters) {
+            Iterator<Waiter> iter = waiters.values().iterator();
+            while (iter.hasNext()) {
+                if (iter.next().policy == policy) {
+                    iter.remove();
+                }
+            }
+            numWaiters.set(waiters.size());
+        }
+        numBytes.addAndGet(-streamNumBytes);
+        numStreams.decrementAndGet();
+        // the fair share of the other streams grows
+        notifyWaiters();
+    }
+
+    void addBytes(long delta) {
+        numBytes.addAndGet(delta);
+        if (delta < 0) {
+            notifyWaiters();
+        }
+    }
+
+    /**
+     * Resume <i>callback</i> once the bytes returned to the budget make <i>numBytes</i>
+     * available to the stream of <i>policy</i>. Waiting again with the same callback
+     * replaces the number of bytes to wait for, but keeps its place in order.
+     *
+     * @param policy cache policy of the stream.
+     * @param callback callback to resume.
+     * @param numBytes number of bytes to wait for.
+     */
+    void waitForBytes(RecordCacheSharedBytesPolicy policy, Resumeable callback, long numBytes) {
+        synchronized (waiters) {
+            waiters.put(callback, new Waiter(policy, numBytes));
+            numWaiters.set(waiters.size());
+        }
+    }
+
+    /**
+     * Resume the waiters in order, as long as the free bytes of the budget could serve them.
+     */
+    private void notifyWaiters() {
+        if (0 == numWaiters.get()) {
+            return;
+        }
+        long freeBytes = maxNumBytes - numBytes.get();
+        if (freeBytes <= 0) {
+            return;
+        }
+        List<Resumeable> callbacks = null;
+        synchronized (waiters) {
+            Iterator<Map.Entry<Resumeable, Waiter>> iter = waiters.entrySet().iterator();
+            while (iter.hasNext() && freeBytes > 0) {
+                Map.Entry<Resumeable, Waiter> entry = iter.next();
+                Waiter waiter = entry.getValue();
+                if (waiter.numBytes <= freeBytes && waiter.policy.getAvailableBytes() >= waiter.numBytes) {
+                    iter.remove();
+                    // the bytes taken by the resumed waiters aren't available to the next ones
+                    freeBytes -= waiter.numBytes;
+                    if (null == callbacks) {
+                        callbacks = new ArrayList<>();
+                    }
+                    callbacks.add(entry.getKey());
+                }
+            }
+            numWaiters.set(waiters.size());
+        }
+        if (null != callbacks) {
+            for (Resumeable callback : callbacks) {
+                callback.onResume();
+            }
+        }
+    }
+
+    /**
+     * Get the number of bytes available to a stream caching <i>streamNumBytes</i> bytes.
+     *
+     * @param streamNumBytes number of bytes cached or reserved by the stream.
+     * @return number of bytes available to the stream.
+     */
+    long getAvailableBytes(long streamNumBytes) {
+        long fairShare = getFairShareNumBytes();
+        long freeBytes = maxNumBytes - numBytes.get();
+        if (streamNumBytes < fairShare) {
+            return Math.min(freeBytes, fairShare - streamNumBytes);
+        }
+        // leave a fair share to the streams under their fair share
+        return freeBytes - fairShare;
+    }
+}
@@ -18,10 +18,13 @@
  */
 package org.apache.bookkeeper.stream.cache;
 
+import org.apache.bookkeeper.stream.common.Resumeable;
 import org.apache.bookkeeper.stream.conf.StreamConfiguration;
+import org.apache.bookkeeper.stream.io.Entry;
 import org.apache.bookkeeper.stream.io.Record;
 
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Cache Policy by bytes
@@ -30,24 +33,56 @@ public class RecordCacheBytesPolicy implements RecordCachePolicy {
 
     private final int maxCacheBytes;
     private final AtomicInteger cacheBytes;
+    private final AtomicLong reservedBytes;
 
     public RecordCacheBytesPolicy(StreamConfiguration conf) {
         this.maxCacheBytes = conf.getReaderCacheMaxNumBytes();
         this.cacheBytes = new AtomicInteger(0);
+        this.reservedBytes = new AtomicLong(0L);
     }
 
     @Override
     public void onRecordAdded(Record record) {
-        this.cacheBytes.addAndGet(record.getData().length);
+        this.cacheBytes.addAndGet(record.getDataLength());
     }
 
     @Override
     public void onRecordRemoved(Record record) {
-        this.cacheBytes.addAndGet(-record.getData().length);
+        this.cacheBytes.addAndGet(-record.getDataLength());
+    }
+
+    @Override
+    public void onEntryAdded(Entry entry) {
+        this.cacheBytes.addAndGet(entry.getNumBytes());
+    }
+
+    @Override
+    public void onEntryRemoved(Entry entry) {
+        this.cacheBytes.addAndGet(-entry.getNumBytes());
     }
 
     @Override
     public boolean isCacheFull() {
-        return this.cacheBytes.get() >= maxCacheBytes;
+        return getAvailableBytes() <= 0;
+    }
+
+    @Override
+    public void reserveBytes(long numBytes) {
+        this.reservedBytes.addAndGet(numBytes);
+    }
+
+    @Override
+    public void releaseBytes(long numBytes) {
+        this.reservedBytes.addAndGet(-numBytes);
+    }
+
+    @Override
+    public long getAvailableBytes() {
+        return maxCacheBytes - this.cacheBytes.get() - this.reservedBytes.get();
+    }
+
+    @Override
+    public void waitForSpace(Resumeable callback, long numBytes) {
+        // space is only freed by polling records from the cache
     }
 }
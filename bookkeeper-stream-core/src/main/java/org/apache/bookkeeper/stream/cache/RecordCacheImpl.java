@@ -23,19 +23,26 @@ import org.apache.bookkeeper.stats.NullStatsLogger;
 import org.apache.bookkeeper.stats.StatsLogger;
 import org.apache.bookkeeper.stream.SSN;
 import org.apache.bookkeeper.stream.common.Resumeable;
+import org.apache.bookkeeper.stream.common.SpscArrayQueue;
 import org.apache.bookkeeper.stream.conf.StreamConfiguration;
+import org.apache.bookkeeper.stream.exceptions.CorruptedEntryException;
 import org.apache.bookkeeper.stream.exceptions.InvalidRecordException;
 import org.apache.bookkeeper.stream.exceptions.OutOfOrderReadException;
 import org.apache.bookkeeper.stream.exceptions.StreamException;
 import org.apache.bookkeeper.stream.io.Entry;
+import org.apache.bookkeeper.stream.io.Entry.EntryData;
 import org.apache.bookkeeper.stream.io.Record;
 import org.apache.bookkeeper.stream.io.RecordReader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
@@ -45,6 +52,13 @@ public class RecordCacheImpl implements RecordCache {
 
     private static final Logger logger = LoggerFactory.getLogger(RecordCacheImpl.class);
 
+    // cap of the ring buffer size, so a large max num records doesn't allocate a huge array per stream
+    private static final int MAX_RING_BUFFER_SIZE = 16 * 1024;
+    // initial size of the buffer to drain records to
+    private static final int DRAIN_BATCH_SIZE = 1024;
+    // free chunks that an off-heap arena keeps for reuse, the others are left to gc once released
+    private static final int MAX_FREE_OFF_HEAP_CHUNKS = 2;
+
     /**
      * Create a builder to build record cache.
      *
@@ -62,6 +76,7 @@ public class RecordCacheImpl implements RecordCache {
         private String _streamName;
         private StreamConfiguration _streamConf;
         private RecordCachePolicy _cachePolicy;
+        private RecordCacheBudget _cacheBudget = null;
         private StatsLogger _statsLogger = NullStatsLogger.INSTANCE;
 
         private Builder() {}
@@ -81,6 +96,19 @@ public class RecordCacheImpl implements RecordCache {
             return this;
         }
 
+        /**
+         * Bound the cache by a byte budget shared with the caches of other streams. The
+         * cache is bounded by a {@link RecordCacheSharedBytesPolicy} if no cache policy
+         * is provided.
+         *
+         * @param cacheBudget byte budget shared by the reader caches.
+         * @return record cache builder.
+         */
+        public Builder cacheBudget(RecordCacheBudget cacheBudget) {
+            this._cacheBudget = cacheBudget;
+            return this;
+        }
+
         public Builder statsLogger(StatsLogger statsLogger) {
             this._statsLogger = statsLogger;
             return this;
@@ -89,10 +117,15 @@ public class RecordCacheImpl implements RecordCache {
         public RecordCacheImpl build() {
             Preconditions.checkNotNull(_streamName, "No stream name provided");
             Preconditions.checkNotNull(_streamConf, "No stream configuration provided");
-            Preconditions.checkNotNull(_cachePolicy, "No cache policy provided.");
+            Preconditions.checkArgument(null != _cachePolicy || null != _cacheBudget,
+                    "No cache policy or cache budget provided.");
             Preconditions.checkNotNull(_statsLogger, "No stats logger provided");
 
-            return new RecordCacheImpl(_streamName, _streamConf, _cachePolicy, _statsLogger);
+            RecordCachePolicy cachePolicy = _cachePolicy;
+            if (null == cachePolicy) {
+                cachePolicy = new RecordCacheSharedBytesPolicy(_streamConf, _cacheBudget);
+            }
+            return new RecordCacheImpl(_streamName, _streamConf, cachePolicy, _statsLogger);
         }
 
     }
@@ -101,13 +134,34 @@ public class RecordCacheImpl implements RecordCache {
     private final StreamConfiguration streamConf;
     private final RecordCachePolicy cachePolicy;
     private final StatsLogger statsLogger;
+    private final boolean zeroCopyEnabled;
+    private final boolean lazyDecodeEnabled;
+    // arena storing the cached entries off heap, if off-heap storage is enabled
+    private final OffHeapEntryArena offHeapArena;
     // cache records
-    private final LinkedBlockingQueue<Record> records;
-    // cache state
+    private final CacheQueue<Record> records;
+    // cache entries whose records are decoded on polling, if lazy decode is enabled
+    private final CacheQueue<PendingEntry> entries;
+    // lock handing the polling entry over between the polling threads
+    private final Object decodeLock = new Object();
+    private PendingEntry pollingEntry = null;
+    // cache state, last SSN is only accessed by the thread adding entries
     private SSN lastSSN = SSN.INVALID_SSN;
     private final AtomicReference<StreamException> lastException;
-    // cache callback
+    // number of records and entries cached
+    private final AtomicLong numCachedItems = new AtomicLong(0L);
+    // cache callback and the number of bytes it waits for
     private Resumeable cacheCallback = null;
+    private long cacheCallbackNumBytes = 1L;
+    // callback resuming reads on space freed outside the cache
+    private final Resumeable spaceCallback = new Resumeable() {
+        @Override
+        public void onResume() {
+            triggerCacheCallback();
+            // keep waiting if the space freed isn't enough
+            waitForSpace();
+        }
+    };
     private final CopyOnWriteArraySet<RecordCacheListener> listeners;
 
     private RecordCacheImpl(String streamName,
@@ -118,7 +172,17 @@ public class RecordCacheImpl implements RecordCache {
         this.streamConf = streamConf;
         this.cachePolicy = cachePolicy;
         this.statsLogger = statsLogger;
-        this.records = new LinkedBlockingQueue<>();
+        this.zeroCopyEnabled = streamConf.isReaderCacheZeroCopyEnabled();
+        if (streamConf.isReaderCacheOffHeapEnabled()) {
+            int chunkSize = streamConf.getReaderCacheOffHeapChunkSize();
+            this.offHeapArena = new OffHeapEntryArena(chunkSize, MAX_FREE_OFF_HEAP_CHUNKS);
+        } else {
+            this.offHeapArena = null;
+        }
+        // entries stored off heap are decoded on polling
+        this.lazyDecodeEnabled = null != offHeapArena || streamConf.isReaderCacheLazyDecodeEnabled();
+        this.records = newCacheQueue(streamConf);
+        this.entries = newCacheQueue(streamConf);
 
         // cache state
         this.lastException = new AtomicReference<>(null);
@@ -126,6 +190,89 @@ public class RecordCacheImpl implements RecordCache {
         this.listeners = new CopyOnWriteArraySet<>();
     }
 
+    /**
+     * Queue to store cached records or entries.
+     */
+    private interface CacheQueue<T> {
+
+        void add(T item);
+
+        T poll();
+
+        int drainTo(Collection<? super T> items, int maxItems);
+    }
+
+    private static <T> CacheQueue<T> newCacheQueue(StreamConfiguration conf) {
+        switch (conf.getReaderCacheType()) {
+        case RING:
+            final SpscArrayQueue<T> ringQueue = new SpscArrayQueue<>(
+                    Math.max(1, Math.min(conf.getReaderCacheMaxNumRecords(), MAX_RING_BUFFER_SIZE)));
+            return new CacheQueue<T>() {
+                @Override
+                public void add(T item) {
+                    ringQueue.offer(item);
+                }
+
+                @Override
+                public T poll() {
+                    return ringQueue.poll();
+                }
+
+                @Override
+                public int drainTo(Collection<? super T> items, int maxItems) {
+                    int numItems = 0;
+                    T item;
+                    while (numItems < maxItems && null != (item = ringQueue.poll())) {
+                        items.add(item);
+                        ++numItems;
+                    }
+                    return numItems;
+                }
+            };
+        default:
+            final LinkedBlockingQueue<T> linkedQueue = new LinkedBlockingQueue<>();
+            return new CacheQueue<T>() {
+                @Override
+                public void add(T item) {
+                    linkedQueue.add(item);
+                }
+
+                @Override
+                public T poll() {
+                    return linkedQueue.poll();
+                }
+
+                @Override
+                public int drainTo(Collection<? super T> items, int maxItems) {
+                    return linkedQueue.drainTo(items, maxItems);
+                }
+            };
+        }
+    }
+
+    /**
+     * Entry cached without decoding its records.
+     */
+    private static class PendingEntry {
+        private final long segmentId;
+        private final long entryId;
+        private final long startSlotId;
+        // entry data stored off heap, if off-heap storage is enabled and the entry fits in a chunk
+        private final OffHeapEntryArena.Slice slice;
+        // entry on heap, it is copied back from off heap on polling its first record
+        private Entry entry;
+        // reader decoding the records of the entry, created on polling its first record
+        private RecordReader reader = null;
+
+        private PendingEntry(Entry entry, OffHeapEntryArena.Slice slice, long startSlotId) {
+            this.segmentId = entry.getSegmentId();
+            this.entryId = entry.getEntryId();
+            this.startSlotId = startSlotId;
+            this.slice = slice;
+            this.entry = null == slice ? entry : null;
+        }
+    }
+
     @Override
     public void addListener(RecordCacheListener listener) {
         this.listeners.add(listener);
@@ -144,13 +291,22 @@ public class RecordCacheImpl implements RecordCache {
 
     @Override
     public void addEntry(Entry entry) {
+        addEntry(entry, 0L);
+    }
+
+    @Override
+    public void addEntry(Entry entry, long startSlotId) {
         if (entry.isCommitEntry()) {
             // skip commit entry
             return;
         }
-        RecordReader rr = entry.asRecordReader();
+        if (lazyDecodeEnabled) {
+            addPendingEntry(entry, startSlotId);
+            return;
+        }
         Record record;
         try {
+            RecordReader rr = entry.asRecordReader(zeroCopyEnabled, startSlotId);
             record = rr.readRecord();
             while (null != record) {
                 setLastSSN(record.getSSN());
@@ -169,9 +325,49 @@ public class RecordCacheImpl implements RecordCache {
         notifyRecordAvailable();
     }
 
+    private void addPendingEntry(Entry entry, long startSlotId) {
+        try {
+            setLastSSN(SSN.of(entry.getSegmentId(), entry.getEntryId(), startSlotId));
+            OffHeapEntryArena.Slice slice = null;
+            if (null != offHeapArena) {
+                EntryData entryData = entry.getEntryData();
+                // entries larger than a chunk are kept on heap
+                slice = offHeapArena.allocate(entryData.data, entryData.offset, entryData.len);
+            }
+            entries.add(new PendingEntry(entry, slice, startSlotId));
+            cachePolicy.onEntryAdded(entry);
+            numCachedItems.incrementAndGet();
+        } catch (StreamException se) {
+            setLastException(se);
+        }
+        notifyRecordAvailable();
+    }
+
+    /**
+     * Close the record cache, dropping the cached entries and the off-heap chunks storing them,
+     * and returning its bytes to the shared cache budget if any.
+     * It should be called after the readers adding entries to the cache are closed, and the
+     * cache shouldn't be polled after it is closed.
+     */
+    public void close() {
+        synchronized (decodeLock) {
+            pollingEntry = null;
+            while (null != entries.poll()) {
+                // drop the cached entry
+            }
+        }
+        if (null != offHeapArena) {
+            offHeapArena.close();
+        }
+        if (cachePolicy instanceof RecordCacheSharedBytesPolicy) {
+            ((RecordCacheSharedBytesPolicy) cachePolicy).close();
+        }
+    }
+
     private void addRecord(Record record) {
         records.add(record);
         cachePolicy.onRecordAdded(record);
+        numCachedItems.incrementAndGet();
     }
 
     @Override
@@ -181,19 +377,146 @@ public class RecordCacheImpl implements RecordCache {
             throw se;
         }
 
+        if (lazyDecodeEnabled) {
+            return decodeNextRecord();
+        }
         return removeRecord();
     }
 
+    @Override
+    public int drainTo(Collection<? super Record> drainedRecords, int maxRecords) throws StreamException {
+        StreamException se = lastException.get();
+        if (null != se) {
+            throw se;
+        }
+
+        if (lazyDecodeEnabled) {
+            return decodeRecords(drainedRecords, maxRecords);
+        }
+        List<Record> removedRecords = new ArrayList<>(Math.min(maxRecords, DRAIN_BATCH_SIZE));
+        int numRecords = records.drainTo(removedRecords, maxRecords);
+        if (numRecords > 0) {
+            for (Record record : removedRecords) {
+                cachePolicy.onRecordRemoved(record);
+            }
+            numCachedItems.addAndGet(-numRecords);
+            drainedRecords.addAll(removedRecords);
+            triggerCacheCallback();
+        }
+        return numRecords;
+    }
+
+    private int decodeRecords(Collection<? super Record> drainedRecords, int maxRecords)
+            throws StreamException {
+        List<Entry> polledEntries = new ArrayList<>();
+        int numRecords = 0;
+        try {
+            // decode the whole batch under one acquisition of the decode lock
+            synchronized (decodeLock) {
+                Record record;
+                while (numRecords < maxRecords && null != (record = decodeNextRecordLocked(polledEntries))) {
+                    drainedRecords.add(record);
+                    ++numRecords;
+                }
+            }
+        } finally {
+            releasePolledEntries(polledEntries);
+        }
+        return numRecords;
+    }
+
+    /**
+     * Decode next record from the cached entries, in the polling thread.
+     *
+     * @return next record, or null if no records are cached.
+     * @throws StreamException if encountered invalid records.
+     */
+    private Record decodeNextRecord() throws StreamException {
+        List<Entry> polledEntries = new ArrayList<>(1);
+        try {
+            synchronized (decodeLock) {
+                return decodeNextRecordLocked(polledEntries);
+            }
+        } finally {
+            releasePolledEntries(polledEntries);
+        }
+    }
+
+    /**
+     * Decode next record from the cached entries, holding the decode lock.
+     *
+     * @param polledEntries entries whose records are all polled, to release their space
+     *                      after the decode lock is released.
+     * @return next record, or null if no records are cached.
+     * @throws StreamException if encountered invalid records.
+     */
+    private Record decodeNextRecordLocked(List<Entry> polledEntries) throws StreamException {
+        while (true) {
+            if (null == pollingEntry) {
+                pollingEntry = entries.poll();
+                if (null == pollingEntry) {
+                    return null;
+                }
+            }
+            if (null == pollingEntry.entry) {
+                try {
+                    pollingEntry.entry = Entry.of(pollingEntry.segmentId, pollingEntry.entryId,
+                            offHeapArena.readAndRelease(pollingEntry.slice), 0, pollingEntry.slice.getLength());
+                } catch (CorruptedEntryException cee) {
+                    setLastException(cee);
+                    throw cee;
+                }
+            }
+            Entry entry = pollingEntry.entry;
+            Record record;
+            try {
+                if (null == pollingEntry.reader) {
+                    pollingEntry.reader = entry.asRecordReader(zeroCopyEnabled, pollingEntry.startSlotId);
+                }
+                record = pollingEntry.reader.readRecord();
+            } catch (IOException ioe) {
+                InvalidRecordException ire = new InvalidRecordException("Found invalid record in entry "
+                        + entry.getEntryId() + " of segment " + entry.getSegmentId() + " : ", ioe);
+                setLastException(ire);
+                throw ire;
+            }
+            if (null != record) {
+                return record;
+            }
+            pollingEntry = null;
+            polledEntries.add(entry);
+        }
+    }
+
+    /**
+     * Release the space of the entries whose records are all polled, outside the decode lock.
+     *
+     * @param polledEntries entries whose records are all polled.
+     */
+    private void releasePolledEntries(List<Entry> polledEntries) {
+        if (polledEntries.isEmpty()) {
+            return;
+        }
+        for (Entry entry : polledEntries) {
+            cachePolicy.onEntryRemoved(entry);
+        }
+        numCachedItems.addAndGet(-polledEntries.size());
+        triggerCacheCallback();
+    }
+
     private Record removeRecord() {
         Record record = records.poll();
         if (null != record) {
-            triggerCacheCallback();
+            // release the space before resuming reads, otherwise a reader setting its read
+            // callback in between would still find the cache full and never be resumed.
             cachePolicy.onRecordRemoved(record);
+            numCachedItems.decrementAndGet();
+            triggerCacheCallback();
         }
         return record;
     }
 
-    private synchronized void setLastSSN(SSN ssn) throws StreamException {
+    private void setLastSSN(SSN ssn) throws StreamException {
         if (lastSSN.compareTo(ssn) >= 0) {
             logger.warn("Received out-of-order record : current = {}, last = {}", ssn, lastSSN);
             throw new OutOfOrderReadException(lastSSN, ssn);
@@ -210,24 +533,80 @@ public class RecordCacheImpl implements RecordCache {
         return cachePolicy.isCacheFull();
     }
 
+    @Override
+    public boolean isCacheEmpty() {
+        return 0L == numCachedItems.get();
+    }
+
+    @Override
+    public void reserveBytes(long numBytes) {
+        cachePolicy.reserveBytes(numBytes);
+    }
+
+    @Override
+    public void releaseBytes(long numBytes) {
+        cachePolicy.releaseBytes(numBytes);
+    }
+
+    @Override
+    public long getAvailableBytes() {
+        return cachePolicy.getAvailableBytes();
+    }
+
     @Override
     public void setReadCallback(Resumeable resumeable) {
+        setReadCallback(resumeable, 1L);
+    }
+
+    @Override
+    public void setReadCallback(Resumeable resumeable, long numBytes) {
         synchronized (this) {
             this.cacheCallback = resumeable;
+            this.cacheCallbackNumBytes = numBytes;
         }
-        if (!isCacheFull()) {
-            triggerCacheCallback();
+        // the cache might also be full of the bytes of other streams, wait for them too
+        waitForSpace();
+        triggerCacheCallback();
+    }
+
+    /**
+     * Wait for the space freed outside the cache, if the cache callback is set.
+     */
+    private void waitForSpace() {
+        long numBytes;
+        synchronized (this) {
+            if (null == cacheCallback) {
+                return;
+            }
+            numBytes = cacheCallbackNumBytes;
         }
+        // a reader of an empty cache only waits for the cache not being full
+        cachePolicy.waitForSpace(spaceCallback, isCacheEmpty() ? 1L : numBytes);
     }
 
+    /**
+     * Trigger the cache callback if the space it waits for is available.
+     */
     private void triggerCacheCallback() {
         Resumeable cb;
         synchronized (this) {
-            cb = cacheCallback;
-            cacheCallback = null;
+            if (null == cacheCallback) {
+                return;
+            }
+            if (isCacheFull()
+                    || (!isCacheEmpty() && cachePolicy.getAvailableBytes() < cacheCallbackNumBytes)) {
+                cb = null;
+            } else {
+                cb = cacheCallback;
+                cacheCallback = null;
+            }
         }
         if (null != cb) {
             cb.onResume();
+        } else if (isCacheEmpty()) {
+            // the cache is drained but full of the bytes of other streams, it now only
+            // waits for the cache not being full
+            waitForSpace();
         }
     }
 }
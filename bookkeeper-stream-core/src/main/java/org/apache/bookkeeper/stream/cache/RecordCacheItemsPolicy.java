@@ -18,7 +18,9 @@
  */
 package org.apache.bookkeeper.stream.cache;
 
+import org.apache.bookkeeper.stream.common.Resumeable;
 import org.apache.bookkeeper.stream.conf.StreamConfiguration;
+import org.apache.bookkeeper.stream.io.Entry;
 import org.apache.bookkeeper.stream.io.Record;
 
 import java.util.concurrent.atomic.AtomicInteger;
@@ -46,8 +48,38 @@ public class RecordCacheItemsPolicy implements RecordCachePolicy {
         this.cacheItems.decrementAndGet();
     }
 
+    @Override
+    public void onEntryAdded(Entry entry) {
+        this.cacheItems.addAndGet(entry.getNumRecords());
+    }
+
+    @Override
+    public void onEntryRemoved(Entry entry) {
+        this.cacheItems.addAndGet(-entry.getNumRecords());
+    }
+
     @Override
     public boolean isCacheFull() {
         return this.cacheItems.get() >= maxCacheItems;
     }
+
+    @Override
+    public void reserveBytes(long numBytes) {
+        // no-op
+    }
+
+    @Override
+    public void releaseBytes(long numBytes) {
+        // no-op
+    }
+
+    @Override
+    public long getAvailableBytes() {
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public void waitForSpace(Resumeable callback, long numBytes) {
+        // space is only freed by polling records from the cache
+    }
 }
@@ -18,6 +18,8 @@
  */
 package org.apache.bookkeeper.stream.cache;
 
+import org.apache.bookkeeper.stream.common.Resumeable;
+import org.apache.bookkeeper.stream.io.Entry;
 import org.apache.bookkeeper.stream.io.Record;
 
 /**
@@ -39,9 +41,55 @@ public interface RecordCachePolicy {
      */
     void onRecordRemoved(Record record);
 
+    /**
+     * Trigger on <i>entry</i> added without decoding its records.
+     *
+     * @param entry added entry.
+     */
+    void onEntryAdded(Entry entry);
+
+    /**
+     * Trigger on <i>entry</i> removed after all its records are polled.
+     *
+     * @param entry removed entry.
+     */
+    void onEntryRemoved(Entry entry);
+
     /**
      * @return true if cache is full, otherwise false.
      */
     boolean isCacheFull();
 
+    /**
+     * Reserve <i>numBytes</i> for the records to be added. The reserved bytes are
+     * counted as cached until they are released.
+     *
+     * @param numBytes number of bytes to reserve.
+     */
+    void reserveBytes(long numBytes);
+
+    /**
+     * Release <i>numBytes</i> reserved by {@link #reserveBytes(long)}.
+     *
+     * @param numBytes number of bytes to release.
+     */
+    void releaseBytes(long numBytes);
+
+    /**
+     * @return number of bytes available for adding records, or {@link Long#MAX_VALUE}
+     *         if the cache isn't bounded by bytes.
+     */
+    long getAvailableBytes();
+
+    /**
+     * Wait for space freed outside the cache, e.g. by the caches of other streams sharing
+     * a budget with it. <i>callback</i> is resumed once when such space freed makes
+     * <i>numBytes</i> available to the cache. Waiting again with the same callback
+     * replaces the number of bytes to wait for.
+     *
+     * @param callback callback to resume on space freed.
+     * @param numBytes number of bytes to wait for.
+     */
+    void waitForSpace(Resumeable callback, long numBytes);
+
 }
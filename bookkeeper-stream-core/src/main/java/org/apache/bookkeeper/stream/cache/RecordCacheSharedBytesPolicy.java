@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.stream.cache;
+
+import org.apache.bookkeeper.stream.common.Resumeable;
+import org.apache.bookkeeper.stream.conf.StreamConfiguration;
+import org.apache.bookkeeper.stream.io.Entry;
+import org.apache.bookkeeper.stream.io.Record;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache Policy by bytes, bounded by both the reader cache size of the stream and
+ * a {@link RecordCacheBudget} shared with other streams.
+ */
+public class RecordCacheSharedBytesPolicy implements RecordCachePolicy {
+
+    private final long maxCacheBytes;
+    private final RecordCacheBudget budget;
+    // bytes cached and reserved by the stream
+    private final AtomicLong cacheBytes;
+    private boolean closed = false;
+
+    public RecordCacheSharedBytesPolicy(StreamConfiguration conf, RecordCacheBudget budget) {
+        this.maxCacheBytes = conf.getReaderCacheMaxNumBytes();
+        this.budget = budget;
+        this.cacheBytes = new AtomicLong(0L);
+        this.budget.register();
+    }
+
+    private void addBytes(long delta) {
+        cacheBytes.addAndGet(delta);
+        budget.addBytes(delta);
+    }
+
+    @Override
+    public void onRecordAdded(Record record) {
+        addBytes(record.getDataLength());
+    }
+
+    @Override
+    public void onRecordRemoved(Record record) {
+        addBytes(-record.getDataLength());
+    }
+
+    @Override
+    public void onEntryAdded(Entry entry) {
+        addBytes(entry.getNumBytes());
+    }
+
+    @Override
+    public void onEntryRemoved(Entry entry) {
+        addBytes(-entry.getNumBytes());
+    }
+
+    @Override
+    public boolean isCacheFull() {
+        return getAvailableBytes() <= 0;
+    }
+
+    @Override
+    public void reserveBytes(long numBytes) {
+        addBytes(numBytes);
+    }
+
+    @Override
+    public void releaseBytes(long numBytes) {
+        addBytes(-numBytes);
+    }
+
+    @Override
+    public long getAvailableBytes() {
+        long numBytes = cacheBytes.get();
+        return Math.min(maxCacheBytes - numBytes, budget.getAvailableBytes(numBytes));
+    }
+
+    @Override
+    public void waitForSpace(Resumeable callback, long numBytes) {
+        budget.waitForBytes(this, callback, numBytes);
+    }
+
+    /**
+     * Return the bytes of the stream to the shared budget. The policy should not be used
+     * after it is closed.
+     */
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        budget.unregister(this, cacheBytes.get());
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.stream.cache;
+
+/**
+ * Type of the queue that a {@link RecordCacheImpl} stores records in.
+ *
+ * <ul>
+ * <li>{@link #LINKED}: a linked blocking queue, allocating a node per record. It supports
+ * multiple consumers polling records concurrently.</li>
+ * <li>{@link #RING}: a lock-free single-producer single-consumer queue backed by ring buffers.
+ * Records must be polled by a single consumer thread at a time.</li>
+ * </ul>
+ */
+public enum RecordCacheType {
+    LINKED,
+    RING
+}
@@ -0,0 +1,336 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.stream.cache;
+
+import com.google.common.base.Preconditions;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.stream.common.Resumeable;
+import org.apache.bookkeeper.stream.conf.StreamConfiguration;
+import org.apache.bookkeeper.stream.io.Entry.EntryData;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-local cache of the tail entries of inprogress segments.
+ *
+ * <p>
+ * Segment writers add entries to the cache once they are acknowledged by bookies, so
+ * readers in the same process could read the tail of an inprogress segment from memory,
+ * without waiting for the entries to be committed and polling the last add confirmed
+ * from bookies. Readers register listeners on a segment to be notified when new entries
+ * are added to it.
+ *
+ * <p>
+ * The cache is bounded by <i>reader.tail.cache.max.num.bytes</i> across all the segments.
+ * The oldest entries are evicted first when exceeding the limit, and the entries of a
+ * segment are removed once its writer is closed. Readers fall back to read entries from
+ * bookies on cache misses.
+ */
+public class TailEntryCache {
+
+    /**
+     * Create a builder to build tail entry cache.
+     *
+     * @return tail entry cache builder.
+     */
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    /**
+     * Builder to build tail entry cache.
+     */
+    public static class Builder {
+
+        private StreamConfiguration _conf;
+        private StatsLogger _statsLogger = NullStatsLogger.INSTANCE;
+
+        private Builder() {}
+
+        /**
+         * Set stream configuration.
+         *
+         * @param conf stream configuration
+         * @return builder
+         */
+        public Builder conf(StreamConfiguration conf) {
+            this._conf = conf;
+            return this;
+        }
+
+        /**
+         * Set stats logger used by tail entry cache.
+         *
+         * @param statsLogger stats logger
+         * @return builder
+         */
+        public Builder statsLogger(StatsLogger statsLogger) {
+            this._statsLogger = statsLogger;
+            return this;
+        }
+
+        /**
+         * Build the tail entry cache.
+         *
+         * @return tail entry cache.
+         */
+        public TailEntryCache build() {
+            Preconditions.checkNotNull(_conf, "No stream configuration provided");
+            Preconditions.checkNotNull(_statsLogger, "No stats logger provided");
+            return new TailEntryCache(_conf, _statsLogger);
+        }
+    }
+
+    /**
+     * Cached tail of a segment.
+     */
+    private static class SegmentTail {
+        private final ConcurrentSkipListMap<Long, CachedEntry> entries = new ConcurrentSkipListMap<>();
+        private final CopyOnWriteArraySet<Resumeable> listeners = new CopyOnWriteArraySet<>();
+        // set once the segment is removed, before its entries are dropped
+        private volatile boolean removed = false;
+    }
+
+    /**
+     * Cached entry, ordered for eviction by the sequence it was added in.
+     */
+    private static class CachedEntry {
+        private final SegmentTail tail;
+        private final long entryId;
+        private final long seq;
+        private final EntryData data;
+
+        private CachedEntry(SegmentTail tail, long entryId, long seq, EntryData data) {
+            this.tail = tail;
+            this.entryId = entryId;
+            this.seq = seq;
+            this.data = data;
+        }
+    }
+
+    private final long maxNumBytes;
+    private final ConcurrentMap<String, SegmentTail> segments = new ConcurrentHashMap<>();
+    // lock serializing adding and removing listeners, so a segment tail isn't removed
+    // while a listener is being added to it
+    private final Object listenersLock = new Object();
+    // cached entries of all the segments in the order they were added
+    private final ConcurrentSkipListMap<Long, CachedEntry> evictionOrder = new ConcurrentSkipListMap<>();
+    private final AtomicLong nextSeq = new AtomicLong(0L);
+    private final AtomicLong numBytes = new AtomicLong(0L);
+    private final AtomicInteger numEntries = new AtomicInteger(0);
+    // stats
+    private final Counter cachedEntriesCounter;
+    private final Counter evictedEntriesCounter;
+    private final Counter hitsCounter;
+    private final Counter missesCounter;
+
+    private TailEntryCache(StreamConfiguration conf, StatsLogger statsLogger) {
+        this.maxNumBytes = conf.getReaderTailCacheMaxNumBytes();
+        this.cachedEntriesCounter = statsLogger.getCounter("cached_entries");
+        this.evictedEntriesCounter = statsLogger.getCounter("evicted_entries");
+        this.hitsCounter = statsLogger.getCounter("hits");
+        this.missesCounter = statsLogger.getCounter("misses");
+    }
+
+    private static String segmentKey(String streamName, long segmentId) {
+        return streamName + "#" + segmentId;
+    }
+
+    private SegmentTail getOrCreateSegmentTail(String streamName, long segmentId) {
+        String key = segmentKey(streamName, segmentId);
+        SegmentTail tail = segments.get(key);
+        if (null == tail) {
+            SegmentTail newTail = new SegmentTail();
+            SegmentTail oldTail = segments.putIfAbsent(key, newTail);
+            tail = null == oldTail ? newTail : oldTail;
+        }
+        return tail;
+    }
+
+    /**
+     * Add entry <i>entryId</i> of segment <i>segmentId</i> to the cache. The cache keeps
+     * a reference to <i>data</i>, so the caller should not modify it after adding.
+     *
+     * @param streamName stream name
+     * @param segmentId segment id
+     * @param entryId entry id
+     * @param data entry data
+     */
+    public void addEntry(String streamName, long segmentId, long entryId, byte[] data) {
+        addEntry(streamName, segmentId, entryId, new EntryData(data, 0, data.length));
+    }
+
+    /**
+     * Add entry <i>entryId</i> of segment <i>segmentId</i> to the cache. The cache keeps
+     * a reference to the array of <i>data</i>, so the caller should not modify it after adding.
+     *
+     * @param streamName stream name
+     * @param segmentId segment id
+     * @param entryId entry id
+     * @param data entry data
+     */
+    public void addEntry(String streamName, long segmentId, long entryId, EntryData data) {
+        if (data.len > maxNumBytes) {
+            return;
+        }
+        SegmentTail tail = getOrCreateSegmentTail(streamName, segmentId);
+        CachedEntry cachedEntry = new CachedEntry(tail, entryId, nextSeq.getAndIncrement(), data);
+        if (null != tail.entries.putIfAbsent(entryId, cachedEntry)) {
+            // the entry is already cached
+            return;
+        }
+        numBytes.addAndGet(data.len);
+        numEntries.incrementAndGet();
+        evictionOrder.put(cachedEntry.seq, cachedEntry);
+        if (tail.removed) {
+            // the segment was removed concurrently, it may have missed the entry
+            evictionOrder.remove(cachedEntry.seq);
+            removeEntry(cachedEntry);
+            return;
+        }
+        cachedEntriesCounter.inc();
+        evictIfNeeded();
+        for (Resumeable listener : tail.listeners) {
+            listener.onResume();
+        }
+    }
+
+    /**
+     * Remove <i>cachedEntry</i> if it is still cached.
+     *
+     * @param cachedEntry entry to remove.
+     * @return true if the entry is removed by this call.
+     */
+    private boolean removeEntry(CachedEntry cachedEntry) {
+        if (!cachedEntry.tail.entries.remove(cachedEntry.entryId, cachedEntry)) {
+            return false;
+        }
+        evictionOrder.remove(cachedEntry.seq);
+        numBytes.addAndGet(-cachedEntry.data.len);
+        numEntries.decrementAndGet();
+        return true;
+    }
+
+    private void evictIfNeeded() {
+        Map.Entry<Long, CachedEntry> oldest;
+        while (numBytes.get() > maxNumBytes && null != (oldest = evictionOrder.pollFirstEntry())) {
+            if (removeEntry(oldest.getValue())) {
+                evictedEntriesCounter.inc();
+            }
+        }
+    }
+
+    /**
+     * Get entry <i>entryId</i> of segment <i>segmentId</i> from the cache.
+     *
+     * @param streamName stream name
+     * @param segmentId segment id
+     * @param entryId entry id
+     * @return entry data, or null if the entry isn't cached.
+     */
+    public EntryData getEntry(String streamName, long segmentId, long entryId) {
+        SegmentTail tail = segments.get(segmentKey(streamName, segmentId));
+        CachedEntry cachedEntry = null == tail ? null : tail.entries.get(entryId);
+        if (null == cachedEntry) {
+            missesCounter.inc();
+            return null;
+        }
+        hitsCounter.inc();
+        return cachedEntry.data;
+    }
+
+    /**
+     * Add <i>listener</i> to be notified when entries are added to segment <i>segmentId</i>
+     * or the segment is removed from the cache.
+     *
+     * @param streamName stream name
+     * @param segmentId segment id
+     * @param listener listener to be notified.
+     */
+    public void addListener(String streamName, long segmentId, Resumeable listener) {
+        synchronized (listenersLock) {
+            getOrCreateSegmentTail(streamName, segmentId).listeners.add(listener);
+        }
+    }
+
+    /**
+     * Remove <i>listener</i> from segment <i>segmentId</i>.
+     *
+     * @param streamName stream name
+     * @param segmentId segment id
+     * @param listener listener to remove.
+     */
+    public void removeListener(String streamName, long segmentId, Resumeable listener) {
+        String key = segmentKey(streamName, segmentId);
+        synchronized (listenersLock) {
+            SegmentTail tail = segments.get(key);
+            if (null == tail) {
+                return;
+            }
+            tail.listeners.remove(listener);
+            if (tail.listeners.isEmpty() && tail.entries.isEmpty()) {
+                segments.remove(key, tail);
+            }
+        }
+    }
+
+    /**
+     * Remove all the cached entries of segment <i>segmentId</i>. It is called when the writer
+     * of the segment is closed, the listeners of the segment are notified to read the
+     * remaining entries from bookies.
+     *
+     * @param streamName stream name
+     * @param segmentId segment id
+     */
+    public void removeSegment(String streamName, long segmentId) {
+        SegmentTail tail = segments.remove(segmentKey(streamName, segmentId));
+        if (null == tail) {
+            return;
+        }
+        tail.removed = true;
+        for (CachedEntry cachedEntry : tail.entries.values()) {
+            removeEntry(cachedEntry);
+        }
+        for (Resumeable listener : tail.listeners) {
+            listener.onResume();
+        }
+    }
+
+    /**
+     * @return number of the cached entries.
+     */
+    public int getNumEntries() {
+        return numEntries.get();
+    }
+
+    /**
+     * @return number of bytes of the cached entries.
+     */
+    public long getNumBytes() {
+        return numBytes.get();
+    }
+}
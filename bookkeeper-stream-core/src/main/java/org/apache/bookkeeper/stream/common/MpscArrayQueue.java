@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.stream.common;
+
+import com.google.common.base.Preconditions;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free multi-producer single-consumer queue backed by a ring buffer.
+ *
+ * <p>
+ * Producers claim a slot by advancing the producer index and then publish the element
+ * into the slot. {@link #offer(Object)} can be called from any thread, while {@link #poll()}
+ * must only be called by a single consumer thread at a time.
+ */
+public class MpscArrayQueue<E> {
+
+    private final int capacity;
+    private final int mask;
+    private final AtomicReferenceArray<E> buffer;
+    private final AtomicLong producerIndex = new AtomicLong(0L);
+    private final AtomicLong consumerIndex = new AtomicLong(0L);
+
+    /**
+     * Construct a queue holding at least <i>capacity</i> elements. The capacity is
+     * rounded up to a power of two.
+     *
+     * @param capacity min capacity of the queue.
+     */
+    public MpscArrayQueue(int capacity) {
+        Preconditions.checkArgument(capacity > 0 && capacity <= (1 << 30),
+                "Invalid queue capacity : " + capacity);
+        int actualCapacity = Integer.highestOneBit(capacity);
+        if (actualCapacity < capacity) {
+            actualCapacity <<= 1;
+        }
+        this.capacity = actualCapacity;
+        this.mask = actualCapacity - 1;
+        this.buffer = new AtomicReferenceArray<>(actualCapacity);
+    }
+
+    /**
+     * @return capacity of the queue.
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Add <i>e</i> to the queue.
+     *
+     * @param e element to add
+     * @return true if the element is added, false if the queue is full.
+     */
+    public boolean offer(E e) {
+        Preconditions.checkNotNull(e, "Null element");
+        long index;
+        do {
+            index = producerIndex.get();
+            if (index - consumerIndex.get() >= capacity) {
+                return false;
+            }
+        } while (!producerIndex.compareAndSet(index, index + 1));
+        buffer.lazySet((int) index & mask, e);
+        return true;
+    }
+
+    /**
+     * Remove the head of the queue. It must only be called by the consumer thread.
+     *
+     * @return head of the queue, or null if the queue is empty.
+     */
+    public E poll() {
+        long index = consumerIndex.get();
+        int offset = (int) index & mask;
+        E e = buffer.get(offset);
+        if (null == e) {
+            if (index == producerIndex.get()) {
+                return null;
+            }
+            // the slot is claimed by a producer but not published yet
+            do {
+                e = buffer.get(offset);
+            } while (null == e);
+        }
+        buffer.lazySet(offset, null);
+        consumerIndex.lazySet(index + 1);
+        return e;
+    }
+
+    /**
+     * @return approximate number of elements in the queue.
+     */
+    public int size() {
+        return (int) Math.max(0L, producerIndex.get() - consumerIndex.get());
+    }
+
+    /**
+     * @return true if the queue is empty.
+     */
+    public boolean isEmpty() {
+        return 0 == size();
+    }
+}
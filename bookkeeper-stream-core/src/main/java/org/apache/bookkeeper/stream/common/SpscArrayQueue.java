@@ -0,0 +1,201 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.stream.common;
+
+import com.google.common.base.Preconditions;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Padding to keep the producer fields away from the fields before them.
+ */
+abstract class SpscArrayQueuePad0 {
+    long p00, p01, p02, p03, p04, p05, p06, p07;
+}
+
+/**
+ * Fields only written by the producer.
+ */
+abstract class SpscArrayQueueProducerFields extends SpscArrayQueuePad0 {
+    volatile long producerIndex;
+    // the producer could write up to this index without checking the slots
+    long producerLimit;
+    AtomicReferenceArray<Object> producerBuffer;
+}
+
+/**
+ * Padding between the producer fields and the consumer fields.
+ */
+abstract class SpscArrayQueuePad1 extends SpscArrayQueueProducerFields {
+    long p10, p11, p12, p13, p14, p15, p16, p17;
+}
+
+/**
+ * Fields only written by the consumer.
+ */
+abstract class SpscArrayQueueConsumerFields extends SpscArrayQueuePad1 {
+    volatile long consumerIndex;
+    AtomicReferenceArray<Object> consumerBuffer;
+}
+
+/**
+ * Padding to keep the consumer fields away from the fields after them.
+ */
+abstract class SpscArrayQueuePad2 extends SpscArrayQueueConsumerFields {
+    long p20, p21, p22, p23, p24, p25, p26, p27;
+}
+
+/**
+ * Unbounded lock-free single-producer single-consumer queue backed by ring buffers.
+ *
+ * <p>
+ * {@link #offer(Object)} must only be called by a single producer thread at a time and
+ * {@link #poll()} must only be called by a single consumer thread at a time. Elements are
+ * stored in a ring buffer without allocating a node per element. When the ring buffer is
+ * full, the producer links a new ring buffer of the same capacity and continues in it,
+ * and the consumer follows the link once it drains the elements before it. The producer
+ * and consumer indices are padded to avoid false sharing between the two threads.
+ */
+public class SpscArrayQueue<E> extends SpscArrayQueuePad2 {
+
+    private static final AtomicLongFieldUpdater<SpscArrayQueueProducerFields> PRODUCER_INDEX_UPDATER =
+            AtomicLongFieldUpdater.newUpdater(SpscArrayQueueProducerFields.class, "producerIndex");
+    private static final AtomicLongFieldUpdater<SpscArrayQueueConsumerFields> CONSUMER_INDEX_UPDATER =
+            AtomicLongFieldUpdater.newUpdater(SpscArrayQueueConsumerFields.class, "consumerIndex");
+    // marks the slot whose element is written to next ring buffer
+    private static final Object JUMP = new Object();
+
+    private final int capacity;
+    private final int mask;
+    // number of slots the producer checks ahead before writing without checks
+    private final int lookAheadStep;
+
+    /**
+     * Construct a queue with ring buffers holding <i>capacity</i> elements. The capacity
+     * is rounded up to a power of two.
+     *
+     * @param capacity min capacity of a ring buffer.
+     */
+    public SpscArrayQueue(int capacity) {
+        Preconditions.checkArgument(capacity > 0 && capacity <= (1 << 30),
+                "Invalid queue capacity : " + capacity);
+        int actualCapacity = Integer.highestOneBit(capacity);
+        if (actualCapacity < capacity) {
+            actualCapacity <<= 1;
+        }
+        // one ring buffer should hold at least two elements to link next ring buffer
+        actualCapacity = Math.max(2, actualCapacity);
+        this.capacity = actualCapacity;
+        this.mask = actualCapacity - 1;
+        this.lookAheadStep = Math.max(1, Math.min(actualCapacity / 4, 4096));
+        // the extra slot links to next ring buffer
+        AtomicReferenceArray<Object> buffer = new AtomicReferenceArray<>(actualCapacity + 1);
+        this.producerBuffer = buffer;
+        this.consumerBuffer = buffer;
+        this.producerLimit = mask;
+    }
+
+    /**
+     * @return capacity of a ring buffer of the queue.
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Add <i>e</i> to the queue. It must only be called by the producer thread.
+     *
+     * @param e element to add
+     * @return true as the queue is unbounded.
+     */
+    public boolean offer(E e) {
+        Preconditions.checkNotNull(e, "Null element");
+        AtomicReferenceArray<Object> buffer = producerBuffer;
+        long index = producerIndex;
+        int offset = (int) index & mask;
+        if (index < producerLimit) {
+            writeElement(buffer, offset, index, e);
+        } else if (null == buffer.get((int) (index + lookAheadStep) & mask)) {
+            // the slots up to the look ahead step are already consumed
+            producerLimit = index + lookAheadStep - 1;
+            writeElement(buffer, offset, index, e);
+        } else if (null == buffer.get((int) (index + 1) & mask)) {
+            writeElement(buffer, offset, index, e);
+        } else {
+            // the ring buffer is full : link a new ring buffer and mark the current slot,
+            // so the consumer jumps to the new ring buffer when it reaches the slot
+            AtomicReferenceArray<Object> newBuffer = new AtomicReferenceArray<>(capacity + 1);
+            producerBuffer = newBuffer;
+            producerLimit = index + mask - 1;
+            newBuffer.lazySet(offset, e);
+            buffer.lazySet(capacity, newBuffer);
+            buffer.lazySet(offset, JUMP);
+            PRODUCER_INDEX_UPDATER.lazySet(this, index + 1);
+        }
+        return true;
+    }
+
+    private void writeElement(AtomicReferenceArray<Object> buffer, int offset, long index, E e) {
+        buffer.lazySet(offset, e);
+        PRODUCER_INDEX_UPDATER.lazySet(this, index + 1);
+    }
+
+    /**
+     * Remove the head of the queue. It must only be called by the consumer thread.
+     *
+     * @return head of the queue, or null if the queue is empty.
+     */
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        AtomicReferenceArray<Object> buffer = consumerBuffer;
+        long index = consumerIndex;
+        int offset = (int) index & mask;
+        Object e = buffer.get(offset);
+        if (JUMP == e) {
+            // move to next ring buffer
+            AtomicReferenceArray<Object> nextBuffer = (AtomicReferenceArray<Object>) buffer.get(capacity);
+            buffer.lazySet(capacity, null);
+            buffer.lazySet(offset, null);
+            consumerBuffer = nextBuffer;
+            buffer = nextBuffer;
+            e = buffer.get(offset);
+        }
+        if (null == e) {
+            return null;
+        }
+        buffer.lazySet(offset, null);
+        CONSUMER_INDEX_UPDATER.lazySet(this, index + 1);
+        return (E) e;
+    }
+
+    /**
+     * @return approximate number of elements in the queue.
+     */
+    public int size() {
+        return (int) Math.max(0L, Math.min(Integer.MAX_VALUE, producerIndex - consumerIndex));
+    }
+
+    /**
+     * @return true if the queue is empty.
+     */
+    public boolean isEmpty() {
+        return 0 == size();
+    }
+}
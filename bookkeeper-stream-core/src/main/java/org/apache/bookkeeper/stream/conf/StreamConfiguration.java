@@ -18,6 +18,9 @@
  */
 package org.apache.bookkeeper.stream.conf;
 
+import org.apache.bookkeeper.stream.cache.RecordCacheType;
+import org.apache.bookkeeper.stream.io.CompressionCodec;
+import org.apache.bookkeeper.stream.io.RecordFormat;
 import org.apache.commons.configuration.CompositeConfiguration;
 import org.apache.commons.configuration.Configuration;
 import org.apache.commons.configuration.ConfigurationException;
@@ -25,6 +28,7 @@ import org.apache.commons.configuration.PropertiesConfiguration;
 import org.apache.commons.configuration.SystemConfiguration;
 
 import java.net.URL;
+import java.util.Locale;
 
 import static org.apache.bookkeeper.stream.Constants.KB;
 import static org.apache.bookkeeper.stream.Constants.MB;
@@ -43,21 +47,89 @@ public class StreamConfiguration extends CompositeConfiguration {
     private static final int SEGMENT_WRITER_ENTRY_BUFFER_SIZE_DEFAULT = 128 * KB;
     private static final String SEGMENT_WRITER_COMMIT_DELAY_MS = "segment.writer.commit.delay.ms";
     private static final int SEGMENT_WRITER_COMMIT_DELAY_MS_DEFAULT = 20;
+    private static final String SEGMENT_WRITER_COMMIT_MAX_PER_INTERVAL = "segment.writer.commit.max.per.interval";
+    private static final int SEGMENT_WRITER_COMMIT_MAX_PER_INTERVAL_DEFAULT = 0;
     private static final String SEGMENT_WRITER_FLUSH_INTERVAL_MS = "segment.writer.flush.interval.ms";
     private static final int SEGMENT_WRITER_FLUSH_INTERVAL_MS_DEFAULT = 20;
+    private static final String SEGMENT_WRITER_ENTRY_BUFFER_POOL_SIZE = "segment.writer.entry.buffer.pool.size";
+    private static final int SEGMENT_WRITER_ENTRY_BUFFER_POOL_SIZE_DEFAULT = 0;
+    private static final String SEGMENT_WRITER_COMPRESSION_CODEC = "segment.writer.compression.codec";
+    private static final String SEGMENT_WRITER_COMPRESSION_CODEC_DEFAULT = "none";
+    private static final String SEGMENT_WRITER_ENTRY_CHECKSUM_ENABLED = "segment.writer.entry.checksum.enabled";
+    private static final boolean SEGMENT_WRITER_ENTRY_CHECKSUM_ENABLED_DEFAULT = false;
+    private static final String SEGMENT_WRITER_RECORD_FORMAT = "segment.writer.record.format";
+    private static final String SEGMENT_WRITER_RECORD_FORMAT_DEFAULT = "fixed";
+    private static final String SEGMENT_WRITER_RECORD_INDEX_INTERVAL = "segment.writer.record.index.interval";
+    private static final int SEGMENT_WRITER_RECORD_INDEX_INTERVAL_DEFAULT = 0;
+    private static final String SEGMENT_WRITER_INGEST_QUEUE_SIZE = "segment.writer.ingest.queue.size";
+    private static final int SEGMENT_WRITER_INGEST_QUEUE_SIZE_DEFAULT = 0;
+    private static final String SEGMENT_WRITER_MAX_OUTSTANDING_ENTRIES = "segment.writer.max.outstanding.entries";
+    private static final int SEGMENT_WRITER_MAX_OUTSTANDING_ENTRIES_DEFAULT = 0;
+    private static final String SEGMENT_WRITER_MAX_OUTSTANDING_BYTES = "segment.writer.max.outstanding.bytes";
+    private static final long SEGMENT_WRITER_MAX_OUTSTANDING_BYTES_DEFAULT = 0L;
+    private static final String SEGMENT_WRITER_ADAPTIVE_BATCHING_ENABLED =
+            "segment.writer.adaptive.batching.enabled";
+    private static final boolean SEGMENT_WRITER_ADAPTIVE_BATCHING_ENABLED_DEFAULT = false;
+    private static final String SEGMENT_WRITER_ADAPTIVE_BATCHING_MIN_ENTRY_SIZE =
+            "segment.writer.adaptive.batching.min.entry.size";
+    private static final int SEGMENT_WRITER_ADAPTIVE_BATCHING_MIN_ENTRY_SIZE_DEFAULT = 4 * KB;
+    private static final String SEGMENT_WRITER_ADAPTIVE_BATCHING_TARGET_ADD_LATENCY_MS =
+            "segment.writer.adaptive.batching.target.add.latency.ms";
+    private static final int SEGMENT_WRITER_ADAPTIVE_BATCHING_TARGET_ADD_LATENCY_MS_DEFAULT = 5;
+    private static final String SEGMENT_WRITER_ADAPTIVE_BATCHING_MAX_OUTSTANDING_ENTRIES =
+            "segment.writer.adaptive.batching.max.outstanding.entries";
+    private static final int SEGMENT_WRITER_ADAPTIVE_BATCHING_MAX_OUTSTANDING_ENTRIES_DEFAULT = 4;
+
+    // Segment Settings
+    private static final String SEGMENT_LEDGER_ENSEMBLE_SIZE = "segment.ledger.ensemble.size";
+    private static final int SEGMENT_LEDGER_ENSEMBLE_SIZE_DEFAULT = 3;
+    private static final String SEGMENT_LEDGER_WRITE_QUORUM_SIZE = "segment.ledger.write.quorum.size";
+    private static final int SEGMENT_LEDGER_WRITE_QUORUM_SIZE_DEFAULT = 3;
+    private static final String SEGMENT_LEDGER_ACK_QUORUM_SIZE = "segment.ledger.ack.quorum.size";
+    private static final int SEGMENT_LEDGER_ACK_QUORUM_SIZE_DEFAULT = 2;
+    private static final String SEGMENT_LEDGER_NUM_STRIPES = "segment.ledger.num.stripes";
+    private static final int SEGMENT_LEDGER_NUM_STRIPES_DEFAULT = 1;
+    private static final String SEGMENT_ROLLING_MAX_BYTES = "segment.rolling.max.bytes";
+    private static final long SEGMENT_ROLLING_MAX_BYTES_DEFAULT = 256 * MB;
+    private static final String SEGMENT_ROLLING_INTERVAL_MS = "segment.rolling.interval.ms";
+    private static final int SEGMENT_ROLLING_INTERVAL_MS_DEFAULT = 0;
 
     // Reader Settings
     private static final String SEGMENT_READER_COMMIT_WAIT_MS = "segment.reader.commit.wait.ms";
     private static final int SEGMENT_READER_COMMIT_WAIT_MS_DEFAULT = 100;
+    private static final String SEGMENT_READER_COMMIT_WAIT_MAX_MS = "segment.reader.commit.wait.max.ms";
     private static final String SEGMENT_READER_MAX_OUTSTANDING_READ_ENTRIES =
             "segment.reader.max.outstanding.read.entries";
     private static final int SEGMENT_READER_MAX_OUTSTANDING_READ_ENTRIES_DEFAULT = 20;
+    private static final String SEGMENT_READER_MAX_OUTSTANDING_READ_BYTES =
+            "segment.reader.max.outstanding.read.bytes";
+    private static final long SEGMENT_READER_MAX_OUTSTANDING_READ_BYTES_DEFAULT = 32 * 1024 * 1024; // 32M
+    private static final String SEGMENT_READER_READ_BATCH_NUM_ENTRIES = "segment.reader.read.batch.num.entries";
+    private static final int SEGMENT_READER_READ_BATCH_NUM_ENTRIES_DEFAULT = 0;
+    private static final String SEGMENT_READER_ENTRY_SIZE_ESTIMATE = "segment.reader.entry.size.estimate";
+    private static final int SEGMENT_READER_ENTRY_SIZE_ESTIMATE_DEFAULT = 1024; // 1K
+    private static final String SEGMENT_READER_PREFETCH_NUM_SEGMENTS = "segment.reader.prefetch.num.segments";
+    private static final int SEGMENT_READER_PREFETCH_NUM_SEGMENTS_DEFAULT = 1;
 
     // Cache Settings
     private static final String READER_CACHE_MAX_NUM_RECORDS = "reader.cache.max.num.records";
     private static final int READER_CACHE_MAX_NUM_RECORDS_DEFAULT = 1000000;
     private static final String READER_CACHE_MAX_NUM_BYTES = "reader.cache.max.num.bytes";
     private static final int READER_CACHE_MAX_NUM_BYTES_DEFAULT = 64 * 1024 * 1024; // 64M
+    private static final String READER_CACHE_ZERO_COPY_ENABLED = "reader.cache.zero.copy.enabled";
+    private static final boolean READER_CACHE_ZERO_COPY_ENABLED_DEFAULT = false;
+    private static final String READER_CACHE_LAZY_DECODE_ENABLED = "reader.cache.lazy.decode.enabled";
+    private static final boolean READER_CACHE_LAZY_DECODE_ENABLED_DEFAULT = false;
+    private static final String READER_CACHE_OFF_HEAP_ENABLED = "reader.cache.off.heap.enabled";
+    private static final boolean READER_CACHE_OFF_HEAP_ENABLED_DEFAULT = false;
+    private static final String READER_CACHE_OFF_HEAP_CHUNK_SIZE = "reader.cache.off.heap.chunk.size";
+    private static final int READER_CACHE_OFF_HEAP_CHUNK_SIZE_DEFAULT = 1024 * 1024; // 1M
+    private static final String READER_CACHE_TYPE = "reader.cache.type";
+    private static final String READER_CACHE_TYPE_DEFAULT = "linked";
+    private static final String READER_CACHE_GLOBAL_MAX_NUM_BYTES = "reader.cache.global.max.num.bytes";
+    private static final long READER_CACHE_GLOBAL_MAX_NUM_BYTES_DEFAULT = 1024 * 1024 * 1024; // 1G
+    private static final String READER_TAIL_CACHE_MAX_NUM_BYTES = "reader.tail.cache.max.num.bytes";
+    private static final long READER_TAIL_CACHE_MAX_NUM_BYTES_DEFAULT = 64 * 1024 * 1024; // 64M
 
     public StreamConfiguration() {
         super();
@@ -97,6 +169,24 @@ public class StreamConfiguration extends CompositeConfiguration {
         if (getSegmentWriterEntryBufferSize() > MB) {
             throw new ConfigurationException("Too large write entry buffer size " + getSegmentWriterEntryBufferSize());
         }
+        try {
+            getSegmentWriterCompressionCodec();
+        } catch (IllegalArgumentException iae) {
+            throw new ConfigurationException("Unknown writer compression codec "
+                    + getString(SEGMENT_WRITER_COMPRESSION_CODEC));
+        }
+        try {
+            getSegmentWriterRecordFormat();
+        } catch (IllegalArgumentException iae) {
+            throw new ConfigurationException("Unknown writer record format "
+                    + getString(SEGMENT_WRITER_RECORD_FORMAT));
+        }
+        try {
+            getReaderCacheType();
+        } catch (IllegalArgumentException iae) {
+            throw new ConfigurationException("Unknown reader cache type "
+                    + getString(READER_CACHE_TYPE));
+        }
     }
 
     /**
@@ -141,6 +231,432 @@ public class StreamConfiguration extends CompositeConfiguration {
         return this;
     }
 
+    /**
+     * Get the max number of entry buffers pooled by a segment writer. Entry buffers
+     * are returned to the pool after the entries are added to bookkeeper and reused
+     * for building next entries. If the pool size is zero, a new buffer is allocated
+     * for each entry, which is the default.
+     *
+     * <p>
+     * Buffers are only pooled when the ack quorum size of the segment ledgers equals their
+     * write quorum size, since an add completed by the ack quorum could still be written to
+     * the other bookies of the write quorum. The pool is disabled otherwise, so this setting
+     * only takes effect together with {@link #setSegmentLedgerAckQuorumSize(int)} set to
+     * {@link #getSegmentLedgerWriteQuorumSize()}.
+     * </p>
+     *
+     * @return max number of entry buffers pooled by a segment writer.
+     */
+    public int getSegmentWriterEntryBufferPoolSize() {
+        return getInt(SEGMENT_WRITER_ENTRY_BUFFER_POOL_SIZE, SEGMENT_WRITER_ENTRY_BUFFER_POOL_SIZE_DEFAULT);
+    }
+
+    /**
+     * Set the max number of entry buffers pooled by a segment writer.
+     *
+     * @see #getSegmentWriterEntryBufferPoolSize()
+     * @param poolSize max number of entry buffers pooled by a segment writer.
+     * @return stream configuration.
+     */
+    public StreamConfiguration setSegmentWriterEntryBufferPoolSize(int poolSize) {
+        setProperty(SEGMENT_WRITER_ENTRY_BUFFER_POOL_SIZE, poolSize);
+        return this;
+    }
+
+    /**
+     * Get the codec that a segment writer uses to compress the records payload of
+     * each entry. The codec is recorded in each entry, so readers don't need the
+     * setting to read compressed entries. Available codecs are 'none', 'lz4' and 'zlib'.
+     *
+     * @return compression codec used by segment writers.
+     */
+    public CompressionCodec getSegmentWriterCompressionCodec() {
+        String codec = getString(SEGMENT_WRITER_COMPRESSION_CODEC, SEGMENT_WRITER_COMPRESSION_CODEC_DEFAULT);
+        return CompressionCodec.valueOf(codec.trim().toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * Set the codec that a segment writer uses to compress entries.
+     *
+     * @see #getSegmentWriterCompressionCodec()
+     * @param codec compression codec used by segment writers.
+     * @return stream configuration.
+     */
+    public StreamConfiguration setSegmentWriterCompressionCodec(CompressionCodec codec) {
+        setProperty(SEGMENT_WRITER_COMPRESSION_CODEC, codec.name().toLowerCase(Locale.ROOT));
+        return this;
+    }
+
+    /**
+     * Is entry checksum enabled for segment writers? If enabled, a crc32c checksum is appended
+     * to each entry and verified by readers, so corrupted entries are detected before records
+     * are read out of them. It is disabled by default, as it changes the format of the entries
+     * written.
+     *
+     * @return true if entry checksum is enabled.
+     */
+    public boolean isSegmentWriterEntryChecksumEnabled() {
+        return getBoolean(SEGMENT_WRITER_ENTRY_CHECKSUM_ENABLED, SEGMENT_WRITER_ENTRY_CHECKSUM_ENABLED_DEFAULT);
+    }
+
+    /**
+     * Enable/Disable entry checksum for segment writers.
+     *
+     * @see #isSegmentWriterEntryChecksumEnabled()
+     * @param enabled flag to enable/disable entry checksum.
+     * @return stream configuration.
+     */
+    public StreamConfiguration setSegmentWriterEntryChecksumEnabled(boolean enabled) {
+        setProperty(SEGMENT_WRITER_ENTRY_CHECKSUM_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Get the format that a segment writer uses to encode records. The 'compact' format
+     * encodes record headers in varints, which saves most of the 12 bytes header of the
+     * 'fixed' format for small records. The format is recorded in each entry, so readers
+     * don't need the setting, but readers of older versions can only read 'fixed' records.
+     *
+     * @return record format used by segment writers.
+     */
+    public RecordFormat getSegmentWriterRecordFormat() {
+        String format = getString(SEGMENT_WRITER_RECORD_FORMAT, SEGMENT_WRITER_RECORD_FORMAT_DEFAULT);
+        return RecordFormat.valueOf(format.trim().toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * Set the format that a segment writer uses to encode records.
+     *
+     * @see #getSegmentWriterRecordFormat()
+     * @param format record format used by segment writers.
+     * @return stream configuration.
+     */
+    public StreamConfiguration setSegmentWriterRecordFormat(RecordFormat format) {
+        setProperty(SEGMENT_WRITER_RECORD_FORMAT, format.name().toLowerCase(Locale.ROOT));
+        return this;
+    }
+
+    /**
+     * Get the record index interval of segment writers. If it is positive, the offset of
+     * every <i>interval</i>-th record is indexed at the end of each entry, so readers could
+     * start reading from the middle of an entry without decoding all the preceding records.
+     * Each index offset costs 4 bytes. 0 disables the record index.
+     *
+     * @return record index interval of segment writers.
+     */
+    public int getSegmentWriterRecordIndexInterval() {
+        return getInt(SEGMENT_WRITER_RECORD_INDEX_INTERVAL, SEGMENT_WRITER_RECORD_INDEX_INTERVAL_DEFAULT);
+    }
+
+    /**
+     * Set the record index interval of segment writers.
+     *
+     * @see #getSegmentWriterRecordIndexInterval()
+     * @param interval record index interval. 0 to disable record index.
+     * @return stream configuration.
+     */
+    public StreamConfiguration setSegmentWriterRecordIndexInterval(int interval) {
+        setProperty(SEGMENT_WRITER_RECORD_INDEX_INTERVAL, interval);
+        return this;
+    }
+
+    /**
+     * Get the size of the ingest queue of segment writers. If it is positive, records
+     * written by producer threads are appended to a lock-free queue and drained in batches
+     * by the ordered executor of the stream, rather than being submitted to the executor
+     * one by one. Writes are rejected when the queue is full. 0 disables the ingest queue.
+     *
+     * @return size of the ingest queue.
+     */
+    public int getSegmentWriterIngestQueueSize() {
+        return getInt(SEGMENT_WRITER_INGEST_QUEUE_SIZE, SEGMENT_WRITER_INGEST_QUEUE_SIZE_DEFAULT);
+    }
+
+    /**
+     * Set the size of the ingest queue of segment writers.
+     *
+     * @see #getSegmentWriterIngestQueueSize()
+     * @param size size of the ingest queue. 0 to disable the ingest queue.
+     * @return stream configuration.
+     */
+    public StreamConfiguration setSegmentWriterIngestQueueSize(int size) {
+        setProperty(SEGMENT_WRITER_INGEST_QUEUE_SIZE, size);
+        return this;
+    }
+
+    /**
+     * Get the max number of entries that a segment writer keeps outstanding, which are
+     * flushed to bookies but not acknowledged yet. When the window is full, the writer
+     * stops flushing entries and rejects new records once its current entry is full,
+     * which bounds the memory used by the writer when bookies slow down.
+     * 0 means unlimited.
+     *
+     * @return max number of outstanding entries.
+     */
+    public int getSegmentWriterMaxOutstandingEntries() {
+        return getInt(SEGMENT_WRITER_MAX_OUTSTANDING_ENTRIES, SEGMENT_WRITER_MAX_OUTSTANDING_ENTRIES_DEFAULT);
+    }
+
+    /**
+     * Set the max number of entries that a segment writer keeps outstanding.
+     *
+     * @see #getSegmentWriterMaxOutstandingEntries()
+     * @param numEntries max number of outstanding entries. 0 means unlimited.
+     * @return stream configuration.
+     */
+    public StreamConfiguration setSegmentWriterMaxOutstandingEntries(int numEntries) {
+        setProperty(SEGMENT_WRITER_MAX_OUTSTANDING_ENTRIES, numEntries);
+        return this;
+    }
+
+    /**
+     * Get the max number of bytes that a segment writer keeps outstanding.
+     * 0 means unlimited.
+     *
+     * @see #getSegmentWriterMaxOutstandingEntries()
+     * @return max number of outstanding bytes.
+     */
+    public long getSegmentWriterMaxOutstandingBytes() {
+        return getLong(SEGMENT_WRITER_MAX_OUTSTANDING_BYTES, SEGMENT_WRITER_MAX_OUTSTANDING_BYTES_DEFAULT);
+    }
+
+    /**
+     * Set the max number of bytes that a segment writer keeps outstanding.
+     *
+     * @see #getSegmentWriterMaxOutstandingBytes()
+     * @param numBytes max number of outstanding bytes. 0 means unlimited.
+     * @return stream configuration.
+     */
+    public StreamConfiguration setSegmentWriterMaxOutstandingBytes(long numBytes) {
+        setProperty(SEGMENT_WRITER_MAX_OUTSTANDING_BYTES, numBytes);
+        return this;
+    }
+
+    /**
+     * Is adaptive batching enabled for segment writers? If enabled, the size threshold to
+     * flush an entry is adapted to the observed add latency between
+     * {@link #getSegmentWriterAdaptiveBatchingMinEntrySize()} and
+     * {@link #getSegmentWriterEntryBufferSize()}: entries get smaller while bookies keep up
+     * and larger when bookies slow down. Otherwise entries are flushed when reaching
+     * entry buffer size.
+     *
+     * @return true if adaptive batching is enabled.
+     */
+    public boolean isSegmentWriterAdaptiveBatchingEnabled() {
+        return getBoolean(SEGMENT_WRITER_ADAPTIVE_BATCHING_ENABLED,
+                SEGMENT_WRITER_ADAPTIVE_BATCHING_ENABLED_DEFAULT);
+    }
+
+    /**
+     * Enable/Disable adaptive batching for segment writers.
+     *
+     * @see #isSegmentWriterAdaptiveBatchingEnabled()
+     * @param enabled flag to enable/disable adaptive batching.
+     * @return stream configuration.
+     */
+    public StreamConfiguration setSegmentWriterAdaptiveBatchingEnabled(boolean enabled) {
+        setProperty(SEGMENT_WRITER_ADAPTIVE_BATCHING_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Get the min size threshold to flush an entry when adaptive batching is enabled.
+     *
+     * @return min entry size in bytes.
+     */
+    public int getSegmentWriterAdaptiveBatchingMinEntrySize() {
+        return getInt(SEGMENT_WRITER_ADAPTIVE_BATCHING_MIN_ENTRY_SIZE,
+                SEGMENT_WRITER_ADAPTIVE_BATCHING_MIN_ENTRY_SIZE_DEFAULT);
+    }
+
+    /**
+     * Set the min size threshold to flush an entry when adaptive batching is enabled.
+     *
+     * @see #getSegmentWriterAdaptiveBatchingMinEntrySize()
+     * @param size min entry size in bytes.
+     * @return stream configuration.
+     */
+    public StreamConfiguration setSegmentWriterAdaptiveBatchingMinEntrySize(int size) {
+        setProperty(SEGMENT_WRITER_ADAPTIVE_BATCHING_MIN_ENTRY_SIZE, size);
+        return this;
+    }
+
+    /**
+     * Get the target add latency in millis when adaptive batching is enabled. Entries are
+     * batched more if adding an entry takes longer than the target latency.
+     *
+     * @return target add latency in millis.
+     */
+    public int getSegmentWriterAdaptiveBatchingTargetAddLatencyMs() {
+        return getInt(SEGMENT_WRITER_ADAPTIVE_BATCHING_TARGET_ADD_LATENCY_MS,
+                SEGMENT_WRITER_ADAPTIVE_BATCHING_TARGET_ADD_LATENCY_MS_DEFAULT);
+    }
+
+    /**
+     * Set the target add latency in millis when adaptive batching is enabled.
+     *
+     * @see #getSegmentWriterAdaptiveBatchingTargetAddLatencyMs()
+     * @param latencyMs target add latency in millis.
+     * @return stream configuration.
+     */
+    public StreamConfiguration setSegmentWriterAdaptiveBatchingTargetAddLatencyMs(int latencyMs) {
+        setProperty(SEGMENT_WRITER_ADAPTIVE_BATCHING_TARGET_ADD_LATENCY_MS, latencyMs);
+        return this;
+    }
+
+    /**
+     * Get the max number of outstanding entries when adaptive batching is enabled. Entries
+     * are batched more if more entries than that are waiting to be added.
+     *
+     * @return max number of outstanding entries.
+     */
+    public int getSegmentWriterAdaptiveBatchingMaxOutstandingEntries() {
+        return getInt(SEGMENT_WRITER_ADAPTIVE_BATCHING_MAX_OUTSTANDING_ENTRIES,
+                SEGMENT_WRITER_ADAPTIVE_BATCHING_MAX_OUTSTANDING_ENTRIES_DEFAULT);
+    }
+
+    /**
+     * Set the max number of outstanding entries when adaptive batching is enabled.
+     *
+     * @see #getSegmentWriterAdaptiveBatchingMaxOutstandingEntries()
+     * @param numEntries max number of outstanding entries.
+     * @return stream configuration.
+     */
+    public StreamConfiguration setSegmentWriterAdaptiveBatchingMaxOutstandingEntries(int numEntries) {
+        setProperty(SEGMENT_WRITER_ADAPTIVE_BATCHING_MAX_OUTSTANDING_ENTRIES, numEntries);
+        return this;
+    }
+
+    /**
+     * Get the ensemble size of the ledgers created for segments.
+     *
+     * @return ensemble size of segment ledgers.
+     */
+    public int getSegmentLedgerEnsembleSize() {
+        return getInt(SEGMENT_LEDGER_ENSEMBLE_SIZE, SEGMENT_LEDGER_ENSEMBLE_SIZE_DEFAULT);
+    }
+
+    /**
+     * Set the ensemble size of the ledgers created for segments.
+     *
+     * @see #getSegmentLedgerEnsembleSize()
+     * @param ensembleSize ensemble size of segment ledgers.
+     * @return stream configuration.
+     */
+    public StreamConfiguration setSegmentLedgerEnsembleSize(int ensembleSize) {
+        setProperty(SEGMENT_LEDGER_ENSEMBLE_SIZE, ensembleSize);
+        return this;
+    }
+
+    /**
+     * Get the write quorum size of the ledgers created for segments.
+     *
+     * @return write quorum size of segment ledgers.
+     */
+    public int getSegmentLedgerWriteQuorumSize() {
+        return getInt(SEGMENT_LEDGER_WRITE_QUORUM_SIZE, SEGMENT_LEDGER_WRITE_QUORUM_SIZE_DEFAULT);
+    }
+
+    /**
+     * Set the write quorum size of the ledgers created for segments.
+     *
+     * @see #getSegmentLedgerWriteQuorumSize()
+     * @param writeQuorumSize write quorum size of segment ledgers.
+     * @return stream configuration.
+     */
+    public StreamConfiguration setSegmentLedgerWriteQuorumSize(int writeQuorumSize) {
+        setProperty(SEGMENT_LEDGER_WRITE_QUORUM_SIZE, writeQuorumSize);
+        return this;
+    }
+
+    /**
+     * Get the ack quorum size of the ledgers created for segments.
+     *
+     * @return ack quorum size of segment ledgers.
+     */
+    public int getSegmentLedgerAckQuorumSize() {
+        return getInt(SEGMENT_LEDGER_ACK_QUORUM_SIZE, SEGMENT_LEDGER_ACK_QUORUM_SIZE_DEFAULT);
+    }
+
+    /**
+     * Set the ack quorum size of the ledgers created for segments.
+     *
+     * @see #getSegmentLedgerAckQuorumSize()
+     * @param ackQuorumSize ack quorum size of segment ledgers.
+     * @return stream configuration.
+     */
+    public StreamConfiguration setSegmentLedgerAckQuorumSize(int ackQuorumSize) {
+        setProperty(SEGMENT_LEDGER_ACK_QUORUM_SIZE, ackQuorumSize);
+        return this;
+    }
+
+    /**
+     * Get the number of ledgers that the entries of a new segment are striped across.
+     * Striping a segment across multiple ledgers allows a single stream to exceed the
+     * throughput of one ledger ensemble. 1 disables striping.
+     *
+     * @return number of ledgers per segment.
+     */
+    public int getSegmentLedgerNumStripes() {
+        return getInt(SEGMENT_LEDGER_NUM_STRIPES, SEGMENT_LEDGER_NUM_STRIPES_DEFAULT);
+    }
+
+    /**
+     * Set the number of ledgers that the entries of a new segment are striped across.
+     *
+     * @see #getSegmentLedgerNumStripes()
+     * @param numStripes number of ledgers per segment.
+     * @return stream configuration.
+     */
+    public StreamConfiguration setSegmentLedgerNumStripes(int numStripes) {
+        setProperty(SEGMENT_LEDGER_NUM_STRIPES, numStripes);
+        return this;
+    }
+
+    /**
+     * Get the max number of record bytes written to a segment before rolling to a new segment.
+     * 0 disables size based rolling.
+     *
+     * @return max number of bytes of a segment.
+     */
+    public long getSegmentRollingMaxBytes() {
+        return getLong(SEGMENT_ROLLING_MAX_BYTES, SEGMENT_ROLLING_MAX_BYTES_DEFAULT);
+    }
+
+    /**
+     * Set the max number of record bytes written to a segment before rolling to a new segment.
+     *
+     * @see #getSegmentRollingMaxBytes()
+     * @param maxBytes max number of bytes of a segment.
+     * @return stream configuration.
+     */
+    public StreamConfiguration setSegmentRollingMaxBytes(long maxBytes) {
+        setProperty(SEGMENT_ROLLING_MAX_BYTES, maxBytes);
+        return this;
+    }
+
+    /**
+     * Get the interval in milliseconds to roll a segment to a new segment.
+     * 0 disables time based rolling.
+     *
+     * @return rolling interval in milliseconds.
+     */
+    public int getSegmentRollingIntervalMs() {
+        return getInt(SEGMENT_ROLLING_INTERVAL_MS, SEGMENT_ROLLING_INTERVAL_MS_DEFAULT);
+    }
+
+    /**
+     * Set the interval in milliseconds to roll a segment to a new segment.
+     *
+     * @see #getSegmentRollingIntervalMs()
+     * @param intervalMs rolling interval in milliseconds.
+     * @return stream configuration.
+     */
+    public StreamConfiguration setSegmentRollingIntervalMs(int intervalMs) {
+        setProperty(SEGMENT_ROLLING_INTERVAL_MS, intervalMs);
+        return this;
+    }
+
     /**
      * Get writer commit delay in millis. If delay is zero, a commit entry is flushed
      * immediately after previous entry flush is complete.
@@ -163,6 +679,29 @@ public class StreamConfiguration extends CompositeConfiguration {
         return this;
     }
 
+    /**
+     * Get the max number of commits emitted by a commit coordinator in each commit interval.
+     * The commits exceeding the limit are deferred to next interval. 0 means unlimited.
+     *
+     * @return max number of commits per commit interval.
+     * @see org.apache.bookkeeper.stream.segment.CommitCoordinator
+     */
+    public int getSegmentWriterCommitMaxPerInterval() {
+        return getInt(SEGMENT_WRITER_COMMIT_MAX_PER_INTERVAL, SEGMENT_WRITER_COMMIT_MAX_PER_INTERVAL_DEFAULT);
+    }
+
+    /**
+     * Set the max number of commits emitted by a commit coordinator in each commit interval.
+     *
+     * @see #getSegmentWriterCommitMaxPerInterval()
+     * @param maxCommits max number of commits per commit interval.
+     * @return stream configuration.
+     */
+    public StreamConfiguration setSegmentWriterCommitMaxPerInterval(int maxCommits) {
+        setProperty(SEGMENT_WRITER_COMMIT_MAX_PER_INTERVAL, maxCommits);
+        return this;
+    }
+
     /**
      * Get writer flush interval in millis. If interval is zero, records are only flushed
      * when records buffer reaches entry buffer size. If interval is not zero, records will
@@ -209,6 +748,31 @@ public class StreamConfiguration extends CompositeConfiguration {
         return this;
     }
 
+    /**
+     * Get the max time period that a reader waits for commits. A reader waits for
+     * <i>segment.reader.commit.wait.ms</i> when it first reaches end of an inprogress segment,
+     * and doubles the wait time period on every wait that finds no new entries, up to
+     * this limit. The time unit is millis. It defaults to <i>segment.reader.commit.wait.ms</i>,
+     * so the wait time period doesn't grow unless this limit is configured.
+     *
+     * @return max time period in millis a reader waits for commits.
+     */
+    public int getSegmentReaderCommitWaitMaxMs() {
+        return getInt(SEGMENT_READER_COMMIT_WAIT_MAX_MS, getSegmentReaderCommitWaitMs());
+    }
+
+    /**
+     * Set the max time period that a reader waits for commits.
+     *
+     * @see #getSegmentReaderCommitWaitMaxMs()
+     * @param waitMs max wait time period in millis.
+     * @return stream configuration.
+     */
+    public StreamConfiguration setSegmentReaderCommitWaitMaxMs(int waitMs) {
+        setProperty(SEGMENT_READER_COMMIT_WAIT_MAX_MS, waitMs);
+        return this;
+    }
+
     /**
      * Get the max outstanding read entries that a segment reader could issue.
      *
@@ -232,6 +796,100 @@ public class StreamConfiguration extends CompositeConfiguration {
         return this;
     }
 
+    /**
+     * Get the max number of bytes of the entries that are read but not added to reader
+     * cache yet, as they are completed ahead of the reads issued before. A segment reader
+     * stops issuing new reads when exceeding this limit.
+     *
+     * @return max outstanding read bytes that a segment reader could buffer.
+     */
+    public long getSegmentReaderMaxOutstandingReadBytes() {
+        return getLong(SEGMENT_READER_MAX_OUTSTANDING_READ_BYTES,
+                SEGMENT_READER_MAX_OUTSTANDING_READ_BYTES_DEFAULT);
+    }
+
+    /**
+     * Set the max number of bytes of the entries that are read but not added to reader cache.
+     *
+     * @see #getSegmentReaderMaxOutstandingReadBytes()
+     * @param maxBytes max outstanding read bytes that a segment reader could buffer.
+     * @return stream configuration.
+     */
+    public StreamConfiguration setSegmentReaderMaxOutstandingReadBytes(long maxBytes) {
+        setProperty(SEGMENT_READER_MAX_OUTSTANDING_READ_BYTES, maxBytes);
+        return this;
+    }
+
+    /**
+     * Get the number of entries read in a single read request. A segment reader splits the
+     * outstanding read entries into multiple read requests of this size and keeps them in
+     * flight concurrently. 0 reads all the outstanding read entries in a single request.
+     *
+     * @return number of entries read in a single read request.
+     */
+    public int getSegmentReaderReadBatchNumEntries() {
+        return getInt(SEGMENT_READER_READ_BATCH_NUM_ENTRIES, SEGMENT_READER_READ_BATCH_NUM_ENTRIES_DEFAULT);
+    }
+
+    /**
+     * Set the number of entries read in a single read request.
+     *
+     * @see #getSegmentReaderReadBatchNumEntries()
+     * @param numEntries number of entries read in a single read request.
+     * @return stream configuration.
+     */
+    public StreamConfiguration setSegmentReaderReadBatchNumEntries(int numEntries) {
+        setProperty(SEGMENT_READER_READ_BATCH_NUM_ENTRIES, numEntries);
+        return this;
+    }
+
+    /**
+     * Get the estimated number of record bytes of an entry, which a segment reader uses to size
+     * its reads to the space available in reader cache before it reads any data entry. The
+     * estimate then follows the size of the largest data entry read.
+     *
+     * @return estimated number of record bytes of an entry.
+     */
+    public int getSegmentReaderEntrySizeEstimate() {
+        return getInt(SEGMENT_READER_ENTRY_SIZE_ESTIMATE, SEGMENT_READER_ENTRY_SIZE_ESTIMATE_DEFAULT);
+    }
+
+    /**
+     * Set the estimated number of record bytes of an entry.
+     *
+     * @see #getSegmentReaderEntrySizeEstimate()
+     * @param numBytes estimated number of record bytes of an entry.
+     * @return stream configuration.
+     */
+    public StreamConfiguration setSegmentReaderEntrySizeEstimate(int numBytes) {
+        setProperty(SEGMENT_READER_ENTRY_SIZE_ESTIMATE, numBytes);
+        return this;
+    }
+
+    /**
+     * Get the number of segments that a multi-segment reader opens and reads ahead of the
+     * segment being consumed. The entries of the prefetched segments are buffered in up to
+     * half of <i>reader.cache.max.num.bytes</i> until the segments before them are consumed.
+     * 0 disables prefetching.
+     *
+     * @return number of segments to prefetch.
+     */
+    public int getSegmentReaderPrefetchNumSegments() {
+        return getInt(SEGMENT_READER_PREFETCH_NUM_SEGMENTS, SEGMENT_READER_PREFETCH_NUM_SEGMENTS_DEFAULT);
+    }
+
+    /**
+     * Set the number of segments that a multi-segment reader prefetches.
+     *
+     * @see #getSegmentReaderPrefetchNumSegments()
+     * @param numSegments number of segments to prefetch.
+     * @return stream configuration.
+     */
+    public StreamConfiguration setSegmentReaderPrefetchNumSegments(int numSegments) {
+        setProperty(SEGMENT_READER_PREFETCH_NUM_SEGMENTS, numSegments);
+        return this;
+    }
+
     /**
      * Get max number of records in reader cache. The reader cache setting is per stream.
      *
@@ -274,4 +932,173 @@ public class StreamConfiguration extends CompositeConfiguration {
         return this;
     }
 
+    /**
+     * Is zero-copy enabled for reader cache? If enabled, records added to the reader cache
+     * are slices over the entry payloads read from bookkeeper, instead of copies. It reduces
+     * allocations to one per entry, but a cached record keeps its whole entry in memory.
+     *
+     * @return true if zero-copy is enabled for reader cache.
+     */
+    public boolean isReaderCacheZeroCopyEnabled() {
+        return getBoolean(READER_CACHE_ZERO_COPY_ENABLED, READER_CACHE_ZERO_COPY_ENABLED_DEFAULT);
+    }
+
+    /**
+     * Enable/Disable zero-copy for reader cache.
+     *
+     * @see #isReaderCacheZeroCopyEnabled()
+     * @param enabled flag to enable/disable zero-copy.
+     * @return stream configuration.
+     */
+    public StreamConfiguration setReaderCacheZeroCopyEnabled(boolean enabled) {
+        setProperty(READER_CACHE_ZERO_COPY_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Is lazy decode enabled for reader cache? If enabled, reader cache keeps the entries
+     * read from bookkeeper and decodes their records when they are polled, in the threads
+     * polling the records, instead of decoding all the records in the reader thread when
+     * the entries are added. The space of an entry is released after all its records are
+     * polled.
+     *
+     * @return true if lazy decode is enabled for reader cache.
+     */
+    public boolean isReaderCacheLazyDecodeEnabled() {
+        return getBoolean(READER_CACHE_LAZY_DECODE_ENABLED, READER_CACHE_LAZY_DECODE_ENABLED_DEFAULT);
+    }
+
+    /**
+     * Enable/Disable lazy decode for reader cache.
+     *
+     * @see #isReaderCacheLazyDecodeEnabled()
+     * @param enabled flag to enable/disable lazy decode.
+     * @return stream configuration.
+     */
+    public StreamConfiguration setReaderCacheLazyDecodeEnabled(boolean enabled) {
+        setProperty(READER_CACHE_LAZY_DECODE_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Is off-heap storage enabled for reader cache? If enabled, reader cache copies the entries
+     * read from bookkeeper into direct buffers allocated in chunks, so the unconsumed data
+     * lives outside the java heap. The entries are copied back to heap and decoded when their
+     * records are polled, as {@link #isReaderCacheLazyDecodeEnabled()}.
+     *
+     * @return true if off-heap storage is enabled for reader cache.
+     */
+    public boolean isReaderCacheOffHeapEnabled() {
+        return getBoolean(READER_CACHE_OFF_HEAP_ENABLED, READER_CACHE_OFF_HEAP_ENABLED_DEFAULT);
+    }
+
+    /**
+     * Enable/Disable off-heap storage for reader cache.
+     *
+     * @see #isReaderCacheOffHeapEnabled()
+     * @param enabled flag to enable/disable off-heap storage.
+     * @return stream configuration.
+     */
+    public StreamConfiguration setReaderCacheOffHeapEnabled(boolean enabled) {
+        setProperty(READER_CACHE_OFF_HEAP_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Get size of the direct buffer chunks that off-heap reader cache allocates. Entries larger
+     * than a chunk are kept on heap, so the chunk size should be at least
+     * {@link #getSegmentWriterEntryBufferSize()} for entries to be stored off heap. The direct
+     * memory of the chunks that aren't kept for reuse is released when they are garbage collected.
+     *
+     * @return size of off-heap chunks.
+     */
+    public int getReaderCacheOffHeapChunkSize() {
+        return getInt(READER_CACHE_OFF_HEAP_CHUNK_SIZE, READER_CACHE_OFF_HEAP_CHUNK_SIZE_DEFAULT);
+    }
+
+    /**
+     * Set size of the direct buffer chunks that off-heap reader cache allocates.
+     *
+     * @see #getReaderCacheOffHeapChunkSize()
+     * @param chunkSize size of off-heap chunks.
+     * @return stream configuration.
+     */
+    public StreamConfiguration setReaderCacheOffHeapChunkSize(int chunkSize) {
+        setProperty(READER_CACHE_OFF_HEAP_CHUNK_SIZE, chunkSize);
+        return this;
+    }
+
+    /**
+     * Get the type of the queue that reader cache stores records in. <i>ring</i> avoids
+     * allocating a node and taking a lock per record, but records must be polled by a
+     * single thread at a time.
+     *
+     * @return type of the queue of reader cache.
+     */
+    public RecordCacheType getReaderCacheType() {
+        String type = getString(READER_CACHE_TYPE, READER_CACHE_TYPE_DEFAULT);
+        return RecordCacheType.valueOf(type.trim().toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * Set the type of the queue that reader cache stores records in.
+     *
+     * @see #getReaderCacheType()
+     * @param type type of the queue of reader cache.
+     * @return stream configuration.
+     */
+    public StreamConfiguration setReaderCacheType(RecordCacheType type) {
+        setProperty(READER_CACHE_TYPE, type.name().toLowerCase(Locale.ROOT));
+        return this;
+    }
+
+    /**
+     * Get max number of bytes cached by the reader caches of all the streams in the process,
+     * if they share a {@link org.apache.bookkeeper.stream.cache.RecordCacheBudget}. Each reader
+     * cache is still limited by {@link #getReaderCacheMaxNumBytes()}.
+     * <p>
+     * The limit holds as long as the fair share of each stream (the limit divided by the
+     * number of streams) holds an entry. Otherwise a stream whose cache is empty still reads
+     * one entry at a time.
+     *
+     * @return max number of bytes cached by all the reader caches.
+     */
+    public long getReaderCacheGlobalMaxNumBytes() {
+        return getLong(READER_CACHE_GLOBAL_MAX_NUM_BYTES, READER_CACHE_GLOBAL_MAX_NUM_BYTES_DEFAULT);
+    }
+
+    /**
+     * Set max number of bytes cached by the reader caches of all the streams in the process.
+     *
+     * @see #getReaderCacheGlobalMaxNumBytes()
+     * @param numBytes num of bytes cached by all the reader caches.
+     * @return stream configuration.
+     */
+    public StreamConfiguration setReaderCacheGlobalMaxNumBytes(long numBytes) {
+        setProperty(READER_CACHE_GLOBAL_MAX_NUM_BYTES, numBytes);
+        return this;
+    }
+
+    /**
+     * Get max number of bytes of entries kept in the tail entry cache. The tail entry cache
+     * is shared by all the segment writers and readers in the process, unlike the reader cache.
+     *
+     * @return max number of bytes in tail entry cache.
+     */
+    public long getReaderTailCacheMaxNumBytes() {
+        return getLong(READER_TAIL_CACHE_MAX_NUM_BYTES, READER_TAIL_CACHE_MAX_NUM_BYTES_DEFAULT);
+    }
+
+    /**
+     * Set max number of bytes of entries kept in the tail entry cache.
+     *
+     * @see #getReaderTailCacheMaxNumBytes()
+     * @param numBytes num of bytes in tail entry cache.
+     * @return stream configuration.
+     */
+    public StreamConfiguration setReaderTailCacheMaxNumBytes(long numBytes) {
+        setProperty(READER_TAIL_CACHE_MAX_NUM_BYTES, numBytes);
+        return this;
+    }
+
 }
@@ -47,9 +47,11 @@ public abstract class StreamException extends Exception {
 
         // 11xx: writer related exception
         public static final int WRITE_CANCELLED = 1100;
+        public static final int WRITE_REJECTED = 1101;
 
         // 12xx: reader related exception
         public static final int OUT_OF_ORDER_READ = 1200;
+        public static final int CORRUPTED_ENTRY = 1201;
     }
 
     private final int code;
@@ -0,0 +1,252 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.stream.io;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Exception;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Codecs to compress the record payload of an {@link Entry}.
+ * The codec is encoded in the entry flags, so the code of a codec must never change.
+ */
+public enum CompressionCodec {
+
+    /**
+     * No compression.
+     */
+    NONE(0) {
+        @Override
+        public int maxCompressedLength(int length) {
+            return length;
+        }
+
+        @Override
+        public int compress(byte[] src, int srcOffset, int srcLength,
+                            byte[] dst, int dstOffset, int dstLength) {
+            if (srcLength > dstLength) {
+                return -1;
+            }
+            System.arraycopy(src, srcOffset, dst, dstOffset, srcLength);
+            return srcLength;
+        }
+
+        @Override
+        public void decompress(byte[] src, int srcOffset, int srcLength,
+                               byte[] dst, int dstOffset, int dstLength) throws IOException {
+            if (srcLength != dstLength) {
+                throw new IOException("Mismatched payload length : expected = "
+                        + dstLength + ", actual = " + srcLength);
+            }
+            System.arraycopy(src, srcOffset, dst, dstOffset, srcLength);
+        }
+    },
+
+    /**
+     * LZ4 compression. It is fast on both compression and decompression.
+     */
+    LZ4(1) {
+        @Override
+        public int maxCompressedLength(int length) {
+            return LZ4Holder.COMPRESSOR.maxCompressedLength(length);
+        }
+
+        @Override
+        public int compress(byte[] src, int srcOffset, int srcLength,
+                            byte[] dst, int dstOffset, int dstLength) {
+            try {
+                return LZ4Holder.COMPRESSOR.compress(src, srcOffset, srcLength, dst, dstOffset, dstLength);
+            } catch (LZ4Exception le) {
+                return -1;
+            }
+        }
+
+        @Override
+        public void decompress(byte[] src, int srcOffset, int srcLength,
+                               byte[] dst, int dstOffset, int dstLength) throws IOException {
+            int numBytesWritten;
+            try {
+                numBytesWritten = LZ4Holder.DECOMPRESSOR.decompress(src, srcOffset, srcLength,
+                        dst, dstOffset, dstLength);
+            } catch (LZ4Exception le) {
+                throw new IOException("Failed to decompress lz4 payload : ", le);
+            }
+            if (numBytesWritten != dstLength) {
+                throw new IOException("Mismatched lz4 payload length : expected = "
+                        + dstLength + ", actual = " + numBytesWritten);
+            }
+        }
+    },
+
+    /**
+     * ZLIB (deflate) compression. It achieves better compression ratio than LZ4,
+     * at the cost of more cpu.
+     */
+    ZLIB(2) {
+        @Override
+        public int maxCompressedLength(int length) {
+            // deflate worst case : 5 bytes per 16KB block, plus zlib header and trailer
+            return length + ((length >>> 14) + 1) * 5 + 6;
+        }
+
+        @Override
+        public int compress(byte[] src, int srcOffset, int srcLength,
+                            byte[] dst, int dstOffset, int dstLength) {
+            Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+            try {
+                deflater.setInput(src, srcOffset, srcLength);
+                deflater.finish();
+                int numBytes = 0;
+                while (!deflater.finished()) {
+                    if (numBytes >= dstLength) {
+                        return -1;
+                    }
+                    numBytes += deflater.deflate(dst, dstOffset + numBytes, dstLength - numBytes);
+                }
+                return numBytes;
+            } finally {
+                deflater.end();
+            }
+        }
+
+        @Override
+        public void decompress(byte[] src, int srcOffset, int srcLength,
+                               byte[] dst, int dstOffset, int dstLength) throws IOException {
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(src, srcOffset, srcLength);
+                int numBytes = 0;
+                while (numBytes < dstLength && !inflater.finished()) {
+                    int n = inflater.inflate(dst, dstOffset + numBytes, dstLength - numBytes);
+                    if (0 == n && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    numBytes += n;
+                }
+                if (numBytes != dstLength || !inflater.finished()) {
+                    throw new IOException("Mismatched zlib payload length : expected = "
+                            + dstLength + ", actual = " + numBytes);
+                }
+            } catch (DataFormatException dfe) {
+                throw new IOException("Failed to decompress zlib payload : ", dfe);
+            } finally {
+                inflater.end();
+            }
+        }
+    };
+
+    /**
+     * Lazy holder of the lz4 compressor and decompressor, so the lz4 library is
+     * only loaded when lz4 compression is used. The payloads read from ledgers
+     * aren't verified unless entry checksums are enabled, so they are decompressed
+     * by the safe decompressor, which never reads beyond the compressed data.
+     */
+    private static class LZ4Holder {
+        private static final LZ4Factory FACTORY = LZ4Factory.fastestInstance();
+        private static final LZ4Compressor COMPRESSOR = FACTORY.fastCompressor();
+        private static final LZ4SafeDecompressor DECOMPRESSOR = FACTORY.safeDecompressor();
+    }
+
+    private final int code;
+
+    CompressionCodec(int code) {
+        this.code = code;
+    }
+
+    /**
+     * @return code of the codec stored in entry flags.
+     */
+    public int getCode() {
+        return code;
+    }
+
+    /**
+     * Find the codec of given <i>code</i>.
+     *
+     * @param code
+     *          code of the codec.
+     * @return compression codec.
+     * @throws IOException if there is no codec for given <i>code</i>.
+     */
+    public static CompressionCodec of(int code) throws IOException {
+        for (CompressionCodec codec : values()) {
+            if (codec.code == code) {
+                return codec;
+            }
+        }
+        throw new IOException("Unknown compression codec " + code);
+    }
+
+    /**
+     * Get the max length of the compressed data of <i>length</i> bytes.
+     *
+     * @param length
+     *          length of the data to compress.
+     * @return max length of the compressed data.
+     */
+    public abstract int maxCompressedLength(int length);
+
+    /**
+     * Compress <i>srcLength</i> bytes of <i>src</i> into <i>dst</i>.
+     *
+     * @param src
+     *          source array.
+     * @param srcOffset
+     *          offset of the data in source array.
+     * @param srcLength
+     *          length of the data to compress.
+     * @param dst
+     *          destination array.
+     * @param dstOffset
+     *          offset to write compressed data in destination array.
+     * @param dstLength
+     *          max number of bytes to write into destination array.
+     * @return length of the compressed data, or -1 if the compressed data doesn't
+     *         fit in <i>dstLength</i> bytes.
+     */
+    public abstract int compress(byte[] src, int srcOffset, int srcLength,
+                                 byte[] dst, int dstOffset, int dstLength);
+
+    /**
+     * Decompress <i>srcLength</i> bytes of <i>src</i> into exactly <i>dstLength</i>
+     * bytes of <i>dst</i>.
+     *
+     * @param src
+     *          source array.
+     * @param srcOffset
+     *          offset of the compressed data in source array.
+     * @param srcLength
+     *          length of the compressed data.
+     * @param dst
+     *          destination array.
+     * @param dstOffset
+     *          offset to write decompressed data in destination array.
+     * @param dstLength
+     *          length of the decompressed data.
+     * @throws IOException if the compressed data is corrupted.
+     */
+    public abstract void decompress(byte[] src, int srcOffset, int srcLength,
+                                    byte[] dst, int dstOffset, int dstLength) throws IOException;
+}
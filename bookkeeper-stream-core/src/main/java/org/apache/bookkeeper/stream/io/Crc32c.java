@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.stream.io;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.zip.Checksum;
+
+/**
+ * CRC32C (Castagnoli) checksum calculation.
+ * <p>
+ * It uses <code>java.util.zip.CRC32C</code> when running on a JVM that provides it, which is
+ * an intrinsic backed by hardware crc instructions. Otherwise it falls back to a table-driven
+ * software implementation (slicing-by-8).
+ */
+final class Crc32c {
+
+    private static final Logger logger = LoggerFactory.getLogger(Crc32c.class);
+
+    // reversed representation of the castagnoli polynomial
+    private static final int POLY = 0x82f63b78;
+
+    // constructor of java.util.zip.CRC32C, typed as () -> Checksum
+    private static final MethodHandle JDK_CRC32C;
+    private static final int[][] TABLES = new int[8][256];
+
+    static {
+        MethodHandle constructor = null;
+        try {
+            constructor = MethodHandles.publicLookup()
+                    .findConstructor(Class.forName("java.util.zip.CRC32C"), MethodType.methodType(void.class))
+                    .asType(MethodType.methodType(Checksum.class));
+        } catch (ClassNotFoundException cnfe) {
+            logger.info("java.util.zip.CRC32C isn't available, fall back to software crc32c.");
+        } catch (ReflectiveOperationException roe) {
+            logger.info("java.util.zip.CRC32C isn't accessible, fall back to software crc32c : ", roe);
+        }
+        JDK_CRC32C = constructor;
+
+        for (int i = 0; i < 256; i++) {
+            int crc = i;
+            for (int j = 0; j < 8; j++) {
+                crc = (crc >>> 1) ^ ((crc & 1) * POLY);
+            }
+            TABLES[0][i] = crc;
+        }
+        for (int i = 0; i < 256; i++) {
+            for (int t = 1; t < 8; t++) {
+                int prev = TABLES[t - 1][i];
+                TABLES[t][i] = (prev >>> 8) ^ TABLES[0][prev & 0xff];
+            }
+        }
+    }
+
+    private Crc32c() {}
+
+    /**
+     * Compute the CRC32C checksum of <i>len</i> bytes of <i>data</i> starting at <i>offset</i>.
+     *
+     * @param data
+     *          data array.
+     * @param offset
+     *          offset of the data to checksum.
+     * @param len
+     *          length of the data to checksum.
+     * @return crc32c checksum.
+     */
+    static int checksum(byte[] data, int offset, int len) {
+        if (null != JDK_CRC32C) {
+            Checksum checksum;
+            try {
+                checksum = (Checksum) JDK_CRC32C.invokeExact();
+            } catch (Throwable t) {
+                throw new IllegalStateException("Failed to instantiate java.util.zip.CRC32C : ", t);
+            }
+            checksum.update(data, offset, len);
+            return (int) checksum.getValue();
+        }
+        return softwareChecksum(data, offset, len);
+    }
+
+    /**
+     * Compute the CRC32C checksum using the software implementation.
+     */
+    static int softwareChecksum(byte[] data, int offset, int len) {
+        final int[] t0 = TABLES[0], t1 = TABLES[1], t2 = TABLES[2], t3 = TABLES[3];
+        final int[] t4 = TABLES[4], t5 = TABLES[5], t6 = TABLES[6], t7 = TABLES[7];
+        int crc = 0xffffffff;
+        int i = offset;
+        int end = offset + len;
+        while (end - i >= 8) {
+            int lo = crc
+                    ^ ((data[i] & 0xff)
+                    | (data[i + 1] & 0xff) << 8
+                    | (data[i + 2] & 0xff) << 16
+                    | (data[i + 3] & 0xff) << 24);
+            crc = t7[lo & 0xff] ^ t6[(lo >>> 8) & 0xff] ^ t5[(lo >>> 16) & 0xff] ^ t4[lo >>> 24]
+                    ^ t3[data[i + 4] & 0xff] ^ t2[data[i + 5] & 0xff]
+                    ^ t1[data[i + 6] & 0xff] ^ t0[data[i + 7] & 0xff];
+            i += 8;
+        }
+        while (i < end) {
+            crc = (crc >>> 8) ^ t0[(crc ^ data[i]) & 0xff];
+            ++i;
+        }
+        return ~crc;
+    }
+}
@@ -22,12 +22,16 @@ import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.util.concurrent.SettableFuture;
 import org.apache.bookkeeper.stream.SSN;
+import org.apache.bookkeeper.stream.exceptions.CorruptedEntryException;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferOutputStream;
+import org.jboss.netty.buffer.ChannelBuffers;
 
 import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -43,8 +47,21 @@ import java.util.List;
  * byte 28 - 31 : original payload length (before compression)
  * byte 32 - 35 : payload length
  * bytes        : data
+ * bytes        : record index (optional)
+ * last 4 bytes : crc32c checksum of all preceding bytes (optional)
  * ----------------------------------------------------------------
  *
+ * Flags:
+ * bit 0 - 1    : entry type
+ * bit 2 - 3    : compression codec of the payload
+ * bit 4        : entry has a checksum trailer
+ * bit 5 - 6    : record format of the records in the payload
+ * bit 7        : entry has a record index
+ *
+ * Record Index:
+ * byte 0 - 3   : index interval <i>n</i>
+ * byte 4 - 7   : num index offsets
+ * bytes        : offset of slot <i>k * n</i> in the original payload, 4 bytes each
  */
 public class Entry {
 
@@ -53,17 +70,33 @@ public class Entry {
     private static final long FLAG_TYPE_BITS        = 0x3L;
     private static final long FLAG_DATA_ENTRY       = 0x0L;
     private static final long FLAG_COMMIT_ENTRY     = 0x1L;
+    // compression codec
+    private static final long FLAG_COMPRESSION_BITS = 0xcL;
+    private static final int FLAG_COMPRESSION_SHIFT = 2;
+    // checksum
+    private static final long FLAG_CHECKSUM         = 0x10L;
+    // record format
+    private static final long FLAG_RECORD_FORMAT_BITS = 0x60L;
+    private static final int FLAG_RECORD_FORMAT_SHIFT = 5;
+    // record index
+    private static final long FLAG_RECORD_INDEX     = 0x80L;
 
     // entry header size
     private static final int ENTRY_HEADER_SIZE =
             ((Long.SIZE * 3) + (Integer.SIZE * 3)) / Byte.SIZE;
+    // checksum trailer size
+    private static final int CHECKSUM_SIZE = Integer.SIZE / Byte.SIZE;
+    // record index header size
+    private static final int RECORD_INDEX_HEADER_SIZE = (Integer.SIZE * 2) / Byte.SIZE;
+    // record index offset size
+    private static final int RECORD_INDEX_OFFSET_SIZE = Integer.SIZE / Byte.SIZE;
 
     public static class EntryData {
         public final byte[] data;
         public final int offset;
         public final int len;
 
-        private EntryData(byte[] data, int offset, int len) {
+        public EntryData(byte[] data, int offset, int len) {
             this.data   = data;
             this.offset = offset;
             this.len    = len;
@@ -77,23 +110,39 @@ public class Entry {
         private final long lastNumRecords;
         private final long lastNumBytes;
         private long flags = 0L;
+        private CompressionCodec codec = CompressionCodec.NONE;
+        private boolean checksumEnabled = false;
+        private RecordFormat recordFormat = RecordFormat.FIXED;
+        private int recordIndexInterval = 0;
+        private int[] recordIndex = new int[0];
+        private int numRecordIndexes = 0;
         private final List<SettableFuture<SSN>> resultList;
-        private final DataOutputBuffer recordBuffer;
-        private final DataOutputStream recordStream;
+        private final EntryBufferPool bufferPool;
+        // released to the pool when the entry is built with a compressed payload
+        private ChannelBuffer recordBuffer;
+        private final ChannelBufferOutputStream recordStream;
+        private boolean built = false;
 
         private EntryBuilder(long segmentId,
                              long entryId,
                              long lastNumRecords,
                              long lastNumBytes,
-                             int initialRecordBufferSize)
+                             int initialRecordBufferSize,
+                             EntryBufferPool bufferPool)
                 throws IOException {
             this.segmentId      = segmentId;
             this.entryId        = entryId;
             this.lastNumRecords = lastNumRecords;
             this.lastNumBytes   = lastNumBytes;
             this.resultList     = new LinkedList<>();
-            this.recordBuffer   = new DataOutputBuffer(initialRecordBufferSize);
-            this.recordStream   = new DataOutputStream(this.recordBuffer);
+            this.bufferPool     = bufferPool;
+            int bufferSize      = Math.max(ENTRY_HEADER_SIZE, initialRecordBufferSize);
+            if (null == bufferPool) {
+                this.recordBuffer = ChannelBuffers.dynamicBuffer(bufferSize);
+            } else {
+                this.recordBuffer = bufferPool.acquire(bufferSize);
+            }
+            this.recordStream   = new ChannelBufferOutputStream(this.recordBuffer);
             // write header
             this.recordStream.writeLong(flags);
             this.recordStream.writeLong(lastNumRecords);
@@ -108,13 +157,21 @@ public class Entry {
          * callback when the record is persisted.
          *
          * @param record record to add
-         * @param future future for callback on record persisted
+         * @param future future for callback on record persisted. null if no callback is needed.
          * @throws IOException
          */
         public synchronized EntryBuilder addRecord(Record record, SettableFuture<SSN> future)
                 throws IOException {
+            Preconditions.checkState(!built, "Can't add records after the entry is built");
+            if (recordIndexInterval > 0 && resultList.size() % recordIndexInterval == 0) {
+                addRecordIndex(this.recordBuffer.writerIndex() - ENTRY_HEADER_SIZE);
+            }
+            if (RecordFormat.COMPACT == recordFormat) {
+                record.writeCompact(this.recordStream, lastNumRecords + resultList.size());
+            } else {
+                record.write(this.recordStream);
+            }
             resultList.add(future);
-            record.write(this.recordStream);
             return this;
         }
 
@@ -136,6 +193,71 @@ public class Entry {
             return setEntryType(FLAG_COMMIT_ENTRY);
         }
 
+        /**
+         * Set the codec to compress the records payload of this entry.
+         *
+         * @param codec
+         *          compression codec
+         * @return entry builder.
+         */
+        public synchronized EntryBuilder setCompressionCodec(CompressionCodec codec) {
+            this.codec = Preconditions.checkNotNull(codec, "No compression codec provided");
+            return this;
+        }
+
+        /**
+         * Set the format to encode records of this entry. It has to be set before
+         * any record is added.
+         *
+         * @param format
+         *          record format
+         * @return entry builder.
+         */
+        public synchronized EntryBuilder setRecordFormat(RecordFormat format) {
+            Preconditions.checkNotNull(format, "No record format provided");
+            Preconditions.checkState(resultList.isEmpty(),
+                    "Can't change record format after records are added");
+            this.recordFormat = format;
+            return this;
+        }
+
+        /**
+         * Set the interval of the record index of this entry. The offset of every
+         * <i>interval</i>-th record is indexed, so a reader could start reading from
+         * a given slot without decoding all the preceding records. It has to be set
+         * before any record is added.
+         *
+         * @param interval
+         *          record index interval. 0 to disable record index.
+         * @return entry builder.
+         */
+        public synchronized EntryBuilder setRecordIndexInterval(int interval) {
+            Preconditions.checkArgument(interval >= 0, "Invalid record index interval : " + interval);
+            Preconditions.checkState(resultList.isEmpty(),
+                    "Can't change record index interval after records are added");
+            this.recordIndexInterval = interval;
+            return this;
+        }
+
+        private void addRecordIndex(int payloadOffset) {
+            if (numRecordIndexes == recordIndex.length) {
+                recordIndex = Arrays.copyOf(recordIndex, Math.max(8, 2 * recordIndex.length));
+            }
+            recordIndex[numRecordIndexes++] = payloadOffset;
+        }
+
+        /**
+         * Enable/Disable the crc32c checksum trailer of this entry.
+         *
+         * @param enabled
+         *          flag to enable/disable checksum.
+         * @return entry builder.
+         */
+        public synchronized EntryBuilder setChecksumEnabled(boolean enabled) {
+            this.checksumEnabled = enabled;
+            return this;
+        }
+
         /**
          * Set entry type.
          *
@@ -154,7 +276,8 @@ public class Entry {
          * @return buffer size of the entry.
          */
         public synchronized int getBufferSize() {
-            return this.recordBuffer.size();
+            Preconditions.checkState(!built, "Entry is already built");
+            return this.recordBuffer.writerIndex();
         }
 
         /**
@@ -172,21 +295,83 @@ public class Entry {
          * @return immutable entry representation
          */
         public synchronized Entry build() {
-            int size = this.recordBuffer.size();
-            byte[] data = this.recordBuffer.getData();
+            Preconditions.checkState(!built, "Entry is already built");
+            built = true;
+            int size = this.recordBuffer.writerIndex();
             int numBytes = size - ENTRY_HEADER_SIZE;
-            ByteBuffer headerBuf = ByteBuffer.wrap(data, 0, ENTRY_HEADER_SIZE);
-            headerBuf.putLong(flags);
-            headerBuf.putLong(lastNumRecords);
-            headerBuf.putLong(lastNumBytes);
-            headerBuf.putInt(resultList.size());
-            headerBuf.putInt(numBytes);
-            headerBuf.putInt(numBytes);
+            long entryFlags = flags & FLAG_TYPE_BITS;
+            entryFlags |= ((long) recordFormat.getCode()) << FLAG_RECORD_FORMAT_SHIFT;
+            ChannelBuffer entryBuffer = this.recordBuffer;
+            int payloadLength = numBytes;
+            int recordIndexLength = numRecordIndexes > 0 ?
+                    RECORD_INDEX_HEADER_SIZE + numRecordIndexes * RECORD_INDEX_OFFSET_SIZE : 0;
+
+            if (CompressionCodec.NONE != codec && numBytes > 0) {
+                int maxLength = codec.maxCompressedLength(numBytes);
+                ChannelBuffer compressedBuffer = acquireBuffer(
+                        ENTRY_HEADER_SIZE + maxLength + recordIndexLength + CHECKSUM_SIZE);
+                int compressedLength = codec.compress(
+                        this.recordBuffer.array(), this.recordBuffer.arrayOffset() + ENTRY_HEADER_SIZE, numBytes,
+                        compressedBuffer.array(), compressedBuffer.arrayOffset() + ENTRY_HEADER_SIZE, maxLength);
+                if (compressedLength > 0 && compressedLength < numBytes) {
+                    compressedBuffer.writerIndex(ENTRY_HEADER_SIZE + compressedLength);
+                    releaseBuffer(this.recordBuffer);
+                    this.recordBuffer = null;
+                    entryBuffer = compressedBuffer;
+                    payloadLength = compressedLength;
+                    entryFlags |= ((long) codec.getCode()) << FLAG_COMPRESSION_SHIFT;
+                } else {
+                    // the payload isn't compressible, store it uncompressed
+                    releaseBuffer(compressedBuffer);
+                }
+            }
+
+            if (recordIndexLength > 0) {
+                entryFlags |= FLAG_RECORD_INDEX;
+                entryBuffer.ensureWritableBytes(recordIndexLength);
+                entryBuffer.writeInt(recordIndexInterval);
+                entryBuffer.writeInt(numRecordIndexes);
+                for (int i = 0; i < numRecordIndexes; i++) {
+                    entryBuffer.writeInt(recordIndex[i]);
+                }
+            }
+            if (checksumEnabled) {
+                entryFlags |= FLAG_CHECKSUM;
+            }
+            entryBuffer.setLong(0, entryFlags);
+            entryBuffer.setLong(8, lastNumRecords);
+            entryBuffer.setLong(16, lastNumBytes);
+            entryBuffer.setInt(24, resultList.size());
+            entryBuffer.setInt(28, numBytes);
+            entryBuffer.setInt(32, payloadLength);
+            if (checksumEnabled) {
+                int checksumOffset = ENTRY_HEADER_SIZE + payloadLength + recordIndexLength;
+                // make sure the buffer has room for the trailer before taking its array
+                entryBuffer.ensureWritableBytes(CHECKSUM_SIZE);
+                entryBuffer.writeInt(Crc32c.checksum(entryBuffer.array(), entryBuffer.arrayOffset(),
+                        checksumOffset));
+            }
 
-            EntryData entryData = new EntryData(data, 0, size);
-            return new Entry(segmentId, entryId, flags,
-                    resultList.size(), numBytes, lastNumRecords, lastNumBytes,
-                    entryData, Optional.of(resultList));
+            // the backing array is handed over without copying
+            EntryData entryData = new EntryData(entryBuffer.array(),
+                    entryBuffer.arrayOffset(), entryBuffer.writerIndex());
+            return new Entry(segmentId, entryId, entryFlags,
+                    resultList.size(), numBytes, payloadLength, lastNumRecords, lastNumBytes,
+                    recordIndexInterval, numRecordIndexes, entryData, Optional.of(resultList), entryBuffer, bufferPool);
+        }
+
+        private ChannelBuffer acquireBuffer(int size) {
+            if (null == bufferPool) {
+                return ChannelBuffers.buffer(size);
+            } else {
+                return bufferPool.acquire(size);
+            }
+        }
+
+        private void releaseBuffer(ChannelBuffer buffer) {
+            if (null != bufferPool) {
+                bufferPool.release(buffer);
+            }
         }
 
     }
@@ -213,8 +398,39 @@ public class Entry {
                                           long lastNumBytes,
                                           int initialBufferSize)
         throws IOException {
+        return newBuilder(segmentId, entryId, lastNumRecords, lastNumBytes,
+                initialBufferSize, null);
+    }
+
+    /**
+     * Builder for an entry whose buffer is acquired from <i>bufferPool</i>.
+     * The buffer is returned to the pool when the built entry is
+     * {@link Entry#release() released}.
+     *
+     * @param segmentId
+     *          segment id
+     * @param entryId
+     *          entry id
+     * @param lastNumRecords
+     *          num records added so far before this entry.
+     * @param lastNumBytes
+     *          num bytes added so far before this entry.
+     * @param initialBufferSize
+     *          initial buffer size for records in this entry.
+     * @param bufferPool
+     *          pool to acquire entry buffer from. null to allocate a new buffer.
+     * @return entry builder
+     * @throws IOException
+     */
+    public static EntryBuilder newBuilder(long segmentId,
+                                          long entryId,
+                                          long lastNumRecords,
+                                          long lastNumBytes,
+                                          int initialBufferSize,
+                                          EntryBufferPool bufferPool)
+        throws IOException {
         return new EntryBuilder(segmentId, entryId,
-                lastNumRecords, lastNumBytes, initialBufferSize);
+                lastNumRecords, lastNumBytes, initialBufferSize, bufferPool);
     }
 
     /**
@@ -229,11 +445,12 @@ public class Entry {
                 entry.getSegmentId(), entry.getEntryId() + 1,
                 entry.getLastNumRecords() + entry.getNumRecords(),
                 entry.getLastNumBytes() + entry.getNumBytes(),
-                entry.getEntryData().len);
+                entry.getEntryData().len, null);
     }
 
     /**
-     * Build an entry of <i>data</i> array.
+     * Build an entry of <i>data</i> array. If the entry has a checksum trailer,
+     * the checksum is verified.
      *
      * @param segmentId
      *          segment id
@@ -246,26 +463,71 @@ public class Entry {
      * @param len
      *          len of data bytes array
      * @return entry
+     * @throws CorruptedEntryException if the entry is truncated or fails checksum verification.
      */
     public static Entry of(long segmentId,
                            long entryId,
                            byte[] data,
                            int offset,
-                           int len) {
-        Preconditions.checkArgument(data.length >= ENTRY_HEADER_SIZE,
-                "Too small entry");
-        ByteBuffer headerBuf = ByteBuffer.wrap(data, 0, ENTRY_HEADER_SIZE);
+                           int len) throws CorruptedEntryException {
+        if (len < ENTRY_HEADER_SIZE) {
+            throw new CorruptedEntryException(segmentId, entryId, "too small entry of " + len + " bytes");
+        }
+        ByteBuffer headerBuf = ByteBuffer.wrap(data, offset, ENTRY_HEADER_SIZE);
         long flags          = headerBuf.getLong();
         long lastNumRecords = headerBuf.getLong();
         long lastNumBytes   = headerBuf.getLong();
         int numRecords      = headerBuf.getInt();
         int numBytes        = headerBuf.getInt();
-        // no compression support yet.
-        headerBuf.getInt();
+        int payloadLength   = headerBuf.getInt();
+        int trailerLength   = (flags & FLAG_CHECKSUM) != 0 ? CHECKSUM_SIZE : 0;
+        if (numRecords < 0 || numBytes < 0 || payloadLength < 0
+                || len < ENTRY_HEADER_SIZE + payloadLength + trailerLength) {
+            throw new CorruptedEntryException(segmentId, entryId, "truncated entry of " + len + " bytes : records = "
+                    + numRecords + ", bytes = " + numBytes + ", payload bytes = " + payloadLength);
+        }
+        long entryType = flags & FLAG_TYPE_BITS;
+        if (FLAG_DATA_ENTRY != entryType && FLAG_COMMIT_ENTRY != entryType) {
+            throw new CorruptedEntryException(segmentId, entryId, "unknown entry type " + entryType);
+        }
+        try {
+            CompressionCodec.of((int) ((flags & FLAG_COMPRESSION_BITS) >>> FLAG_COMPRESSION_SHIFT));
+            RecordFormat.of((int) ((flags & FLAG_RECORD_FORMAT_BITS) >>> FLAG_RECORD_FORMAT_SHIFT));
+        } catch (IOException ioe) {
+            throw new CorruptedEntryException(segmentId, entryId, ioe.getMessage());
+        }
+        int recordIndexInterval = 0;
+        int numRecordIndexes = 0;
+        if ((flags & FLAG_RECORD_INDEX) != 0) {
+            int recordIndexOffset = ENTRY_HEADER_SIZE + payloadLength;
+            if (len < recordIndexOffset + RECORD_INDEX_HEADER_SIZE + trailerLength) {
+                throw new CorruptedEntryException(segmentId, entryId, "truncated record index of entry of "
+                        + len + " bytes : payload bytes = " + payloadLength);
+            }
+            ByteBuffer indexBuf = ByteBuffer.wrap(data, offset + recordIndexOffset, RECORD_INDEX_HEADER_SIZE);
+            recordIndexInterval = indexBuf.getInt();
+            numRecordIndexes = indexBuf.getInt();
+            if (recordIndexInterval <= 0 || numRecordIndexes < 0 || numRecordIndexes > numRecords
+                    || len < recordIndexOffset + RECORD_INDEX_HEADER_SIZE
+                            + (long) numRecordIndexes * RECORD_INDEX_OFFSET_SIZE + trailerLength) {
+                throw new CorruptedEntryException(segmentId, entryId, "invalid record index of entry of "
+                        + len + " bytes : interval = " + recordIndexInterval + ", offsets = " + numRecordIndexes);
+            }
+        }
+        if (trailerLength > 0) {
+            int checksumOffset = len - CHECKSUM_SIZE;
+            int expectedChecksum = ByteBuffer.wrap(data, offset + checksumOffset, CHECKSUM_SIZE).getInt();
+            int actualChecksum = Crc32c.checksum(data, offset, checksumOffset);
+            if (expectedChecksum != actualChecksum) {
+                throw new CorruptedEntryException(segmentId, entryId, "checksum mismatch : expected = "
+                        + expectedChecksum + ", actual = " + actualChecksum);
+            }
+        }
 
         Optional<List<SettableFuture<SSN>>> recordFutureList = Optional.absent();
-        return new Entry(segmentId, entryId, flags, numRecords, numBytes,
-                lastNumRecords, lastNumBytes, new EntryData(data, offset, len), recordFutureList);
+        return new Entry(segmentId, entryId, flags, numRecords, numBytes, payloadLength,
+                lastNumRecords, lastNumBytes, recordIndexInterval, numRecordIndexes, new EntryData(data, offset, len), recordFutureList,
+                null, null);
     }
 
     private final long segmentId;
@@ -273,29 +535,47 @@ public class Entry {
     private final long flags;
     private final int numRecords;
     private final int numBytes;
+    private final int payloadLength;
     private final long lastNumRecords;
     private final long lastNumBytes;
+    private final int recordIndexInterval;
+    private final int numRecordIndexes;
     private final EntryData entryData;
     private final Optional<List<SettableFuture<SSN>>> recordFutureList;
+    // buffer backing the entry data, if it is acquired from a pool
+    private ChannelBuffer buffer;
+    private final EntryBufferPool bufferPool;
+    // decompressed payload, it is decompressed lazily on first read
+    private byte[] decompressedPayload = null;
 
     private Entry(long segmentId,
                   long entryId,
                   long flags,
                   int numRecords,
                   int numBytes,
+                  int payloadLength,
                   long lastNumRecords,
                   long lastNumBytes,
+                  int recordIndexInterval,
+                  int numRecordIndexes,
                   EntryData entryData,
-                  Optional<List<SettableFuture<SSN>>> recordFutureList) {
+                  Optional<List<SettableFuture<SSN>>> recordFutureList,
+                  ChannelBuffer buffer,
+                  EntryBufferPool bufferPool) {
         this.segmentId      = segmentId;
         this.entryId        = entryId;
         this.flags          = flags;
         this.numRecords     = numRecords;
         this.numBytes       = numBytes;
+        this.payloadLength  = payloadLength;
         this.lastNumRecords = lastNumRecords;
         this.lastNumBytes   = lastNumBytes;
+        this.recordIndexInterval = recordIndexInterval;
+        this.numRecordIndexes = numRecordIndexes;
         this.entryData      = entryData;
         this.recordFutureList = recordFutureList;
+        this.buffer         = buffer;
+        this.bufferPool     = bufferPool;
     }
 
     /**
@@ -340,6 +620,43 @@ public class Entry {
         return numBytes;
     }
 
+    /**
+     * @return length of the payload stored in this entry, after compression
+     */
+    public int getPayloadLength() {
+        return payloadLength;
+    }
+
+    /**
+     * @return true if this entry has a checksum trailer. otherwise false.
+     */
+    public boolean hasChecksum() {
+        return (flags & FLAG_CHECKSUM) != 0;
+    }
+
+    /**
+     * @return compression codec of the payload stored in this entry
+     * @throws IOException if the codec is unknown
+     */
+    public CompressionCodec getCompressionCodec() throws IOException {
+        return CompressionCodec.of((int) ((flags & FLAG_COMPRESSION_BITS) >>> FLAG_COMPRESSION_SHIFT));
+    }
+
+    /**
+     * @return format of the records stored in this entry
+     * @throws IOException if the record format is unknown
+     */
+    public RecordFormat getRecordFormat() throws IOException {
+        return RecordFormat.of((int) ((flags & FLAG_RECORD_FORMAT_BITS) >>> FLAG_RECORD_FORMAT_SHIFT));
+    }
+
+    /**
+     * @return true if this entry has a record index. otherwise false.
+     */
+    public boolean hasRecordIndex() {
+        return (flags & FLAG_RECORD_INDEX) != 0;
+    }
+
     /**
      * @return last number of records added so far before this entry
      */
@@ -379,7 +696,9 @@ public class Entry {
         SSN ssn = SSN.INVALID_SSN;
         for (SettableFuture<SSN> future : recordFutureList.get()) {
             ssn = SSN.of(segmentId, entryId, slotId);
-            future.set(ssn);
+            if (null != future) {
+                future.set(ssn);
+            }
             ++slotId;
         }
         return ssn;
@@ -395,19 +714,83 @@ public class Entry {
             return;
         }
         for (SettableFuture<SSN> future : recordFutureList.get()) {
-            future.setException(throwable);
+            if (null != future) {
+                future.setException(throwable);
+            }
+        }
+    }
+
+    /**
+     * Release the buffer backing this entry to the buffer pool it was acquired from.
+     * The entry data should not be accessed after the entry is released. Releasing
+     * an entry more than once is a no-op.
+     */
+    public synchronized void release() {
+        if (null != buffer && null != bufferPool) {
+            bufferPool.release(buffer);
         }
+        buffer = null;
     }
 
     /**
      * Create record reader for this entry.
      *
      * @return record reader
+     * @throws IOException if failed to decompress the payload
      */
-    public RecordReader asRecordReader() {
-        return new RecordReader(new SSNStream() {
+    public RecordReader asRecordReader() throws IOException {
+        return asRecordReader(false);
+    }
 
-            long slotId = 0L;
+    /**
+     * Create record reader for this entry.
+     * <p>
+     * If <i>zeroCopy</i> is true, the records returned by the reader are slices over
+     * the entry data rather than copies, so the entry data must not be modified or
+     * released while the records are still in use.
+     *
+     * The payload is decompressed on first read if it is compressed.
+     *
+     * @param zeroCopy
+     *          whether to read records as slices over the entry data.
+     * @return record reader
+     * @throws IOException if failed to decompress the payload
+     */
+    public RecordReader asRecordReader(boolean zeroCopy) throws IOException {
+        return asRecordReader(zeroCopy, 0L);
+    }
+
+    /**
+     * Create record reader for this entry, starting from slot <i>startSlotId</i>.
+     * <p>
+     * If the entry has a record index, the reader jumps to the closest indexed slot
+     * before <i>startSlotId</i> and only skips the records after it. Otherwise the
+     * reader skips all the records before <i>startSlotId</i>.
+     *
+     * @param zeroCopy
+     *          whether to read records as slices over the entry data.
+     * @param startSlotId
+     *          slot id of the first record to read.
+     * @return record reader
+     * @throws IOException if failed to decompress the payload or the record index is invalid
+     */
+    public RecordReader asRecordReader(boolean zeroCopy, long startSlotId) throws IOException {
+        long indexedSlotId = 0L;
+        int indexedOffset = 0;
+        if (startSlotId > 0 && numRecordIndexes > 0) {
+            int index = (int) Math.min(startSlotId / recordIndexInterval, numRecordIndexes - 1);
+            indexedSlotId = (long) index * recordIndexInterval;
+            indexedOffset = ByteBuffer.wrap(entryData.data, entryData.offset + ENTRY_HEADER_SIZE + payloadLength
+                    + RECORD_INDEX_HEADER_SIZE + index * RECORD_INDEX_OFFSET_SIZE, RECORD_INDEX_OFFSET_SIZE).getInt();
+            if (indexedOffset < 0 || indexedOffset > numBytes) {
+                throw new IOException("Invalid offset " + indexedOffset + " of slot " + indexedSlotId
+                        + " in record index of " + this);
+            }
+        }
+        final long firstSlotId = indexedSlotId;
+        SSNStream ssnStream = new SSNStream() {
+
+            long slotId = firstSlotId;
 
             @Override
             public SSN getCurrentSSN() {
@@ -418,8 +801,44 @@ public class Entry {
             public void advance() {
                 ++slotId;
             }
-        }, new DataInputStream(new ByteArrayInputStream(entryData.data,
-                entryData.offset + ENTRY_HEADER_SIZE, numBytes)));
+        };
+        byte[] data;
+        int offset;
+        CompressionCodec codec = getCompressionCodec();
+        if (CompressionCodec.NONE == codec) {
+            data = entryData.data;
+            offset = entryData.offset + ENTRY_HEADER_SIZE;
+        } else {
+            data = getDecompressedPayload(codec);
+            offset = 0;
+        }
+        offset += indexedOffset;
+        int length = numBytes - indexedOffset;
+        long baseRecordId = lastNumRecords + indexedSlotId;
+        RecordFormat recordFormat = getRecordFormat();
+        RecordReader reader;
+        if (zeroCopy) {
+            reader = new SliceRecordReader(ssnStream, data, offset, length, recordFormat, baseRecordId);
+        } else {
+            // records are bounded by the entry, so a truncated record is reported as corruption
+            reader = new RecordReader(ssnStream,
+                    new DataInputStream(new ByteArrayInputStream(data, offset, length)), true,
+                    recordFormat, baseRecordId);
+        }
+        if (startSlotId > indexedSlotId) {
+            reader.skipTo(SSN.of(segmentId, entryId, startSlotId));
+        }
+        return reader;
+    }
+
+    private synchronized byte[] getDecompressedPayload(CompressionCodec codec) throws IOException {
+        if (null == decompressedPayload) {
+            byte[] payload = new byte[numBytes];
+            codec.decompress(entryData.data, entryData.offset + ENTRY_HEADER_SIZE, payloadLength,
+                    payload, 0, numBytes);
+            decompressedPayload = payload;
+        }
+        return decompressedPayload;
     }
 
     @Override
@@ -430,8 +849,12 @@ public class Entry {
         sb.append("eid = ").append(entryId).append(", ");
         sb.append("records = ").append(numRecords).append(", ");
         sb.append("bytes = ").append(numBytes).append(", ");
+        sb.append("payload_bytes = ").append(payloadLength).append(", ");
         sb.append("last_num_records = ").append(lastNumRecords).append(", ");
         sb.append("last_num_bytes = ").append(lastNumBytes).append(", ");
+        if (numRecordIndexes > 0) {
+            sb.append("record_index_interval = ").append(recordIndexInterval).append(", ");
+        }
         sb.append("flags = ").append(flags);
         sb.append(")");
         return sb.toString();
@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.stream.io;
+
+import com.google.common.base.Preconditions;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Pool of buffers used for building entries.
+ *
+ * <p>
+ * An entry buffer is handed to bookkeeper without copying when the entry is
+ * added to a ledger, so it could only be returned to the pool once no bookie
+ * write references it anymore, i.e. after an add acknowledged by the whole
+ * write quorum is completed. Buffers that grew much larger than the pooled buffer size
+ * (e.g. because of a few huge records) are not pooled to avoid pinning memory.
+ * </p>
+ */
+public class EntryBufferPool {
+
+    // buffers larger than this multiple of buffer size aren't pooled
+    private static final int MAX_POOLED_BUFFER_SIZE_MULTIPLIER = 4;
+
+    private final int bufferSize;
+    private final int maxPooledBufferSize;
+    private final ArrayBlockingQueue<ChannelBuffer> buffers;
+
+    /**
+     * Create a pool holding at most <i>maxPooledBuffers</i> buffers.
+     *
+     * @param bufferSize
+     *          initial capacity of the buffers allocated by the pool.
+     * @param maxPooledBuffers
+     *          max number of buffers kept in the pool.
+     */
+    public EntryBufferPool(int bufferSize, int maxPooledBuffers) {
+        Preconditions.checkArgument(bufferSize >= 0, "Negative buffer size : " + bufferSize);
+        Preconditions.checkArgument(maxPooledBuffers > 0, "Non-positive pool size : " + maxPooledBuffers);
+        this.bufferSize = bufferSize;
+        this.maxPooledBufferSize = Math.max(bufferSize, 1) * MAX_POOLED_BUFFER_SIZE_MULTIPLIER;
+        this.buffers = new ArrayBlockingQueue<>(maxPooledBuffers);
+    }
+
+    /**
+     * Acquire a buffer with at least <i>capacity</i> bytes.
+     *
+     * @param capacity min capacity of the buffer.
+     * @return an empty buffer.
+     */
+    public ChannelBuffer acquire(int capacity) {
+        ChannelBuffer buffer = buffers.poll();
+        if (null == buffer || buffer.capacity() < capacity) {
+            // the pooled buffer is dropped if it is too small, buffers
+            // will converge to the size required by the writer.
+            return ChannelBuffers.dynamicBuffer(Math.max(bufferSize, capacity));
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Return the <i>buffer</i> to the pool.
+     *
+     * @param buffer buffer to return.
+     */
+    public void release(ChannelBuffer buffer) {
+        if (buffer.capacity() > maxPooledBufferSize) {
+            return;
+        }
+        buffers.offer(buffer);
+    }
+
+    /**
+     * @return number of buffers in the pool.
+     */
+    public int getNumPooledBuffers() {
+        return buffers.size();
+    }
+
+}
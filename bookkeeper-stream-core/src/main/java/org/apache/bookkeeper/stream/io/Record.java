@@ -23,8 +23,9 @@ import com.google.common.base.Preconditions;
 import org.apache.bookkeeper.stream.SSN;
 
 import java.io.DataInputStream;
-import java.io.DataOutputStream;
+import java.io.DataOutput;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 /**
@@ -51,11 +52,15 @@ public class Record {
 
         private long    _rid;
         private byte[]  _data;
+        private int     _offset;
+        private int     _length;
         private SSN     _ssn;
 
         private Builder() {
             _rid    = -1L;
             _data   = null;
+            _offset = 0;
+            _length = 0;
             _ssn    = SSN.INVALID_SSN;
         }
 
@@ -80,6 +85,27 @@ public class Record {
          */
         public Builder setData(byte[] data) {
             this._data = data;
+            this._offset = 0;
+            this._length = null == data ? 0 : data.length;
+            return this;
+        }
+
+        /**
+         * Set a slice of <i>data</i> as the record payload. The bytes are not copied,
+         * so the record keeps a reference to the whole <i>data</i> array.
+         *
+         * @param data
+         *          array containing the record payload.
+         * @param offset
+         *          offset of the record payload in <i>data</i>.
+         * @param length
+         *          length of the record payload.
+         * @return record builder.
+         */
+        public Builder setData(byte[] data, int offset, int length) {
+            this._data = data;
+            this._offset = offset;
+            this._length = length;
             return this;
         }
 
@@ -103,19 +129,28 @@ public class Record {
         public Record build() {
             Preconditions.checkNotNull(_data, "No data provided for the record");
             Preconditions.checkNotNull(_ssn, "Null SSN provided for the record");
-            return new Record(_ssn, _rid, _data);
+            Preconditions.checkPositionIndexes(_offset, _offset + _length, _data.length);
+            return new Record(_ssn, _rid, _data, _offset, _length);
         }
 
     }
 
     private final long      rid;
     private final byte[]    data;
+    private final int       offset;
+    private final int       length;
     private final SSN ssn;
 
     protected Record(SSN ssn, long rid, byte[] data) {
+        this(ssn, rid, data, 0, data.length);
+    }
+
+    protected Record(SSN ssn, long rid, byte[] data, int offset, int length) {
         this.ssn = ssn;
         this.rid = rid;
         this.data = data;
+        this.offset = offset;
+        this.length = length;
     }
 
     /**
@@ -138,11 +173,37 @@ public class Record {
 
     /**
      * Get application-specific data of current record.
+     * <p>
+     * If the record is a slice over a larger buffer (e.g. a record read in zero-copy
+     * mode), the payload is copied into a new array on each call. Use
+     * {@link #getPayload()} to access the payload without copying.
      *
      * @return application-specific record data
      */
     public byte[] getData() {
-        return this.data;
+        if (0 == offset && data.length == length) {
+            return this.data;
+        }
+        return Arrays.copyOfRange(data, offset, offset + length);
+    }
+
+    /**
+     * Get a read-only view of the application-specific data of current record.
+     * The view shares the bytes backing the record, no data is copied.
+     *
+     * @return read-only view of application-specific record data
+     */
+    public ByteBuffer getPayload() {
+        return ByteBuffer.wrap(data, offset, length).slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * Get the length of application-specific data of current record.
+     *
+     * @return length of application-specific record data
+     */
+    public int getDataLength() {
+        return this.length;
     }
 
     /**
@@ -151,7 +212,7 @@ public class Record {
      * @return persistence size of the record.
      */
     int getPersistenceSize() {
-        return RECORD_HEADER_SIZE + data.length;
+        return RECORD_HEADER_SIZE + length;
     }
 
     @Override
@@ -159,14 +220,14 @@ public class Record {
         StringBuilder sb = new StringBuilder();
         sb.append("record(ssn = ").append(ssn)
                 .append(", rid = ").append(rid)
-                .append(", len = ").append(data.length)
+                .append(", len = ").append(length)
                 .append(")");
         return sb.toString();
     }
 
     @Override
     public int hashCode() {
-        return Objects.hashCode(ssn, rid, data);
+        return Objects.hashCode(ssn, rid, getPayload());
     }
 
     @Override
@@ -177,7 +238,7 @@ public class Record {
         Record that = (Record) obj;
         return Objects.equal(this.ssn, that.ssn) &&
                 Objects.equal(this.rid, that.rid) &&
-                Arrays.equals(this.data, that.data);
+                this.getPayload().equals(that.getPayload());
     }
 
     /**
@@ -199,13 +260,31 @@ public class Record {
      *          output stream.
      * @throws IOException
      */
-    public void write(DataOutputStream out) throws IOException {
+    public void write(DataOutput out) throws IOException {
         // write record id
         out.writeLong(rid);
         // write data length
-        out.writeInt(data.length);
+        out.writeInt(length);
+        // write data
+        out.write(data, offset, length);
+    }
+
+    /**
+     * Write the record to stream <i>out</i> in {@link RecordFormat#COMPACT compact} format.
+     *
+     * @param out
+     *          output stream.
+     * @param expectedRecordId
+     *          the record id that the record id is delta-encoded against.
+     * @throws IOException
+     */
+    void writeCompact(DataOutput out, long expectedRecordId) throws IOException {
+        // write record id delta
+        VarInt.writeUnsignedVarLong(VarInt.encodeZigZag(rid - expectedRecordId), out);
+        // write data length
+        VarInt.writeUnsignedVarLong(length, out);
         // write data
-        out.write(data);
+        out.write(data, offset, length);
     }
 
     /**
@@ -220,6 +299,9 @@ public class Record {
         Builder recordBuilder = newBuilder();
         recordBuilder.setRecordId(in.readLong());
         int len = in.readInt();
+        if (len < 0) {
+            throw new IOException("Invalid record length " + len);
+        }
         byte[] data = new byte[len];
         in.readFully(data);
         recordBuilder.setData(data);
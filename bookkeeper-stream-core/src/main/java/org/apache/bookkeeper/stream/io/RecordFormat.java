@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.stream.io;
+
+import java.io.IOException;
+
+/**
+ * Format to encode {@link Record}s in an {@link Entry}.
+ * The format is encoded in the entry flags, so the code of a format must never change.
+ *
+ * <ul>
+ * <li>{@link #FIXED}: 8 bytes record id, 4 bytes data length, followed by the data.</li>
+ * <li>{@link #COMPACT}: zigzag varint delta of the record id, varint data length, followed
+ * by the data. The record id delta is relative to the position of the record in the stream
+ * (<i>last num records of the entry + slot id</i>), so sequential record ids take one byte.</li>
+ * </ul>
+ */
+public enum RecordFormat {
+
+    FIXED(0),
+    COMPACT(1);
+
+    private final int code;
+
+    RecordFormat(int code) {
+        this.code = code;
+    }
+
+    /**
+     * @return code of the format stored in entry flags.
+     */
+    public int getCode() {
+        return code;
+    }
+
+    /**
+     * Find the record format of given <i>code</i>.
+     *
+     * @param code
+     *          code of the record format.
+     * @return record format.
+     * @throws IOException if there is no record format for given <i>code</i>.
+     */
+    public static RecordFormat of(int code) throws IOException {
+        for (RecordFormat format : values()) {
+            if (format.code == code) {
+                return format;
+            }
+        }
+        throw new IOException("Unknown record format " + code);
+    }
+}
@@ -52,8 +52,18 @@ public class RecordReader {
         return new RecordReader(ssnStream, in);
     }
 
-    private final SSNStream ssnStream;
+    protected final SSNStream ssnStream;
     private final DataInputStream in;
+    // whether the input only contains complete records
+    private final boolean bounded;
+    // format of the records
+    protected final RecordFormat format;
+    // base of the record id deltas of compact records
+    protected final long baseRecordId;
+    // number of records read or skipped
+    protected long numRecordsRead = 0L;
+    // record id of the record header just read
+    private long curRecordId;
 
     /**
      * Reader to read records from input stream <i>in</i>. Each record
@@ -65,32 +75,120 @@ public class RecordReader {
      *          input stream for records
      */
     protected RecordReader(SSNStream ssnStream, DataInputStream in) {
+        this(ssnStream, in, false, RecordFormat.FIXED, 0L);
+    }
+
+    /**
+     * Reader to read records from input stream <i>in</i>. If <i>bounded</i> is true,
+     * the input stream is expected to only contain complete records, so a truncated
+     * record is reported as an error rather than the end of the stream.
+     *
+     * @param ssnStream
+     *          SSN Stream to generate ssn for records.
+     * @param in
+     *          input stream for records
+     * @param bounded
+     *          whether the input stream only contains complete records.
+     * @param format
+     *          format of the records.
+     * @param baseRecordId
+     *          base of the record id deltas, if records are in compact format.
+     */
+    RecordReader(SSNStream ssnStream, DataInputStream in, boolean bounded,
+                 RecordFormat format, long baseRecordId) {
         this.ssnStream = ssnStream;
         this.in = in;
+        this.bounded = bounded;
+        this.format = format;
+        this.baseRecordId = baseRecordId;
     }
 
     /**
-     * Read a record from the stream.
+     * Constructor for readers that don't read records from an input stream.
+     * Sub-classes have to override {@link #readRecord()} and {@link #skipTo(SSN)}.
+     *
+     * @param ssnStream
+     *          SSN Stream to generate ssn for records.
+     * @param format
+     *          format of the records.
+     * @param baseRecordId
+     *          base of the record id deltas, if records are in compact format.
+     */
+    RecordReader(SSNStream ssnStream, RecordFormat format, long baseRecordId) {
+        this(ssnStream, null, true, format, baseRecordId);
+    }
+
+    /**
+     * Read a record from the stream. If it reaches the end of the stream,
      * it would return null.
      *
      * @return record.
      * @throws IOException
      */
     public Record readRecord() throws IOException {
+        if (bounded && in.available() <= 0) {
+            // reach end of the stream
+            return null;
+        }
         try {
             return readRecord0();
         } catch (EOFException eof) {
+            if (bounded) {
+                throw new IOException("Truncated record " + ssnStream.getCurrentSSN(), eof);
+            }
             // reach end of the stream
         }
         return null;
     }
 
     private Record readRecord0() throws IOException {
-        Record.Builder rBuilder = Record.read(in);
-        rBuilder.setSSN(ssnStream.getCurrentSSN());
+        int len = readRecordHeader();
+        byte[] data = new byte[len];
+        in.readFully(data);
+        Record record = Record.newBuilder()
+                .setRecordId(curRecordId)
+                .setData(data)
+                .setSSN(ssnStream.getCurrentSSN())
+                .build();
         // move ssn stream to next record
+        advance();
+        return record;
+    }
+
+    /**
+     * Read the header of next record. The record id is kept in <i>curRecordId</i>.
+     *
+     * @return length of the record data.
+     * @throws IOException
+     */
+    private int readRecordHeader() throws IOException {
+        long len;
+        if (RecordFormat.COMPACT == format) {
+            curRecordId = expectedRecordId() + VarInt.decodeZigZag(VarInt.readUnsignedVarLong(in));
+            len = VarInt.readUnsignedVarLong(in);
+        } else {
+            curRecordId = in.readLong();
+            len = in.readInt();
+        }
+        if (len < 0 || len > Integer.MAX_VALUE || (bounded && len > in.available())) {
+            throw new IOException("Invalid record length " + len + " of record " + ssnStream.getCurrentSSN());
+        }
+        return (int) len;
+    }
+
+    /**
+     * @return record id of next record if record ids are sequential.
+     */
+    protected long expectedRecordId() {
+        return baseRecordId + numRecordsRead;
+    }
+
+    /**
+     * Move to next record.
+     */
+    protected void advance() {
+        ++numRecordsRead;
         ssnStream.advance();
-        return rBuilder.build();
     }
 
     /**
@@ -107,19 +205,26 @@ public class RecordReader {
                 found = true;
                 break;
             }
+            if (bounded && in.available() <= 0) {
+                break;
+            }
             try {
-                // skip record id
-                in.readLong();
-                int len = in.readInt();
-                // skin data length
+                int len = readRecordHeader();
+                // skip data
                 while (len > 0) {
                     int nBytes = in.skipBytes(len);
+                    if (nBytes <= 0) {
+                        throw new EOFException("Failed to skip " + len + " bytes");
+                    }
                     len -= nBytes;
                 }
             } catch (EOFException eof) {
+                if (bounded) {
+                    throw new IOException("Truncated record " + ssnStream.getCurrentSSN(), eof);
+                }
                 break;
             }
-            ssnStream.advance();
+            advance();
         }
         return found;
     }
@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.stream.io;
+
+import org.apache.bookkeeper.stream.SSN;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Reader to read records from a byte array without copying record payloads.
+ * Each record returned is a slice over the array, so it keeps the whole array
+ * reachable until the record is garbage collected. The array region is expected
+ * to only contain complete records, so a truncated record is reported as an error.
+ */
+class SliceRecordReader extends RecordReader {
+
+    private static final int RECORD_HEADER_SIZE =
+            (Long.SIZE + Integer.SIZE) / Byte.SIZE;
+
+    private final byte[] data;
+    private final ByteBuffer buffer;
+    // record id of the record header just read
+    private long curRecordId;
+
+    /**
+     * Reader to read records from <i>len</i> bytes of <i>data</i> starting at
+     * <i>offset</i>. Each record will be assigned SSN that generated by <i>ssnStream</i>.
+     *
+     * @param ssnStream
+     *          SSN Stream to generate ssn for records.
+     * @param data
+     *          array containing records.
+     * @param offset
+     *          offset of records in the array.
+     * @param len
+     *          length of records in the array.
+     * @param format
+     *          format of the records.
+     * @param baseRecordId
+     *          base of the record id deltas, if records are in compact format.
+     */
+    SliceRecordReader(SSNStream ssnStream, byte[] data, int offset, int len,
+                      RecordFormat format, long baseRecordId) {
+        super(ssnStream, format, baseRecordId);
+        this.data = data;
+        this.buffer = ByteBuffer.wrap(data, offset, len);
+    }
+
+    /**
+     * Read next record header and return its payload length, or -1 if it
+     * reaches the end of the buffer. The record id is kept in <i>curRecordId</i>.
+     *
+     * @throws IOException if the buffer ends with a truncated record.
+     */
+    private int readRecordHeader() throws IOException {
+        if (!buffer.hasRemaining()) {
+            return -1;
+        }
+        long len;
+        if (RecordFormat.COMPACT == format) {
+            curRecordId = expectedRecordId() + VarInt.decodeZigZag(VarInt.readUnsignedVarLong(buffer));
+            len = VarInt.readUnsignedVarLong(buffer);
+        } else {
+            if (buffer.remaining() < RECORD_HEADER_SIZE) {
+                throw new IOException("Truncated record header " + ssnStream.getCurrentSSN()
+                        + " : only " + buffer.remaining() + " bytes left");
+            }
+            curRecordId = buffer.getLong();
+            len = buffer.getInt();
+        }
+        if (len < 0 || buffer.remaining() < len) {
+            throw new IOException("Invalid record length " + len + " of record " + ssnStream.getCurrentSSN()
+                    + " : only " + buffer.remaining() + " bytes left");
+        }
+        return (int) len;
+    }
+
+    @Override
+    public Record readRecord() throws IOException {
+        int len = readRecordHeader();
+        if (len < 0) {
+            return null;
+        }
+        int payloadOffset = buffer.position();
+        buffer.position(payloadOffset + len);
+
+        Record record = Record.newBuilder()
+                .setRecordId(curRecordId)
+                .setData(data, payloadOffset, len)
+                .setSSN(ssnStream.getCurrentSSN())
+                .build();
+        // move ssn stream to next record
+        advance();
+        return record;
+    }
+
+    @Override
+    public boolean skipTo(SSN ssn) throws IOException {
+        while (ssnStream.getCurrentSSN().compareTo(ssn) < 0) {
+            int len = readRecordHeader();
+            if (len < 0) {
+                return false;
+            }
+            buffer.position(buffer.position() + len);
+            advance();
+        }
+        return true;
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.stream.io;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Utils to encode integers in variable length (base 128 varint, as protobuf does).
+ */
+final class VarInt {
+
+    private VarInt() {}
+
+    /**
+     * Map a signed value to an unsigned value, so small negative values are encoded in few bytes.
+     */
+    static long encodeZigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long decodeZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static void writeUnsignedVarLong(long value, DataOutput out) throws IOException {
+        while ((value & ~0x7fL) != 0L) {
+            out.writeByte(((int) value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long readUnsignedVarLong(DataInput in) throws IOException {
+        long value = 0L;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    /**
+     * Read an unsigned varint from <i>buffer</i>.
+     *
+     * @throws IOException if the varint is malformed or truncated.
+     */
+    static long readUnsignedVarLong(ByteBuffer buffer) throws IOException {
+        long value = 0L;
+        try {
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = buffer.get();
+                value |= (long) (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+        } catch (BufferUnderflowException bue) {
+            throw new IOException("Truncated varint");
+        }
+        throw new IOException("Malformed varint");
+    }
+}
@@ -532,6 +532,11 @@ public final class DataFormats {
     // optional int64 completionTime = 11;
     boolean hasCompletionTime();
     long getCompletionTime();
+    
+    // repeated int64 stripeLedgerIds = 12;
+    java.util.List<java.lang.Long> getStripeLedgerIdsList();
+    int getStripeLedgerIdsCount();
+    long getStripeLedgerIds(int index);
   }
   public static final class StreamSegmentMetadataFormat extends
       com.google.protobuf.GeneratedMessage
@@ -819,6 +824,20 @@ public final class DataFormats {
       return completionTime_;
     }
     
+    // repeated int64 stripeLedgerIds = 12;
+    public static final int STRIPELEDGERIDS_FIELD_NUMBER = 12;
+    private java.util.List<java.lang.Long> stripeLedgerIds_;
+    public java.util.List<java.lang.Long>
+        getStripeLedgerIdsList() {
+      return stripeLedgerIds_;
+    }
+    public int getStripeLedgerIdsCount() {
+      return stripeLedgerIds_.size();
+    }
+    public long getStripeLedgerIds(int index) {
+      return stripeLedgerIds_.get(index);
+    }
+    
     private void initFields() {
       version_ = 0;
       segmentId_ = 0L;
@@ -831,6 +850,7 @@ public final class DataFormats {
       cTime_ = 0L;
       mTime_ = 0L;
       completionTime_ = 0L;
+      stripeLedgerIds_ = java.util.Collections.emptyList();;
     }
     private byte memoizedIsInitialized = -1;
     public final boolean isInitialized() {
@@ -893,6 +913,9 @@ public final class DataFormats {
       if (((bitField0_ & 0x00000400) == 0x00000400)) {
         output.writeInt64(11, completionTime_);
       }
+      for (int i = 0; i < stripeLedgerIds_.size(); i++) {
+        output.writeInt64(12, stripeLedgerIds_.get(i));
+      }
       getUnknownFields().writeTo(output);
     }
     
@@ -946,6 +969,15 @@ public final class DataFormats {
         size += com.google.protobuf.CodedOutputStream
           .computeInt64Size(11, completionTime_);
       }
+      {
+        int dataSize = 0;
+        for (int i = 0; i < stripeLedgerIds_.size(); i++) {
+          dataSize += com.google.protobuf.CodedOutputStream
+            .computeInt64SizeNoTag(stripeLedgerIds_.get(i));
+        }
+        size += dataSize;
+        size += 1 * getStripeLedgerIdsList().size();
+      }
       size += getUnknownFields().getSerializedSize();
       memoizedSerializedSize = size;
       return size;
@@ -1102,6 +1134,8 @@ public final class DataFormats {
         bitField0_ = (bitField0_ & ~0x00000200);
         completionTime_ = 0L;
         bitField0_ = (bitField0_ & ~0x00000400);
+        stripeLedgerIds_ = java.util.Collections.emptyList();;
+        bitField0_ = (bitField0_ & ~0x00000800);
         return this;
       }
       
@@ -1192,6 +1226,11 @@ public final class DataFormats {
           to_bitField0_ |= 0x00000400;
         }
         result.completionTime_ = completionTime_;
+        if (((bitField0_ & 0x00000800) == 0x00000800)) {
+          stripeLedgerIds_ = java.util.Collections.unmodifiableList(stripeLedgerIds_);
+          bitField0_ = (bitField0_ & ~0x00000800);
+        }
+        result.stripeLedgerIds_ = stripeLedgerIds_;
         result.bitField0_ = to_bitField0_;
         onBuilt();
         return result;
@@ -1241,6 +1280,16 @@ public final class DataFormats {
         if (other.hasCompletionTime()) {
           setCompletionTime(other.getCompletionTime());
         }
+        if (!other.stripeLedgerIds_.isEmpty()) {
+          if (stripeLedgerIds_.isEmpty()) {
+            stripeLedgerIds_ = other.stripeLedgerIds_;
+            bitField0_ = (bitField0_ & ~0x00000800);
+          } else {
+            ensureStripeLedgerIdsIsMutable();
+            stripeLedgerIds_.addAll(other.stripeLedgerIds_);
+          }
+          onChanged();
+        }
         this.mergeUnknownFields(other.getUnknownFields());
         return this;
       }
@@ -1363,6 +1412,20 @@ public final class DataFormats {
               completionTime_ = input.readInt64();
               break;
             }
+            case 96: {
+              ensureStripeLedgerIdsIsMutable();
+              stripeLedgerIds_.add(input.readInt64());
+              break;
+            }
+            case 98: {
+              int length = input.readRawVarint32();
+              int limit = input.pushLimit(length);
+              while (input.getBytesUntilLimit() > 0) {
+                addStripeLedgerIds(input.readInt64());
+              }
+              input.popLimit(limit);
+              break;
+            }
           }
         }
       }
@@ -1744,6 +1807,51 @@ public final class DataFormats {
         return this;
       }
       
+      // repeated int64 stripeLedgerIds = 12;
+      private java.util.List<java.lang.Long> stripeLedgerIds_ = java.util.Collections.emptyList();;
+      private void ensureStripeLedgerIdsIsMutable() {
+        if (!((bitField0_ & 0x00000800) == 0x00000800)) {
+          stripeLedgerIds_ = new java.util.ArrayList<java.lang.Long>(stripeLedgerIds_);
+          bitField0_ |= 0x00000800;
+         }
+      }
+      public java.util.List<java.lang.Long>
+          getStripeLedgerIdsList() {
+        return java.util.Collections.unmodifiableList(stripeLedgerIds_);
+      }
+      public int getStripeLedgerIdsCount() {
+        return stripeLedgerIds_.size();
+      }
+      public long getStripeLedgerIds(int index) {
+        return stripeLedgerIds_.get(index);
+      }
+      public Builder setStripeLedgerIds(
+          int index, long value) {
+        ensureStripeLedgerIdsIsMutable();
+        stripeLedgerIds_.set(index, value);
+        onChanged();
+        return this;
+      }
+      public Builder addStripeLedgerIds(long value) {
+        ensureStripeLedgerIdsIsMutable();
+        stripeLedgerIds_.add(value);
+        onChanged();
+        return this;
+      }
+      public Builder addAllStripeLedgerIds(
+          java.lang.Iterable<? extends java.lang.Long> values) {
+        ensureStripeLedgerIdsIsMutable();
+        super.addAll(values, stripeLedgerIds_);
+        onChanged();
+        return this;
+      }
+      public Builder clearStripeLedgerIds() {
+        stripeLedgerIds_ = java.util.Collections.emptyList();;
+        bitField0_ = (bitField0_ & ~0x00000800);
+        onChanged();
+        return this;
+      }
+      
       // @@protoc_insertion_point(builder_scope:StreamSegmentMetadataFormat)
     }
     
@@ -3248,7 +3356,7 @@ public final class DataFormats {
     java.lang.String[] descriptorData = {
       "\n src/main/proto/DataFormats.proto\"9\n\003SS" +
       "N\022\021\n\tsegmentId\030\001 \002(\003\022\017\n\007entryId\030\002 \002(\003\022\016\n" +
-      "\006slotId\030\003 \002(\003\"\271\003\n\033StreamSegmentMetadataF" +
+      "\006slotId\030\003 \002(\003\"\322\003\n\033StreamSegmentMetadataF" +
       "ormat\022\017\n\007version\030\001 \002(\005\022\021\n\tsegmentId\030\002 \001(" +
       "\003\022\025\n\007lastSSN\030\003 \001(\0132\004.SSN\022\020\n\010ledgerId\030\004 \001" +
       "(\003\022\023\n\013recordCount\030\005 \001(\003\022=\n\005state\030\006 \001(\0162\"" +
@@ -3257,17 +3365,18 @@ public final class DataFormats {
       "SegmentMetadataFormat.TruncationState:\004N" +
       "ONE\022\032\n\014truncatedSSN\030\010 \001(\0132\004.SSN\022\r\n\005cTime",
       "\030\t \001(\003\022\r\n\005mTime\030\n \001(\003\022\026\n\016completionTime\030" +
-      "\013 \001(\003\"&\n\005State\022\016\n\nINPROGRESS\020\001\022\r\n\tCOMPLE" +
-      "TED\020\002\"2\n\017TruncationState\022\010\n\004NONE\020\001\022\013\n\007PA" +
-      "RTIAL\020\002\022\010\n\004FULL\020\003\"4\n\034StreamSegmentsMetad" +
-      "ataFormat\022\024\n\014maxSegmentId\030\001 \001(\003\"_\n\035BKStr" +
-      "eamFactoryMetadataFormat\022\022\n\nsZkServers\030\001" +
-      " \001(\t\022\023\n\013bkZkServers\030\002 \001(\t\022\025\n\rbkLedgersPa" +
-      "th\030\003 \001(\t\"\224\001\n\033StreamFactoryMetadataFormat" +
-      "\0223\n\004type\030\001 \001(\0162!.StreamFactoryMetadataFo" +
-      "rmat.Type:\002BK\0220\n\010bkFormat\030\002 \001(\0132\036.BKStre",
-      "amFactoryMetadataFormat\"\016\n\004Type\022\006\n\002BK\020\001B" +
-      "&\n\"org.apache.bookkeeper.stream.protoH\001"
+      "\013 \001(\003\022\027\n\017stripeLedgerIds\030\014 \003(\003\"&\n\005State\022" +
+      "\016\n\nINPROGRESS\020\001\022\r\n\tCOMPLETED\020\002\"2\n\017Trunca" +
+      "tionState\022\010\n\004NONE\020\001\022\013\n\007PARTIAL\020\002\022\010\n\004FULL" +
+      "\020\003\"4\n\034StreamSegmentsMetadataFormat\022\024\n\014ma" +
+      "xSegmentId\030\001 \001(\003\"_\n\035BKStreamFactoryMetad" +
+      "ataFormat\022\022\n\nsZkServers\030\001 \001(\t\022\023\n\013bkZkSer" +
+      "vers\030\002 \001(\t\022\025\n\rbkLedgersPath\030\003 \001(\t\"\224\001\n\033St" +
+      "reamFactoryMetadataFormat\0223\n\004type\030\001 \001(\0162" +
+      "!.StreamFactoryMetadataFormat.Type:\002BK\0220",
+      "\n\010bkFormat\030\002 \001(\0132\036.BKStreamFactoryMetada" +
+      "taFormat\"\016\n\004Type\022\006\n\002BK\020\001B&\n\"org.apache.b" +
+      "ookkeeper.stream.protoH\001"
     };
     com.google.protobuf.Descriptors.FileDescriptor.InternalDescriptorAssigner assigner =
       new com.google.protobuf.Descriptors.FileDescriptor.InternalDescriptorAssigner() {
@@ -3287,7 +3396,7 @@ public final class DataFormats {
           internal_static_StreamSegmentMetadataFormat_fieldAccessorTable = new
             com.google.protobuf.GeneratedMessage.FieldAccessorTable(
               internal_static_StreamSegmentMetadataFormat_descriptor,
-              new java.lang.String[] { "Version", "SegmentId", "LastSSN", "LedgerId", "RecordCount", "State", "TruncationState", "TruncatedSSN", "CTime", "MTime", "CompletionTime", },
+              new java.lang.String[] { "Version", "SegmentId", "LastSSN", "LedgerId", "RecordCount", "State", "TruncationState", "TruncatedSSN", "CTime", "MTime", "CompletionTime", "StripeLedgerIds", },
               org.apache.bookkeeper.stream.proto.DataFormats.StreamSegmentMetadataFormat.class,
               org.apache.bookkeeper.stream.proto.DataFormats.StreamSegmentMetadataFormat.Builder.class);
           internal_static_StreamSegmentsMetadataFormat_descriptor =
@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.stream.segment;
+
+import org.apache.bookkeeper.client.LedgerHandle;
+
+import java.util.List;
+
+/**
+ * Inprogress segment allocated by {@link SegmentAllocator}, with the ledger handles
+ * of its stripes opened for writing records into it.
+ */
+class AllocatedSegment implements Segment {
+
+    private final String streamName;
+    private final StreamSegmentMetadata segmentMetadata;
+    private final List<LedgerHandle> lhs;
+    private final int writeQuorumSize;
+    private final int ackQuorumSize;
+
+    AllocatedSegment(String streamName,
+                     StreamSegmentMetadata segmentMetadata,
+                     List<LedgerHandle> lhs,
+                     int writeQuorumSize,
+                     int ackQuorumSize) {
+        this.streamName = streamName;
+        this.segmentMetadata = segmentMetadata;
+        this.lhs = lhs;
+        this.writeQuorumSize = writeQuorumSize;
+        this.ackQuorumSize = ackQuorumSize;
+    }
+
+    @Override
+    public String getStreamName() {
+        return streamName;
+    }
+
+    @Override
+    public StreamSegmentMetadata getSegmentMetadata() {
+        return segmentMetadata;
+    }
+
+    @Override
+    public void registerSegmentListener(Listener listener) {
+        // the segment is owned by the rolling writer, which reports its changes.
+    }
+
+    /**
+     * @return ledger handles of the stripes to write records into the segment.
+     */
+    List<LedgerHandle> getLedgerHandles() {
+        return lhs;
+    }
+
+    /**
+     * @return write quorum size that the ledgers were created with.
+     */
+    int getWriteQuorumSize() {
+        return writeQuorumSize;
+    }
+
+    /**
+     * @return ack quorum size that the ledgers were created with.
+     */
+    int getAckQuorumSize() {
+        return ackQuorumSize;
+    }
+
+    @Override
+    public String toString() {
+        return streamName + " : " + segmentMetadata;
+    }
+}
@@ -32,22 +32,33 @@ import org.apache.bookkeeper.client.BKException.Code;
 import org.apache.bookkeeper.client.BookKeeper;
 import org.apache.bookkeeper.client.LedgerEntry;
 import org.apache.bookkeeper.client.LedgerHandle;
+import org.apache.bookkeeper.stats.Counter;
 import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.stats.OpStatsLogger;
 import org.apache.bookkeeper.stats.StatsLogger;
-import org.apache.bookkeeper.stream.cache.RecordCache;
+import org.apache.bookkeeper.stream.SSN;
+import org.apache.bookkeeper.stream.cache.EntryReceiver;
+import org.apache.bookkeeper.stream.cache.TailEntryCache;
 import org.apache.bookkeeper.stream.common.Resumeable;
 import org.apache.bookkeeper.stream.common.Scheduler;
 import org.apache.bookkeeper.stream.common.Scheduler.OrderingListenableFuture;
 import org.apache.bookkeeper.stream.conf.StreamConfiguration;
+import org.apache.bookkeeper.stream.exceptions.CorruptedEntryException;
 import org.apache.bookkeeper.stream.io.Entry;
+import org.apache.bookkeeper.stream.io.Entry.EntryData;
 import org.apache.bookkeeper.stream.segment.Segment.Listener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.apache.bookkeeper.stream.Constants.BK_DIGEST_TYPE;
 import static org.apache.bookkeeper.stream.Constants.BK_PASSWD;
@@ -69,9 +80,12 @@ public class BKSegmentReader implements SegmentReader, Listener, Runnable, Resum
         private StreamConfiguration _conf;
         private Segment _segment;
         private long _startEntryId;
+        private long _startSlotId = 0L;
         private BookKeeper _bk;
         private Scheduler _scheduler;
         private StatsLogger _statsLogger = NullStatsLogger.INSTANCE;
+        private TailEntryCache _tailCache = null;
+        private CommitNotifier _commitNotifier = null;
 
         private Builder() {}
 
@@ -105,6 +119,20 @@ public class BKSegmentReader implements SegmentReader, Listener, Runnable, Resum
          */
         public Builder startEntryId(long entryId) {
             this._startEntryId = entryId;
+            this._startSlotId = 0L;
+            return this;
+        }
+
+        /**
+         * Set start ssn to read from. The reader starts reading from the entry of
+         * <i>ssn</i> and skips the records before its slot.
+         *
+         * @param ssn start ssn to read from.
+         * @return builder
+         */
+        public Builder startSSN(SSN ssn) {
+            this._startEntryId = ssn.getEntryId();
+            this._startSlotId = ssn.getSlotId();
             return this;
         }
 
@@ -141,6 +169,30 @@ public class BKSegmentReader implements SegmentReader, Listener, Runnable, Resum
             return this;
         }
 
+        /**
+         * Set tail entry cache to read the tail entries of inprogress segment written
+         * by the writers in the same process.
+         *
+         * @param tailCache tail entry cache.
+         * @return builder
+         */
+        public Builder tailCache(TailEntryCache tailCache) {
+            this._tailCache = tailCache;
+            return this;
+        }
+
+        /**
+         * Set commit notifier to wake up the reader waiting at end of inprogress segment
+         * when the writer in the same process adds new entries.
+         *
+         * @param commitNotifier commit notifier.
+         * @return builder
+         */
+        public Builder commitNotifier(CommitNotifier commitNotifier) {
+            this._commitNotifier = commitNotifier;
+            return this;
+        }
+
         /**
          * Build the bookkeeper segment reader.
          *
@@ -151,9 +203,12 @@ public class BKSegmentReader implements SegmentReader, Listener, Runnable, Resum
                     _conf,
                     _segment,
                     _startEntryId,
+                    _startSlotId,
                     _bk,
                     _scheduler,
-                    _statsLogger);
+                    _statsLogger,
+                    _tailCache,
+                    _commitNotifier);
         }
 
     }
@@ -173,26 +228,67 @@ public class BKSegmentReader implements SegmentReader, Listener, Runnable, Resum
     private final Scheduler scheduler;
     // stats logger
     private final StatsLogger statsLogger;
+    // latency of parsing and verifying entries, in micros
+    private final OpStatsLogger verifyEntryStats;
+    private final Counter corruptedEntriesCounter;
+    // tail entry cache
+    private final TailEntryCache tailCache;
+    // commit notifier
+    private final CommitNotifier commitNotifier;
+    // listener to wake up the reader waiting for new entries
+    private final Resumeable wakeupListener = new Resumeable() {
+        @Override
+        public void onResume() {
+            scheduler.submit(streamName, new Runnable() {
+                @Override
+                public void run() {
+                    // wake up the reader if it is waiting for new entries
+                    interrupt();
+                }
+            });
+        }
+    };
 
     // Segment Variables
     private final String streamName;
     private final long segmentId;
-    private final long ledgerId;
+    // ledgers that the entries of the segment are striped across
+    private final List<Long> ledgerIds;
+    private final int numStripes;
 
     // ReadAhead Parameters
     private final int readerWaitMs;
+    private final int readerMaxWaitMs;
     private final int maxOutstandingReads;
+    private final long maxOutstandingReadBytes;
+    private final int readBatchNumEntries;
+    // estimated number of bytes of an entry before any entry is read
+    private final long initialEntryNumBytes;
 
     // Read State
     private StreamSegmentMetadata metadata;
-    private LedgerHandle lh;
+    private LedgerHandle[] lhs;
     private boolean started;
     private long nextEntryId;
+    // next entry to issue read request for, entries in [nextEntryId, nextReadEntryId) are being read
+    private long nextReadEntryId;
+    // outstanding read requests in the order of issuing
+    private final Deque<ReadContext> outstandingReads = new ArrayDeque<>();
+    // bytes of completed read requests waiting for the read requests issued before them
+    private long outstandingReadBytes = 0L;
+    // record bytes of the largest data entry read, used to estimate the size of entries to read
+    private long maxDataEntryNumBytes = 0L;
+    // slot to start reading from in the first entry
+    private long startSlotId;
     private boolean inprogressChanged = false;
     private ListenableFuture<?> waitFuture;
+    // whether the reader is waiting for space in record cache
+    private boolean waitingForCacheSpace = false;
+    // time period to wait on next backoff, it is reset when entries are read.
+    private int nextWaitMs;
 
     // reader receiver and listener
-    private RecordCache recordCache;
+    private EntryReceiver recordCache;
     private Listener readerListener;
 
     // reader state
@@ -203,32 +299,49 @@ public class BKSegmentReader implements SegmentReader, Listener, Runnable, Resum
     BKSegmentReader(StreamConfiguration conf,
                     Segment segment,
                     long startEntryId,
+                    long startSlotId,
                     BookKeeper bk,
                     Scheduler scheduler,
-                    StatsLogger statsLogger) {
+                    StatsLogger statsLogger,
+                    TailEntryCache tailCache,
+                    CommitNotifier commitNotifier) {
         this.conf = conf;
         this.streamName = segment.getStreamName();
         this.metadata = segment.getSegmentMetadata();
         this.segmentId = metadata.getSegmentFormat().getSegmentId();
-        this.ledgerId = metadata.getSegmentFormat().getLedgerId();
+        this.ledgerIds = metadata.getLedgerIds();
+        this.numStripes = ledgerIds.size();
 
         this.bk = bk;
         this.scheduler = scheduler;
         this.statsLogger = statsLogger;
+        this.verifyEntryStats = statsLogger.getOpStatsLogger("verify_entry");
+        this.corruptedEntriesCounter = statsLogger.getCounter("corrupted_entries");
+        this.tailCache = tailCache;
+        this.commitNotifier = commitNotifier;
 
         // reader wait parameters
         this.readerWaitMs = conf.getSegmentReaderCommitWaitMs();
-        this.maxOutstandingReads = conf.getSegmentReaderMaxOutstandingReadEntries();
+        this.readerMaxWaitMs = Math.max(readerWaitMs, conf.getSegmentReaderCommitWaitMaxMs());
+        this.maxOutstandingReads = Math.max(1, conf.getSegmentReaderMaxOutstandingReadEntries());
+        this.maxOutstandingReadBytes = Math.max(0L, conf.getSegmentReaderMaxOutstandingReadBytes());
+        int batchNumEntries = conf.getSegmentReaderReadBatchNumEntries();
+        this.readBatchNumEntries = batchNumEntries > 0 ?
+                Math.min(batchNumEntries, maxOutstandingReads) : maxOutstandingReads;
+        this.initialEntryNumBytes = Math.max(1, conf.getSegmentReaderEntrySizeEstimate());
 
         // read state
         this.nextEntryId = startEntryId;
+        this.nextReadEntryId = startEntryId;
+        this.startSlotId = startSlotId;
+        this.nextWaitMs = readerWaitMs;
 
         // reader state
         this.state = State.INITIALIZED;
     }
 
     @Override
-    public void start(RecordCache cache, Listener listener) {
+    public void start(EntryReceiver cache, Listener listener) {
         synchronized (this) {
             Preconditions.checkState(!started, "SegmentReader for segment " + segmentId + "@" + streamName
                     + " is already started.");
@@ -238,18 +351,29 @@ public class BKSegmentReader implements SegmentReader, Listener, Runnable, Resum
         }
         this.recordCache = cache;
         this.readerListener = listener;
+        if (metadata.isInprogress()) {
+            if (null != tailCache) {
+                tailCache.addListener(streamName, segmentId, wakeupListener);
+            }
+            if (null != commitNotifier) {
+                commitNotifier.addListener(streamName, segmentId, wakeupListener);
+            }
+        }
         // start the reader
         onResume();
     }
 
     private synchronized void backoff() {
-        waitFuture = scheduler.schedule(streamName, this, readerWaitMs, TimeUnit.MILLISECONDS);
+        waitFuture = scheduler.schedule(streamName, this, nextWaitMs, TimeUnit.MILLISECONDS);
+        // wait longer on next backoff if no new entries are read
+        nextWaitMs = (int) Math.min((long) nextWaitMs * 2, readerMaxWaitMs);
     }
 
     @Override
     public void run() {
         // set wait future to null after backoff is executed.
         waitFuture = null;
+        waitingForCacheSpace = false;
 
         if (State.CLOSED == state) {
             return;
@@ -264,17 +388,17 @@ public class BKSegmentReader implements SegmentReader, Listener, Runnable, Resum
     }
 
     /**
-     * Open the ledger of this stream segment.
+     * Open the ledgers of this stream segment.
      */
     private void checkOrOpenLedger() {
         if (metadata.isInprogress()) {
-            if (null == lh) {
+            if (null == lhs) {
                 openLedgerNoRecovery();
             } else {
                 readEntriesOrLacFromInprogressSegment();
             }
         } else {
-            if (null == lh) {
+            if (null == lhs) {
                 openLedger();
             } else {
                 if (inprogressChanged) {
@@ -286,76 +410,164 @@ public class BKSegmentReader implements SegmentReader, Listener, Runnable, Resum
         }
     }
 
+    /**
+     * Context to aggregate the results of an operation issued to all the stripes.
+     */
+    private static class StripesContext {
+        private final AtomicInteger numPendings;
+        private final AtomicInteger rc = new AtomicInteger(Code.OK);
+
+        private StripesContext(int numStripes) {
+            this.numPendings = new AtomicInteger(numStripes);
+        }
+
+        /**
+         * @return result of the operation, the first failure among the stripes.
+         */
+        int getResult() {
+            return rc.get();
+        }
+
+        /**
+         * Complete the operation on a stripe with result <i>stripeRc</i>.
+         *
+         * @return true if the operations on all the stripes are completed.
+         */
+        boolean complete(int stripeRc) {
+            if (Code.OK != stripeRc) {
+                rc.compareAndSet(Code.OK, stripeRc);
+            }
+            return numPendings.decrementAndGet() == 0;
+        }
+    }
+
     private void reopenLedger() {
-        lh.asyncClose(this, null);
+        StripesContext closeCtx = new StripesContext(numStripes);
+        for (LedgerHandle lh : lhs) {
+            lh.asyncClose(this, closeCtx);
+        }
     }
 
     @Override
     public void closeComplete(final int rc, final LedgerHandle lh, final Object ctx) {
+        final StripesContext closeCtx = (StripesContext) ctx;
+        if (!closeCtx.complete(rc)) {
+            return;
+        }
         scheduler.submit(streamName, new Runnable() {
             @Override
             public void run() {
-                closeCompleted(rc, lh, ctx);
+                closeCompleted(closeCtx.getResult());
             }
         });
     }
 
-    private void closeCompleted(int rc, LedgerHandle lh, Object ctx) {
+    private void closeCompleted(int rc) {
         if (BKException.Code.OK != rc) {
             handleException(rc);
             return;
         }
-        this.lh = null;
+        this.lhs = null;
+        if (completeCloseIfClosing()) {
+            return;
+        }
         this.inprogressChanged = false;
         checkOrOpenLedger();
     }
 
     /**
-     * Open the ledger used by the segment (for inprogress stream segment)
+     * Context of opening the ledgers of the segment.
+     */
+    private static class OpenContext extends StripesContext {
+        private final LedgerHandle[] handles;
+
+        private OpenContext(int numStripes) {
+            super(numStripes);
+            this.handles = new LedgerHandle[numStripes];
+        }
+    }
+
+    /**
+     * Open the ledgers used by the segment (for inprogress stream segment)
      */
     private void openLedgerNoRecovery() {
-        this.bk.asyncOpenLedgerNoRecovery(ledgerId, BK_DIGEST_TYPE, BK_PASSWD, this, null);
+        OpenContext openCtx = new OpenContext(numStripes);
+        for (int i = 0; i < numStripes; i++) {
+            this.bk.asyncOpenLedgerNoRecovery(ledgerIds.get(i), BK_DIGEST_TYPE, BK_PASSWD, this, openCtx);
+        }
     }
 
     /**
-     * Open the ledger used by the segment (for complete stream segment)
+     * Open the ledgers used by the segment (for complete stream segment)
      */
     private void openLedger() {
-        this.bk.asyncOpenLedger(ledgerId, BK_DIGEST_TYPE, BK_PASSWD, this, null);
+        OpenContext openCtx = new OpenContext(numStripes);
+        for (int i = 0; i < numStripes; i++) {
+            this.bk.asyncOpenLedger(ledgerIds.get(i), BK_DIGEST_TYPE, BK_PASSWD, this, openCtx);
+        }
     }
 
     @Override
     public void openComplete(final int rc, final LedgerHandle lh, final Object ctx) {
+        final OpenContext openCtx = (OpenContext) ctx;
+        if (BKException.Code.OK == rc) {
+            openCtx.handles[ledgerIds.indexOf(lh.getId())] = lh;
+        }
+        if (!openCtx.complete(rc)) {
+            return;
+        }
         scheduler.submit(streamName, new Runnable() {
             @Override
             public void run() {
-                openCompleted(rc, lh);
+                openCompleted(openCtx.getResult(), openCtx.handles);
             }
         });
     }
 
     /**
-     * Process the result of opening a ledger handle.
+     * Process the result of opening the ledger handles.
      *
-     * @param rc result of opening a ledger
-     * @param lh ledger handle
+     * @param rc result of opening the ledgers
+     * @param handles ledger handles of the stripes
      */
-    private void openCompleted(int rc, LedgerHandle lh) {
+    private void openCompleted(int rc, LedgerHandle[] handles) {
         if (BKException.Code.OK != rc) {
-            logger.debug("Encountered bookkeeper exception while opening ledger {} : rc = {}", ledgerId, rc);
-            handleException(rc);
+            logger.debug("Encountered bookkeeper exception while opening ledgers {} : rc = {}", ledgerIds, rc);
+            closeLedgers(handles);
+            if (!completeCloseIfClosing()) {
+                handleException(rc);
+            }
+            return;
+        }
+        this.lhs = handles;
+        if (completeCloseIfClosing()) {
             return;
         }
-        this.lh = lh;
-        logger.info("Opened ledger of segment {} for {}.", metadata, streamName);
+        logger.info("Opened ledgers of segment {} for {}.", metadata, streamName);
         readEntries();
     }
 
+    /**
+     * Get the last add confirmed entry of the segment. Entries of a striped segment are
+     * confirmed per stripe, the segment is confirmed up to the entry before the first
+     * unconfirmed entry among all the stripes.
+     *
+     * @return last add confirmed entry of the segment.
+     */
+    private long getLastAddConfirmed() {
+        long firstUnconfirmedEntryId = Long.MAX_VALUE;
+        for (int i = 0; i < numStripes; i++) {
+            firstUnconfirmedEntryId = Math.min(firstUnconfirmedEntryId,
+                    (lhs[i].getLastAddConfirmed() + 1) * numStripes + i);
+        }
+        return firstUnconfirmedEntryId - 1;
+    }
+
     /**
      * Read entries from completed segment.
      */
     private void readEntriesFromCompletedSegment() {
-        long lac = lh.getLastAddConfirmed();
+        long lac = getLastAddConfirmed();
         if (lac < nextEntryId) {
             this.readerListener.onEndOfSegment();
             closeInternal("reaching end of segment");
@@ -368,8 +580,8 @@ public class BKSegmentReader implements SegmentReader, Listener, Runnable, Resum
      * Read entries or read lac from inprogress segment.
      */
     private void readEntriesOrLacFromInprogressSegment() {
-        long lac = lh.getLastAddConfirmed();
-        if (lac < nextEntryId) {
+        long lac = getLastAddConfirmed();
+        if (lac < nextEntryId && !isNextEntryInTailCache()) {
             readLac();
         } else {
             readEntries();
@@ -377,10 +589,13 @@ public class BKSegmentReader implements SegmentReader, Listener, Runnable, Resum
     }
 
     /**
-     * Read last add confirmed.
+     * Read last add confirmed of all the stripes.
      */
     private void readLac() {
-        this.lh.asyncTryReadLastConfirmed(this, null);
+        StripesContext lacCtx = new StripesContext(numStripes);
+        for (LedgerHandle lh : lhs) {
+            lh.asyncTryReadLastConfirmed(this, lacCtx);
+        }
     }
 
     /**
@@ -392,15 +607,22 @@ public class BKSegmentReader implements SegmentReader, Listener, Runnable, Resum
      */
     @Override
     public void readLastConfirmedComplete(final int rc, final long lac, final Object ctx) {
+        final StripesContext lacCtx = (StripesContext) ctx;
+        if (!lacCtx.complete(rc)) {
+            return;
+        }
         scheduler.submit(streamName, new Runnable() {
             @Override
             public void run() {
-                readLastConfirmedCompleted(rc, lac, ctx);
+                readLastConfirmedCompleted(lacCtx.getResult());
             }
         });
     }
 
-    private void readLastConfirmedCompleted(int rc, long lac, Object ctx) {
+    private void readLastConfirmedCompleted(int rc) {
+        if (completeCloseIfClosing()) {
+            return;
+        }
         if (BKException.Code.OK != rc) {
             handleReadLastConfirmedError(rc);
             return;
@@ -422,69 +644,302 @@ public class BKSegmentReader implements SegmentReader, Listener, Runnable, Resum
         }
     }
 
+    /**
+     * @return true if next entry could be read from tail entry cache.
+     */
+    private boolean isNextEntryInTailCache() {
+        return null != tailCache && metadata.isInprogress()
+                && null != tailCache.getEntry(streamName, segmentId, nextEntryId);
+    }
+
+    /**
+     * Read the consecutive entries starting from next entry from tail entry cache.
+     *
+     * @return false if encountered corrupted entry.
+     */
+    private boolean readEntriesFromTailCache() {
+        EntryData entryData;
+        while (!recordCache.isCacheFull()
+                && null != (entryData = tailCache.getEntry(streamName, segmentId, nextEntryId))) {
+            if (!addEntry(entryData.data, entryData.offset, entryData.len)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private void readEntries() {
-        long lac = lh.getLastAddConfirmed();
-        if (lac < nextEntryId) {
+        if (null != tailCache && metadata.isInprogress() && outstandingReads.isEmpty()) {
+            if (!readEntriesFromTailCache()) {
+                return;
+            }
+            if (recordCache.isCacheFull()) {
+                readEntriesComplete();
+                return;
+            }
+        }
+        long lac = getLastAddConfirmed();
+        if (outstandingReads.isEmpty()) {
+            nextReadEntryId = nextEntryId;
+        }
+        // number of bytes of an entry to wait for, if the cache is short of space
+        long waitForNumBytes = 0L;
+        // keep multiple read requests in flight, within the outstanding read window
+        while (nextReadEntryId <= lac
+                && nextReadEntryId < nextEntryId + maxOutstandingReads
+                && outstandingReadBytes < maxOutstandingReadBytes
+                && !recordCache.isCacheFull()) {
+            long startEntryId = nextReadEntryId;
+            long endEntryId = Math.min(Math.min(lac, startEntryId + readBatchNumEntries - 1),
+                    nextEntryId + maxOutstandingReads - 1);
+            // size the read to the space available in record cache
+            long reservedBytes = 0L;
+            long availableBytes = recordCache.getAvailableBytes();
+            if (Long.MAX_VALUE != availableBytes) {
+                long entryNumBytes = estimateEntryNumBytes();
+                if (availableBytes < entryNumBytes
+                        && (!outstandingReads.isEmpty() || !recordCache.isCacheEmpty())) {
+                    // wait for the space of an entry instead of overrunning the cache by another entry.
+                    // an empty cache still reads an entry, so entries larger than the cache space don't
+                    // stall the reader.
+                    waitForNumBytes = entryNumBytes;
+                    break;
+                }
+                long numEntries = Math.max(1L, availableBytes / entryNumBytes);
+                endEntryId = Math.min(endEntryId, startEntryId + numEntries - 1);
+                reservedBytes = Math.min(availableBytes, (endEntryId - startEntryId + 1) * entryNumBytes);
+                recordCache.reserveBytes(reservedBytes);
+            }
+            readEntries(startEntryId, endEntryId, reservedBytes);
+            nextReadEntryId = endEntryId + 1;
+        }
+        if (outstandingReads.isEmpty() && waitForNumBytes > 0) {
+            waitForCacheSpace(waitForNumBytes);
+        } else if (outstandingReads.isEmpty()) {
             logger.debug("Nothing to read from segment {} of {} : lac = {}, next entry = {}",
                     new Object[] { segmentId, streamName, lac, nextEntryId });
             readEntriesComplete();
-            return;
         }
-        long startEntryId = nextEntryId;
-        long endEntryId = Math.min(lac, nextEntryId + maxOutstandingReads - 1);
-        readEntries(startEntryId, endEntryId);
     }
 
-    private void readEntries(long startEntryId, long endEntryId) {
-        lh.asyncReadEntries(startEntryId, endEntryId, this, null);
+    /**
+     * Estimate the number of record bytes of an entry to read, by the largest data entry
+     * read so far, so the entries read rarely take more than the bytes reserved for them.
+     *
+     * @return estimated number of record bytes of an entry.
+     */
+    private long estimateEntryNumBytes() {
+        if (0L == maxDataEntryNumBytes) {
+            return initialEntryNumBytes;
+        }
+        return maxDataEntryNumBytes;
+    }
+
+    /**
+     * Context of reading a range of entries across the stripes.
+     */
+    private static class ReadContext extends StripesContext {
+        private final long startEntryId;
+        private final LedgerEntry[] entries;
+        // bytes reserved in record cache for the entries
+        private final long reservedBytes;
+        // whether the read request is completed, accessed in the ordered executor
+        private boolean completed = false;
+        private long numBytes = 0L;
+
+        private ReadContext(int numStripes, long startEntryId, long endEntryId, long reservedBytes) {
+            super(numStripes);
+            this.startEntryId = startEntryId;
+            this.reservedBytes = reservedBytes;
+            this.entries = new LedgerEntry[(int) (endEntryId - startEntryId + 1)];
+        }
+    }
+
+    /**
+     * Context of reading entries from a stripe.
+     */
+    private static class StripeReadContext {
+        private final ReadContext readCtx;
+        private final int stripeIdx;
+
+        private StripeReadContext(ReadContext readCtx, int stripeIdx) {
+            this.readCtx = readCtx;
+            this.stripeIdx = stripeIdx;
+        }
+    }
+
+    private void readEntries(long startEntryId, long endEntryId, long reservedBytes) {
+        int numReadStripes = (int) Math.min(numStripes, endEntryId - startEntryId + 1);
+        ReadContext readCtx = new ReadContext(numReadStripes, startEntryId, endEntryId, reservedBytes);
+        outstandingReads.add(readCtx);
+        for (long entryId = startEntryId; entryId < startEntryId + numReadStripes; entryId++) {
+            int stripeIdx = (int) (entryId % numStripes);
+            // last entry in [startEntryId, endEntryId] that belongs to the stripe
+            long lastEntryId = endEntryId - (endEntryId - entryId) % numStripes;
+            lhs[stripeIdx].asyncReadEntries(entryId / numStripes, lastEntryId / numStripes,
+                    this, new StripeReadContext(readCtx, stripeIdx));
+        }
     }
 
     @Override
     public void readComplete(final int rc, final LedgerHandle lh,
                              final Enumeration<LedgerEntry> entries,
                              final Object ctx) {
+        StripeReadContext stripeReadCtx = (StripeReadContext) ctx;
+        final ReadContext readCtx = stripeReadCtx.readCtx;
+        if (Code.OK == rc) {
+            // merge the entries of the stripe back to segment order
+            while (entries.hasMoreElements()) {
+                LedgerEntry ledgerEntry = entries.nextElement();
+                long entryId = ledgerEntry.getEntryId() * numStripes + stripeReadCtx.stripeIdx;
+                readCtx.entries[(int) (entryId - readCtx.startEntryId)] = ledgerEntry;
+            }
+        }
+        if (!readCtx.complete(rc)) {
+            return;
+        }
         scheduler.submit(streamName, new Runnable() {
             @Override
             public void run() {
-                readCompleted(rc, lh, entries, ctx);
+                readCompleted(readCtx);
             }
         });
     }
 
-    private void readCompleted(int rc, LedgerHandle lh, Enumeration<LedgerEntry> entries, Object ctx) {
-        if (Code.OK != rc) {
-            handleException(rc);
+    private void readCompleted(ReadContext readCtx) {
+        if (State.INITIALIZED != state) {
+            // drop the entries read after the reader is closed
+            if (outstandingReads.remove(readCtx)) {
+                recordCache.releaseBytes(readCtx.reservedBytes);
+            }
+            if (State.CLOSING == state && outstandingReads.isEmpty()) {
+                completeCloseFutures();
+            }
             return;
         }
-        while (entries.hasMoreElements()) {
-            LedgerEntry ledgerEntry = entries.nextElement();
-            byte[] entryData = ledgerEntry.getEntry();
-            Entry entry = Entry.of(segmentId, ledgerEntry.getEntryId(), entryData, 0, entryData.length);
-            recordCache.addEntry(entry);
-            // advance entry id
-            ++nextEntryId;
+        if (Code.OK != readCtx.getResult()) {
+            cancelOutstandingReads();
+            handleException(readCtx.getResult());
+            return;
+        }
+        readCtx.completed = true;
+        for (LedgerEntry ledgerEntry : readCtx.entries) {
+            readCtx.numBytes += ledgerEntry.getLength();
+        }
+        outstandingReadBytes += readCtx.numBytes;
+        // add the entries of completed read requests to record cache in order
+        ReadContext headCtx;
+        while (null != (headCtx = outstandingReads.peek()) && headCtx.completed) {
+            outstandingReads.poll();
+            outstandingReadBytes -= headCtx.numBytes;
+            // the reserved bytes are taken by the entries added to record cache
+            recordCache.releaseBytes(headCtx.reservedBytes);
+            for (LedgerEntry ledgerEntry : headCtx.entries) {
+                byte[] entryData = ledgerEntry.getEntry();
+                if (!addEntry(entryData, 0, entryData.length)) {
+                    cancelOutstandingReads();
+                    return;
+                }
+            }
         }
         if (recordCache.isCacheFull()) {
-            readEntriesComplete();
+            // wait for the outstanding reads before waiting for cache space
+            if (outstandingReads.isEmpty()) {
+                readEntriesComplete();
+            }
         } else {
             // continue to read entries
             readEntries();
         }
     }
 
+    /**
+     * Drop the completed reads waiting for the reads issued before them and release
+     * the bytes reserved for them. Their callbacks already ran, so nothing else would
+     * remove them after the reader is closed.
+     */
+    private void releaseCompletedReads() {
+        Iterator<ReadContext> iter = outstandingReads.iterator();
+        while (iter.hasNext()) {
+            ReadContext readCtx = iter.next();
+            if (readCtx.completed) {
+                iter.remove();
+                outstandingReadBytes -= readCtx.numBytes;
+                recordCache.releaseBytes(readCtx.reservedBytes);
+            }
+        }
+    }
+
+    /**
+     * Cancel the outstanding reads and release the bytes reserved for them.
+     */
+    private void cancelOutstandingReads() {
+        ReadContext readCtx;
+        while (null != (readCtx = outstandingReads.poll())) {
+            recordCache.releaseBytes(readCtx.reservedBytes);
+        }
+        outstandingReadBytes = 0L;
+    }
+
+    /**
+     * Parse the data of next entry and add it to record cache.
+     *
+     * @param entryData array holding the data of next entry.
+     * @param offset offset of the entry data in the array.
+     * @param len length of the entry data.
+     * @return false if the entry is corrupted.
+     */
+    private boolean addEntry(byte[] entryData, int offset, int len) {
+        Entry entry;
+        long startNanos = System.nanoTime();
+        try {
+            entry = Entry.of(segmentId, nextEntryId, entryData, offset, len);
+            verifyEntryStats.registerSuccessfulEvent(
+                    TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos));
+        } catch (CorruptedEntryException cee) {
+            verifyEntryStats.registerFailedEvent(
+                    TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos));
+            handleCorruptedEntry(cee);
+            return false;
+        }
+        if (entry.isDataEntry()) {
+            maxDataEntryNumBytes = Math.max(maxDataEntryNumBytes, entry.getNumBytes());
+        }
+        if (startSlotId > 0) {
+            recordCache.addEntry(entry, startSlotId);
+            startSlotId = 0L;
+        } else {
+            recordCache.addEntry(entry);
+        }
+        // advance entry id
+        ++nextEntryId;
+        nextWaitMs = readerWaitMs;
+        return true;
+    }
+
     private void readEntriesComplete() {
         if (recordCache.isCacheFull()) {
             logger.debug("Record cache for {} is full. ");
-            recordCache.setReadCallback(this);
+            waitForCacheSpace(estimateEntryNumBytes());
         } else if (this.metadata.isInprogress()) {
             logger.debug("Reach end of inprogress segment {} for {}. Backoff reading for {} ms.",
-                    new Object[] { segmentId, streamName, readerWaitMs });
+                    new Object[] { segmentId, streamName, nextWaitMs });
             backoff();
         } else {
             checkOrOpenLedger();
         }
     }
 
+    /**
+     * Wait for <i>numBytes</i> of space in record cache to read next entries.
+     *
+     * @param numBytes number of bytes to wait for.
+     */
+    private void waitForCacheSpace(long numBytes) {
+        waitingForCacheSpace = true;
+        recordCache.setReadCallback(this, numBytes);
+    }
+
     private void handleException(int rc) {
         if (Code.OK != rc) {
             logger.error("Encountered exception on reading segment {} of stream {} : bk rc = {}",
@@ -496,6 +951,14 @@ public class BKSegmentReader implements SegmentReader, Listener, Runnable, Resum
         }
     }
 
+    private void handleCorruptedEntry(CorruptedEntryException cee) {
+        logger.error("Encountered corrupted entry on reading segment {} of stream {} : ",
+                new Object[] { segmentId, streamName, cee });
+        corruptedEntriesCounter.inc();
+        this.readerListener.onError();
+        closeInternal("encountered corrupted entry");
+    }
+
     @Override
     public void onResume() {
         if (logger.isTraceEnabled()) {
@@ -586,26 +1049,80 @@ public class BKSegmentReader implements SegmentReader, Listener, Runnable, Resum
         }
         this.state = State.CLOSING;
         interrupt();
+        // nothing is pending while waiting for cache space, which may never be freed
+        if (waitingForCacheSpace) {
+            completeCloseFutures();
+        } else if (!outstandingReads.isEmpty()) {
+            // the completed reads parked behind the reads in flight are dropped now, and
+            // the reads in flight release their bytes when they complete after closing
+            releaseCompletedReads();
+            completeCloseFutures();
+        }
+    }
+
+    /**
+     * Complete closing the reader if it is closing, as the operation completed after
+     * the reader is closed shouldn't continue reading.
+     *
+     * @return true if the reader is closing or closed.
+     */
+    private boolean completeCloseIfClosing() {
+        if (State.CLOSING == state) {
+            completeCloseFutures();
+            return true;
+        }
+        return State.CLOSED == state;
     }
 
     private void completeCloseFutures() {
         this.state = State.CLOSED;
+        if (null != tailCache) {
+            tailCache.removeListener(streamName, segmentId, wakeupListener);
+        }
+        if (null != commitNotifier) {
+            commitNotifier.removeListener(streamName, segmentId, wakeupListener);
+        }
 
-        if (null != lh) {
+        if (null != lhs) {
+            final StripesContext closeCtx = new StripesContext(numStripes);
+            for (LedgerHandle lh : lhs) {
+                lh.asyncClose(new CloseCallback() {
+                    @Override
+                    public void closeComplete(int rc, LedgerHandle lh, Object ctx) {
+                        if (!closeCtx.complete(rc)) {
+                            return;
+                        }
+                        scheduler.submit(streamName, new Runnable() {
+                            @Override
+                            public void run() {
+                                completeCloseFutures0();
+                            }
+                        });
+                    }
+                }, null);
+            }
+            lhs = null;
+        } else {
+            completeCloseFutures0();
+        }
+    }
+
+    /**
+     * Close the opened ledger <i>handles</i> in background.
+     *
+     * @param handles ledger handles to close.
+     */
+    private void closeLedgers(LedgerHandle[] handles) {
+        for (LedgerHandle lh : handles) {
+            if (null == lh) {
+                continue;
+            }
             lh.asyncClose(new CloseCallback() {
                 @Override
                 public void closeComplete(int rc, LedgerHandle lh, Object ctx) {
-                    scheduler.submit(streamName, new Runnable() {
-                        @Override
-                        public void run() {
-                            completeCloseFutures0();
-                        }
-                    });
+                    // no-op
                 }
             }, null);
-            lh = null;
-        } else {
-            completeCloseFutures0();
         }
     }
 
@@ -18,6 +18,8 @@
  */
 package org.apache.bookkeeper.stream.segment;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.SettableFuture;
@@ -25,26 +27,42 @@ import org.apache.bookkeeper.client.AsyncCallback.AddCallback;
 import org.apache.bookkeeper.client.AsyncCallback.CloseCallback;
 import org.apache.bookkeeper.client.BKException.Code;
 import org.apache.bookkeeper.client.LedgerHandle;
+import org.apache.bookkeeper.stats.Counter;
 import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.stats.OpStatsLogger;
 import org.apache.bookkeeper.stats.StatsLogger;
 import org.apache.bookkeeper.stream.SSN;
+import org.apache.bookkeeper.stream.cache.TailEntryCache;
+import org.apache.bookkeeper.stream.common.MpscArrayQueue;
 import org.apache.bookkeeper.stream.common.Scheduler;
 import org.apache.bookkeeper.stream.common.Scheduler.OrderingListenableFuture;
 import org.apache.bookkeeper.stream.conf.StreamConfiguration;
 import org.apache.bookkeeper.stream.exceptions.BKException;
 import org.apache.bookkeeper.stream.exceptions.WriteCancelledException;
+import org.apache.bookkeeper.stream.exceptions.WriteRejectedException;
+import org.apache.bookkeeper.stream.io.CompressionCodec;
 import org.apache.bookkeeper.stream.io.Entry;
 import org.apache.bookkeeper.stream.io.Entry.EntryBuilder;
 import org.apache.bookkeeper.stream.io.Entry.EntryData;
+import org.apache.bookkeeper.stream.io.EntryBufferPool;
 import org.apache.bookkeeper.stream.io.Record;
+import org.apache.bookkeeper.stream.io.RecordFormat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * BookKeeper Based Segment Writer
@@ -61,9 +79,15 @@ public class BKSegmentWriter implements SegmentWriter, AddCallback {
 
         private StreamConfiguration _conf;
         private Segment _segment;
-        private LedgerHandle _lh;
+        private List<LedgerHandle> _lhs;
         private Scheduler _scheduler;
         private StatsLogger _statsLogger = NullStatsLogger.INSTANCE;
+        private CommitCoordinator _commitCoordinator = null;
+        private TailEntryCache _tailCache = null;
+        private CommitNotifier _commitNotifier = null;
+        private FlushListener _flushListener = null;
+        private int _writeQuorumSize = 0;
+        private int _ackQuorumSize = 0;
 
         private Builder() {}
 
@@ -96,7 +120,36 @@ public class BKSegmentWriter implements SegmentWriter, AddCallback {
          * @return builder
          */
         public Builder ledgerHandle(LedgerHandle lh) {
-            this._lh = lh;
+            this._lhs = Collections.singletonList(lh);
+            return this;
+        }
+
+        /**
+         * Set ledger handles of a striped segment to build segment writer. The handles
+         * should be in the order of the stripe ledgers in segment metadata.
+         *
+         * @param lhs ledger handles of the stripes.
+         * @return builder
+         * @see StreamSegmentMetadata#getLedgerIds()
+         */
+        public Builder stripeLedgerHandles(List<LedgerHandle> lhs) {
+            this._lhs = lhs;
+            return this;
+        }
+
+        /**
+         * Set the quorum sizes that the ledger handles were created with. Bookkeeper keeps
+         * writing the entry data to the other bookies of the write quorum after the ack
+         * quorum completes an add, so entry buffers are only pooled when the ack quorum
+         * is the whole write quorum. If not set, entry buffers aren't pooled.
+         *
+         * @param writeQuorumSize write quorum size of the ledgers.
+         * @param ackQuorumSize ack quorum size of the ledgers.
+         * @return builder
+         */
+        public Builder ledgerQuorumSizes(int writeQuorumSize, int ackQuorumSize) {
+            this._writeQuorumSize = writeQuorumSize;
+            this._ackQuorumSize = ackQuorumSize;
             return this;
         }
 
@@ -122,6 +175,53 @@ public class BKSegmentWriter implements SegmentWriter, AddCallback {
             return this;
         }
 
+        /**
+         * Set commit coordinator to batch the commits of segment writers. If not set,
+         * the segment writer schedules its own commits.
+         *
+         * @param coordinator commit coordinator.
+         * @return builder
+         */
+        public Builder commitCoordinator(CommitCoordinator coordinator) {
+            this._commitCoordinator = coordinator;
+            return this;
+        }
+
+        /**
+         * Set tail entry cache to publish the acknowledged entries to the readers
+         * in the same process.
+         *
+         * @param tailCache tail entry cache.
+         * @return builder
+         */
+        public Builder tailCache(TailEntryCache tailCache) {
+            this._tailCache = tailCache;
+            return this;
+        }
+
+        /**
+         * Set commit notifier to notify the readers in the same process when flushed
+         * entries become readable.
+         *
+         * @param commitNotifier commit notifier.
+         * @return builder
+         */
+        public Builder commitNotifier(CommitNotifier commitNotifier) {
+            this._commitNotifier = commitNotifier;
+            return this;
+        }
+
+        /**
+         * Set listener to be notified after flushing an entry.
+         *
+         * @param flushListener flush listener.
+         * @return builder
+         */
+        Builder flushListener(FlushListener flushListener) {
+            this._flushListener = flushListener;
+            return this;
+        }
+
         /**
          * Build the bookkeeper segment writer.
          *
@@ -129,23 +229,61 @@ public class BKSegmentWriter implements SegmentWriter, AddCallback {
          * @throws IOException on failing to build segment writer.
          */
         public BKSegmentWriter build() throws IOException {
+            Preconditions.checkNotNull(_lhs, "No ledger handle provided");
+            Preconditions.checkArgument(_lhs.size() == _segment.getSegmentMetadata().getNumStripes(),
+                    "Mismatched number of ledger handles for segment " + _segment.getSegmentMetadata());
             return new BKSegmentWriter(
                     _conf,
                     _segment,
-                    _lh,
+                    _lhs,
+                    _writeQuorumSize,
+                    _ackQuorumSize,
                     _scheduler,
-                    _statsLogger);
+                    _statsLogger,
+                    _commitCoordinator,
+                    _tailCache,
+                    _commitNotifier,
+                    _flushListener);
         }
 
     }
 
+    /**
+     * Listener to be notified after the writer flushes an entry.
+     */
+    interface FlushListener {
+
+        /**
+         * Called in the ordered executor of the stream after <i>writer</i> flushes an entry.
+         *
+         * @param writer writer that flushed the entry.
+         */
+        void onEntryFlushed(BKSegmentWriter writer);
+    }
+
     private static class AddEntryContext {
+        private final long entryId;
         private final Entry entry;
         private final SettableFuture<SSN> future;
+        private final long startNanos;
+        // entry data published to tail entry cache
+        private EntryData tailData = null;
 
-        private AddEntryContext(Entry entry, SettableFuture<SSN> future) {
+        private AddEntryContext(long entryId, Entry entry, SettableFuture<SSN> future) {
+            this.entryId = entryId;
             this.entry = entry;
             this.future = future;
+            this.startNanos = System.nanoTime();
+        }
+    }
+
+    private static class PendingWrite {
+        private final Record record;
+        private final SettableFuture<SSN> future;
+
+        private PendingWrite(Record record, SettableFuture<SSN> future) {
+            this.record = record;
+            this.future = future;
         }
     }
 
@@ -160,25 +298,65 @@ public class BKSegmentWriter implements SegmentWriter, AddCallback {
     private final StreamConfiguration conf;
     private final int entryBufferSize;
     private final int commitDelayMs;
+    private final int flushIntervalMs;
+    private final int maxOutstandingEntries;
+    private final long maxOutstandingBytes;
+    private final CompressionCodec compressionCodec;
+    private final boolean entryChecksumEnabled;
+    private final RecordFormat recordFormat;
+    private final int recordIndexInterval;
     // scheduler
     private final Scheduler scheduler;
+    // commit coordinator, null if the writer schedules its own commits
+    private final CommitCoordinator commitCoordinator;
+    private final TailEntryCache tailCache;
+    private final CommitNotifier commitNotifier;
+    // listener notified after flushing entries, null if not set
+    private final FlushListener flushListener;
     // stats logger
     private final StatsLogger statsLogger;
+    // latency of adding entries, in micros
+    private final OpStatsLogger addEntryStats;
+    // occupancy of the outstanding entries window, sampled on flushing entries
+    private final OpStatsLogger outstandingEntriesStats;
+    private final OpStatsLogger outstandingBytesStats;
+    private final Counter writeRejectedCounter;
+    // batching controller, null if adaptive batching is disabled
+    private final EntryBatchingController batchingController;
 
     // Segment Variables
     private final String streamName;
     private final String segmentName;
     private final long segmentId;
-    private final LedgerHandle lh;
+    // ledgers that entries are striped across, entry e is added to ledger e % numStripes
+    private final LedgerHandle[] lhs;
+    private final int numStripes;
 
     // pending entries
     private long lastNumRecords = 0L;
     private long lastNumBytes = 0L;
     private long numEntries = 0;
     private EntryBuilder curEntryBuilder;
+    // pool of entry buffers, null if pooling is disabled
+    private final EntryBufferPool entryBufferPool;
+    // queue of records written by producers, drained by the ordered executor. null if disabled
+    private final MpscArrayQueue<PendingWrite> ingestQueue;
+    private final AtomicBoolean ingestDrainScheduled = new AtomicBoolean(false);
+    private final Runnable drainIngestQueueTask = new Runnable() {
+        @Override
+        public void run() {
+            drainIngestQueue();
+        }
+    };
     // queue of outgoing entries
     private final Queue<Entry> pendingEntries =
             new LinkedBlockingQueue<>();
+    // bytes of outgoing entries
+    private long pendingBytes = 0L;
+    // entries added to bookkeeper but waiting for previous entries to be added,
+    // as adds to different stripes may complete out of order
+    private final Map<Long, AddEntryContext> addedEntries = new HashMap<>();
+    private long lastCompletedEntryId = -1L;
     // queue of entries added after writer in an error state
     private final Queue<SettableFuture<SSN>> errorQueue =
             new LinkedBlockingQueue<>();
@@ -198,19 +376,72 @@ public class BKSegmentWriter implements SegmentWriter, AddCallback {
 
     BKSegmentWriter(StreamConfiguration conf,
                     Segment segment,
-                    LedgerHandle lh,
+                    List<LedgerHandle> lhs,
+                    int writeQuorumSize,
+                    int ackQuorumSize,
                     Scheduler scheduler,
-                    StatsLogger statsLogger) throws IOException {
+                    StatsLogger statsLogger,
+                    CommitCoordinator commitCoordinator,
+                    TailEntryCache tailCache,
+                    CommitNotifier commitNotifier,
+                    FlushListener flushListener) throws IOException {
         this.conf = conf;
         this.streamName = segment.getStreamName();
         this.segmentName = segment.getSegmentMetadata().getSegmentName();
         this.segmentId = segment.getSegmentMetadata().getSegmentFormat().getSegmentId();
-        this.lh = lh;
+        this.lhs = lhs.toArray(new LedgerHandle[lhs.size()]);
+        this.numStripes = this.lhs.length;
         this.scheduler = scheduler;
         this.statsLogger = statsLogger;
+        this.commitCoordinator = commitCoordinator;
+        this.tailCache = tailCache;
+        this.commitNotifier = commitNotifier;
+        this.flushListener = flushListener;
+        this.addEntryStats = statsLogger.getOpStatsLogger("add_entry");
+        this.outstandingEntriesStats = statsLogger.getOpStatsLogger("outstanding_entries");
+        this.outstandingBytesStats = statsLogger.getOpStatsLogger("outstanding_bytes");
+        this.writeRejectedCounter = statsLogger.getCounter("write_rejected");
         // settings
         this.entryBufferSize = Math.max(0, conf.getSegmentWriterEntryBufferSize());
         this.commitDelayMs = Math.max(0, conf.getSegmentWriterCommitDelayMs());
+        this.flushIntervalMs = Math.max(0, conf.getSegmentWriterFlushIntervalMs());
+        this.maxOutstandingEntries = Math.max(0, conf.getSegmentWriterMaxOutstandingEntries());
+        this.maxOutstandingBytes = Math.max(0L, conf.getSegmentWriterMaxOutstandingBytes());
+        this.compressionCodec = conf.getSegmentWriterCompressionCodec();
+        this.entryChecksumEnabled = conf.isSegmentWriterEntryChecksumEnabled();
+        this.recordFormat = conf.getSegmentWriterRecordFormat();
+        this.recordIndexInterval = Math.max(0, conf.getSegmentWriterRecordIndexInterval());
+        int entryBufferPoolSize = conf.getSegmentWriterEntryBufferPoolSize();
+        // bookkeeper wraps the entry data without copying and completes an add once the
+        // ack quorum responds, while the writes to the remaining bookies of the write quorum
+        // may still be queued. a pooled buffer reused by then would corrupt those replicas,
+        // so buffers are only pooled when every bookie of the write quorum acks the add.
+        boolean ackAllWriteQuorum = writeQuorumSize > 0 && ackQuorumSize >= writeQuorumSize;
+        if (entryBufferPoolSize > 0 && ackAllWriteQuorum) {
+            this.entryBufferPool = new EntryBufferPool(entryBufferSize, entryBufferPoolSize);
+        } else {
+            if (entryBufferPoolSize > 0) {
+                logger.warn("Disabled entry buffer pool for segment {} @ {} : ack quorum {} doesn't cover"
+                        + " write quorum {}", new Object[] { segmentName, streamName, ackQuorumSize, writeQuorumSize });
+            }
+            this.entryBufferPool = null;
+        }
+        int ingestQueueSize = conf.getSegmentWriterIngestQueueSize();
+        if (ingestQueueSize > 0) {
+            this.ingestQueue = new MpscArrayQueue<>(ingestQueueSize);
+        } else {
+            this.ingestQueue = null;
+        }
+        if (conf.isSegmentWriterAdaptiveBatchingEnabled()) {
+            this.batchingController = new EntryBatchingController(
+                    Math.min(entryBufferSize, Math.max(0, conf.getSegmentWriterAdaptiveBatchingMinEntrySize())),
+                    entryBufferSize,
+                    TimeUnit.MILLISECONDS.toMicros(
+                            Math.max(1, conf.getSegmentWriterAdaptiveBatchingTargetAddLatencyMs())),
+                    Math.max(1, conf.getSegmentWriterAdaptiveBatchingMaxOutstandingEntries()));
+        } else {
+            this.batchingController = null;
+        }
 
         // entry
         this.curEntryBuilder = nextEntryBuilder();
@@ -228,11 +459,43 @@ public class BKSegmentWriter implements SegmentWriter, AddCallback {
             avgEntrySize = (int) (lastNumBytes / numEntries);
         }
         return Entry.newBuilder(segmentId, -1L,
-                lastNumRecords, lastNumBytes, Math.max(entryBufferSize, avgEntrySize));
+                lastNumRecords, lastNumBytes, Math.max(entryBufferSize, avgEntrySize),
+                entryBufferPool)
+                .setCompressionCodec(compressionCodec)
+                .setChecksumEnabled(entryChecksumEnabled)
+                .setRecordFormat(recordFormat)
+                .setRecordIndexInterval(recordIndexInterval);
+    }
+
+    /**
+     * Get number of records flushed to the segment. It is only accurate after the
+     * writer is closed.
+     *
+     * @return number of records flushed to the segment.
+     */
+    long getNumFlushedRecords() {
+        return lastNumRecords;
+    }
+
+    /**
+     * Get number of record bytes flushed to the segment. It should be called in the
+     * ordered executor of the stream.
+     *
+     * @return number of record bytes flushed to the segment.
+     */
+    long getNumFlushedBytes() {
+        return lastNumBytes;
     }
 
     /**
      * Write record to the segment.
+     * <p>
+     * If the outstanding entries window is full and the current entry is already full,
+     * the write is rejected with {@link WriteRejectedException}.
+     * <p>
+     * If the ingest queue is enabled, the record is appended to the queue without locking
+     * and drained in batches by the ordered executor. The write is rejected with
+     * {@link WriteRejectedException} if the ingest queue is full.
      *
      * @param record record to write
      * @return future representing the written result.
@@ -240,16 +503,120 @@ public class BKSegmentWriter implements SegmentWriter, AddCallback {
     @Override
     public OrderingListenableFuture<SSN> write(final Record record) {
         final SettableFuture<SSN> future = SettableFuture.create();
+        if (null == ingestQueue) {
+            scheduler.submit(streamName, new Runnable() {
+                @Override
+                public void run() {
+                    write0(record, future);
+                }
+            });
+        } else if (ingestQueue.offer(new PendingWrite(record, future))) {
+            // only submit a drain task if there isn't one pending
+            if (ingestDrainScheduled.compareAndSet(false, true)) {
+                scheduler.submit(streamName, drainIngestQueueTask);
+            }
+        } else {
+            writeRejectedCounter.inc();
+            future.setException(new WriteRejectedException(
+                    "Writing record rejected because ingest queue of segment " + segmentName + "@"
+                            + streamName + " is full : size = " + ingestQueue.capacity()));
+        }
+        return scheduler.createOrderingFuture(streamName, future);
+    }
+
+    /**
+     * Drain the records written before a flush, commit, close or batch write.
+     * <p>
+     * A drain task scheduled by another producer might not have been submitted yet, so
+     * the queued records have to be added before the operation to keep them in order.
+     */
+    private void drainPendingWrites() {
+        if (null != ingestQueue) {
+            drainIngestQueue();
+        }
+    }
+
+    /**
+     * Drain the records in ingest queue.
+     */
+    private void drainIngestQueue() {
+        // clear the flag before polling, so records offered after the last poll
+        // will schedule another drain
+        ingestDrainScheduled.set(false);
+        PendingWrite pendingWrite;
+        while (null != (pendingWrite = ingestQueue.poll())) {
+            write0(pendingWrite.record, pendingWrite.future);
+        }
+    }
+
+    @Override
+    public OrderingListenableFuture<SSN> writeBatch(List<Record> records) {
+        return writeBatch(records, null);
+    }
+
+    /**
+     * Write a batch of <i>records</i> to the segment in one task.
+     * <p>
+     * Records are added in order, just like being written one by one. The write is rejected
+     * with {@link WriteRejectedException} only if the outstanding entries window is full
+     * and the current entry is already full before the batch is added.
+     *
+     * @param records records to write
+     * @param ssns array to receive the ssn of each record. it is filled when the returned
+     *             future is satisfied. null if the ssn of each record isn't needed.
+     * @return future representing the written result, satisfied with the ssn of the last record.
+     */
+    @Override
+    public OrderingListenableFuture<SSN> writeBatch(final List<Record> records, final SSN[] ssns) {
+        Preconditions.checkArgument(!records.isEmpty(), "No records to write");
+        Preconditions.checkArgument(null == ssns || ssns.length >= records.size(),
+                "SSN array is smaller than the batch");
+        final SettableFuture<SSN> future = SettableFuture.create();
         scheduler.submit(streamName, new Runnable() {
             @Override
             public void run() {
-                write0(record, future);
+                drainPendingWrites();
+                writeBatch0(records, ssns, future);
             }
         });
         return scheduler.createOrderingFuture(streamName, future);
     }
 
     private void write0(Record record, SettableFuture<SSN> future) {
+        if (isWriteCancelled(future) || isWriteRejected(future)) {
+            return;
+        }
+        addRecord(record, future, future);
+    }
+
+    private void writeBatch0(List<Record> records, SSN[] ssns, SettableFuture<SSN> future) {
+        if (isWriteCancelled(future) || isWriteRejected(future)) {
+            return;
+        }
+        int lastIndex = records.size() - 1;
+        for (int i = 0; i <= lastIndex; i++) {
+            // writer might be in error state after flushing entries of this batch
+            if (i > 0 && isWriteCancelled(future)) {
+                return;
+            }
+            if (null != ssns) {
+                // entries are appended in order, so the ssn is known when adding the record
+                ssns[i] = SSN.of(segmentId, numEntries, curEntryBuilder.getNumPendingRecords());
+            }
+            // only the last record carries the future, as entries are completed in order
+            if (!addRecord(records.get(i), i == lastIndex ? future : null, future)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Cancel the write of <i>future</i> if the writer is in error state or closed.
+     *
+     * @param future future of the write
+     * @return true if the write is cancelled, otherwise false.
+     */
+    private boolean isWriteCancelled(SettableFuture<SSN> future) {
         if (inErrorState) {
             if (pendingEntries.isEmpty()) {
                 future.setException(new WriteCancelledException(
@@ -258,7 +625,7 @@ public class BKSegmentWriter implements SegmentWriter, AddCallback {
             } else {
                 errorQueue.add(future);
             }
-            return;
+            return true;
         }
 
         if (State.CLOSING == state || State.CLOSED == state) {
@@ -269,16 +636,50 @@ public class BKSegmentWriter implements SegmentWriter, AddCallback {
             } else {
                 errorQueue.add(future);
             }
-            return;
+            return true;
         }
+        return false;
+    }
 
+    /**
+     * Reject the write of <i>future</i> if the current entry is waiting for the outstanding
+     * entries window.
+     *
+     * @param future future of the write
+     * @return true if the write is rejected, otherwise false.
+     */
+    private boolean isWriteRejected(SettableFuture<SSN> future) {
+        if (null != curEntryBuilder && curEntryBuilder.getBufferSize() > getFlushThreshold()
+                && isOutstandingWindowFull()) {
+            // the current entry is waiting for the window, don't buffer more records
+            writeRejectedCounter.inc();
+            future.setException(new WriteRejectedException(
+                    "Writing record rejected because segment " + segmentName + "@" + streamName
+                            + " has too much outstanding data : entries = " + pendingEntries.size()
+                            + ", bytes = " + pendingBytes));
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Add <i>record</i> to current entry.
+     *
+     * @param record record to add
+     * @param recordFuture future to satisfy when the record is persisted. it could be null.
+     * @param future future to fail if the record can't be added.
+     * @return true if the record is added, otherwise false.
+     */
+    private boolean addRecord(Record record,
+                              SettableFuture<SSN> recordFuture,
+                              SettableFuture<SSN> future) {
         if (logger.isTraceEnabled()) {
             logger.trace("Adding record {} to segment {} @ {}",
                     new Object[] { record, segmentName, streamName });
         }
 
         try {
-            curEntryBuilder.addRecord(record, future);
+            curEntryBuilder.addRecord(record, recordFuture);
         } catch (IOException ioe) {
             logger.error("Encountered unexpected exception on adding record {} to {}@{} : ",
                     new Object[] { record, segmentName, streamName, ioe });
@@ -291,32 +692,94 @@ public class BKSegmentWriter implements SegmentWriter, AddCallback {
                 future.setException(wce);
             } else {
                 Entry entry = curEntryBuilder.asDataEntry().build();
-                List<SettableFuture<SSN>> futureList = entry.getRecordFutureList().get();
-                errorQueue.addAll(futureList);
+                for (SettableFuture<SSN> futureInEntry : entry.getRecordFutureList().get()) {
+                    if (null != futureInEntry) {
+                        errorQueue.add(futureInEntry);
+                    }
+                }
                 errorQueue.add(future);
+                entry.release();
                 curEntryBuilder = null;
             }
-            return;
+            return false;
+        }
+        if (flushIntervalMs > 0 && 1 == curEntryBuilder.getNumPendingRecords()) {
+            scheduleFlush(curEntryBuilder);
         }
         flushIfNeeded();
+        return true;
+    }
+
+    /**
+     * Schedule a flush of <i>entryBuilder</i> after flush interval, so records added to it
+     * won't be kept in the buffer longer than flush interval. The flush is skipped if the
+     * entry is already flushed by then.
+     *
+     * @param entryBuilder entry builder to flush.
+     */
+    private void scheduleFlush(final EntryBuilder entryBuilder) {
+        scheduler.schedule(streamName, new Runnable() {
+            @Override
+            public void run() {
+                if (entryBuilder != curEntryBuilder || State.INITIALIZED != state) {
+                    return;
+                }
+                if (isOutstandingWindowFull()) {
+                    // check again after flush interval, the entry is flushed by then
+                    // if the window is released by completed entries.
+                    scheduleFlush(entryBuilder);
+                    return;
+                }
+                if (logger.isTraceEnabled()) {
+                    logger.trace("Trigger flushing current entry {} to segment {} @ {}" +
+                                    " after its records are buffered for {} ms",
+                            new Object[] { numEntries, segmentName, streamName, flushIntervalMs });
+                }
+                flush0(false, null);
+            }
+        }, flushIntervalMs, TimeUnit.MILLISECONDS);
     }
 
     /**
      * Flush current entry buffer if needed
      */
     private void flushIfNeeded() {
+        int flushThreshold = getFlushThreshold();
         if (null != curEntryBuilder &&
-                curEntryBuilder.getBufferSize() > entryBufferSize) {
+                curEntryBuilder.getBufferSize() > flushThreshold) {
+            if (isOutstandingWindowFull()) {
+                // the entry will be flushed when outstanding entries are completed
+                return;
+            }
             if (logger.isTraceEnabled()) {
                 logger.trace("Trigger flushing current entry {} to segment {} @ {}" +
                                 " when its buffer size {} reached threshold {}",
                         new Object[] { numEntries, segmentName, streamName,
-                                curEntryBuilder.getBufferSize(), entryBufferSize });
+                                curEntryBuilder.getBufferSize(), flushThreshold });
             }
             flush0(false, null);
         }
     }
 
+    @VisibleForTesting
+    AtomicBoolean getIngestDrainScheduled() {
+        return ingestDrainScheduled;
+    }
+
+    @VisibleForTesting
+    int getFlushThreshold() {
+        return null == batchingController ?
+                entryBufferSize : batchingController.getFlushThreshold();
+    }
+
+    /**
+     * @return true if the outstanding entries reach max outstanding entries or bytes.
+     */
+    private boolean isOutstandingWindowFull() {
+        return (maxOutstandingEntries > 0 && pendingEntries.size() >= maxOutstandingEntries)
+                || (maxOutstandingBytes > 0 && pendingBytes >= maxOutstandingBytes);
+    }
+
     /**
      * Check the writer state and satisfy future (for flush and commit)
      *
@@ -352,6 +815,7 @@ public class BKSegmentWriter implements SegmentWriter, AddCallback {
         scheduler.submit(streamName, new Runnable() {
             @Override
             public void run() {
+                drainPendingWrites();
                 if (checkWriterStateAndSatisfyFuture(future)) {
                     return;
                 }
@@ -383,18 +847,22 @@ public class BKSegmentWriter implements SegmentWriter, AddCallback {
         Entry entry = entryBuilder.build();
 
         // 2. add current entry to pending queue
+        EntryData entryData = entry.getEntryData();
         pendingEntries.add(entry);
+        pendingBytes += entryData.len;
+        outstandingEntriesStats.registerSuccessfulEvent(pendingEntries.size());
+        outstandingBytesStats.registerSuccessfulEvent(pendingBytes);
 
         // 3. flush current entry to bookkeeper
-        AddEntryContext addCtx = new AddEntryContext(entry, future);
-        EntryData entryData = entry.getEntryData();
+        AddEntryContext addCtx = new AddEntryContext(numEntries, entry, future);
 
         if (logger.isTraceEnabled()) {
             logger.trace("Flushing entry {} : {} to segment {} @ {}",
                     new Object[] { numEntries, entry, segmentName, streamName });
         }
 
-        lh.asyncAddEntry(entryData.data, entryData.offset, entryData.len, this, addCtx);
+        lhs[(int) (numEntries % numStripes)].asyncAddEntry(
+                entryData.data, entryData.offset, entryData.len, this, addCtx);
 
         // 4. flushing an entry will commit any uncommitted data.
         hasDataUncommitted = false;
@@ -412,6 +880,10 @@ public class BKSegmentWriter implements SegmentWriter, AddCallback {
             inErrorState = true;
             curEntryBuilder = null;
         }
+
+        if (null != flushListener) {
+            flushListener.onEntryFlushed(this);
+        }
     }
 
     /**
@@ -426,6 +898,7 @@ public class BKSegmentWriter implements SegmentWriter, AddCallback {
         scheduler.submit(streamName, new Runnable() {
             @Override
             public void run() {
+                drainPendingWrites();
                 commit0(future);
             }
         });
@@ -450,8 +923,15 @@ public class BKSegmentWriter implements SegmentWriter, AddCallback {
                     " has_data_uncommitted = {}, has_pending_records = {}",
                     new Object[] { segmentName, streamName, hasDataUncommitted, hasPendingRecords });
         }
-        if (hasDataUncommitted || hasPendingRecords) {
-            flush0(!hasPendingRecords, future);
+        if (hasPendingRecords) {
+            flush0(false, future);
+        } else if (hasDataUncommitted) {
+            // a stripe ledger only advances its lac on next add, so commit entries
+            // are added to all the stripes to make the flushed data readable.
+            for (int i = 1; i < numStripes; i++) {
+                flush0(true, null);
+            }
+            flush0(true, future);
         } else {
             if (null != future) {
                 future.set(lastFlushedSSN);
@@ -468,6 +948,11 @@ public class BKSegmentWriter implements SegmentWriter, AddCallback {
                     segmentName, streamName);
             return;
         }
+        if (null != commitCoordinator) {
+            isCommitScheduled = true;
+            commitCoordinator.requestCommit(this);
+            return;
+        }
         scheduler.schedule(streamName, new Runnable() {
             @Override
             public void run() {
@@ -476,6 +961,18 @@ public class BKSegmentWriter implements SegmentWriter, AddCallback {
         }, commitDelayMs, TimeUnit.MILLISECONDS);
     }
 
+    /**
+     * Execute the commit requested by the commit coordinator.
+     */
+    void commitRequested() {
+        scheduler.submit(streamName, new Runnable() {
+            @Override
+            public void run() {
+                commit0(null);
+            }
+        });
+    }
+
     @Override
     public void addComplete(final int rc,
                             final LedgerHandle lh,
@@ -485,31 +982,74 @@ public class BKSegmentWriter implements SegmentWriter, AddCallback {
         scheduler.submit(streamName, new Runnable() {
             @Override
             public void run() {
-                addComplete0(rc, entryId, addCtx);
+                addComplete0(rc, addCtx);
             }
         });
     }
 
-    private void addComplete0(final int rc, final long entryId,
-                              AddEntryContext addCtx) {
+    private void addComplete0(final int rc, AddEntryContext addCtx) {
+        if (Code.OK == rc && null != tailCache && State.INITIALIZED == state) {
+            EntryData entryData = addCtx.entry.getEntryData();
+            if (null == entryBufferPool) {
+                // the entry data is never written again, hand it over without copying
+                addCtx.tailData = entryData;
+            } else {
+                // copy the entry data before its buffer is released back to the pool
+                addCtx.tailData = new EntryData(Arrays.copyOfRange(entryData.data,
+                        entryData.offset, entryData.offset + entryData.len), 0, entryData.len);
+            }
+        }
+        // the buffer is only pooled when the ack quorum is the whole write quorum, so no
+        // bookie write still references the entry data after the add is completed
+        addCtx.entry.release();
+        long latencyMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - addCtx.startNanos);
+        if (Code.OK == rc) {
+            addEntryStats.registerSuccessfulEvent(latencyMicros);
+        } else {
+            addEntryStats.registerFailedEvent(latencyMicros);
+        }
+
         if (Code.OK != lastBkResult) {
             // all pending entries are already error out.
             return;
         }
 
         if (Code.OK == rc) {
-            // entry is flushed to bookkeeper, but not committed yet.
-            if (addCtx.entry.isDataEntry()) {
-                hasDataUncommitted = true;
-                scheduleCommit();
+            if (null != batchingController) {
+                // the completed entry is still in pending queue
+                batchingController.onEntryAdded(latencyMicros, pendingEntries.size() - 1);
             }
-            completeEntry(entryId, addCtx.entry);
-            if (addCtx.future != null) {
-                addCtx.future.set(lastFlushedSSN);
+            // complete the entries in order
+            addedEntries.put(addCtx.entryId, addCtx);
+            long prevCompletedEntryId = lastCompletedEntryId;
+            AddEntryContext nextCtx;
+            while (null != (nextCtx = addedEntries.remove(lastCompletedEntryId + 1))) {
+                ++lastCompletedEntryId;
+                // entry is flushed to bookkeeper, but not committed yet.
+                if (nextCtx.entry.isDataEntry()) {
+                    hasDataUncommitted = true;
+                    scheduleCommit();
+                }
+                completeEntry(nextCtx.entryId, nextCtx.entry);
+                if (null != nextCtx.tailData && State.INITIALIZED == state) {
+                    tailCache.addEntry(streamName, segmentId, nextCtx.entryId, nextCtx.tailData);
+                }
+                if (nextCtx.future != null) {
+                    nextCtx.future.set(lastFlushedSSN);
+                }
+            }
+            // bookies only learn the last add confirmed of a stripe from the entries added after it,
+            // so completing entry e confirms the entries up to e - numStripes to readers.
+            if (null != commitNotifier && lastCompletedEntryId > prevCompletedEntryId
+                    && lastCompletedEntryId - numStripes >= 0) {
+                commitNotifier.notifyCommit(streamName, segmentId);
             }
 
             if (State.CLOSING == state || State.CLOSED == state) {
                 errorOutEntriesIfNecessary(null);
+            } else {
+                // flush the entry held by a full window
+                flushIfNeeded();
             }
         } else {
             lastBkResult = rc;
@@ -517,6 +1057,12 @@ public class BKSegmentWriter implements SegmentWriter, AddCallback {
                     org.apache.bookkeeper.client.BKException.getMessage(rc));
             // error out all pending entries
             errorOutPendingEntries(bkException);
+            for (AddEntryContext addedCtx : addedEntries.values()) {
+                if (null != addedCtx.future) {
+                    addedCtx.future.setException(bkException);
+                }
+            }
+            addedEntries.clear();
             // cancel current entry
             cancelCurrentEntry(bkException);
             if (addCtx.future != null) {
@@ -577,7 +1123,9 @@ public class BKSegmentWriter implements SegmentWriter, AddCallback {
      * @param entry entry to complete
      */
     private void completeEntry(long entryId, Entry entry) {
-        pendingEntries.remove(entry);
+        if (pendingEntries.remove(entry)) {
+            pendingBytes -= entry.getEntryData().len;
+        }
         SSN lastSSNInEntry = entry.completeRecordFutures(entryId);
         if (lastSSNInEntry.compareTo(lastFlushedSSN) > 0) {
             lastFlushedSSN = lastSSNInEntry;
@@ -592,6 +1140,7 @@ public class BKSegmentWriter implements SegmentWriter, AddCallback {
     private void errorOutPendingEntries(Throwable t) {
         Entry entry;
         while (null != (entry = pendingEntries.poll())) {
+            pendingBytes -= entry.getEntryData().len;
             entry.cancelRecordFutures(t);
         }
     }
@@ -611,6 +1160,9 @@ public class BKSegmentWriter implements SegmentWriter, AddCallback {
                         + "@" + streamName + " is cancelled because encountering bookkeeper exception : ", t);
         Entry entry = curEntryBuilder.asDataEntry().build();
         entry.cancelRecordFutures(wce);
+        entry.release();
+        // the cancelled entry should never be flushed
+        curEntryBuilder = null;
     }
 
     @Override
@@ -619,6 +1171,7 @@ public class BKSegmentWriter implements SegmentWriter, AddCallback {
         scheduler.submit(streamName, new Runnable() {
             @Override
             public void run() {
+                drainPendingWrites();
                 close0(future);
             }
         });
@@ -632,6 +1185,10 @@ public class BKSegmentWriter implements SegmentWriter, AddCallback {
             return;
         }
         state = State.CLOSING;
+        if (null != tailCache) {
+            // readers read the remaining entries from bookies once the segment is completed
+            tailCache.removeSegment(streamName, segmentId);
+        }
         if (Code.OK == lastBkResult) {
             flushAndCloseLedger();
             return;
@@ -647,16 +1204,16 @@ public class BKSegmentWriter implements SegmentWriter, AddCallback {
     private void flushAndCloseLedger() {
         final SettableFuture<SSN> flushFuture = SettableFuture.create();
         if (logger.isTraceEnabled()) {
-            logger.trace("Flushing buffered data to segment {} @ {} before closing ledger {}",
-                    new Object[] { segmentName, streamName, lh.getId() });
+            logger.trace("Flushing buffered data to segment {} @ {} before closing ledgers {}",
+                    new Object[] { segmentName, streamName, getLedgerIds() });
         }
         flush0(false, flushFuture);
         Futures.addCallback(flushFuture, new FutureCallback<SSN>() {
             @Override
             public void onSuccess(SSN ssn) {
                 if (logger.isTraceEnabled()) {
-                    logger.trace("Closing ledger {} for segment {} @ {} after flushing buffered data",
-                            new Object[] { lh.getId(), segmentName, streamName });
+                    logger.trace("Closing ledgers {} for segment {} @ {} after flushing buffered data",
+                            new Object[] { getLedgerIds(), segmentName, streamName });
                 }
                 closeLedger();
             }
@@ -669,26 +1226,40 @@ public class BKSegmentWriter implements SegmentWriter, AddCallback {
         });
     }
 
+    private List<Long> getLedgerIds() {
+        List<Long> ledgerIds = new ArrayList<>(numStripes);
+        for (LedgerHandle lh : lhs) {
+            ledgerIds.add(lh.getId());
+        }
+        return ledgerIds;
+    }
+
     /**
-     * Close the ledger.
+     * Close the ledgers.
      */
     private void closeLedger() {
-        lh.asyncClose(new CloseCallback() {
-            @Override
-            public void closeComplete(int rc, LedgerHandle lh, Object ctx) {
-                if (logger.isTraceEnabled()) {
-                    logger.trace("Finished closing ledger {} for segment {} @ {} : rc = {}",
-                            new Object[] { lh.getId(), segmentName, streamName, rc });
-                }
-                if (Code.OK != rc && Code.LedgerClosedException != rc) {
-                    errorOutEntriesIfNecessary(new BKException(rc, "Failed to close ledger " + lh.getId() + " : "
-                            + org.apache.bookkeeper.client.BKException.getMessage(rc)));
-                } else {
-                    errorOutEntriesIfNecessary(null);
+        final AtomicInteger numPendingCloses = new AtomicInteger(numStripes);
+        final AtomicReference<BKException> closeException = new AtomicReference<>(null);
+        for (LedgerHandle stripeLh : lhs) {
+            stripeLh.asyncClose(new CloseCallback() {
+                @Override
+                public void closeComplete(int rc, LedgerHandle lh, Object ctx) {
+                    if (logger.isTraceEnabled()) {
+                        logger.trace("Finished closing ledger {} for segment {} @ {} : rc = {}",
+                                new Object[] { lh.getId(), segmentName, streamName, rc });
+                    }
+                    if (Code.OK != rc && Code.LedgerClosedException != rc) {
+                        closeException.compareAndSet(null, new BKException(rc,
+                                "Failed to close ledger " + lh.getId() + " : "
+                                + org.apache.bookkeeper.client.BKException.getMessage(rc)));
+                    }
+                    if (numPendingCloses.decrementAndGet() == 0) {
+                        errorOutEntriesIfNecessary(closeException.get());
+                        state = State.CLOSED;
+                    }
                 }
-                state = State.CLOSED;
-            }
-        }, null);
+            }, null);
+        }
     }
 
 }
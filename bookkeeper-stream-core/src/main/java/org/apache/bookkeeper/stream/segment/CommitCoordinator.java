@@ -0,0 +1,187 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.stream.segment;
+
+import com.google.common.base.Preconditions;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.stream.common.Scheduler;
+import org.apache.bookkeeper.stream.conf.StreamConfiguration;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Coordinator to batch and rate limit the commits of segment writers sharing a scheduler.
+ *
+ * <p>
+ * Without a coordinator, each segment writer schedules its own commit entry
+ * <i>segment.writer.commit.delay.ms</i> after flushing data. With a coordinator,
+ * writers enqueue their commit requests, and the coordinator emits the queued commits
+ * once every commit interval, at most <i>segment.writer.commit.max.per.interval</i>
+ * commits per interval. A writer that requests commits multiple times before its commit
+ * is emitted is committed once, and the commits exceeding the limit are deferred to
+ * next interval. So the commit entries of many mostly idle streams are bounded by
+ * the coordinator instead of growing with the number of streams.
+ */
+public class CommitCoordinator {
+
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+
+        private StreamConfiguration _conf;
+        private Scheduler _scheduler;
+        private StatsLogger _statsLogger = NullStatsLogger.INSTANCE;
+
+        private Builder() {}
+
+        /**
+         * Set stream configuration.
+         *
+         * @param conf stream configuration
+         * @return builder
+         */
+        public Builder conf(StreamConfiguration conf) {
+            this._conf = conf;
+            return this;
+        }
+
+        /**
+         * Set scheduler shared by the segment writers.
+         *
+         * @param scheduler scheduler shared by the segment writers.
+         * @return builder
+         */
+        public Builder scheduler(Scheduler scheduler) {
+            this._scheduler = scheduler;
+            return this;
+        }
+
+        /**
+         * Set stats logger used by commit coordinator.
+         *
+         * @param statsLogger stats logger
+         * @return builder
+         */
+        public Builder statsLogger(StatsLogger statsLogger) {
+            this._statsLogger = statsLogger;
+            return this;
+        }
+
+        /**
+         * Build the commit coordinator.
+         *
+         * @return commit coordinator.
+         */
+        public CommitCoordinator build() {
+            Preconditions.checkNotNull(_conf, "No stream configuration provided");
+            Preconditions.checkNotNull(_scheduler, "No scheduler provided");
+            return new CommitCoordinator(_conf, _scheduler, _statsLogger);
+        }
+    }
+
+    private final Scheduler scheduler;
+    private final int commitIntervalMs;
+    private final int maxCommitsPerInterval;
+    // writers requested commits
+    private final Queue<BKSegmentWriter> commitRequests = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean emitScheduled = new AtomicBoolean(false);
+    private final Runnable emitCommitsTask = new Runnable() {
+        @Override
+        public void run() {
+            emitCommits();
+        }
+    };
+    private volatile boolean closed = false;
+    // stats
+    private final Counter commitRequestsCounter;
+    private final Counter commitsEmittedCounter;
+    private final Counter commitsDeferredCounter;
+
+    CommitCoordinator(StreamConfiguration conf,
+                      Scheduler scheduler,
+                      StatsLogger statsLogger) {
+        this.scheduler = scheduler;
+        this.commitIntervalMs = Math.max(0, conf.getSegmentWriterCommitDelayMs());
+        this.maxCommitsPerInterval = Math.max(0, conf.getSegmentWriterCommitMaxPerInterval());
+        this.commitRequestsCounter = statsLogger.getCounter("commit_requests");
+        this.commitsEmittedCounter = statsLogger.getCounter("commits_emitted");
+        this.commitsDeferredCounter = statsLogger.getCounter("commits_deferred");
+    }
+
+    /**
+     * Request a commit for <i>writer</i>. The writer should not request again until
+     * its requested commit is executed.
+     *
+     * @param writer writer to commit.
+     */
+    void requestCommit(BKSegmentWriter writer) {
+        commitRequestsCounter.inc();
+        if (closed) {
+            writer.commitRequested();
+            return;
+        }
+        commitRequests.add(writer);
+        scheduleEmitCommits();
+    }
+
+    private void scheduleEmitCommits() {
+        if (!closed && emitScheduled.compareAndSet(false, true)) {
+            scheduler.schedule(emitCommitsTask, commitIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Emit the commits requested in last interval.
+     */
+    private void emitCommits() {
+        int numCommits = 0;
+        BKSegmentWriter writer;
+        while ((maxCommitsPerInterval <= 0 || numCommits < maxCommitsPerInterval)
+                && null != (writer = commitRequests.poll())) {
+            writer.commitRequested();
+            ++numCommits;
+        }
+        commitsEmittedCounter.add(numCommits);
+        if (!commitRequests.isEmpty()) {
+            commitsDeferredCounter.add(commitRequests.size());
+        }
+        emitScheduled.set(false);
+        if (!commitRequests.isEmpty()) {
+            scheduleEmitCommits();
+        }
+    }
+
+    /**
+     * Close the coordinator. The pending commit requests are emitted immediately.
+     */
+    public void close() {
+        closed = true;
+        BKSegmentWriter writer;
+        while (null != (writer = commitRequests.poll())) {
+            writer.commitRequested();
+        }
+    }
+}
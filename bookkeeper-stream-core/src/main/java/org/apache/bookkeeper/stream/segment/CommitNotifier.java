@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.stream.segment;
+
+import org.apache.bookkeeper.stream.common.Resumeable;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/**
+ * Process-local notifier to notify segment readers when the entries of an inprogress
+ * segment become readable.
+ *
+ * <p>
+ * BookKeeper doesn't support long polling the last add confirmed of a ledger, so a reader
+ * reaching end of an inprogress segment has to wait and read the last add confirmed again.
+ * Segment writers built with a notifier notify the readers of the same segment once their
+ * entries are acknowledged, so the readers in the same process read the new entries right
+ * away instead of waiting for the next poll.
+ */
+public class CommitNotifier {
+
+    private final ConcurrentMap<String, Set<Resumeable>> listeners = new ConcurrentHashMap<>();
+    // lock serializing adding and removing listeners, so the listeners of a segment aren't
+    // removed from the map while a listener is being added to them
+    private final Object listenersLock = new Object();
+
+    private static String segmentKey(String streamName, long segmentId) {
+        return streamName + "#" + segmentId;
+    }
+
+    /**
+     * Add <i>listener</i> to be notified when new entries of segment <i>segmentId</i>
+     * become readable.
+     *
+     * @param streamName stream name
+     * @param segmentId segment id
+     * @param listener listener to be notified.
+     */
+    public void addListener(String streamName, long segmentId, Resumeable listener) {
+        String key = segmentKey(streamName, segmentId);
+        synchronized (listenersLock) {
+            Set<Resumeable> segmentListeners = listeners.get(key);
+            if (null == segmentListeners) {
+                segmentListeners = new CopyOnWriteArraySet<>();
+                listeners.put(key, segmentListeners);
+            }
+            segmentListeners.add(listener);
+        }
+    }
+
+    /**
+     * Remove <i>listener</i> from segment <i>segmentId</i>.
+     *
+     * @param streamName stream name
+     * @param segmentId segment id
+     * @param listener listener to remove.
+     */
+    public void removeListener(String streamName, long segmentId, Resumeable listener) {
+        String key = segmentKey(streamName, segmentId);
+        synchronized (listenersLock) {
+            Set<Resumeable> segmentListeners = listeners.get(key);
+            if (null == segmentListeners) {
+                return;
+            }
+            segmentListeners.remove(listener);
+            if (segmentListeners.isEmpty()) {
+                listeners.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Notify the listeners of segment <i>segmentId</i> that new entries become readable.
+     *
+     * @param streamName stream name
+     * @param segmentId segment id
+     */
+    public void notifyCommit(String streamName, long segmentId) {
+        Set<Resumeable> segmentListeners = listeners.get(segmentKey(streamName, segmentId));
+        if (null == segmentListeners) {
+            return;
+        }
+        for (Resumeable listener : segmentListeners) {
+            listener.onResume();
+        }
+    }
+}
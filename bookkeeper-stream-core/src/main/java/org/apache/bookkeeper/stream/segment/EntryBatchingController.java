@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.stream.segment;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Controller to adapt the flush threshold of entries to the observed add latency.
+ *
+ * <p>
+ * Similar to Nagle's algorithm, the writer flushes small entries when bookies keep up,
+ * which gives low latency, and batches records into larger entries when bookies slow
+ * down, which gives higher throughput. After each entry is added, the threshold is
+ * doubled if the add latency exceeds the target latency or too many entries are
+ * outstanding, otherwise it is decreased by a fixed step. The threshold is bounded
+ * by <i>[minThreshold, maxThreshold]</i> and starts from <i>maxThreshold</i>.
+ *
+ * <p>
+ * The controller is not thread-safe. It is expected to be accessed by the ordered
+ * executor of the stream.
+ */
+class EntryBatchingController {
+
+    // number of steps to decrease the threshold from max to min
+    private static final int NUM_DECREASE_STEPS = 16;
+
+    private final int minThreshold;
+    private final int maxThreshold;
+    private final long targetLatencyMicros;
+    private final int maxOutstandingEntries;
+    private final int decreaseStep;
+    private int threshold;
+
+    /**
+     * Construct a batching controller.
+     *
+     * @param minThreshold
+     *          min flush threshold in bytes.
+     * @param maxThreshold
+     *          max flush threshold in bytes.
+     * @param targetLatencyMicros
+     *          target add latency in micros.
+     * @param maxOutstandingEntries
+     *          max number of outstanding entries before batching more records.
+     */
+    EntryBatchingController(int minThreshold,
+                            int maxThreshold,
+                            long targetLatencyMicros,
+                            int maxOutstandingEntries) {
+        Preconditions.checkArgument(minThreshold >= 0 && minThreshold <= maxThreshold,
+                "Invalid flush threshold range : [" + minThreshold + ", " + maxThreshold + "]");
+        Preconditions.checkArgument(targetLatencyMicros > 0,
+                "Invalid target latency : " + targetLatencyMicros);
+        Preconditions.checkArgument(maxOutstandingEntries > 0,
+                "Invalid max outstanding entries : " + maxOutstandingEntries);
+        this.minThreshold = minThreshold;
+        this.maxThreshold = maxThreshold;
+        this.targetLatencyMicros = targetLatencyMicros;
+        this.maxOutstandingEntries = maxOutstandingEntries;
+        this.decreaseStep = Math.max(1, (maxThreshold - minThreshold) / NUM_DECREASE_STEPS);
+        this.threshold = maxThreshold;
+    }
+
+    /**
+     * @return current flush threshold in bytes.
+     */
+    int getFlushThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Adjust the flush threshold after an entry is added.
+     *
+     * @param latencyMicros
+     *          add latency of the entry in micros.
+     * @param numOutstandingEntries
+     *          number of entries still outstanding.
+     */
+    void onEntryAdded(long latencyMicros, int numOutstandingEntries) {
+        if (latencyMicros > targetLatencyMicros || numOutstandingEntries > maxOutstandingEntries) {
+            // bookies are falling behind, batch more records per entry
+            threshold = (int) Math.min((long) maxThreshold, Math.max(1L, 2L * threshold));
+        } else {
+            threshold = Math.max(minThreshold, threshold - decreaseStep);
+        }
+    }
+}
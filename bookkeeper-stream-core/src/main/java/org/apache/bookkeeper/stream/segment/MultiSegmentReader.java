@@ -0,0 +1,523 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.stream.segment;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import org.apache.bookkeeper.client.BookKeeper;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.stream.SSN;
+import org.apache.bookkeeper.stream.cache.EntryReceiver;
+import org.apache.bookkeeper.stream.common.Resumeable;
+import org.apache.bookkeeper.stream.common.Scheduler;
+import org.apache.bookkeeper.stream.common.Scheduler.OrderingListenableFuture;
+import org.apache.bookkeeper.stream.conf.StreamConfiguration;
+import org.apache.bookkeeper.stream.io.Entry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+
+/**
+ * Reader to read entries from a sequence of segments of a stream.
+ *
+ * <p>
+ * While the records of a segment are consumed, the reader opens and reads the next
+ * <i>segment.reader.prefetch.num.segments</i> segments ahead, so the latency of opening
+ * ledgers and reading the first entries of a segment overlaps with the consumption of
+ * the segments before it. The entries of a prefetched segment are buffered, up to
+ * <i>reader.cache.max.num.bytes</i> per segment, and added to the record cache once
+ * the segments before it are consumed.
+ *
+ * <p>
+ * The reader notifies {@link SegmentReader.Listener#onEndOfSegment()} when it reaches
+ * the end of the last segment.
+ */
+public class MultiSegmentReader implements SegmentReader {
+
+    private static final Logger logger = LoggerFactory.getLogger(MultiSegmentReader.class);
+
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+
+        private StreamConfiguration _conf;
+        private List<Segment> _segments;
+        private SSN _startSSN = null;
+        private BookKeeper _bk;
+        private Scheduler _scheduler;
+        private StatsLogger _statsLogger = NullStatsLogger.INSTANCE;
+
+        private Builder() {}
+
+        /**
+         * Set stream configuration.
+         *
+         * @param conf stream configuration
+         * @return builder
+         */
+        public Builder conf(StreamConfiguration conf) {
+            this._conf = conf;
+            return this;
+        }
+
+        /**
+         * Set the segments to read, in the order of segment ids.
+         *
+         * @param segments segments to read.
+         * @return builder
+         */
+        public Builder segments(List<Segment> segments) {
+            this._segments = segments;
+            return this;
+        }
+
+        /**
+         * Set start ssn to read from. The segments before the segment of <i>ssn</i> are skipped.
+         * If not set, the reader reads from the beginning of the first segment.
+         *
+         * @param ssn start ssn to read from.
+         * @return builder
+         */
+        public Builder startSSN(SSN ssn) {
+            this._startSSN = ssn;
+            return this;
+        }
+
+        /**
+         * Set bookkeeper client.
+         *
+         * @param bk bookkeeper client
+         * @return builder
+         */
+        public Builder bookkeeper(BookKeeper bk) {
+            this._bk = bk;
+            return this;
+        }
+
+        /**
+         * Set scheduler used by the segment readers.
+         *
+         * @param scheduler scheduler used by the segment readers.
+         * @return builder
+         */
+        public Builder scheduler(Scheduler scheduler) {
+            this._scheduler = scheduler;
+            return this;
+        }
+
+        /**
+         * Set stats logger used by the segment readers.
+         *
+         * @param statsLogger stats logger
+         * @return builder
+         */
+        public Builder statsLogger(StatsLogger statsLogger) {
+            this._statsLogger = statsLogger;
+            return this;
+        }
+
+        /**
+         * Build the multi-segment reader.
+         *
+         * @return multi-segment reader.
+         */
+        public MultiSegmentReader build() {
+            Preconditions.checkNotNull(_conf, "No stream configuration provided");
+            Preconditions.checkNotNull(_bk, "No bookkeeper client provided");
+            Preconditions.checkNotNull(_scheduler, "No scheduler provided");
+            Preconditions.checkNotNull(_segments, "No segments provided");
+            List<Segment> segments = new ArrayList<>(_segments.size());
+            for (Segment segment : _segments) {
+                if (null == _startSSN || getSegmentId(segment) >= _startSSN.getSegmentId()) {
+                    segments.add(segment);
+                }
+            }
+            Preconditions.checkArgument(!segments.isEmpty(), "No segments to read from " + _startSSN);
+            return new MultiSegmentReader(_conf, segments, _startSSN, _bk, _scheduler, _statsLogger);
+        }
+    }
+
+    private static long getSegmentId(Segment segment) {
+        return segment.getSegmentMetadata().getSegmentFormat().getSegmentId();
+    }
+
+    /**
+     * Entry buffered for a prefetched segment.
+     */
+    private static class PrefetchedEntry {
+        private final Entry entry;
+        private final long startSlotId;
+
+        private PrefetchedEntry(Entry entry, long startSlotId) {
+            this.entry = entry;
+            this.startSlotId = startSlotId;
+        }
+    }
+
+    /**
+     * Entry receiver of a segment reader. It buffers the entries of a prefetched segment,
+     * and passes the entries to the record cache of the multi-segment reader once the
+     * segment is activated. The buffered entries are charged to the record cache as
+     * reserved bytes, so prefetching doesn't grow the cache beyond its limit.
+     */
+    private static class PrefetchCache implements EntryReceiver {
+
+        private final EntryReceiver recordCache;
+        private final long maxNumBytes;
+        private final Queue<PrefetchedEntry> entries = new ArrayDeque<>();
+        private long numBytes = 0L;
+        private long reservedBytes = 0L;
+        private Resumeable readCallback = null;
+        private long readCallbackNumBytes = 1L;
+        private boolean active = false;
+        private boolean closed = false;
+
+        private PrefetchCache(EntryReceiver recordCache, long maxNumBytes) {
+            this.recordCache = recordCache;
+            this.maxNumBytes = maxNumBytes;
+        }
+
+        /**
+         * Activate the cache to add the buffered entries and the entries read afterwards
+         * to the record cache.
+         */
+        synchronized void activate() {
+            // the bytes charged for the buffered entries are taken by the entries added
+            recordCache.releaseBytes(numBytes);
+            numBytes = 0L;
+            PrefetchedEntry prefetchedEntry;
+            while (null != (prefetchedEntry = entries.poll())) {
+                addEntry(recordCache, prefetchedEntry.entry, prefetchedEntry.startSlotId);
+            }
+            active = true;
+            if (null != readCallback) {
+                Resumeable callback = readCallback;
+                readCallback = null;
+                recordCache.setReadCallback(callback, readCallbackNumBytes);
+            }
+        }
+
+        /**
+         * Close the cache if it isn't activated. The bytes charged to the record cache for
+         * the buffered entries and the reads of the segment reader are released, and the
+         * entries and bytes released by the segment reader afterwards are dropped.
+         */
+        synchronized void close() {
+            if (active || closed) {
+                return;
+            }
+            closed = true;
+            recordCache.releaseBytes(numBytes + reservedBytes);
+            numBytes = 0L;
+            reservedBytes = 0L;
+            entries.clear();
+            readCallback = null;
+        }
+
+        private static void addEntry(EntryReceiver cache, Entry entry, long startSlotId) {
+            if (startSlotId > 0) {
+                cache.addEntry(entry, startSlotId);
+            } else {
+                cache.addEntry(entry);
+            }
+        }
+
+        @Override
+        public void addEntry(Entry entry) {
+            addEntry(entry, 0L);
+        }
+
+        @Override
+        public synchronized void addEntry(Entry entry, long startSlotId) {
+            if (closed) {
+                return;
+            }
+            if (active) {
+                addEntry(recordCache, entry, startSlotId);
+                return;
+            }
+            entries.add(new PrefetchedEntry(entry, startSlotId));
+            numBytes += entry.getNumBytes();
+            recordCache.reserveBytes(entry.getNumBytes());
+        }
+
+        @Override
+        public synchronized boolean isCacheFull() {
+            if (active) {
+                return recordCache.isCacheFull();
+            }
+            return numBytes + reservedBytes >= maxNumBytes || recordCache.isCacheFull();
+        }
+
+        @Override
+        public synchronized boolean isCacheEmpty() {
+            if (active) {
+                return recordCache.isCacheEmpty();
+            }
+            return entries.isEmpty() && recordCache.isCacheEmpty();
+        }
+
+        @Override
+        public synchronized void reserveBytes(long numBytes) {
+            if (closed) {
+                return;
+            }
+            if (!active) {
+                reservedBytes += numBytes;
+            }
+            recordCache.reserveBytes(numBytes);
+        }
+
+        @Override
+        public synchronized void releaseBytes(long numBytes) {
+            if (closed) {
+                return;
+            }
+            reservedBytes -= Math.min(numBytes, reservedBytes);
+            recordCache.releaseBytes(numBytes);
+        }
+
+        @Override
+        public synchronized long getAvailableBytes() {
+            if (active) {
+                return recordCache.getAvailableBytes();
+            }
+            return Math.min(maxNumBytes - numBytes - reservedBytes, recordCache.getAvailableBytes());
+        }
+
+        @Override
+        public void setReadCallback(Resumeable resumeable) {
+            setReadCallback(resumeable, 1L);
+        }
+
+        @Override
+        public synchronized void setReadCallback(Resumeable resumeable, long numBytes) {
+            if (closed) {
+                return;
+            }
+            if (active) {
+                recordCache.setReadCallback(resumeable, numBytes);
+            } else {
+                // resume reading after the cache is activated
+                readCallback = resumeable;
+                readCallbackNumBytes = numBytes;
+            }
+        }
+    }
+
+    /**
+     * Listener on the reader of the segment at <i>index</i>.
+     */
+    private class SegmentListener implements Listener {
+
+        private final int index;
+
+        private SegmentListener(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public void onEndOfSegment() {
+            onSegmentEnded(index);
+        }
+
+        @Override
+        public void onError() {
+            onSegmentError(index);
+        }
+    }
+
+    private final StreamConfiguration conf;
+    private final String streamName;
+    private final List<Segment> segments;
+    private final SSN startSSN;
+    private final BookKeeper bk;
+    private final Scheduler scheduler;
+    private final StatsLogger statsLogger;
+    private final int prefetchNumSegments;
+    private final long prefetchMaxNumBytes;
+
+    // read state, accessed in the ordered executor of the stream
+    private final BKSegmentReader[] readers;
+    private final PrefetchCache[] caches;
+    private final boolean[] ended;
+    // index of the segment being consumed
+    private int curIndex = 0;
+    // number of segment readers started
+    private int numStarted = 0;
+    private boolean started = false;
+    private boolean closed = false;
+    private boolean errored = false;
+
+    // reader receiver and listener
+    private EntryReceiver recordCache;
+    private Listener readerListener;
+
+    MultiSegmentReader(StreamConfiguration conf,
+                       List<Segment> segments,
+                       SSN startSSN,
+                       BookKeeper bk,
+                       Scheduler scheduler,
+                       StatsLogger statsLogger) {
+        this.conf = conf;
+        this.streamName = segments.get(0).getStreamName();
+        this.segments = segments;
+        this.startSSN = startSSN;
+        this.bk = bk;
+        this.scheduler = scheduler;
+        this.statsLogger = statsLogger;
+        this.prefetchNumSegments = Math.max(0, conf.getSegmentReaderPrefetchNumSegments());
+        // prefetched segments take at most half of the record cache, leaving the other half
+        // to the segment being consumed
+        this.prefetchMaxNumBytes = Math.max(1,
+                conf.getReaderCacheMaxNumBytes() / (2 * Math.max(1, prefetchNumSegments)));
+        this.readers = new BKSegmentReader[segments.size()];
+        this.caches = new PrefetchCache[segments.size()];
+        this.ended = new boolean[segments.size()];
+    }
+
+    @Override
+    public void start(EntryReceiver cache, Listener listener) {
+        synchronized (this) {
+            Preconditions.checkState(!started, "MultiSegmentReader for " + streamName + " is already started.");
+            Preconditions.checkNotNull(cache, "No record cache provided to receive records");
+            Preconditions.checkNotNull(listener, "No reader listener provided to receive reader state.");
+            started = true;
+        }
+        this.recordCache = cache;
+        this.readerListener = listener;
+        scheduler.submit(streamName, new Runnable() {
+            @Override
+            public void run() {
+                if (closed) {
+                    return;
+                }
+                startReaders();
+                caches[curIndex].activate();
+            }
+        });
+    }
+
+    /**
+     * Start the readers of the segment being consumed and the segments to prefetch.
+     */
+    private void startReaders() {
+        while (numStarted < segments.size() && numStarted <= curIndex + prefetchNumSegments) {
+            startReader(numStarted++);
+        }
+    }
+
+    private void startReader(int index) {
+        Segment segment = segments.get(index);
+        BKSegmentReader.Builder builder = BKSegmentReader.newBuilder()
+                .conf(conf)
+                .segment(segment)
+                .bookkeeper(bk)
+                .scheduler(scheduler)
+                .statsLogger(statsLogger);
+        if (null != startSSN && startSSN.getSegmentId() == getSegmentId(segment)) {
+            builder.startSSN(startSSN);
+        } else {
+            builder.startEntryId(0L);
+        }
+        caches[index] = new PrefetchCache(recordCache, prefetchMaxNumBytes);
+        readers[index] = builder.build();
+        logger.debug("Start reading segment {} of {} : consuming segment = {}",
+                new Object[] { getSegmentId(segment), streamName, getSegmentId(segments.get(curIndex)) });
+        readers[index].start(caches[index], new SegmentListener(index));
+    }
+
+    private void onSegmentEnded(int index) {
+        if (closed) {
+            return;
+        }
+        ended[index] = true;
+        // move to next segments that already reach the end
+        while (ended[curIndex]) {
+            readers[curIndex] = null;
+            caches[curIndex] = null;
+            ++curIndex;
+            if (curIndex == segments.size()) {
+                readerListener.onEndOfSegment();
+                return;
+            }
+            startReaders();
+            caches[curIndex].activate();
+        }
+    }
+
+    private void onSegmentError(int index) {
+        if (closed || errored) {
+            return;
+        }
+        logger.error("Encountered error on reading segment {} of {}.",
+                getSegmentId(segments.get(index)), streamName);
+        errored = true;
+        readerListener.onError();
+    }
+
+    @Override
+    public OrderingListenableFuture<Void> close() {
+        final SettableFuture<Void> future = SettableFuture.create();
+        scheduler.submit(streamName, new Runnable() {
+            @Override
+            public void run() {
+                close0(future);
+            }
+        });
+        return scheduler.createOrderingFuture(streamName, future);
+    }
+
+    private void close0(final SettableFuture<Void> closeFuture) {
+        closed = true;
+        List<ListenableFuture<Void>> closeFutures = new ArrayList<>();
+        for (int i = curIndex; i < numStarted; i++) {
+            if (null != readers[i]) {
+                closeFutures.add(readers[i].close());
+                readers[i] = null;
+            }
+            // release the bytes charged to the record cache for the prefetched segments
+            if (null != caches[i]) {
+                caches[i].close();
+                caches[i] = null;
+            }
+        }
+        Futures.addCallback(Futures.allAsList(closeFutures), new FutureCallback<List<Void>>() {
+            @Override
+            public void onSuccess(List<Void> result) {
+                closeFuture.set(null);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                closeFuture.setException(t);
+            }
+        });
+    }
+}
@@ -0,0 +1,584 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.stream.segment;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import org.apache.bookkeeper.client.BookKeeper;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.stream.SSN;
+import org.apache.bookkeeper.stream.cache.TailEntryCache;
+import org.apache.bookkeeper.stream.common.Scheduler;
+import org.apache.bookkeeper.stream.common.Scheduler.OrderingListenableFuture;
+import org.apache.bookkeeper.stream.conf.StreamConfiguration;
+import org.apache.bookkeeper.stream.exceptions.WriteCancelledException;
+import org.apache.bookkeeper.stream.io.Record;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Segment writer that rolls the records to a new segment when the current segment
+ * reaches the size or time threshold.
+ *
+ * <p>
+ * The ledger and the inprogress metadata of the next segment are allocated in background
+ * right after switching to a new segment, so rolling a segment doesn't stall writes. If the
+ * next segment isn't allocated yet when the threshold is reached, records keep going to the
+ * current segment until the allocation completes. The previous segment is closed in background
+ * after the switch.
+ *
+ * <p>
+ * Writes go to the current segment writer without locking. The thresholds are checked in the
+ * ordered executor of the stream after the current segment writer flushes an entry, and the
+ * writer is switched to the next segment there.
+ *
+ * <p>
+ * Segment changes are reported to the segment listener: the metadata of the new inprogress
+ * segment when switching to it, and the completed metadata of the previous segment when
+ * it is closed.
+ */
+public class RollingSegmentWriter implements SegmentWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(RollingSegmentWriter.class);
+
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+
+        private StreamConfiguration _conf;
+        private String _streamName;
+        private long _startSegmentId = 0L;
+        private BookKeeper _bk;
+        private Scheduler _scheduler;
+        private StatsLogger _statsLogger = NullStatsLogger.INSTANCE;
+        private Segment.Listener _listener;
+        private CommitCoordinator _commitCoordinator = null;
+        private TailEntryCache _tailCache = null;
+        private CommitNotifier _commitNotifier = null;
+
+        private Builder() {}
+
+        /**
+         * Set stream configuration.
+         *
+         * @param conf stream configuration
+         * @return builder
+         */
+        public Builder conf(StreamConfiguration conf) {
+            this._conf = conf;
+            return this;
+        }
+
+        /**
+         * Set stream name.
+         *
+         * @param streamName stream name
+         * @return builder
+         */
+        public Builder streamName(String streamName) {
+            this._streamName = streamName;
+            return this;
+        }
+
+        /**
+         * Set the segment id of the first segment to write.
+         *
+         * @param segmentId segment id of the first segment.
+         * @return builder
+         */
+        public Builder startSegmentId(long segmentId) {
+            this._startSegmentId = segmentId;
+            return this;
+        }
+
+        /**
+         * Set bookkeeper client.
+         *
+         * @param bk bookkeeper client
+         * @return builder
+         */
+        public Builder bookkeeper(BookKeeper bk) {
+            this._bk = bk;
+            return this;
+        }
+
+        /**
+         * Set scheduler used by segment writers.
+         *
+         * @param scheduler scheduler used by segment writers.
+         * @return builder
+         */
+        public Builder scheduler(Scheduler scheduler) {
+            this._scheduler = scheduler;
+            return this;
+        }
+
+        /**
+         * Set stats logger used by segment writers.
+         *
+         * @param statsLogger stats logger
+         * @return builder
+         */
+        public Builder statsLogger(StatsLogger statsLogger) {
+            this._statsLogger = statsLogger;
+            return this;
+        }
+
+        /**
+         * Set listener to listen on segment changes.
+         *
+         * @param listener segment listener
+         * @return builder
+         */
+        public Builder segmentListener(Segment.Listener listener) {
+            this._listener = listener;
+            return this;
+        }
+
+        /**
+         * Set commit coordinator to batch the commits of segment writers.
+         *
+         * @param coordinator commit coordinator.
+         * @return builder
+         */
+        public Builder commitCoordinator(CommitCoordinator coordinator) {
+            this._commitCoordinator = coordinator;
+            return this;
+        }
+
+        /**
+         * Set tail entry cache to publish the acknowledged entries of the segments.
+         *
+         * @param tailCache tail entry cache.
+         * @return builder
+         */
+        public Builder tailCache(TailEntryCache tailCache) {
+            this._tailCache = tailCache;
+            return this;
+        }
+
+        /**
+         * Set commit notifier to notify the readers of the segments.
+         *
+         * @param commitNotifier commit notifier.
+         * @return builder
+         */
+        public Builder commitNotifier(CommitNotifier commitNotifier) {
+            this._commitNotifier = commitNotifier;
+            return this;
+        }
+
+        /**
+         * Build the rolling segment writer. The writer is created once the first segment
+         * is allocated.
+         *
+         * @return future representing the rolling segment writer.
+         */
+        public ListenableFuture<RollingSegmentWriter> build() {
+            Preconditions.checkNotNull(_conf, "No stream configuration provided");
+            Preconditions.checkNotNull(_streamName, "No stream name provided");
+            Preconditions.checkNotNull(_bk, "No bookkeeper client provided");
+            Preconditions.checkNotNull(_scheduler, "No scheduler provided");
+            Preconditions.checkNotNull(_listener, "No segment listener provided");
+            final SegmentAllocator allocator = new SegmentAllocator(_conf, _streamName, _bk, _statsLogger);
+            final SettableFuture<RollingSegmentWriter> future = SettableFuture.create();
+            Futures.addCallback(allocator.allocate(_startSegmentId), new FutureCallback<AllocatedSegment>() {
+                @Override
+                public void onSuccess(AllocatedSegment firstSegment) {
+                    try {
+                        future.set(new RollingSegmentWriter(
+                                _conf,
+                                _streamName,
+                                firstSegment,
+                                allocator,
+                                _scheduler,
+                                _statsLogger,
+                                _listener,
+                                _commitCoordinator,
+                                _tailCache,
+                                _commitNotifier));
+                    } catch (IOException ioe) {
+                        allocator.release(firstSegment);
+                        future.setException(ioe);
+                    }
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    future.setException(new IOException(
+                            "Failed to allocate first segment of " + _streamName, t));
+                }
+            });
+            return future;
+        }
+    }
+
+    /**
+     * Writer of the segment that records are written to.
+     */
+    private static class ActiveWriter {
+        private final AllocatedSegment segment;
+        private final BKSegmentWriter writer;
+        private final long startTimeMs;
+        // number of writes being submitted to the writer, the writer is closed after they are submitted
+        private final AtomicInteger numPendingSubmits = new AtomicInteger(0);
+
+        private ActiveWriter(AllocatedSegment segment, BKSegmentWriter writer) {
+            this.segment = segment;
+            this.writer = writer;
+            this.startTimeMs = System.currentTimeMillis();
+        }
+    }
+
+    private final StreamConfiguration conf;
+    private final String streamName;
+    private final Scheduler scheduler;
+    private final StatsLogger statsLogger;
+    private final Segment.Listener listener;
+    private final CommitCoordinator commitCoordinator;
+    private final TailEntryCache tailCache;
+    private final CommitNotifier commitNotifier;
+    private final SegmentAllocator allocator;
+    // rolling thresholds
+    private final long rollingMaxBytes;
+    private final long rollingIntervalMs;
+    // number of times that rolling is delayed as next segment isn't allocated yet
+    private final Counter rollingDelayedCounter;
+    private final BKSegmentWriter.FlushListener flushListener = new BKSegmentWriter.FlushListener() {
+        @Override
+        public void onEntryFlushed(BKSegmentWriter writer) {
+            rollIfNeeded(writer);
+        }
+    };
+
+    // current segment, only switched in the ordered executor of the stream
+    private volatile ActiveWriter curWriter;
+    // next segment, only switched in the ordered executor of the stream
+    private long nextSegmentId;
+    private volatile ListenableFuture<AllocatedSegment> nextSegmentFuture;
+    // close futures of previous segments being closed
+    private final List<ListenableFuture<SSN>> pendingCloseFutures = new CopyOnWriteArrayList<>();
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+    private final SettableFuture<SSN> closeFuture = SettableFuture.create();
+
+    private RollingSegmentWriter(StreamConfiguration conf,
+                                 String streamName,
+                                 AllocatedSegment firstSegment,
+                                 SegmentAllocator allocator,
+                                 Scheduler scheduler,
+                                 StatsLogger statsLogger,
+                                 Segment.Listener listener,
+                                 CommitCoordinator commitCoordinator,
+                                 TailEntryCache tailCache,
+                                 CommitNotifier commitNotifier) throws IOException {
+        this.conf = conf;
+        this.streamName = streamName;
+        this.scheduler = scheduler;
+        this.statsLogger = statsLogger;
+        this.listener = listener;
+        this.commitCoordinator = commitCoordinator;
+        this.tailCache = tailCache;
+        this.commitNotifier = commitNotifier;
+        this.allocator = allocator;
+        this.rollingMaxBytes = Math.max(0L, conf.getSegmentRollingMaxBytes());
+        this.rollingIntervalMs = Math.max(0L, conf.getSegmentRollingIntervalMs());
+        this.rollingDelayedCounter = statsLogger.getCounter("rolling_delayed");
+
+        this.curWriter = newActiveWriter(firstSegment);
+        this.nextSegmentId = firstSegment.getSegmentMetadata().getSegmentFormat().getSegmentId() + 1;
+        this.nextSegmentFuture = allocator.allocate(nextSegmentId);
+        listener.onSegmentChanged(firstSegment.getSegmentMetadata());
+    }
+
+    /**
+     * @return segment that the writer is currently writing to.
+     */
+    public Segment getCurrentSegment() {
+        return curWriter.segment;
+    }
+
+    /**
+     * @return true if next segment is allocated and ready for rolling.
+     */
+    public boolean isNextSegmentReady() {
+        return nextSegmentFuture.isDone();
+    }
+
+    private ActiveWriter newActiveWriter(AllocatedSegment segment) throws IOException {
+        BKSegmentWriter writer = BKSegmentWriter.newBuilder()
+                .conf(conf)
+                .segment(segment)
+                .stripeLedgerHandles(segment.getLedgerHandles())
+                .ledgerQuorumSizes(segment.getWriteQuorumSize(), segment.getAckQuorumSize())
+                .scheduler(scheduler)
+                .statsLogger(statsLogger)
+                .commitCoordinator(commitCoordinator)
+                .tailCache(tailCache)
+                .commitNotifier(commitNotifier)
+                .flushListener(flushListener)
+                .build();
+        return new ActiveWriter(segment, writer);
+    }
+
+    /**
+     * Roll to next segment if current segment reaches thresholds and next segment is ready.
+     * It is called in the ordered executor of the stream after <i>flushedWriter</i> flushes
+     * an entry.
+     */
+    private void rollIfNeeded(BKSegmentWriter flushedWriter) {
+        ActiveWriter prevWriter = curWriter;
+        if (closed.get() || flushedWriter != prevWriter.writer) {
+            // entries flushed by the segments being closed
+            return;
+        }
+        boolean reachSizeThreshold = rollingMaxBytes > 0
+                && flushedWriter.getNumFlushedBytes() >= rollingMaxBytes;
+        boolean reachTimeThreshold = rollingIntervalMs > 0
+                && System.currentTimeMillis() - prevWriter.startTimeMs >= rollingIntervalMs;
+        if (!reachSizeThreshold && !reachTimeThreshold) {
+            return;
+        }
+        if (!nextSegmentFuture.isDone()) {
+            // don't stall writes, keep writing to current segment until next segment is ready
+            rollingDelayedCounter.inc();
+            return;
+        }
+        AllocatedSegment nextSegment;
+        try {
+            nextSegment = nextSegmentFuture.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (ExecutionException e) {
+            logger.error("Failed to allocate segment {} of stream {}, retry allocating it : ",
+                    new Object[] { nextSegmentId, streamName, e.getCause() });
+            nextSegmentFuture = allocator.allocate(nextSegmentId);
+            return;
+        }
+        ActiveWriter nextWriter;
+        try {
+            nextWriter = newActiveWriter(nextSegment);
+        } catch (IOException ioe) {
+            logger.error("Failed to create writer for segment {}, keep writing to segment {} : ",
+                    new Object[] { nextSegment, prevWriter.segment, ioe });
+            allocator.release(nextSegment);
+            nextSegmentFuture = allocator.allocate(nextSegmentId);
+            return;
+        }
+        // register the close of previous segment before switching, so flushes and commits
+        // issued to the new writer wait for the records of previous segment
+        SettableFuture<SSN> completeFuture = SettableFuture.create();
+        pendingCloseFutures.add(completeFuture);
+        curWriter = nextWriter;
+        ++nextSegmentId;
+        nextSegmentFuture = allocator.allocate(nextSegmentId);
+        listener.onSegmentChanged(nextSegment.getSegmentMetadata());
+        logger.info("Rolled stream {} from segment {} to segment {}",
+                new Object[] { streamName, prevWriter.segment, nextSegment });
+        completeSegment(prevWriter, completeFuture);
+    }
+
+    /**
+     * Close the writer of <i>active</i> segment to complete the segment, once the writes
+     * picking the writer are submitted. <i>completeFuture</i> is satisfied after the completed
+     * segment is notified to the listener.
+     */
+    private void completeSegment(final ActiveWriter active, final SettableFuture<SSN> completeFuture) {
+        if (active.numPendingSubmits.get() > 0) {
+            scheduler.submit(streamName, new Runnable() {
+                @Override
+                public void run() {
+                    completeSegment(active, completeFuture);
+                }
+            });
+            return;
+        }
+        active.writer.close().addCallback(new FutureCallback<SSN>() {
+            @Override
+            public void onSuccess(SSN lastSSN) {
+                StreamSegmentMetadata completedMetadata = active.segment.getSegmentMetadata()
+                        .complete(lastSSN, (int) active.writer.getNumFlushedRecords());
+                listener.onSegmentChanged(completedMetadata);
+                pendingCloseFutures.remove(completeFuture);
+                completeFuture.set(lastSSN);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                logger.error("Failed to complete segment {} : ", active.segment, t);
+                pendingCloseFutures.remove(completeFuture);
+                completeFuture.setException(t);
+            }
+        });
+    }
+
+    private OrderingListenableFuture<SSN> cancelledFuture() {
+        SettableFuture<SSN> future = SettableFuture.create();
+        future.setException(new WriteCancelledException(
+                "Writing record cancelled because writer of stream " + streamName + " is closed"));
+        return scheduler.createOrderingFuture(streamName, future);
+    }
+
+    /**
+     * Pick current writer to submit a write. The picked writer isn't closed until
+     * {@link ActiveWriter#numPendingSubmits} is decremented after the write is submitted.
+     *
+     * @return current writer, or null if the rolling writer is closed.
+     */
+    private ActiveWriter pickWriter() {
+        while (true) {
+            ActiveWriter active = curWriter;
+            active.numPendingSubmits.incrementAndGet();
+            if (closed.get()) {
+                active.numPendingSubmits.decrementAndGet();
+                return null;
+            }
+            if (active == curWriter) {
+                return active;
+            }
+            // rolled to a new segment, the previous writer might be closed already
+            active.numPendingSubmits.decrementAndGet();
+        }
+    }
+
+    @Override
+    public OrderingListenableFuture<SSN> write(Record record) {
+        ActiveWriter active = pickWriter();
+        if (null == active) {
+            return cancelledFuture();
+        }
+        try {
+            return active.writer.write(record);
+        } finally {
+            active.numPendingSubmits.decrementAndGet();
+        }
+    }
+
+    @Override
+    public OrderingListenableFuture<SSN> writeBatch(List<Record> records) {
+        return writeBatch(records, null);
+    }
+
+    @Override
+    public OrderingListenableFuture<SSN> writeBatch(List<Record> records, SSN[] ssns) {
+        ActiveWriter active = pickWriter();
+        if (null == active) {
+            return cancelledFuture();
+        }
+        try {
+            return active.writer.writeBatch(records, ssns);
+        } finally {
+            active.numPendingSubmits.decrementAndGet();
+        }
+    }
+
+    /**
+     * Wait for previous segments being closed before satisfying <i>future</i>, so all
+     * the records written before are persisted when the returned future is satisfied.
+     */
+    private OrderingListenableFuture<SSN> afterPendingCloses(final OrderingListenableFuture<SSN> future) {
+        if (pendingCloseFutures.isEmpty()) {
+            return future;
+        }
+        List<ListenableFuture<SSN>> futures = new ArrayList<>(pendingCloseFutures);
+        futures.add(future);
+        final SettableFuture<SSN> result = SettableFuture.create();
+        Futures.addCallback(Futures.allAsList(futures), new FutureCallback<List<SSN>>() {
+            @Override
+            public void onSuccess(List<SSN> ssns) {
+                result.set(ssns.get(ssns.size() - 1));
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                result.setException(t);
+            }
+        });
+        return scheduler.createOrderingFuture(streamName, result);
+    }
+
+    @Override
+    public OrderingListenableFuture<SSN> flush() {
+        // the writer is read before the pending closes, as rolling registers the close
+        // of previous segment before switching the writer
+        return afterPendingCloses(curWriter.writer.flush());
+    }
+
+    @Override
+    public OrderingListenableFuture<SSN> commit() {
+        return afterPendingCloses(curWriter.writer.commit());
+    }
+
+    @Override
+    public OrderingListenableFuture<SSN> close() {
+        if (closed.compareAndSet(false, true)) {
+            scheduler.submit(streamName, new Runnable() {
+                @Override
+                public void run() {
+                    close0();
+                }
+            });
+        }
+        return scheduler.createOrderingFuture(streamName, closeFuture);
+    }
+
+    private void close0() {
+        // release the next segment that will never be written
+        Futures.addCallback(nextSegmentFuture, new FutureCallback<AllocatedSegment>() {
+            @Override
+            public void onSuccess(AllocatedSegment segment) {
+                allocator.release(segment);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                // nothing to release
+            }
+        });
+        SettableFuture<SSN> completeFuture = SettableFuture.create();
+        completeSegment(curWriter, completeFuture);
+        afterPendingCloses(scheduler.createOrderingFuture(streamName, completeFuture))
+                .addCallback(new FutureCallback<SSN>() {
+                    @Override
+                    public void onSuccess(SSN lastSSN) {
+                        closeFuture.set(lastSSN);
+                    }
+
+                    @Override
+                    public void onFailure(Throwable t) {
+                        closeFuture.setException(t);
+                    }
+                });
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.stream.segment;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import org.apache.bookkeeper.client.AsyncCallback.CreateCallback;
+import org.apache.bookkeeper.client.AsyncCallback.DeleteCallback;
+import org.apache.bookkeeper.client.BKException.Code;
+import org.apache.bookkeeper.client.BookKeeper;
+import org.apache.bookkeeper.client.LedgerHandle;
+import org.apache.bookkeeper.stats.OpStatsLogger;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.stream.conf.StreamConfiguration;
+import org.apache.bookkeeper.stream.exceptions.BKException;
+import org.apache.bookkeeper.stream.proto.DataFormats.StreamSegmentMetadataFormat;
+import org.apache.bookkeeper.stream.proto.DataFormats.StreamSegmentMetadataFormat.State;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.apache.bookkeeper.stream.Constants.BK_DIGEST_TYPE;
+import static org.apache.bookkeeper.stream.Constants.BK_PASSWD;
+
+/**
+ * Allocator to create the ledgers and the inprogress metadata of a new segment
+ * in background.
+ */
+class SegmentAllocator {
+
+    private static final Logger logger = LoggerFactory.getLogger(SegmentAllocator.class);
+
+    private final String streamName;
+    private final BookKeeper bk;
+    private final int ensembleSize;
+    private final int writeQuorumSize;
+    private final int ackQuorumSize;
+    private final int numStripes;
+    // latency of allocating segments, in micros
+    private final OpStatsLogger allocateStats;
+
+    SegmentAllocator(StreamConfiguration conf,
+                     String streamName,
+                     BookKeeper bk,
+                     StatsLogger statsLogger) {
+        this.streamName = streamName;
+        this.bk = bk;
+        this.ensembleSize = conf.getSegmentLedgerEnsembleSize();
+        this.writeQuorumSize = conf.getSegmentLedgerWriteQuorumSize();
+        this.ackQuorumSize = conf.getSegmentLedgerAckQuorumSize();
+        this.numStripes = Math.max(1, conf.getSegmentLedgerNumStripes());
+        this.allocateStats = statsLogger.getOpStatsLogger("allocate_segment");
+    }
+
+    /**
+     * Allocate an inprogress segment with <i>segmentId</i>. If the segment is striped,
+     * the ledgers of all the stripes are created before the segment is allocated.
+     *
+     * @param segmentId segment id
+     * @return future representing the allocated segment.
+     */
+    ListenableFuture<AllocatedSegment> allocate(final long segmentId) {
+        final SettableFuture<AllocatedSegment> future = SettableFuture.create();
+        final long startNanos = System.nanoTime();
+        final LedgerHandle[] lhs = new LedgerHandle[numStripes];
+        final AtomicInteger numPendings = new AtomicInteger(numStripes);
+        final AtomicInteger result = new AtomicInteger(Code.OK);
+        for (int i = 0; i < numStripes; i++) {
+            final int stripeIdx = i;
+            bk.asyncCreateLedger(ensembleSize, writeQuorumSize, ackQuorumSize, BK_DIGEST_TYPE, BK_PASSWD,
+                    new CreateCallback() {
+                        @Override
+                        public void createComplete(int rc, LedgerHandle lh, Object ctx) {
+                            if (Code.OK == rc) {
+                                lhs[stripeIdx] = lh;
+                            } else {
+                                result.compareAndSet(Code.OK, rc);
+                            }
+                            if (numPendings.decrementAndGet() == 0) {
+                                allocateComplete(segmentId, result.get(), lhs, startNanos, future);
+                            }
+                        }
+                    }, null);
+        }
+        return future;
+    }
+
+    private void allocateComplete(long segmentId,
+                                  int rc,
+                                  LedgerHandle[] lhs,
+                                  long startNanos,
+                                  SettableFuture<AllocatedSegment> future) {
+        long elapsedMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos);
+        if (Code.OK != rc) {
+            allocateStats.registerFailedEvent(elapsedMicros);
+            // delete the ledgers created for other stripes
+            for (LedgerHandle lh : lhs) {
+                if (null != lh) {
+                    deleteLedger(lh.getId(), segmentId);
+                }
+            }
+            future.setException(new BKException(rc,
+                    "Failed to create ledger for segment " + segmentId + " of " + streamName));
+            return;
+        }
+        allocateStats.registerSuccessfulEvent(elapsedMicros);
+        long curTime = System.currentTimeMillis();
+        StreamSegmentMetadataFormat.Builder formatBuilder =
+                StreamSegmentMetadataFormat.newBuilder()
+                        .setSegmentId(segmentId)
+                        .setLedgerId(lhs[0].getId())
+                        .setState(State.INPROGRESS)
+                        .setCTime(curTime)
+                        .setMTime(curTime);
+        if (numStripes > 1) {
+            for (LedgerHandle lh : lhs) {
+                formatBuilder.addStripeLedgerIds(lh.getId());
+            }
+        }
+        StreamSegmentMetadata segmentMetadata = StreamSegmentMetadata.newBuilder()
+                .setSegmentName(StreamSegmentMetadata.segmentName(segmentId, true))
+                .setStreamSegmentMetadataFormatBuilder(formatBuilder)
+                .build();
+        future.set(new AllocatedSegment(streamName, segmentMetadata, Arrays.asList(lhs),
+                writeQuorumSize, ackQuorumSize));
+    }
+
+    /**
+     * Release an allocated <i>segment</i> that will never be written, by deleting its ledgers.
+     *
+     * @param segment allocated segment to release.
+     */
+    void release(AllocatedSegment segment) {
+        long segmentId = segment.getSegmentMetadata().getSegmentFormat().getSegmentId();
+        for (LedgerHandle lh : segment.getLedgerHandles()) {
+            deleteLedger(lh.getId(), segmentId);
+        }
+    }
+
+    private void deleteLedger(final long ledgerId, final long segmentId) {
+        bk.asyncDeleteLedger(ledgerId, new DeleteCallback() {
+            @Override
+            public void deleteComplete(int rc, Object ctx) {
+                if (Code.OK != rc) {
+                    logger.warn("Failed to delete ledger {} of unused segment {} of {} : rc = {}",
+                            new Object[] { ledgerId, segmentId, streamName, rc });
+                }
+            }
+        }, null);
+    }
+}
@@ -19,7 +19,7 @@
 package org.apache.bookkeeper.stream.segment;
 
 import com.google.common.annotations.Beta;
-import org.apache.bookkeeper.stream.cache.RecordCache;
+import org.apache.bookkeeper.stream.cache.EntryReceiver;
 import org.apache.bookkeeper.stream.common.OrderingFutureCloseable;
 
 /**
@@ -43,10 +43,10 @@ public interface SegmentReader extends OrderingFutureCloseable<Void> {
     /**
      * Start reading entries from the segment.
      *
-     * @param recordCache record cache to receive read entries.
+     * @param receiver receiver to receive read entries, such as the record cache.
      * @param listener listener on reader events
      * @throws java.lang.IllegalStateException if the reader is already started.
      */
-    void start(RecordCache recordCache, Listener listener);
+    void start(EntryReceiver receiver, Listener listener);
 
 }
@@ -24,6 +24,8 @@ import org.apache.bookkeeper.stream.common.OrderingFutureCloseable;
 import org.apache.bookkeeper.stream.common.Scheduler.OrderingListenableFuture;
 import org.apache.bookkeeper.stream.io.Record;
 
+import java.util.List;
+
 /**
  * Writer to write records to a single segment.
  */
@@ -38,6 +40,28 @@ public interface SegmentWriter extends OrderingFutureCloseable<SSN> {
      */
     OrderingListenableFuture<SSN> write(Record record);
 
+    /**
+     * Write a batch of records to the segment.
+     *
+     * @param records records to write
+     * @return future representing the written result of the last record.
+     * @see #writeBatch(java.util.List, org.apache.bookkeeper.stream.SSN[])
+     */
+    OrderingListenableFuture<SSN> writeBatch(List<Record> records);
+
+    /**
+     * Write a batch of records to the segment. It is cheaper than writing
+     * the records one by one, as the batch is added with a single future.
+     * If the returned future fails, some records of the batch might not
+     * be written.
+     *
+     * @param records records to write
+     * @param ssns array to receive the ssn of each record when the returned
+     *             future is satisfied. null if not needed.
+     * @return future representing the written result of the last record.
+     */
+    OrderingListenableFuture<SSN> writeBatch(List<Record> records, SSN[] ssns);
+
     /**
      * Flush records to the segment. After the flush completed, all
      * records added before the call are all persisted to backend.
@@ -28,7 +28,9 @@ import org.apache.bookkeeper.stream.proto.DataFormats.StreamSegmentMetadataForma
 import org.apache.bookkeeper.stream.proto.DataFormats.StreamSegmentMetadataFormat.State;
 import org.apache.bookkeeper.stream.proto.DataFormats.StreamSegmentMetadataFormat.TruncationState;
 
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.List;
 
 import static com.google.common.base.Charsets.UTF_8;
 
@@ -104,6 +106,10 @@ public class StreamSegmentMetadata {
         Preconditions.checkArgument(format.hasState(), "Missing segment state");
         Preconditions.checkArgument(format.hasCTime(), "Missing segment creation time");
         Preconditions.checkArgument(format.hasMTime(), "Missing segment modification time");
+        if (format.getStripeLedgerIdsCount() > 0) {
+            Preconditions.checkArgument(format.getStripeLedgerIds(0) == format.getLedgerId(),
+                    "Ledger id should be the first stripe ledger id");
+        }
         if (StreamSegmentMetadataFormat.State.COMPLETED == format.getState()) {
             Preconditions.checkArgument(format.hasLastSSN(), "Missing last stream sequence number");
             Preconditions.checkArgument(format.hasCompletionTime(), "Missing stream segment completion time");
@@ -242,6 +248,27 @@ public class StreamSegmentMetadata {
         return format;
     }
 
+    /**
+     * Get the ledgers of the segment. A striped segment stripes its entries across
+     * multiple ledgers round-robin: entry <i>e</i> is stored as entry <i>e / n</i>
+     * of ledger <i>e % n</i>, where <i>n</i> is the number of stripes.
+     *
+     * @return the ledgers of the segment.
+     */
+    public List<Long> getLedgerIds() {
+        if (format.getStripeLedgerIdsCount() > 0) {
+            return format.getStripeLedgerIdsList();
+        }
+        return Collections.singletonList(format.getLedgerId());
+    }
+
+    /**
+     * @return number of ledgers that the entries of the segment are striped across.
+     */
+    public int getNumStripes() {
+        return Math.max(1, format.getStripeLedgerIdsCount());
+    }
+
     public boolean isInprogress() {
         return State.INPROGRESS == format.getState();
     }
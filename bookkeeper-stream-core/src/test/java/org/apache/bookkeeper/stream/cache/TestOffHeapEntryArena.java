@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.stream.cache;
+
+import org.junit.Test;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static org.junit.Assert.*;
+
+/**
+ * Test Case for {@link org.apache.bookkeeper.stream.cache.OffHeapEntryArena}
+ */
+public class TestOffHeapEntryArena {
+
+    @Test(timeout = 60000)
+    public void testAllocateAndRelease() throws Exception {
+        OffHeapEntryArena arena = new OffHeapEntryArena(16, 2);
+        byte[] data = "0123456789".getBytes(UTF_8);
+        // first two slices are stored in different chunks
+        OffHeapEntryArena.Slice slice0 = arena.allocate(data, 0, 10);
+        OffHeapEntryArena.Slice slice1 = arena.allocate(data, 2, 8);
+        OffHeapEntryArena.Slice slice2 = arena.allocate(data, 4, 4);
+        // data larger than a chunk isn't stored in the arena
+        byte[] largeData = "0123456789abcdefghij".getBytes(UTF_8);
+        assertNull(arena.allocate(largeData, 0, largeData.length));
+        assertEquals(0, arena.getNumFreeChunks());
+
+        assertEquals("0123456789", new String(arena.readAndRelease(slice0), UTF_8));
+        // first chunk is released once its slices are released
+        assertEquals(1, arena.getNumFreeChunks());
+        assertEquals("23456789", new String(arena.readAndRelease(slice1), UTF_8));
+        assertEquals("4567", new String(arena.readAndRelease(slice2), UTF_8));
+        // current chunk is kept by the arena
+        assertEquals(1, arena.getNumFreeChunks());
+
+        // free chunk is reused
+        OffHeapEntryArena.Slice slice4 = arena.allocate(data, 0, 10);
+        assertEquals(1, arena.getNumFreeChunks());
+        assertEquals("0123456789", new String(arena.readAndRelease(slice4), UTF_8));
+    }
+
+    @Test(timeout = 60000)
+    public void testClose() throws Exception {
+        OffHeapEntryArena arena = new OffHeapEntryArena(16, 2);
+        byte[] data = "0123456789".getBytes(UTF_8);
+        OffHeapEntryArena.Slice slice0 = arena.allocate(data, 0, 10);
+        OffHeapEntryArena.Slice slice1 = arena.allocate(data, 2, 8);
+        assertEquals("0123456789", new String(arena.readAndRelease(slice0), UTF_8));
+        assertEquals(1, arena.getNumFreeChunks());
+
+        arena.close();
+        assertEquals(0, arena.getNumFreeChunks());
+        // chunks released after the arena is closed aren't kept
+        assertEquals("23456789", new String(arena.readAndRelease(slice1), UTF_8));
+        assertEquals(0, arena.getNumFreeChunks());
+    }
+}
@@ -28,6 +28,8 @@ import org.apache.bookkeeper.stream.io.Entry.EntryBuilder;
 import org.apache.bookkeeper.stream.io.Record;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -111,6 +113,336 @@ public class TestRecordCache {
         assertEquals(8, numRecords);
     }
 
+    @Test(timeout = 60000)
+    public void testRingRecordCache() throws Exception {
+        StreamConfiguration conf = new StreamConfiguration();
+        conf.setReaderCacheType(RecordCacheType.RING);
+        conf.setReaderCacheMaxNumRecords(5);
+        assertEquals(RecordCacheType.RING, conf.getReaderCacheType());
+        RecordCacheItemsPolicy cachePolicy = new RecordCacheItemsPolicy(conf);
+
+        RecordCache recordCache = RecordCacheImpl.newBuilder()
+                .streamName("test-ring-record-cache")
+                .streamConf(conf)
+                .cachePolicy(cachePolicy)
+                .build();
+        // add more records than the ring buffer holds
+        EntryBuilder entryBuilder = Entry.newBuilder(1L, 0L, 0, 0, 1024);
+        for (int i = 0; i < 20; i++) {
+            Record record = Record.newBuilder()
+                    .setRecordId(i)
+                    .setData(("record-" + i).getBytes(UTF_8))
+                    .build();
+            entryBuilder.addRecord(record, SettableFuture.<SSN>create());
+        }
+        recordCache.addEntry(entryBuilder.build());
+        assertTrue(recordCache.isCacheFull());
+
+        int numRecords = 0;
+        Record record = recordCache.pollNextRecord();
+        while (null != record) {
+            assertEquals(numRecords, record.getRecordId());
+            assertEquals("record-" + numRecords, new String(record.getData(), UTF_8));
+            ++numRecords;
+
+            record = recordCache.pollNextRecord();
+        }
+        assertEquals(20, numRecords);
+        assertFalse(recordCache.isCacheFull());
+    }
+
+    @Test(timeout = 60000)
+    public void testLazyDecodeRecordCache() throws Exception {
+        StreamConfiguration conf = new StreamConfiguration();
+        conf.setReaderCacheLazyDecodeEnabled(true);
+        conf.setReaderCacheMaxNumRecords(5);
+        RecordCacheItemsPolicy cachePolicy = new RecordCacheItemsPolicy(conf);
+
+        RecordCache recordCache = RecordCacheImpl.newBuilder()
+                .streamName("test-lazy-decode-record-cache")
+                .streamConf(conf)
+                .cachePolicy(cachePolicy)
+                .build();
+        EntryBuilder firstEntryBuilder = Entry.newBuilder(1L, 0L, 0, 0, 1024);
+        for (int i = 0; i < 4; i++) {
+            Record record = Record.newBuilder()
+                    .setRecordId(i)
+                    .setData(("record-" + i).getBytes(UTF_8))
+                    .build();
+            firstEntryBuilder.addRecord(record, SettableFuture.<SSN>create());
+        }
+        Entry firstEntry = firstEntryBuilder.build();
+        recordCache.addEntry(firstEntry);
+        assertFalse(recordCache.isCacheFull());
+        EntryBuilder secondEntryBuilder = Entry.nextEntry(firstEntry);
+        for (int i = 4; i < 8; i++) {
+            Record record = Record.newBuilder()
+                    .setRecordId(i)
+                    .setData(("record-" + i).getBytes(UTF_8))
+                    .build();
+            secondEntryBuilder.addRecord(record, SettableFuture.<SSN>create());
+        }
+        recordCache.addEntry(secondEntryBuilder.build());
+        assertTrue(recordCache.isCacheFull());
+
+        final CountDownLatch resumeLatch = new CountDownLatch(1);
+        recordCache.setReadCallback(new Resumeable() {
+            @Override
+            public void onResume() {
+                resumeLatch.countDown();
+            }
+        });
+        // records are decoded on polling
+        for (int i = 0; i < 4; i++) {
+            Record record = recordCache.pollNextRecord();
+            assertEquals(i, record.getRecordId());
+            assertEquals(SSN.of(1L, 0L, i), record.getSSN());
+            assertEquals("record-" + i, new String(record.getData(), UTF_8));
+        }
+        // the space of an entry is released after all its records are polled
+        assertEquals(1L, resumeLatch.getCount());
+        assertTrue(recordCache.isCacheFull());
+        Record record = recordCache.pollNextRecord();
+        assertEquals(4, record.getRecordId());
+        assertEquals(SSN.of(1L, 1L, 0L), record.getSSN());
+        assertTrue(resumeLatch.await(1, TimeUnit.SECONDS));
+        assertFalse(recordCache.isCacheFull());
+
+        for (int i = 5; i < 8; i++) {
+            record = recordCache.pollNextRecord();
+            assertEquals(i, record.getRecordId());
+            assertEquals("record-" + i, new String(record.getData(), UTF_8));
+        }
+        assertNull(recordCache.pollNextRecord());
+    }
+
+    @Test(timeout = 60000)
+    public void testDrainRecords() throws Exception {
+        testDrainRecords(false);
+    }
+
+    @Test(timeout = 60000)
+    public void testDrainLazyDecodedRecords() throws Exception {
+        testDrainRecords(true);
+    }
+
+    private void testDrainRecords(boolean lazyDecodeEnabled) throws Exception {
+        StreamConfiguration conf = new StreamConfiguration();
+        conf.setReaderCacheLazyDecodeEnabled(lazyDecodeEnabled);
+        conf.setReaderCacheMaxNumRecords(5);
+        RecordCacheItemsPolicy cachePolicy = new RecordCacheItemsPolicy(conf);
+
+        RecordCache recordCache = RecordCacheImpl.newBuilder()
+                .streamName("test-drain-records")
+                .streamConf(conf)
+                .cachePolicy(cachePolicy)
+                .build();
+        EntryBuilder entryBuilder = Entry.newBuilder(1L, 0L, 0, 0, 1024);
+        for (int i = 0; i < 8; i++) {
+            Record record = Record.newBuilder()
+                    .setRecordId(i)
+                    .setData(("record-" + i).getBytes(UTF_8))
+                    .build();
+            entryBuilder.addRecord(record, SettableFuture.<SSN>create());
+        }
+        recordCache.addEntry(entryBuilder.build());
+        assertTrue(recordCache.isCacheFull());
+
+        final CountDownLatch resumeLatch = new CountDownLatch(1);
+        recordCache.setReadCallback(new Resumeable() {
+            @Override
+            public void onResume() {
+                resumeLatch.countDown();
+            }
+        });
+        List<Record> records = new ArrayList<>();
+        assertEquals(3, recordCache.drainTo(records, 3));
+        assertEquals(5, recordCache.drainTo(records, 10));
+        assertEquals(0, recordCache.drainTo(records, 10));
+        assertEquals(8, records.size());
+        for (int i = 0; i < 8; i++) {
+            assertEquals(i, records.get(i).getRecordId());
+            assertEquals("record-" + i, new String(records.get(i).getData(), UTF_8));
+        }
+        assertTrue(resumeLatch.await(1, TimeUnit.SECONDS));
+        assertFalse(recordCache.isCacheFull());
+    }
+
+    @Test(timeout = 60000)
+    public void testDrainLazyDecodedRecordsAcrossEntries() throws Exception {
+        StreamConfiguration conf = new StreamConfiguration();
+        conf.setReaderCacheLazyDecodeEnabled(true);
+        conf.setReaderCacheMaxNumRecords(12);
+        RecordCacheItemsPolicy cachePolicy = new RecordCacheItemsPolicy(conf);
+
+        RecordCache recordCache = RecordCacheImpl.newBuilder()
+                .streamName("test-drain-lazy-decoded-records-across-entries")
+                .streamConf(conf)
+                .cachePolicy(cachePolicy)
+                .build();
+        int numEntries = 3;
+        int numRecordsPerEntry = 4;
+        EntryBuilder entryBuilder = Entry.newBuilder(1L, 0L, 0, 0, 1024);
+        for (int i = 0; i < numEntries; i++) {
+            for (int j = 0; j < numRecordsPerEntry; j++) {
+                int recordId = i * numRecordsPerEntry + j;
+                Record record = Record.newBuilder()
+                        .setRecordId(recordId)
+                        .setData(("record-" + recordId).getBytes(UTF_8))
+                        .build();
+                entryBuilder.addRecord(record, SettableFuture.<SSN>create());
+            }
+            Entry entry = entryBuilder.build();
+            recordCache.addEntry(entry);
+            entryBuilder = Entry.nextEntry(entry);
+        }
+        assertTrue(recordCache.isCacheFull());
+
+        final CountDownLatch resumeLatch = new CountDownLatch(1);
+        recordCache.setReadCallback(new Resumeable() {
+            @Override
+            public void onResume() {
+                resumeLatch.countDown();
+            }
+        });
+        // a batch decodes the records of all the cached entries
+        List<Record> records = new ArrayList<>();
+        assertEquals(numEntries * numRecordsPerEntry, recordCache.drainTo(records, 100));
+        for (int i = 0; i < numEntries * numRecordsPerEntry; i++) {
+            assertEquals(i, records.get(i).getRecordId());
+            assertEquals(SSN.of(1L, i / numRecordsPerEntry, i % numRecordsPerEntry), records.get(i).getSSN());
+        }
+        // the space of all the drained entries is released
+        assertTrue(resumeLatch.await(1, TimeUnit.SECONDS));
+        assertEquals(0, recordCache.drainTo(records, 100));
+        assertFalse(recordCache.isCacheFull());
+    }
+
+    @Test(timeout = 60000)
+    public void testOffHeapRecordCache() throws Exception {
+        StreamConfiguration conf = new StreamConfiguration();
+        conf.setReaderCacheOffHeapEnabled(true);
+        conf.setReaderCacheOffHeapChunkSize(256);
+        conf.setReaderCacheMaxNumBytes(1024);
+        RecordCachePolicy cachePolicy = new RecordCacheBytesPolicy(conf);
+
+        RecordCacheImpl recordCache = RecordCacheImpl.newBuilder()
+                .streamName("test-off-heap-record-cache")
+                .streamConf(conf)
+                .cachePolicy(cachePolicy)
+                .build();
+        Entry entry = null;
+        int numRecords = 0;
+        for (int i = 0; i < 10; i++) {
+            EntryBuilder entryBuilder = null == entry ? Entry.newBuilder(1L, 0L, 0, 0, 1024) : Entry.nextEntry(entry);
+            for (int j = 0; j < 4; j++) {
+                Record record = Record.newBuilder()
+                        .setRecordId(numRecords)
+                        .setData(("record-" + numRecords).getBytes(UTF_8))
+                        .build();
+                entryBuilder.addRecord(record, SettableFuture.<SSN>create());
+                ++numRecords;
+            }
+            entry = entryBuilder.build();
+            recordCache.addEntry(entry);
+        }
+        assertFalse(recordCache.isCacheFull());
+        assertTrue(cachePolicy.getAvailableBytes() < 1024);
+
+        for (int i = 0; i < numRecords; i++) {
+            Record record = recordCache.pollNextRecord();
+            assertEquals(i, record.getRecordId());
+            assertEquals(SSN.of(1L, i / 4, i % 4), record.getSSN());
+            assertEquals("record-" + i, new String(record.getData(), UTF_8));
+        }
+        assertNull(recordCache.pollNextRecord());
+        assertEquals(1024L, cachePolicy.getAvailableBytes());
+        recordCache.close();
+    }
+
+    @Test(timeout = 60000)
+    public void testOffHeapRecordCacheWithEntriesLargerThanChunk() throws Exception {
+        StreamConfiguration conf = new StreamConfiguration();
+        conf.setReaderCacheOffHeapEnabled(true);
+        conf.setReaderCacheOffHeapChunkSize(64);
+        conf.setReaderCacheMaxNumBytes(1024);
+        RecordCachePolicy cachePolicy = new RecordCacheBytesPolicy(conf);
+
+        RecordCacheImpl recordCache = RecordCacheImpl.newBuilder()
+                .streamName("test-off-heap-record-cache-with-entries-larger-than-chunk")
+                .streamConf(conf)
+                .cachePolicy(cachePolicy)
+                .build();
+        Entry entry = null;
+        List<SSN> ssns = new ArrayList<>();
+        int numRecords = 0;
+        for (int i = 0; i < 10; i++) {
+            EntryBuilder entryBuilder = null == entry ? Entry.newBuilder(1L, 0L, 0, 0, 1024) : Entry.nextEntry(entry);
+            // entries of a single record fit in a chunk, the others are kept on heap
+            int numRecordsInEntry = 0 == i % 2 ? 1 : 4;
+            for (int j = 0; j < numRecordsInEntry; j++) {
+                Record record = Record.newBuilder()
+                        .setRecordId(numRecords)
+                        .setData(("record-" + numRecords).getBytes(UTF_8))
+                        .build();
+                entryBuilder.addRecord(record, SettableFuture.<SSN>create());
+                ssns.add(SSN.of(1L, i, j));
+                ++numRecords;
+            }
+            entry = entryBuilder.build();
+            recordCache.addEntry(entry);
+        }
+
+        for (int i = 0; i < numRecords; i++) {
+            Record record = recordCache.pollNextRecord();
+            assertEquals(i, record.getRecordId());
+            assertEquals(ssns.get(i), record.getSSN());
+            assertEquals("record-" + i, new String(record.getData(), UTF_8));
+        }
+        assertNull(recordCache.pollNextRecord());
+        assertEquals(1024L, cachePolicy.getAvailableBytes());
+        recordCache.close();
+    }
+
+    @Test(timeout = 60000)
+    public void testZeroCopyRecordCache() throws Exception {
+        StreamConfiguration conf = new StreamConfiguration();
+        conf.setReaderCacheZeroCopyEnabled(true);
+        conf.setReaderCacheMaxNumBytes(64);
+        RecordCachePolicy cachePolicy = new RecordCacheBytesPolicy(conf);
+
+        RecordCache recordCache = RecordCacheImpl.newBuilder()
+                .streamName("test-zero-copy-record-cache")
+                .streamConf(conf)
+                .cachePolicy(cachePolicy)
+                .build();
+        EntryBuilder entryBuilder = Entry.newBuilder(1L, 0L, 0, 0, 1024);
+        for (int i = 0; i < 8; i++) {
+            Record record = Record.newBuilder()
+                    .setRecordId(i)
+                    .setData(("record-" + i).getBytes(UTF_8))
+                    .build();
+            entryBuilder.addRecord(record, SettableFuture.<SSN>create());
+        }
+        recordCache.addEntry(entryBuilder.build());
+        // 8 records of 8 bytes payload
+        assertTrue(recordCache.isCacheFull());
+
+        int numRecords = 0;
+        Record record = recordCache.pollNextRecord();
+        while (null != record) {
+            assertEquals(numRecords, record.getRecordId());
+            assertEquals(SSN.of(1L, 0L, numRecords), record.getSSN());
+            assertEquals(UTF_8.decode(record.getPayload()).toString(), "record-" + numRecords);
+            assertEquals("record-" + numRecords, new String(record.getData(), UTF_8));
+            ++numRecords;
+
+            record = recordCache.pollNextRecord();
+        }
+        assertEquals(8, numRecords);
+        assertFalse(recordCache.isCacheFull());
+    }
+
     @Test(timeout = 60000)
     public void testRecordCacheListener() throws Exception {
         StreamConfiguration conf = new StreamConfiguration();
@@ -228,4 +560,103 @@ public class TestRecordCache {
         assertTrue(latch2.await(10, TimeUnit.SECONDS));
         assertEquals(1, numNotifications.get());
     }
+
+    @Test(timeout = 60000)
+    public void testReadCallbackWaitingForBytes() throws Exception {
+        StreamConfiguration conf = new StreamConfiguration();
+        conf.setReaderCacheMaxNumBytes(100);
+        RecordCache recordCache = RecordCacheImpl.newBuilder()
+                .streamName("test-read-callback-waiting-for-bytes")
+                .streamConf(conf)
+                .cachePolicy(new RecordCacheBytesPolicy(conf))
+                .build();
+        EntryBuilder entryBuilder = Entry.newBuilder(1L, 0L, 0, 0, 1024);
+        for (int i = 0; i < 10; i++) {
+            Record record = Record.newBuilder()
+                    .setRecordId(i)
+                    .setData(new byte[10])
+                    .build();
+            entryBuilder.addRecord(record, SettableFuture.<SSN>create());
+        }
+        recordCache.addEntry(entryBuilder.build());
+        assertTrue(recordCache.isCacheFull());
+        assertFalse(recordCache.isCacheEmpty());
+
+        // read callback is resumed once the bytes it waits for are available
+        final AtomicInteger numNotifications = new AtomicInteger(0);
+        Resumeable callback = new Resumeable() {
+            @Override
+            public void onResume() {
+                numNotifications.incrementAndGet();
+            }
+        };
+        recordCache.setReadCallback(callback, 30L);
+        assertNotNull(recordCache.pollNextRecord());
+        assertNotNull(recordCache.pollNextRecord());
+        assertEquals(0, numNotifications.get());
+        assertNotNull(recordCache.pollNextRecord());
+        assertEquals(1, numNotifications.get());
+
+        // read callback waiting for more bytes than the cache could hold is resumed
+        // once the cache is empty
+        recordCache.setReadCallback(callback, 1000L);
+        List<Record> records = new ArrayList<>();
+        assertEquals(6, recordCache.drainTo(records, 6));
+        assertEquals(1, numNotifications.get());
+        assertNotNull(recordCache.pollNextRecord());
+        assertTrue(recordCache.isCacheEmpty());
+        assertEquals(2, numNotifications.get());
+    }
+
+    @Test(timeout = 60000)
+    public void testResumeOnBytesFreedBySharingStream() throws Exception {
+        StreamConfiguration conf = new StreamConfiguration();
+        conf.setReaderCacheMaxNumBytes(1000);
+        conf.setReaderCacheGlobalMaxNumBytes(100L);
+        RecordCacheBudget budget = new RecordCacheBudget(conf);
+
+        RecordCacheImpl cacheB = RecordCacheImpl.newBuilder()
+                .streamName("test-resume-on-bytes-freed-by-sharing-stream-b")
+                .streamConf(conf)
+                .cacheBudget(budget)
+                .build();
+        // stream b takes the whole budget while it is the only stream
+        EntryBuilder entryBuilder = Entry.newBuilder(1L, 0L, 0, 0, 1024);
+        for (int i = 0; i < 10; i++) {
+            Record record = Record.newBuilder()
+                    .setRecordId(i)
+                    .setData(new byte[10])
+                    .build();
+            entryBuilder.addRecord(record, SettableFuture.<SSN>create());
+        }
+        cacheB.addEntry(entryBuilder.build());
+        assertEquals(100L, budget.getNumBytes());
+        assertTrue(cacheB.isCacheFull());
+
+        // stream a is parked by the bytes of stream b
+        RecordCacheImpl cacheA = RecordCacheImpl.newBuilder()
+                .streamName("test-resume-on-bytes-freed-by-sharing-stream-a")
+                .streamConf(conf)
+                .cacheBudget(budget)
+                .build();
+        assertTrue(cacheA.isCacheFull());
+        final CountDownLatch resumeLatch = new CountDownLatch(1);
+        cacheA.setReadCallback(new Resumeable() {
+            @Override
+            public void onResume() {
+                resumeLatch.countDown();
+            }
+        });
+        assertEquals(1L, resumeLatch.getCount());
+
+        // stream a is resumed once stream b drains its records
+        List<Record> records = new ArrayList<>();
+        assertEquals(1, cacheB.drainTo(records, 1));
+        assertEquals(0L, resumeLatch.getCount());
+        assertFalse(cacheA.isCacheFull());
+
+        cacheB.close();
+        cacheA.close();
+        assertEquals(0L, budget.getNumBytes());
+    }
 }
@@ -19,10 +19,13 @@
 package org.apache.bookkeeper.stream.cache;
 
 import org.apache.bookkeeper.stream.SSN;
+import org.apache.bookkeeper.stream.common.Resumeable;
 import org.apache.bookkeeper.stream.conf.StreamConfiguration;
 import org.apache.bookkeeper.stream.io.Record;
 import org.junit.Test;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.junit.Assert.*;
 
 /**
@@ -54,6 +57,128 @@ public class TestRecordCachePolicy {
         assertFalse(cachePolicy.isCacheFull());
     }
 
+    @Test(timeout = 60000)
+    public void testReserveBytesInCachePolicyByBytes() throws Exception {
+        StreamConfiguration conf = new StreamConfiguration();
+        conf.setReaderCacheMaxNumBytes(20);
+        Record record = Record.newBuilder()
+                .setRecordId(1L)
+                .setData(new byte[10])
+                .setSSN(SSN.of(1L, 0L, 0L))
+                .build();
+        RecordCachePolicy cachePolicy = new RecordCacheBytesPolicy(conf);
+        assertEquals(20L, cachePolicy.getAvailableBytes());
+        // reserved bytes are counted as cached
+        cachePolicy.reserveBytes(10L);
+        assertEquals(10L, cachePolicy.getAvailableBytes());
+        assertFalse(cachePolicy.isCacheFull());
+        cachePolicy.onRecordAdded(record);
+        assertEquals(0L, cachePolicy.getAvailableBytes());
+        assertTrue(cachePolicy.isCacheFull());
+        // release the reservation
+        cachePolicy.releaseBytes(10L);
+        assertEquals(10L, cachePolicy.getAvailableBytes());
+        assertFalse(cachePolicy.isCacheFull());
+    }
+
+    @Test(timeout = 60000)
+    public void testCachePolicySharingBudget() throws Exception {
+        StreamConfiguration conf = new StreamConfiguration();
+        conf.setReaderCacheMaxNumBytes(80);
+        conf.setReaderCacheGlobalMaxNumBytes(100L);
+        RecordCacheBudget budget = new RecordCacheBudget(conf);
+        Record record = Record.newBuilder()
+                .setRecordId(1L)
+                .setData(new byte[10])
+                .setSSN(SSN.of(1L, 0L, 0L))
+                .build();
+
+        RecordCacheSharedBytesPolicy policy1 = new RecordCacheSharedBytesPolicy(conf, budget);
+        // limited by the stream cache size
+        assertEquals(80L, policy1.getAvailableBytes());
+        RecordCacheSharedBytesPolicy policy2 = new RecordCacheSharedBytesPolicy(conf, budget);
+        assertEquals(50L, budget.getFairShareNumBytes());
+        // a stream reaching its fair share has to leave a fair share free
+        policy1.reserveBytes(40L);
+        policy1.onRecordAdded(record);
+        assertEquals(50L, budget.getNumBytes());
+        assertTrue(policy1.isCacheFull());
+        assertEquals(50L, policy2.getAvailableBytes());
+        policy2.reserveBytes(30L);
+        assertEquals(20L, policy2.getAvailableBytes());
+        // a stream under its fair share is limited to its fair share
+        policy1.releaseBytes(40L);
+        assertEquals(40L, policy1.getAvailableBytes());
+        policy2.releaseBytes(30L);
+        assertEquals(40L, policy1.getAvailableBytes());
+        // closed stream returns its bytes to the budget
+        policy2.onRecordAdded(record);
+        policy2.close();
+        policy2.close();
+        assertEquals(10L, budget.getNumBytes());
+        assertEquals(100L, budget.getFairShareNumBytes());
+        assertEquals(70L, policy1.getAvailableBytes());
+        policy1.onRecordRemoved(record);
+        assertEquals(0L, budget.getNumBytes());
+        assertFalse(policy1.isCacheFull());
+    }
+
+    @Test(timeout = 60000)
+    public void testResumeWaitersForBytesInOrder() throws Exception {
+        StreamConfiguration conf = new StreamConfiguration();
+        conf.setReaderCacheMaxNumBytes(100);
+        conf.setReaderCacheGlobalMaxNumBytes(100L);
+        RecordCacheBudget budget = new RecordCacheBudget(conf);
+        RecordCacheSharedBytesPolicy policy1 = new RecordCacheSharedBytesPolicy(conf, budget);
+        policy1.reserveBytes(100L);
+        RecordCacheSharedBytesPolicy policy2 = new RecordCacheSharedBytesPolicy(conf, budget);
+        RecordCacheSharedBytesPolicy policy3 = new RecordCacheSharedBytesPolicy(conf, budget);
+        assertEquals(33L, budget.getFairShareNumBytes());
+
+        final AtomicInteger numResumes2 = new AtomicInteger(0);
+        Resumeable callback2 = new Resumeable() {
+            @Override
+            public void onResume() {
+                numResumes2.incrementAndGet();
+            }
+        };
+        final AtomicInteger numResumes3 = new AtomicInteger(0);
+        Resumeable callback3 = new Resumeable() {
+            @Override
+            public void onResume() {
+                numResumes3.incrementAndGet();
+            }
+        };
+        policy2.waitForSpace(callback2, 20L);
+        policy3.waitForSpace(callback3, 30L);
+        // waiting again replaces the number of bytes to wait for
+        policy3.waitForSpace(callback3, 20L);
+
+        // waiters aren't resumed until the bytes they wait for are freed
+        policy1.releaseBytes(5L);
+        policy1.releaseBytes(10L);
+        assertEquals(0, numResumes2.get());
+        assertEquals(0, numResumes3.get());
+        // waiters are resumed in order, as long as the freed bytes could serve them
+        policy1.releaseBytes(10L);
+        assertEquals(1, numResumes2.get());
+        assertEquals(0, numResumes3.get());
+        policy1.releaseBytes(5L);
+        assertEquals(1, numResumes2.get());
+        assertEquals(1, numResumes3.get());
+
+        // waiters of a closed stream are dropped
+        policy3.waitForSpace(callback3, 10L);
+        policy3.close();
+        policy1.releaseBytes(70L);
+        assertEquals(1, numResumes2.get());
+        assertEquals(1, numResumes3.get());
+
+        policy2.close();
+        policy1.close();
+        assertEquals(0L, budget.getNumBytes());
+    }
+
     @Test(timeout = 60000)
     public void testCachePolicyByItems() throws Exception {
         StreamConfiguration conf = new StreamConfiguration();
@@ -76,5 +201,9 @@ public class TestRecordCachePolicy {
         assertTrue(cachePolicy.isCacheFull());
         cachePolicy.onRecordRemoved(record);
         assertFalse(cachePolicy.isCacheFull());
+        // items policy isn't bounded by bytes
+        cachePolicy.reserveBytes(Integer.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, cachePolicy.getAvailableBytes());
+        assertFalse(cachePolicy.isCacheFull());
     }
 }
@@ -0,0 +1,187 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.stream.cache;
+
+import org.apache.bookkeeper.stream.common.Resumeable;
+import org.apache.bookkeeper.stream.conf.StreamConfiguration;
+import org.apache.bookkeeper.stream.io.Entry.EntryData;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test Case for {@link org.apache.bookkeeper.stream.cache.TailEntryCache}
+ */
+public class TestTailEntryCache {
+
+    @Test(timeout = 60000)
+    public void testAddAndGetEntries() throws Exception {
+        StreamConfiguration conf = new StreamConfiguration();
+        TailEntryCache cache = TailEntryCache.newBuilder().conf(conf).build();
+
+        final AtomicInteger numNotifications = new AtomicInteger(0);
+        Resumeable listener = new Resumeable() {
+            @Override
+            public void onResume() {
+                numNotifications.incrementAndGet();
+            }
+        };
+        cache.addListener("test-stream", 1L, listener);
+        for (int i = 0; i < 10; i++) {
+            cache.addEntry("test-stream", 1L, i, new byte[] { (byte) i });
+        }
+        assertEquals(10, numNotifications.get());
+        assertEquals(10L, cache.getNumBytes());
+        for (int i = 0; i < 10; i++) {
+            EntryData entryData = cache.getEntry("test-stream", 1L, i);
+            assertArrayEquals(new byte[] { (byte) i },
+                    Arrays.copyOfRange(entryData.data, entryData.offset, entryData.offset + entryData.len));
+        }
+        assertNull(cache.getEntry("test-stream", 1L, 10L));
+        assertNull(cache.getEntry("test-stream", 2L, 0L));
+        assertNull(cache.getEntry("another-stream", 1L, 0L));
+
+        // removing segment drops its entries and notifies its listeners
+        cache.removeSegment("test-stream", 1L);
+        assertEquals(11, numNotifications.get());
+        assertEquals(0L, cache.getNumBytes());
+        assertNull(cache.getEntry("test-stream", 1L, 0L));
+    }
+
+    @Test(timeout = 60000)
+    public void testEvictOldestEntries() throws Exception {
+        StreamConfiguration conf = new StreamConfiguration();
+        conf.setReaderTailCacheMaxNumBytes(40);
+        TailEntryCache cache = TailEntryCache.newBuilder().conf(conf).build();
+
+        for (int i = 0; i < 5; i++) {
+            cache.addEntry("test-stream", 1L, i, new byte[10]);
+            cache.addEntry("test-stream", 2L, i, new byte[10]);
+        }
+        assertEquals(40L, cache.getNumBytes());
+        assertEquals(4, cache.getNumEntries());
+        // the oldest entries across the segments are evicted
+        for (int i = 0; i < 3; i++) {
+            assertNull(cache.getEntry("test-stream", 1L, i));
+            assertNull(cache.getEntry("test-stream", 2L, i));
+        }
+        for (int i = 3; i < 5; i++) {
+            assertNotNull(cache.getEntry("test-stream", 1L, i));
+            assertNotNull(cache.getEntry("test-stream", 2L, i));
+        }
+
+        // entries larger than the cache aren't cached
+        cache.addEntry("test-stream", 3L, 0L, new byte[41]);
+        assertNull(cache.getEntry("test-stream", 3L, 0L));
+        assertEquals(40L, cache.getNumBytes());
+    }
+
+    @Test(timeout = 60000)
+    public void testAddEntrySlices() throws Exception {
+        StreamConfiguration conf = new StreamConfiguration();
+        conf.setReaderTailCacheMaxNumBytes(20);
+        TailEntryCache cache = TailEntryCache.newBuilder().conf(conf).build();
+
+        // the cache accounts the bytes of the slices, not of their backing arrays
+        byte[] buffer = new byte[100];
+        for (int i = 0; i < 2; i++) {
+            cache.addEntry("test-stream", 1L, i, new EntryData(buffer, i * 10, 10));
+        }
+        assertEquals(20L, cache.getNumBytes());
+        assertEquals(2, cache.getNumEntries());
+        EntryData entryData = cache.getEntry("test-stream", 1L, 1L);
+        assertSame(buffer, entryData.data);
+        assertEquals(10, entryData.offset);
+        assertEquals(10, entryData.len);
+
+        // adding the same entry again doesn't account it twice
+        cache.addEntry("test-stream", 1L, 1L, new EntryData(buffer, 10, 10));
+        assertEquals(20L, cache.getNumBytes());
+        assertEquals(2, cache.getNumEntries());
+
+        // the oldest slice is evicted
+        cache.addEntry("test-stream", 1L, 2L, new EntryData(buffer, 20, 10));
+        assertNull(cache.getEntry("test-stream", 1L, 0L));
+        assertEquals(20L, cache.getNumBytes());
+        assertEquals(2, cache.getNumEntries());
+    }
+
+    @Test(timeout = 60000)
+    public void testRemoveSegmentsBelowCacheLimit() throws Exception {
+        StreamConfiguration conf = new StreamConfiguration();
+        conf.setReaderTailCacheMaxNumBytes(1024);
+        TailEntryCache cache = TailEntryCache.newBuilder().conf(conf).build();
+
+        // an idle segment keeps its old entry at the head of the eviction order
+        cache.addEntry("idle-stream", 1L, 0L, new byte[10]);
+        // a writer rolls segments before reaching the cache limit
+        for (long segmentId = 1L; segmentId <= 100L; segmentId++) {
+            for (int i = 0; i < 5; i++) {
+                cache.addEntry("test-stream", segmentId, i, new byte[10]);
+            }
+            cache.removeSegment("test-stream", segmentId);
+            assertEquals(1, cache.getNumEntries());
+            assertEquals(10L, cache.getNumBytes());
+        }
+        assertNotNull(cache.getEntry("idle-stream", 1L, 0L));
+
+        cache.removeSegment("idle-stream", 1L);
+        assertEquals(0, cache.getNumEntries());
+        assertEquals(0L, cache.getNumBytes());
+    }
+
+    @Test(timeout = 60000)
+    public void testAddListenerWhileRemovingOtherListener() throws Exception {
+        StreamConfiguration conf = new StreamConfiguration();
+        final TailEntryCache cache = TailEntryCache.newBuilder().conf(conf).build();
+        final Resumeable otherListener = new Resumeable() {
+            @Override
+            public void onResume() {
+                // no-op
+            }
+        };
+        for (int i = 0; i < 1000; i++) {
+            final long segmentId = i;
+            cache.addListener("test-stream", segmentId, otherListener);
+            Thread remover = new Thread() {
+                @Override
+                public void run() {
+                    cache.removeListener("test-stream", segmentId, otherListener);
+                }
+            };
+            final AtomicInteger numNotifications = new AtomicInteger(0);
+            Resumeable listener = new Resumeable() {
+                @Override
+                public void onResume() {
+                    numNotifications.incrementAndGet();
+                }
+            };
+            remover.start();
+            cache.addListener("test-stream", segmentId, listener);
+            remover.join();
+            // the listener added concurrently is still notified
+            cache.addEntry("test-stream", segmentId, 0L, new byte[1]);
+            assertEquals(1, numNotifications.get());
+            cache.removeSegment("test-stream", segmentId);
+        }
+    }
+}
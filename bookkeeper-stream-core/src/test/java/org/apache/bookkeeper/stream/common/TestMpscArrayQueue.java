@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.stream.common;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test Cases for {@link org.apache.bookkeeper.stream.common.MpscArrayQueue}
+ */
+public class TestMpscArrayQueue {
+
+    @Test(timeout = 60000)
+    public void testOfferPoll() throws Exception {
+        MpscArrayQueue<Integer> queue = new MpscArrayQueue<>(3);
+        assertEquals(4, queue.capacity());
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll());
+        for (int i = 0; i < 4; i++) {
+            assertTrue(queue.offer(i));
+        }
+        assertEquals(4, queue.size());
+        // queue is full
+        assertFalse(queue.offer(4));
+        assertEquals(0, queue.poll().intValue());
+        assertTrue(queue.offer(4));
+        for (int i = 1; i <= 4; i++) {
+            assertEquals(i, queue.poll().intValue());
+        }
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test(timeout = 60000)
+    public void testMultipleProducers() throws Exception {
+        final MpscArrayQueue<long[]> queue = new MpscArrayQueue<>(64);
+        final int numProducers = 4;
+        final int numElementsPerProducer = 100000;
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        List<Thread> producers = new ArrayList<>(numProducers);
+        for (int i = 0; i < numProducers; i++) {
+            final int producerId = i;
+            Thread producer = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        startLatch.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int j = 0; j < numElementsPerProducer; j++) {
+                        long[] element = new long[] { producerId, j };
+                        while (!queue.offer(element)) {
+                            Thread.yield();
+                        }
+                    }
+                }
+            };
+            producer.start();
+            producers.add(producer);
+        }
+        startLatch.countDown();
+
+        // elements of each producer are received in order
+        long[] nextSeqs = new long[numProducers];
+        int numReceived = 0;
+        while (numReceived < numProducers * numElementsPerProducer) {
+            long[] element = queue.poll();
+            if (null == element) {
+                Thread.yield();
+                continue;
+            }
+            int producerId = (int) element[0];
+            assertEquals(nextSeqs[producerId], element[1]);
+            ++nextSeqs[producerId];
+            ++numReceived;
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        assertNull(queue.poll());
+    }
+
+    @Test(timeout = 60000, expected = IllegalArgumentException.class)
+    public void testInvalidCapacity() throws Exception {
+        new MpscArrayQueue<Integer>(0);
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.stream.common;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test Cases for {@link org.apache.bookkeeper.stream.common.SpscArrayQueue}
+ */
+public class TestSpscArrayQueue {
+
+    @Test(timeout = 60000)
+    public void testOfferPoll() throws Exception {
+        SpscArrayQueue<Integer> queue = new SpscArrayQueue<>(3);
+        assertEquals(4, queue.capacity());
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll());
+        // offer more elements than a ring buffer holds, so new ring buffers are linked
+        for (int i = 0; i < 10; i++) {
+            assertTrue(queue.offer(i));
+        }
+        assertEquals(10, queue.size());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(i, queue.poll().intValue());
+        }
+        for (int i = 10; i < 20; i++) {
+            assertTrue(queue.offer(i));
+        }
+        for (int i = 5; i < 20; i++) {
+            assertEquals(i, queue.poll().intValue());
+        }
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test(timeout = 60000)
+    public void testProducerConsumer() throws Exception {
+        final SpscArrayQueue<Integer> queue = new SpscArrayQueue<>(64);
+        final int numElements = 1000000;
+        Thread producer = new Thread() {
+            @Override
+            public void run() {
+                for (int i = 0; i < numElements; i++) {
+                    queue.offer(i);
+                }
+            }
+        };
+        producer.start();
+
+        int nextSeq = 0;
+        while (nextSeq < numElements) {
+            Integer element = queue.poll();
+            if (null == element) {
+                Thread.yield();
+                continue;
+            }
+            assertEquals(nextSeq, element.intValue());
+            ++nextSeq;
+        }
+        producer.join();
+        assertNull(queue.poll());
+    }
+
+    @Test(timeout = 60000, expected = IllegalArgumentException.class)
+    public void testInvalidCapacity() throws Exception {
+        new SpscArrayQueue<Integer>(0);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.stream.io;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static org.junit.Assert.*;
+
+/**
+ * Test Cases for {@link org.apache.bookkeeper.stream.io.CompressionCodec}
+ */
+public class TestCompressionCodec {
+
+    private static byte[] compressibleData(int numBytes) {
+        StringBuilder sb = new StringBuilder();
+        int i = 0;
+        while (sb.length() < numBytes) {
+            sb.append("{\"id\":").append(i++).append(",\"name\":\"record\",\"value\":\"compressible\"}");
+        }
+        return Arrays.copyOf(sb.toString().getBytes(UTF_8), numBytes);
+    }
+
+    @Test(timeout = 60000)
+    public void testCodecCodes() throws Exception {
+        for (CompressionCodec codec : CompressionCodec.values()) {
+            assertEquals(codec, CompressionCodec.of(codec.getCode()));
+        }
+    }
+
+    @Test(timeout = 60000, expected = IOException.class)
+    public void testUnknownCodec() throws Exception {
+        CompressionCodec.of(3);
+    }
+
+    @Test(timeout = 60000)
+    public void testCompressDecompress() throws Exception {
+        byte[] data = compressibleData(64 * 1024);
+        for (CompressionCodec codec : CompressionCodec.values()) {
+            int offset = 7;
+            byte[] compressed = new byte[offset + codec.maxCompressedLength(data.length)];
+            int compressedLength = codec.compress(data, 0, data.length,
+                    compressed, offset, compressed.length - offset);
+            assertTrue("Failed to compress data using " + codec, compressedLength > 0);
+            if (CompressionCodec.NONE != codec) {
+                assertTrue("Data should be compressed by " + codec, compressedLength < data.length / 4);
+            }
+            byte[] decompressed = new byte[data.length + 3];
+            codec.decompress(compressed, offset, compressedLength, decompressed, 3, data.length);
+            assertArrayEquals(data, Arrays.copyOfRange(decompressed, 3, decompressed.length));
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testCompressIntoTooSmallBuffer() throws Exception {
+        byte[] data = new byte[4096];
+        new Random(System.currentTimeMillis()).nextBytes(data);
+        for (CompressionCodec codec : CompressionCodec.values()) {
+            byte[] compressed = new byte[data.length / 2];
+            assertEquals("Random data shouldn't fit in a small buffer using " + codec,
+                    -1, codec.compress(data, 0, data.length, compressed, 0, compressed.length));
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testDecompressCorruptedData() throws Exception {
+        byte[] data = compressibleData(4096);
+        for (CompressionCodec codec : new CompressionCodec[] { CompressionCodec.LZ4, CompressionCodec.ZLIB }) {
+            byte[] compressed = new byte[codec.maxCompressedLength(data.length)];
+            int compressedLength = codec.compress(data, 0, data.length, compressed, 0, compressed.length);
+            try {
+                // truncated compressed data
+                codec.decompress(compressed, 0, compressedLength - 4, new byte[data.length], 0, data.length);
+                fail("Should fail to decompress truncated data using " + codec);
+            } catch (IOException ioe) {
+                // expected
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.stream.io;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static com.google.common.base.Charsets.US_ASCII;
+import static org.junit.Assert.*;
+
+/**
+ * Test Cases for {@link org.apache.bookkeeper.stream.io.Crc32c}
+ */
+public class TestCrc32c {
+
+    @Test(timeout = 60000)
+    public void testKnownValues() {
+        byte[] check = "123456789".getBytes(US_ASCII);
+        assertEquals(0xe3069283, Crc32c.checksum(check, 0, check.length));
+        assertEquals(0xe3069283, Crc32c.softwareChecksum(check, 0, check.length));
+        // 32 bytes of zeros (rfc 3720)
+        assertEquals(0x8a9136aa, Crc32c.softwareChecksum(new byte[32], 0, 32));
+        assertEquals(0, Crc32c.softwareChecksum(new byte[0], 0, 0));
+    }
+
+    @Test(timeout = 60000)
+    public void testSoftwareChecksumMatchesBytewise() {
+        Random random = new Random(System.currentTimeMillis());
+        byte[] data = new byte[1024];
+        random.nextBytes(data);
+        for (int offset = 0; offset < 9; offset++) {
+            for (int len = 0; len < 100; len++) {
+                // bit-by-bit reference implementation
+                int crc = 0xffffffff;
+                for (int i = offset; i < offset + len; i++) {
+                    crc ^= data[i] & 0xff;
+                    for (int j = 0; j < 8; j++) {
+                        crc = (crc >>> 1) ^ ((crc & 1) * 0x82f63b78);
+                    }
+                }
+                int expected = ~crc;
+                assertEquals(expected, Crc32c.softwareChecksum(data, offset, len));
+                assertEquals(expected, Crc32c.checksum(data, offset, len));
+            }
+        }
+    }
+}
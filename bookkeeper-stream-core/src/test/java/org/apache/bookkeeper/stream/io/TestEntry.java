@@ -20,11 +20,17 @@ package org.apache.bookkeeper.stream.io;
 
 import com.google.common.util.concurrent.SettableFuture;
 import org.apache.bookkeeper.stream.SSN;
+import org.apache.bookkeeper.stream.exceptions.CorruptedEntryException;
+import org.apache.bookkeeper.stream.exceptions.StreamException;
 import org.apache.bookkeeper.stream.io.Entry.EntryBuilder;
 import org.apache.bookkeeper.stream.io.Entry.EntryData;
 
 import org.junit.Test;
 
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
 import static com.google.common.base.Charsets.UTF_8;
 import static org.junit.Assert.*;
 
@@ -110,4 +116,444 @@ public class TestEntry {
         assertEquals(0, nextEntry.getRecordFutureList().get().size());
     }
 
+    @Test(timeout = 60000)
+    public void testZeroCopyRecordReader() throws Exception {
+        long segmentId = 2L;
+        long entryId = 3L;
+        int numRecords = 10;
+
+        EntryBuilder entryBuilder = Entry.newBuilder(segmentId, entryId, 0L, 0L, 32);
+        for (int i = 0; i < numRecords; i++) {
+            Record record = Record.newBuilder()
+                    .setRecordId(i)
+                    .setData(("record-" + i).getBytes(UTF_8))
+                    .build();
+            entryBuilder.addRecord(record, SettableFuture.<SSN>create());
+        }
+        EntryData entryData = entryBuilder.asDataEntry().build().getEntryData();
+        Entry readEntry = Entry.of(segmentId, entryId,
+                entryData.data, entryData.offset, entryData.len);
+
+        RecordReader copyReader = readEntry.asRecordReader(false);
+        RecordReader zeroCopyReader = readEntry.asRecordReader(true);
+        int numReadRecords = 0;
+        Record record;
+        while ((record = zeroCopyReader.readRecord()) != null) {
+            byte[] expectedData = ("record-" + numReadRecords).getBytes(UTF_8);
+            assertEquals(numReadRecords, record.getRecordId());
+            assertEquals(SSN.of(segmentId, entryId, numReadRecords), record.getSSN());
+            assertEquals(expectedData.length, record.getDataLength());
+            assertArrayEquals(expectedData, record.getData());
+            // payload is a view over the entry data
+            assertTrue(record.getPayload().isReadOnly());
+            assertEquals(copyReader.readRecord(), record);
+            ++numReadRecords;
+        }
+        assertEquals(numRecords, numReadRecords);
+        assertNull(copyReader.readRecord());
+
+        // skip in zero-copy mode
+        RecordReader skipReader = readEntry.asRecordReader(true);
+        assertTrue(skipReader.skipTo(SSN.of(segmentId, entryId, 5L)));
+        assertEquals(5L, skipReader.readRecord().getRecordId());
+        assertFalse(skipReader.skipTo(SSN.of(segmentId, entryId + 1, 0L)));
+        assertNull(skipReader.readRecord());
+    }
+
+    @Test(timeout = 60000)
+    public void testCompressedEntry() throws Exception {
+        for (CompressionCodec codec : CompressionCodec.values()) {
+            testCompressedEntry(codec);
+        }
+    }
+
+    private void testCompressedEntry(CompressionCodec codec) throws Exception {
+        long segmentId = 2L;
+        long entryId = 5L;
+        int numRecords = 100;
+        int numBytes = 0;
+        EntryBufferPool bufferPool = new EntryBufferPool(8192, 4);
+
+        EntryBuilder entryBuilder = Entry.newBuilder(segmentId, entryId, 0L, 0L, 8192, bufferPool)
+                .setCompressionCodec(codec);
+        for (int i = 0; i < numRecords; i++) {
+            Record record = Record.newBuilder()
+                    .setRecordId(i)
+                    .setData(("{\"record\":\"compressible-record-" + i + "\"}").getBytes(UTF_8))
+                    .build();
+            numBytes += record.getPersistenceSize();
+            entryBuilder.addRecord(record, SettableFuture.<SSN>create());
+        }
+        Entry entry = entryBuilder.asDataEntry().build();
+        assertEquals(codec, entry.getCompressionCodec());
+        assertEquals(numBytes, entry.getNumBytes());
+        if (CompressionCodec.NONE == codec) {
+            assertEquals(numBytes, entry.getPayloadLength());
+        } else {
+            assertTrue(codec + " should compress the payload", entry.getPayloadLength() < numBytes);
+        }
+
+        EntryData entryData = entry.getEntryData();
+        Entry readEntry = Entry.of(segmentId, entryId,
+                entryData.data, entryData.offset, entryData.len);
+        assertEquals(codec, readEntry.getCompressionCodec());
+        assertEquals(numBytes, readEntry.getNumBytes());
+        assertEquals(entry.getPayloadLength(), readEntry.getPayloadLength());
+        assertTrue(readEntry.isDataEntry());
+        for (boolean zeroCopy : new boolean[] { false, true }) {
+            RecordReader rr = readEntry.asRecordReader(zeroCopy);
+            int numReadRecords = 0;
+            Record record;
+            while ((record = rr.readRecord()) != null) {
+                assertEquals(numReadRecords, record.getRecordId());
+                assertEquals(SSN.of(segmentId, entryId, numReadRecords), record.getSSN());
+                assertArrayEquals(("{\"record\":\"compressible-record-" + numReadRecords + "\"}").getBytes(UTF_8),
+                        record.getData());
+                ++numReadRecords;
+            }
+            assertEquals(numRecords, numReadRecords);
+        }
+
+        // both the record buffer and the compressed buffer are returned to the pool
+        entry.release();
+        assertEquals(CompressionCodec.NONE == codec ? 1 : 2, bufferPool.getNumPooledBuffers());
+    }
+
+    @Test(timeout = 60000)
+    public void testIncompressibleEntry() throws Exception {
+        Random random = new Random(System.currentTimeMillis());
+        byte[] data = new byte[1024];
+        random.nextBytes(data);
+        Record incompressibleRecord = Record.newBuilder()
+                .setRecordId(random.nextLong() | Long.MIN_VALUE)
+                .setData(data)
+                .build();
+        Entry entry = Entry.newBuilder(2L, 0L, 0L, 0L, 1024)
+                .setCompressionCodec(CompressionCodec.LZ4)
+                .addRecord(incompressibleRecord, SettableFuture.<SSN>create())
+                .build();
+        // incompressible payload is stored uncompressed
+        assertEquals(CompressionCodec.NONE, entry.getCompressionCodec());
+        assertEquals(entry.getNumBytes(), entry.getPayloadLength());
+        EntryData entryData = entry.getEntryData();
+        Record record = Entry.of(2L, 0L, entryData.data, entryData.offset, entryData.len)
+                .asRecordReader().readRecord();
+        assertArrayEquals(data, record.getData());
+    }
+
+    @Test(timeout = 60000, expected = CorruptedEntryException.class)
+    public void testTruncatedEntry() throws Exception {
+        Entry entry = Entry.newBuilder(2L, 0L, 0L, 0L, 1024)
+                .addRecord(Record.newBuilder().setData(new byte[16]).build(), SettableFuture.<SSN>create())
+                .build();
+        EntryData entryData = entry.getEntryData();
+        Entry.of(2L, 0L, entryData.data, entryData.offset, entryData.len - 1);
+    }
+
+    private static Entry buildEntry(int numRecords, CompressionCodec codec, boolean checksumEnabled)
+            throws IOException {
+        EntryBuilder entryBuilder = Entry.newBuilder(2L, 0L, 0L, 0L, 1024)
+                .setCompressionCodec(codec)
+                .setChecksumEnabled(checksumEnabled);
+        for (int i = 0; i < numRecords; i++) {
+            Record record = Record.newBuilder()
+                    .setRecordId(i)
+                    .setData(("record-" + i).getBytes(UTF_8))
+                    .build();
+            entryBuilder.addRecord(record, SettableFuture.<SSN>create());
+        }
+        return entryBuilder.asDataEntry().build();
+    }
+
+    @Test(timeout = 60000)
+    public void testEntryChecksum() throws Exception {
+        for (CompressionCodec codec : CompressionCodec.values()) {
+            Entry entry = buildEntry(10, codec, true);
+            assertTrue(entry.hasChecksum());
+            EntryData entryData = entry.getEntryData();
+            Entry readEntry = Entry.of(2L, 0L, entryData.data, entryData.offset, entryData.len);
+            assertTrue(readEntry.hasChecksum());
+            assertEquals(10, readEntry.getNumRecords());
+            RecordReader rr = readEntry.asRecordReader();
+            int numReadRecords = 0;
+            while (null != rr.readRecord()) {
+                ++numReadRecords;
+            }
+            assertEquals(10, numReadRecords);
+
+            // flip every byte of the entry and verify the corruption is detected
+            byte[] data = Arrays.copyOfRange(entryData.data, entryData.offset, entryData.offset + entryData.len);
+            for (int i = 0; i < data.length; i++) {
+                data[i] ^= 0x5a;
+                try {
+                    Entry.of(2L, 0L, data, 0, data.length);
+                    fail("Should detect corrupted byte " + i + " of entry compressed by " + codec);
+                } catch (CorruptedEntryException cee) {
+                    assertEquals(StreamException.Code.CORRUPTED_ENTRY, cee.getCode());
+                }
+                data[i] ^= 0x5a;
+            }
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testEntryWithoutChecksum() throws Exception {
+        Entry entry = buildEntry(10, CompressionCodec.NONE, false);
+        assertFalse(entry.hasChecksum());
+        EntryData entryData = entry.getEntryData();
+        assertEquals(entry.getNumBytes() + 36, entryData.len);
+        Entry readEntry = Entry.of(2L, 0L, entryData.data, entryData.offset, entryData.len);
+        assertFalse(readEntry.hasChecksum());
+        assertEquals(10, readEntry.getNumRecords());
+    }
+
+    @Test(timeout = 60000)
+    public void testReadCorruptedRecordLength() throws Exception {
+        Entry entry = buildEntry(10, CompressionCodec.NONE, false);
+        EntryData entryData = entry.getEntryData();
+        byte[] data = Arrays.copyOfRange(entryData.data, entryData.offset, entryData.offset + entryData.len);
+        // corrupt the length of the 3rd record : header (36) + 2 records (12 + 8 each) + rid (8)
+        int lengthOffset = 36 + 2 * 20 + 8;
+        data[lengthOffset] = 0x7f;
+        Entry readEntry = Entry.of(2L, 0L, data, 0, data.length);
+        for (boolean zeroCopy : new boolean[] { false, true }) {
+            RecordReader rr = readEntry.asRecordReader(zeroCopy);
+            assertNotNull(rr.readRecord());
+            assertNotNull(rr.readRecord());
+            try {
+                rr.readRecord();
+                fail("Should fail on reading a record with corrupted length");
+            } catch (IOException ioe) {
+                // expected
+            }
+            try {
+                readEntry.asRecordReader(zeroCopy).skipTo(SSN.of(2L, 0L, 5L));
+                fail("Should fail on skipping a record with corrupted length");
+            } catch (IOException ioe) {
+                // expected
+            }
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testCompactRecordFormat() throws Exception {
+        long segmentId = 2L;
+        long entryId = 1L;
+        long lastNumRecords = 1000L;
+        // sequential, out-of-order, negative and large record ids
+        long[] recordIds = new long[] { 1000L, 1001L, 1002L, 999L, -1L, Long.MAX_VALUE, 1006L };
+
+        Entry fixedEntry = null;
+        for (RecordFormat format : RecordFormat.values()) {
+            EntryBuilder entryBuilder = Entry.newBuilder(segmentId, entryId, lastNumRecords, 0L, 1024)
+                    .setRecordFormat(format)
+                    .setChecksumEnabled(true);
+            for (long recordId : recordIds) {
+                Record record = Record.newBuilder()
+                        .setRecordId(recordId)
+                        .setData(("record-" + recordId).getBytes(UTF_8))
+                        .build();
+                entryBuilder.addRecord(record, SettableFuture.<SSN>create());
+            }
+            Entry entry = entryBuilder.asDataEntry().build();
+            assertEquals(format, entry.getRecordFormat());
+            if (RecordFormat.FIXED == format) {
+                fixedEntry = entry;
+            } else {
+                assertNotNull(fixedEntry);
+                assertTrue("compact records should be smaller",
+                        entry.getNumBytes() < fixedEntry.getNumBytes());
+            }
+
+            EntryData entryData = entry.getEntryData();
+            Entry readEntry = Entry.of(segmentId, entryId, entryData.data, entryData.offset, entryData.len);
+            assertEquals(format, readEntry.getRecordFormat());
+            for (boolean zeroCopy : new boolean[] { false, true }) {
+                RecordReader rr = readEntry.asRecordReader(zeroCopy);
+                Record record;
+                int numReadRecords = 0;
+                while (null != (record = rr.readRecord())) {
+                    long expectedRecordId = recordIds[numReadRecords];
+                    assertEquals(expectedRecordId, record.getRecordId());
+                    assertEquals(SSN.of(segmentId, entryId, numReadRecords), record.getSSN());
+                    assertArrayEquals(("record-" + expectedRecordId).getBytes(UTF_8), record.getData());
+                    ++numReadRecords;
+                }
+                assertEquals(recordIds.length, numReadRecords);
+
+                // skip keeps tracking record id deltas
+                rr = readEntry.asRecordReader(zeroCopy);
+                assertTrue(rr.skipTo(SSN.of(segmentId, entryId, 5L)));
+                assertEquals(Long.MAX_VALUE, rr.readRecord().getRecordId());
+                assertEquals(1006L, rr.readRecord().getRecordId());
+                assertNull(rr.readRecord());
+            }
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testRecordIndex() throws Exception {
+        long segmentId = 2L;
+        long entryId = 1L;
+        long lastNumRecords = 100L;
+        int numRecords = 50;
+        for (RecordFormat format : RecordFormat.values()) {
+            for (CompressionCodec codec : CompressionCodec.values()) {
+                EntryBuilder entryBuilder = Entry.newBuilder(segmentId, entryId, lastNumRecords, 0L, 1024)
+                        .setRecordFormat(format)
+                        .setCompressionCodec(codec)
+                        .setChecksumEnabled(true)
+                        .setRecordIndexInterval(8);
+                for (int i = 0; i < numRecords; i++) {
+                    long recordId = lastNumRecords + i;
+                    Record record = Record.newBuilder()
+                            .setRecordId(recordId)
+                            .setData(("record-" + recordId).getBytes(UTF_8))
+                            .build();
+                    entryBuilder.addRecord(record, SettableFuture.<SSN>create());
+                }
+                Entry entry = entryBuilder.asDataEntry().build();
+                assertTrue(entry.hasRecordIndex());
+                EntryData entryData = entry.getEntryData();
+                Entry readEntry = Entry.of(segmentId, entryId, entryData.data, entryData.offset, entryData.len);
+                assertTrue(readEntry.hasRecordIndex());
+
+                for (boolean zeroCopy : new boolean[] { false, true }) {
+                    for (int startSlot = 0; startSlot <= numRecords; startSlot++) {
+                        RecordReader rr = readEntry.asRecordReader(zeroCopy, startSlot);
+                        Record record;
+                        int slotId = startSlot;
+                        while (null != (record = rr.readRecord())) {
+                            long expectedRecordId = lastNumRecords + slotId;
+                            assertEquals(SSN.of(segmentId, entryId, slotId), record.getSSN());
+                            assertEquals(expectedRecordId, record.getRecordId());
+                            assertArrayEquals(("record-" + expectedRecordId).getBytes(UTF_8), record.getData());
+                            ++slotId;
+                        }
+                        assertEquals(numRecords, slotId);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testCorruptedRecordIndex() throws Exception {
+        EntryBuilder entryBuilder = Entry.newBuilder(2L, 0L, 0L, 0L, 1024)
+                .setRecordIndexInterval(2);
+        for (int i = 0; i < 10; i++) {
+            entryBuilder.addRecord(Record.newBuilder().setRecordId(i).setData(new byte[8]).build(),
+                    SettableFuture.<SSN>create());
+        }
+        Entry entry = entryBuilder.build();
+        EntryData entryData = entry.getEntryData();
+        // record index : interval (4) + num offsets (4) + 5 offsets (4 each)
+        assertEquals(36 + entry.getNumBytes() + 8 + 5 * 4, entryData.len);
+        byte[] data = Arrays.copyOfRange(entryData.data, entryData.offset, entryData.offset + entryData.len);
+        int indexOffset = 36 + entry.getNumBytes();
+
+        // num offsets exceeds the entry
+        data[indexOffset + 7] = 6;
+        try {
+            Entry.of(2L, 0L, data, 0, data.length);
+            fail("Should fail on parsing an entry with corrupted record index");
+        } catch (CorruptedEntryException cee) {
+            // expected
+        }
+        data[indexOffset + 7] = 5;
+
+        // offset of slot 8 exceeds the payload
+        data[indexOffset + 8 + 4 * 4] = 0x7f;
+        Entry readEntry = Entry.of(2L, 0L, data, 0, data.length);
+        assertNotNull(readEntry.asRecordReader(false, 7L).readRecord());
+        try {
+            readEntry.asRecordReader(false, 8L);
+            fail("Should fail on seeking with corrupted record index");
+        } catch (IOException ioe) {
+            // expected
+        }
+    }
+
+    @Test(timeout = 60000, expected = IllegalStateException.class)
+    public void testChangeRecordFormatAfterAddingRecords() throws Exception {
+        Entry.newBuilder(2L, 0L, 0L, 0L, 1024)
+                .addRecord(Record.newBuilder().setData(new byte[4]).build(), SettableFuture.<SSN>create())
+                .setRecordFormat(RecordFormat.COMPACT);
+    }
+
+    @Test(timeout = 60000)
+    public void testBuildEntryTwice() throws Exception {
+        EntryBufferPool bufferPool = new EntryBufferPool(8192, 4);
+        EntryBuilder entryBuilder = Entry.newBuilder(2L, 0L, 0L, 0L, 8192, bufferPool)
+                .setCompressionCodec(CompressionCodec.LZ4);
+        for (int i = 0; i < 100; i++) {
+            entryBuilder.addRecord(Record.newBuilder()
+                    .setRecordId(i)
+                    .setData(("compressible-record-" + i).getBytes(UTF_8))
+                    .build(), SettableFuture.<SSN>create());
+        }
+        entryBuilder.asDataEntry().build();
+        // the record buffer is returned to the pool once the payload is compressed
+        assertEquals(1, bufferPool.getNumPooledBuffers());
+        try {
+            entryBuilder.build();
+            fail("Should fail to build an entry twice");
+        } catch (IllegalStateException ise) {
+            // expected
+        }
+        try {
+            entryBuilder.addRecord(Record.newBuilder().setData(new byte[4]).build(), SettableFuture.<SSN>create());
+            fail("Should fail to add records after the entry is built");
+        } catch (IllegalStateException ise) {
+            // expected
+        }
+        assertEquals(1, bufferPool.getNumPooledBuffers());
+    }
+
+    @Test(timeout = 60000)
+    public void testBuildEntryFromBufferPool() throws Exception {
+        long segmentId = 2L;
+        long entryId = 0L;
+        EntryBufferPool bufferPool = new EntryBufferPool(1024, 4);
+
+        EntryBuilder entryBuilder =
+                Entry.newBuilder(segmentId, entryId, 0L, 0L, 1024, bufferPool);
+        int numRecords = 10;
+        for (int i = 0; i < numRecords; i++) {
+            Record record = Record.newBuilder()
+                    .setRecordId(i)
+                    .setData(("record-" + i).getBytes(UTF_8))
+                    .build();
+            entryBuilder.addRecord(record, SettableFuture.<SSN>create());
+        }
+        Entry entry = entryBuilder.asDataEntry().build();
+        EntryData entryData = entry.getEntryData();
+        Entry readEntry = Entry.of(segmentId, entryId,
+                entryData.data, entryData.offset, entryData.len);
+        assertEquals(numRecords, readEntry.getNumRecords());
+        RecordReader rr = readEntry.asRecordReader();
+        int numReadRecords = 0;
+        Record record;
+        while ((record = rr.readRecord()) != null) {
+            assertEquals(numReadRecords, record.getRecordId());
+            ++numReadRecords;
+        }
+        assertEquals(numRecords, numReadRecords);
+
+        // release the entry returns buffer to the pool
+        assertEquals(0, bufferPool.getNumPooledBuffers());
+        entry.release();
+        assertEquals(1, bufferPool.getNumPooledBuffers());
+        // double release is a no-op
+        entry.release();
+        assertEquals(1, bufferPool.getNumPooledBuffers());
+
+        // next entry reuses the released buffer
+        Entry nextEntry = Entry.newBuilder(segmentId, entryId + 1, numRecords, 0L, 1024, bufferPool)
+                .asDataEntry().build();
+        assertSame(entryData.data, nextEntry.getEntryData().data);
+        assertEquals(0, bufferPool.getNumPooledBuffers());
+        assertEquals(0, nextEntry.getNumRecords());
+    }
+
 }
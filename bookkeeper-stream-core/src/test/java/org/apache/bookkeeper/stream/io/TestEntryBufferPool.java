@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.stream.io;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test Cases for {@link org.apache.bookkeeper.stream.io.EntryBufferPool}
+ */
+public class TestEntryBufferPool {
+
+    @Test(timeout = 60000)
+    public void testAcquireRelease() throws Exception {
+        EntryBufferPool pool = new EntryBufferPool(1024, 2);
+        ChannelBuffer buffer1 = pool.acquire(1024);
+        ChannelBuffer buffer2 = pool.acquire(1024);
+        ChannelBuffer buffer3 = pool.acquire(1024);
+        assertNotSame(buffer1, buffer2);
+        assertNotSame(buffer2, buffer3);
+        assertEquals(0, pool.getNumPooledBuffers());
+
+        buffer1.writeLong(1L);
+        pool.release(buffer1);
+        pool.release(buffer2);
+        // exceed max pooled buffers
+        pool.release(buffer3);
+        assertEquals(2, pool.getNumPooledBuffers());
+
+        ChannelBuffer buffer = pool.acquire(1024);
+        assertSame(buffer1, buffer);
+        assertEquals(0, buffer.writerIndex());
+        assertEquals(0, buffer.readerIndex());
+        assertSame(buffer2, pool.acquire(1024));
+        assertEquals(0, pool.getNumPooledBuffers());
+    }
+
+    @Test(timeout = 60000)
+    public void testAcquireLargerBuffer() throws Exception {
+        EntryBufferPool pool = new EntryBufferPool(1024, 2);
+        ChannelBuffer buffer = pool.acquire(1024);
+        pool.release(buffer);
+        ChannelBuffer largerBuffer = pool.acquire(2048);
+        assertNotSame(buffer, largerBuffer);
+        assertTrue(largerBuffer.capacity() >= 2048);
+        assertEquals(0, pool.getNumPooledBuffers());
+    }
+
+    @Test(timeout = 60000)
+    public void testReleaseTooLargeBuffer() throws Exception {
+        EntryBufferPool pool = new EntryBufferPool(1024, 2);
+        ChannelBuffer buffer = pool.acquire(1024);
+        buffer.writeBytes(new byte[64 * 1024]);
+        pool.release(buffer);
+        assertEquals(0, pool.getNumPooledBuffers());
+    }
+
+}
@@ -24,6 +24,7 @@ import org.junit.Test;
 import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 import static com.google.common.base.Charsets.UTF_8;
@@ -58,6 +59,41 @@ public class TestRecord {
         assertTrue(Arrays.equals(data, record.getData()));
     }
 
+    @Test(timeout = 60000)
+    public void testBuildRecordFromSlice() throws Exception {
+        byte[] data = "prefix-slice-data-suffix".getBytes(UTF_8);
+        Record record = Record.newBuilder()
+                .setRecordId(1234L)
+                .setData(data, 7, 10)
+                .setSSN(SSN.of(1L, 0L, 0L))
+                .build();
+
+        assertEquals(10, record.getDataLength());
+        assertArrayEquals("slice-data".getBytes(UTF_8), record.getData());
+        ByteBuffer payload = record.getPayload();
+        assertTrue(payload.isReadOnly());
+        assertEquals(10, payload.remaining());
+        assertEquals(ByteBuffer.wrap("slice-data".getBytes(UTF_8)), payload);
+
+        Record copied = Record.newBuilder()
+                .setRecordId(1234L)
+                .setData("slice-data".getBytes(UTF_8))
+                .setSSN(SSN.of(1L, 0L, 0L))
+                .build();
+        assertEquals(copied, record);
+        assertEquals(copied.hashCode(), record.hashCode());
+
+        // only the slice is written
+        DataOutputBuffer dataBuf = new DataOutputBuffer(32);
+        record.write(new DataOutputStream(dataBuf));
+        assertEquals(record.getPersistenceSize(), dataBuf.size());
+    }
+
+    @Test(timeout = 60000, expected = IndexOutOfBoundsException.class)
+    public void testBuildRecordWithInvalidSlice() {
+        Record.newBuilder().setData(new byte[4], 2, 4).build();
+    }
+
     @Test(timeout = 60000)
     public void testWriteReadRecord() throws Exception {
         DataOutputBuffer dataBuf = new DataOutputBuffer(32);
@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.stream.io;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test Cases for {@link org.apache.bookkeeper.stream.io.VarInt}
+ */
+public class TestVarInt {
+
+    private static final long[] VALUES = new long[] {
+        0L, 1L, -1L, 63L, -64L, 64L, 127L, 128L, 16383L, 16384L,
+        Integer.MAX_VALUE, Integer.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE
+    };
+
+    @Test(timeout = 60000)
+    public void testZigZag() {
+        assertEquals(0L, VarInt.encodeZigZag(0L));
+        assertEquals(1L, VarInt.encodeZigZag(-1L));
+        assertEquals(2L, VarInt.encodeZigZag(1L));
+        assertEquals(3L, VarInt.encodeZigZag(-2L));
+        for (long value : VALUES) {
+            assertEquals(value, VarInt.decodeZigZag(VarInt.encodeZigZag(value)));
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testWriteReadVarLong() throws Exception {
+        for (long value : VALUES) {
+            DataOutputBuffer buffer = new DataOutputBuffer(16);
+            VarInt.writeUnsignedVarLong(value, new DataOutputStream(buffer));
+            if (value >= 0 && value < 128) {
+                assertEquals(1, buffer.size());
+            } else if (value < 0) {
+                assertEquals(10, buffer.size());
+            }
+            assertEquals(value, VarInt.readUnsignedVarLong(
+                    new DataInputStream(new ByteArrayInputStream(buffer.getData(), 0, buffer.size()))));
+            assertEquals(value, VarInt.readUnsignedVarLong(ByteBuffer.wrap(buffer.getData(), 0, buffer.size())));
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testReadTruncatedVarLong() throws Exception {
+        DataOutputBuffer buffer = new DataOutputBuffer(16);
+        VarInt.writeUnsignedVarLong(16384L, new DataOutputStream(buffer));
+        try {
+            VarInt.readUnsignedVarLong(
+                    new DataInputStream(new ByteArrayInputStream(buffer.getData(), 0, buffer.size() - 1)));
+            fail("Should fail reading truncated varint");
+        } catch (EOFException eof) {
+            // expected
+        }
+        try {
+            VarInt.readUnsignedVarLong(ByteBuffer.wrap(buffer.getData(), 0, buffer.size() - 1));
+            fail("Should fail reading truncated varint");
+        } catch (IOException ioe) {
+            // expected
+        }
+    }
+}
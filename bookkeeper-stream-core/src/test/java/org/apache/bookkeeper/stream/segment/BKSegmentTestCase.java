@@ -28,6 +28,8 @@ import org.apache.bookkeeper.stream.proto.DataFormats.StreamSegmentMetadataForma
 import org.apache.bookkeeper.test.BookKeeperClusterTestCase;
 import org.apache.commons.lang3.tuple.Pair;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
 
 import static org.apache.bookkeeper.stream.Constants.BK_DIGEST_TYPE;
@@ -83,8 +85,18 @@ public class BKSegmentTestCase extends BookKeeperClusterTestCase {
 
     protected Pair<LedgerHandle, Segment> createInprogressSegment(String streamName, long segmentId)
             throws Exception {
+        return createInprogressSegment(streamName, segmentId, 2, 2, 2);
+    }
+
+    protected Pair<LedgerHandle, Segment> createInprogressSegment(String streamName,
+                                                                  long segmentId,
+                                                                  int ensembleSize,
+                                                                  int writeQuorumSize,
+                                                                  int ackQuorumSize)
+            throws Exception {
         long curTime = System.currentTimeMillis();
-        LedgerHandle lh = this.bkc.createLedger(2, 2, 2, BK_DIGEST_TYPE, BK_PASSWD);
+        LedgerHandle lh = this.bkc.createLedger(ensembleSize, writeQuorumSize, ackQuorumSize,
+                BK_DIGEST_TYPE, BK_PASSWD);
         StreamSegmentMetadataFormat.Builder metadataBuilder =
                 StreamSegmentMetadataFormat.newBuilder()
                         .setSegmentId(segmentId)
@@ -100,6 +112,32 @@ public class BKSegmentTestCase extends BookKeeperClusterTestCase {
         return Pair.of(lh, segment);
     }
 
+    protected Pair<List<LedgerHandle>, Segment> createStripedInprogressSegment(String streamName,
+                                                                              long segmentId,
+                                                                              int numStripes)
+            throws Exception {
+        long curTime = System.currentTimeMillis();
+        List<LedgerHandle> lhs = new ArrayList<>(numStripes);
+        StreamSegmentMetadataFormat.Builder metadataBuilder =
+                StreamSegmentMetadataFormat.newBuilder()
+                        .setSegmentId(segmentId)
+                        .setState(State.INPROGRESS)
+                        .setCTime(curTime)
+                        .setMTime(curTime);
+        for (int i = 0; i < numStripes; i++) {
+            LedgerHandle lh = this.bkc.createLedger(2, 2, 2, BK_DIGEST_TYPE, BK_PASSWD);
+            lhs.add(lh);
+            metadataBuilder.addStripeLedgerIds(lh.getId());
+        }
+        metadataBuilder.setLedgerId(lhs.get(0).getId());
+        StreamSegmentMetadata segmentMetadata = StreamSegmentMetadata.newBuilder()
+                .setSegmentName(StreamSegmentMetadata.segmentName(segmentId, true))
+                .setStreamSegmentMetadataFormatBuilder(metadataBuilder)
+                .build();
+        Segment segment = new TestSegment(streamName, segmentMetadata);
+        return Pair.of(lhs, segment);
+    }
+
     protected Segment completeInprogressSegment(Segment segment, SSN lastSSN, int numRecords) {
         long completionTime = System.currentTimeMillis();
         StreamSegmentMetadataFormat inprogressSegmentMetadata =
@@ -19,22 +19,32 @@
 package org.apache.bookkeeper.stream.segment;
 
 import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.SettableFuture;
 import org.apache.bookkeeper.client.LedgerHandle;
 import org.apache.bookkeeper.stats.NullStatsLogger;
 import org.apache.bookkeeper.stream.SSN;
 import org.apache.bookkeeper.stream.cache.RecordCache;
+import org.apache.bookkeeper.stream.cache.RecordCacheBytesPolicy;
 import org.apache.bookkeeper.stream.cache.RecordCacheImpl;
 import org.apache.bookkeeper.stream.cache.RecordCacheItemsPolicy;
+import org.apache.bookkeeper.stream.cache.RecordCachePolicy;
+import org.apache.bookkeeper.stream.cache.TailEntryCache;
 import org.apache.bookkeeper.stream.common.Scheduler.OrderingListenableFuture;
 import org.apache.bookkeeper.stream.conf.StreamConfiguration;
+import org.apache.bookkeeper.stream.io.CompressionCodec;
+import org.apache.bookkeeper.stream.io.Entry;
+import org.apache.bookkeeper.stream.io.Entry.EntryData;
 import org.apache.bookkeeper.stream.io.Record;
+import org.apache.bookkeeper.stream.io.RecordFormat;
 import org.apache.bookkeeper.stream.segment.SegmentReader.Listener;
 import org.apache.commons.lang3.tuple.Pair;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static com.google.common.base.Charsets.UTF_8;
 import static org.junit.Assert.*;
@@ -57,10 +67,93 @@ public class TestBKSegmentReader extends BKSegmentTestCase {
         conf.setSegmentWriterFlushIntervalMs(999999000);
         conf.setSegmentWriterCommitDelayMs(999999000);
 
-        String streamName = "test-basic-read-records";
+        StreamConfiguration readConf = new StreamConfiguration();
+        readConf.setReaderCacheMaxNumRecords(99999999);
+        readConf.setReaderCacheMaxNumBytes(99999999);
+
+        writeAndReadRecords("test-basic-read-records", conf, readConf);
+    }
+
+    @Test(timeout = 60000)
+    public void testReadCompressedRecords() throws Exception {
+        for (CompressionCodec codec : CompressionCodec.values()) {
+            StreamConfiguration conf = new StreamConfiguration();
+            conf.setSegmentWriterEntryBufferSize(4096);
+            conf.setSegmentWriterFlushIntervalMs(999999000);
+            conf.setSegmentWriterCommitDelayMs(999999000);
+            conf.setSegmentWriterCompressionCodec(codec);
+
+            StreamConfiguration readConf = new StreamConfiguration();
+            readConf.setReaderCacheMaxNumRecords(99999999);
+            readConf.setReaderCacheMaxNumBytes(99999999);
+            readConf.setReaderCacheZeroCopyEnabled(true);
+
+            writeAndReadRecords("test-read-compressed-records-" + codec.name().toLowerCase(), conf, readConf);
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testReadRecordsWrittenFromPooledBuffers() throws Exception {
+        StreamConfiguration conf = new StreamConfiguration();
+        conf.setSegmentWriterEntryBufferSize(64);
+        conf.setSegmentWriterEntryBufferPoolSize(2);
+        conf.setSegmentWriterFlushIntervalMs(999999000);
+        conf.setSegmentWriterCommitDelayMs(999999000);
+
+        StreamConfiguration readConf = new StreamConfiguration();
+        readConf.setReaderCacheMaxNumRecords(99999999);
+        readConf.setReaderCacheMaxNumBytes(99999999);
+
+        writeAndReadRecords("test-read-records-written-from-pooled-buffers", conf, readConf);
+    }
+
+    @Test(timeout = 60000)
+    public void testReadCompactRecords() throws Exception {
+        StreamConfiguration conf = new StreamConfiguration();
+        conf.setSegmentWriterEntryBufferSize(4096);
+        conf.setSegmentWriterFlushIntervalMs(999999000);
+        conf.setSegmentWriterCommitDelayMs(999999000);
+        conf.setSegmentWriterRecordFormat(RecordFormat.COMPACT);
+
+        StreamConfiguration readConf = new StreamConfiguration();
+        readConf.setReaderCacheMaxNumRecords(99999999);
+        readConf.setReaderCacheMaxNumBytes(99999999);
+
+        writeAndReadRecords("test-read-compact-records", conf, readConf);
+    }
+
+    @Test(timeout = 60000)
+    public void testReadRecordsWithParallelReads() throws Exception {
+        for (long maxOutstandingReadBytes : new long[] { 1L, 1024 * 1024L }) {
+            StreamConfiguration conf = new StreamConfiguration();
+            // a small entry buffer to write an entry per record
+            conf.setSegmentWriterEntryBufferSize(16);
+            conf.setSegmentWriterFlushIntervalMs(999999000);
+            conf.setSegmentWriterCommitDelayMs(999999000);
+
+            StreamConfiguration readConf = new StreamConfiguration();
+            readConf.setReaderCacheMaxNumRecords(99999999);
+            readConf.setReaderCacheMaxNumBytes(99999999);
+            readConf.setSegmentReaderMaxOutstandingReadEntries(10);
+            readConf.setSegmentReaderMaxOutstandingReadBytes(maxOutstandingReadBytes);
+            readConf.setSegmentReaderReadBatchNumEntries(3);
+
+            writeAndReadRecords("test-read-records-with-parallel-reads-" + maxOutstandingReadBytes,
+                    conf, readConf, 7);
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testReadRecordsWithinCacheBytes() throws Exception {
+        String streamName = "test-read-records-within-cache-bytes";
         long segmentId = 1L;
         Pair<LedgerHandle, Segment> segmentPair = createInprogressSegment(streamName, segmentId);
 
+        StreamConfiguration conf = new StreamConfiguration();
+        // a small entry buffer to write an entry per record
+        conf.setSegmentWriterEntryBufferSize(16);
+        conf.setSegmentWriterFlushIntervalMs(999999000);
+        conf.setSegmentWriterCommitDelayMs(999999000);
         BKSegmentWriter writer = BKSegmentWriter.newBuilder()
                 .conf(conf)
                 .segment(segmentPair.getRight())
@@ -68,11 +161,502 @@ public class TestBKSegmentReader extends BKSegmentTestCase {
                 .scheduler(scheduler)
                 .statsLogger(NullStatsLogger.INSTANCE)
                 .build();
+        int numRecords = 30;
+        writeRecords(writer, 0, numRecords);
+        writer.commit().get();
+        SSN lastSSN = writer.close().get();
+        Segment completedSegment = completeInprogressSegment(segmentPair.getRight(), lastSSN, numRecords);
+
+        int maxCacheBytes = 40;
+        StreamConfiguration readConf = new StreamConfiguration();
+        readConf.setReaderCacheMaxNumBytes(maxCacheBytes);
+        readConf.setSegmentReaderMaxOutstandingReadEntries(10);
+        readConf.setSegmentReaderReadBatchNumEntries(2);
+        RecordCachePolicy cachePolicy = new RecordCacheBytesPolicy(readConf);
+        RecordCache recordCache = RecordCacheImpl.newBuilder()
+                .streamName(streamName)
+                .streamConf(readConf)
+                .cachePolicy(cachePolicy)
+                .statsLogger(NullStatsLogger.INSTANCE)
+                .build();
+        BKSegmentReader reader = BKSegmentReader.newBuilder()
+                .conf(readConf)
+                .segment(completedSegment)
+                .startEntryId(0L)
+                .bookkeeper(bkc)
+                .scheduler(scheduler)
+                .statsLogger(NullStatsLogger.INSTANCE)
+                .build();
+        reader.start(recordCache, new Listener() {
+            @Override
+            public void onEndOfSegment() {
+                // no-op
+            }
+
+            @Override
+            public void onError() {
+                // no-op
+            }
+        });
+        // an entry per record, the largest entry holds the last record
+        int maxEntryBytes = ("record-" + (numRecords - 1)).length();
+        int numReads = 0;
+        while (numReads < numRecords) {
+            // the cached and reserved bytes exceed the limit by at most one entry
+            long usedBytes = maxCacheBytes - cachePolicy.getAvailableBytes();
+            assertTrue("Cache exceeds its limit : used bytes = " + usedBytes,
+                    usedBytes <= maxCacheBytes + maxEntryBytes);
+            Record record = recordCache.pollNextRecord();
+            if (null == record) {
+                TimeUnit.MILLISECONDS.sleep(1);
+                continue;
+            }
+            assertEquals(numReads, record.getRecordId());
+            ++numReads;
+        }
+        reader.close().get();
+    }
+
+    @Test(timeout = 60000)
+    public void testReadEntriesOnlyWithinCacheSpace() throws Exception {
+        String streamName = "test-read-entries-only-within-cache-space";
+        long segmentId = 1L;
+        Pair<LedgerHandle, Segment> segmentPair = createInprogressSegment(streamName, segmentId);
+
+        StreamConfiguration conf = new StreamConfiguration();
+        // a small entry buffer to write an entry per record
+        conf.setSegmentWriterEntryBufferSize(16);
+        conf.setSegmentWriterFlushIntervalMs(999999000);
+        conf.setSegmentWriterCommitDelayMs(999999000);
+        BKSegmentWriter writer = BKSegmentWriter.newBuilder()
+                .conf(conf)
+                .segment(segmentPair.getRight())
+                .ledgerHandle(segmentPair.getLeft())
+                .scheduler(scheduler)
+                .statsLogger(NullStatsLogger.INSTANCE)
+                .build();
+        int numRecords = 30;
+        writeRecords(writer, 0, numRecords);
+        writer.commit().get();
+        SSN lastSSN = writer.close().get();
+        Segment completedSegment = completeInprogressSegment(segmentPair.getRight(), lastSSN, numRecords);
+
+        // an entry per record, the largest entry holds the last record
+        int maxEntryBytes = ("record-" + (numRecords - 1)).length();
+        // the cache holds a single entry, or is smaller than an entry
+        for (int maxCacheBytes : new int[] { 12, 4 }) {
+            StreamConfiguration readConf = new StreamConfiguration();
+            readConf.setReaderCacheMaxNumBytes(maxCacheBytes);
+            readConf.setSegmentReaderMaxOutstandingReadEntries(10);
+            readConf.setSegmentReaderReadBatchNumEntries(2);
+            RecordCachePolicy cachePolicy = new RecordCacheBytesPolicy(readConf);
+            RecordCache recordCache = RecordCacheImpl.newBuilder()
+                    .streamName(streamName)
+                    .streamConf(readConf)
+                    .cachePolicy(cachePolicy)
+                    .statsLogger(NullStatsLogger.INSTANCE)
+                    .build();
+            BKSegmentReader reader = BKSegmentReader.newBuilder()
+                    .conf(readConf)
+                    .segment(completedSegment)
+                    .startEntryId(0L)
+                    .bookkeeper(bkc)
+                    .scheduler(scheduler)
+                    .statsLogger(NullStatsLogger.INSTANCE)
+                    .build();
+            reader.start(recordCache, new Listener() {
+                @Override
+                public void onEndOfSegment() {
+                    // no-op
+                }
+
+                @Override
+                public void onError() {
+                    // no-op
+                }
+            });
+            int numReads = 0;
+            while (numReads < numRecords) {
+                // no entry is read beyond the space of the cache, except an entry to the empty cache
+                long usedBytes = maxCacheBytes - cachePolicy.getAvailableBytes();
+                assertTrue("Cache exceeds its limit : used bytes = " + usedBytes,
+                        usedBytes <= Math.max(maxCacheBytes, maxEntryBytes));
+                Record record = recordCache.pollNextRecord();
+                if (null == record) {
+                    TimeUnit.MILLISECONDS.sleep(1);
+                    continue;
+                }
+                assertEquals(numReads, record.getRecordId());
+                ++numReads;
+            }
+            reader.close().get();
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testCloseWithCompletedReadsBehindInflightRead() throws Exception {
+        String streamName = "test-close-with-completed-reads-behind-inflight-read";
+        long segmentId = 1L;
+        // each entry is stored on a single bookie, entries are spread across all the bookies
+        Pair<LedgerHandle, Segment> segmentPair =
+                createInprogressSegment(streamName, segmentId, NUM_BOOKIES, 1, 1);
+
+        StreamConfiguration conf = new StreamConfiguration();
+        // a small entry buffer to write an entry per record
+        conf.setSegmentWriterEntryBufferSize(16);
+        conf.setSegmentWriterFlushIntervalMs(999999000);
+        conf.setSegmentWriterCommitDelayMs(999999000);
+        BKSegmentWriter writer = BKSegmentWriter.newBuilder()
+                .conf(conf)
+                .segment(segmentPair.getRight())
+                .ledgerHandle(segmentPair.getLeft())
+                .scheduler(scheduler)
+                .statsLogger(NullStatsLogger.INSTANCE)
+                .build();
+        int numRecords = 12;
+        writeRecords(writer, 0, numRecords);
+        writer.commit().get();
+        SSN lastSSN = writer.close().get();
+        Segment completedSegment = completeInprogressSegment(segmentPair.getRight(), lastSSN, numRecords);
+
+        int maxCacheBytes = 1024 * 1024;
+        StreamConfiguration readConf = new StreamConfiguration();
+        readConf.setReaderCacheMaxNumBytes(maxCacheBytes);
+        readConf.setSegmentReaderMaxOutstandingReadEntries(10);
+        readConf.setSegmentReaderReadBatchNumEntries(1);
+        RecordCachePolicy cachePolicy = new RecordCacheBytesPolicy(readConf);
+        RecordCache recordCache = RecordCacheImpl.newBuilder()
+                .streamName(streamName)
+                .streamConf(readConf)
+                .cachePolicy(cachePolicy)
+                .statsLogger(NullStatsLogger.INSTANCE)
+                .build();
+        BKSegmentReader reader = BKSegmentReader.newBuilder()
+                .conf(readConf)
+                .segment(completedSegment)
+                .startEntryId(0L)
+                .bookkeeper(bkc)
+                .scheduler(scheduler)
+                .statsLogger(NullStatsLogger.INSTANCE)
+                .build();
+
+        // reads of the entries stored on the sleeping bookie stay in flight, while the reads
+        // issued after them complete and wait for them
+        CountDownLatch wakeupLatch = new CountDownLatch(1);
+        sleepBookie(bs.get(0).getLocalAddress(), wakeupLatch);
+        reader.start(recordCache, new Listener() {
+            @Override
+            public void onEndOfSegment() {
+                // no-op
+            }
+
+            @Override
+            public void onError() {
+                // no-op
+            }
+        });
+        TimeUnit.SECONDS.sleep(1);
+
+        // close shouldn't wait for the completed reads parked behind the read in flight
+        reader.close().get(10, TimeUnit.SECONDS);
+        int numReads = 0;
+        Record record;
+        while (null != (record = recordCache.pollNextRecord())) {
+            assertEquals(numReads, record.getRecordId());
+            ++numReads;
+        }
+        assertTrue("Read all records while a bookie is sleeping", numReads < numRecords);
+
+        // all the reserved bytes are released once the reads in flight complete
+        wakeupLatch.countDown();
+        while (maxCacheBytes != cachePolicy.getAvailableBytes()) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testReadCorruptedEntry() throws Exception {
+        String streamName = "test-read-corrupted-entry";
+        long segmentId = 1L;
+        Pair<LedgerHandle, Segment> segmentPair = createInprogressSegment(streamName, segmentId);
+        LedgerHandle lh = segmentPair.getLeft();
+
+        Entry entry = Entry.newBuilder(segmentId, 0L, 0L, 0L, 1024)
+                .setChecksumEnabled(true)
+                .addRecord(Record.newBuilder().setRecordId(0L).setData("record-0".getBytes(UTF_8)).build(),
+                        SettableFuture.<SSN>create())
+                .build();
+        EntryData entryData = entry.getEntryData();
+        byte[] data = Arrays.copyOfRange(entryData.data, entryData.offset, entryData.offset + entryData.len);
+        // corrupt the record payload
+        data[data.length - 5] ^= 0xff;
+        lh.addEntry(data);
+        lh.close();
+        Segment completedSegment =
+                completeInprogressSegment(segmentPair.getRight(), SSN.of(segmentId, 0L, 0L), 1);
+
+        StreamConfiguration readConf = new StreamConfiguration();
+        BKSegmentReader reader = BKSegmentReader.newBuilder()
+                .conf(readConf)
+                .segment(completedSegment)
+                .startEntryId(0L)
+                .bookkeeper(bkc)
+                .scheduler(scheduler)
+                .statsLogger(NullStatsLogger.INSTANCE)
+                .build();
+        RecordCache recordCache = RecordCacheImpl.newBuilder()
+                .streamName(streamName)
+                .streamConf(readConf)
+                .cachePolicy(new RecordCacheItemsPolicy(readConf))
+                .statsLogger(NullStatsLogger.INSTANCE)
+                .build();
+
+        final CountDownLatch errorLatch = new CountDownLatch(1);
+        reader.start(recordCache, new Listener() {
+            @Override
+            public void onEndOfSegment() {
+                // no-op
+            }
+
+            @Override
+            public void onError() {
+                errorLatch.countDown();
+            }
+        });
+        // reader should fail on the corrupted entry
+        errorLatch.await();
+        assertNull(recordCache.pollNextRecord());
+
+        reader.close().get();
+    }
+
+    @Test(timeout = 60000)
+    public void testReadRecordsFromMiddleOfEntry() throws Exception {
+        for (int recordIndexInterval : new int[] { 0, 1, 4 }) {
+            StreamConfiguration conf = new StreamConfiguration();
+            conf.setSegmentWriterEntryBufferSize(4096);
+            conf.setSegmentWriterFlushIntervalMs(999999000);
+            conf.setSegmentWriterCommitDelayMs(999999000);
+            conf.setSegmentWriterRecordFormat(RecordFormat.COMPACT);
+            conf.setSegmentWriterRecordIndexInterval(recordIndexInterval);
+
+            StreamConfiguration readConf = new StreamConfiguration();
+            readConf.setReaderCacheMaxNumRecords(99999999);
+            readConf.setReaderCacheMaxNumBytes(99999999);
+
+            writeAndReadRecords("test-read-records-from-middle-of-entry-" + recordIndexInterval,
+                    conf, readConf, 17);
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testReadStripedSegment() throws Exception {
+        String streamName = "test-read-striped-segment";
+        long segmentId = 1L;
+        int numStripes = 3;
+        Pair<List<LedgerHandle>, Segment> segmentPair =
+                createStripedInprogressSegment(streamName, segmentId, numStripes);
+
+        StreamConfiguration conf = new StreamConfiguration();
+        // small entries to spread the records across the stripes
+        conf.setSegmentWriterEntryBufferSize(64);
+        conf.setSegmentWriterFlushIntervalMs(999999000);
+        conf.setSegmentWriterCommitDelayMs(999999000);
+        BKSegmentWriter writer = BKSegmentWriter.newBuilder()
+                .conf(conf)
+                .segment(segmentPair.getRight())
+                .stripeLedgerHandles(segmentPair.getLeft())
+                .scheduler(scheduler)
+                .statsLogger(NullStatsLogger.INSTANCE)
+                .build();
+
+        int numRecords = 50;
+        List<OrderingListenableFuture<SSN>> writeFutures = new ArrayList<>(numRecords);
+        for (int i = 0; i < numRecords; i++) {
+            Record record = Record.newBuilder()
+                    .setRecordId(i)
+                    .setData(("record-" + i).getBytes(UTF_8))
+                    .build();
+            writeFutures.add(writer.write(record));
+        }
+        writer.commit().get();
+        List<SSN> ssns = Futures.allAsList(writeFutures).get();
+        // ssns are in order, and the entries are striped across all the ledgers
+        for (int i = 1; i < numRecords; i++) {
+            assertTrue(ssns.get(i - 1).compareTo(ssns.get(i)) < 0);
+        }
+        for (LedgerHandle lh : segmentPair.getLeft()) {
+            assertTrue("No entry added to ledger " + lh.getId(), lh.getLastAddConfirmed() >= 0);
+        }
+
+        // close writer to complete segment
+        SSN lastSSN = writer.close().get();
+        Segment completedSegment = completeInprogressSegment(segmentPair.getRight(), lastSSN, numRecords);
+
+        // read from the middle of completed segment
+        StreamConfiguration readConf = new StreamConfiguration();
+        readConf.setReaderCacheMaxNumRecords(99999999);
+        readConf.setReaderCacheMaxNumBytes(99999999);
+        int startRecordId = 17;
+        RecordCache recordCache = RecordCacheImpl.newBuilder()
+                .streamName(streamName)
+                .streamConf(readConf)
+                .cachePolicy(new RecordCacheItemsPolicy(readConf))
+                .statsLogger(NullStatsLogger.INSTANCE)
+                .build();
+        BKSegmentReader reader = BKSegmentReader.newBuilder()
+                .conf(readConf)
+                .segment(completedSegment)
+                .startSSN(ssns.get(startRecordId))
+                .bookkeeper(bkc)
+                .scheduler(scheduler)
+                .statsLogger(NullStatsLogger.INSTANCE)
+                .build();
+        final CountDownLatch eosLatch = new CountDownLatch(1);
+        reader.start(recordCache, new Listener() {
+            @Override
+            public void onEndOfSegment() {
+                eosLatch.countDown();
+            }
+
+            @Override
+            public void onError() {
+                // no-op
+            }
+        });
+        eosLatch.await();
+        int numReads = startRecordId;
+        Record record;
+        while (null != (record = recordCache.pollNextRecord())) {
+            assertEquals(ssns.get(numReads), record.getSSN());
+            assertEquals(numReads, record.getRecordId());
+            ++numReads;
+        }
+        assertEquals(numRecords, numReads);
+        reader.close().get();
+    }
+
+    @Test(timeout = 60000)
+    public void testTailInprogressSegmentFromTailCache() throws Exception {
+        String streamName = "test-tail-inprogress-segment-from-tail-cache";
+        long segmentId = 1L;
+        Pair<LedgerHandle, Segment> segmentPair = createInprogressSegment(streamName, segmentId);
+
+        StreamConfiguration conf = new StreamConfiguration();
+        conf.setSegmentWriterEntryBufferSize(64);
+        conf.setSegmentWriterFlushIntervalMs(999999000);
+        conf.setSegmentWriterCommitDelayMs(999999000);
+        // reader never wakes up by itself, it is only woken up by the tail cache
+        conf.setSegmentReaderCommitWaitMs(999999000);
+        conf.setReaderCacheMaxNumRecords(99999999);
+        conf.setReaderCacheMaxNumBytes(99999999);
+        TailEntryCache tailCache = TailEntryCache.newBuilder().conf(conf).build();
+
+        BKSegmentWriter writer = BKSegmentWriter.newBuilder()
+                .conf(conf)
+                .segment(segmentPair.getRight())
+                .ledgerHandle(segmentPair.getLeft())
+                .scheduler(scheduler)
+                .statsLogger(NullStatsLogger.INSTANCE)
+                .tailCache(tailCache)
+                .build();
+
+        int numRecords = 20;
+        // write records without committing them before starting the reader
+        writeRecords(writer, 0, numRecords / 2);
+
+        RecordCache recordCache = RecordCacheImpl.newBuilder()
+                .streamName(streamName)
+                .streamConf(conf)
+                .cachePolicy(new RecordCacheItemsPolicy(conf))
+                .statsLogger(NullStatsLogger.INSTANCE)
+                .build();
+        BKSegmentReader reader = BKSegmentReader.newBuilder()
+                .conf(conf)
+                .segment(segmentPair.getRight())
+                .startEntryId(0L)
+                .bookkeeper(bkc)
+                .scheduler(scheduler)
+                .statsLogger(NullStatsLogger.INSTANCE)
+                .tailCache(tailCache)
+                .build();
+        reader.start(recordCache, new Listener() {
+            @Override
+            public void onEndOfSegment() {
+                // no-op
+            }
+
+            @Override
+            public void onError() {
+                // no-op
+            }
+        });
+        int numReads = readRecords(recordCache, 0, numRecords / 2);
+
+        // records written after the reader starts waiting are read from the tail cache
+        writeRecords(writer, numRecords / 2, numRecords);
+        numReads = readRecords(recordCache, numReads, numRecords);
+        assertEquals(numRecords, numReads);
+
+        reader.close().get();
+        writer.close().get();
+        assertEquals(0L, tailCache.getNumBytes());
+    }
+
+    private void writeRecords(BKSegmentWriter writer, int startRecordId, int endRecordId) throws Exception {
+        List<OrderingListenableFuture<SSN>> writeFutures = new ArrayList<>(endRecordId - startRecordId);
+        for (int i = startRecordId; i < endRecordId; i++) {
+            Record record = Record.newBuilder()
+                    .setRecordId(i)
+                    .setData(("record-" + i).getBytes(UTF_8))
+                    .build();
+            writeFutures.add(writer.write(record));
+        }
+        writer.flush().get();
+        Futures.allAsList(writeFutures).get();
+    }
+
+    private int readRecords(RecordCache recordCache, int numReads, int numRecords) throws Exception {
+        while (numReads < numRecords) {
+            Record record = recordCache.pollNextRecord();
+            if (null == record) {
+                TimeUnit.MILLISECONDS.sleep(10);
+                continue;
+            }
+            assertEquals(numReads, record.getRecordId());
+            assertEquals("record-" + numReads, new String(record.getData(), UTF_8));
+            ++numReads;
+        }
+        return numReads;
+    }
+
+    private void writeAndReadRecords(String streamName,
+                                     StreamConfiguration conf,
+                                     StreamConfiguration readConf) throws Exception {
+        writeAndReadRecords(streamName, conf, readConf, 0);
+    }
+
+    private void writeAndReadRecords(String streamName,
+                                     StreamConfiguration conf,
+                                     StreamConfiguration readConf,
+                                     int startRecordId) throws Exception {
+        long segmentId = 1L;
+        Pair<LedgerHandle, Segment> segmentPair = createInprogressSegment(streamName, segmentId);
+
+        BKSegmentWriter writer = BKSegmentWriter.newBuilder()
+                .conf(conf)
+                .segment(segmentPair.getRight())
+                .ledgerHandle(segmentPair.getLeft())
+                .ledgerQuorumSizes(2, 2)
+                .scheduler(scheduler)
+                .statsLogger(NullStatsLogger.INSTANCE)
+                .build();
 
         // Write Records
 
         int numRecords = 10;
         int numLoops = 3;
+        SSN startSSN = null;
         for (int i = 0; i < numLoops; i++) {
             List<OrderingListenableFuture<SSN>> writeFutures = new ArrayList<>(numRecords);
             for (int j = 0; j < numRecords; j++) {
@@ -86,6 +670,9 @@ public class TestBKSegmentReader extends BKSegmentTestCase {
             writer.flush().get();
             List<SSN> results = Futures.allAsList(writeFutures).get();
             assertEquals(numRecords, results.size());
+            if (startRecordId / numRecords == i) {
+                startSSN = results.get(startRecordId % numRecords);
+            }
             writer.commit().get();
         }
         // close writer to complete segment
@@ -94,15 +681,11 @@ public class TestBKSegmentReader extends BKSegmentTestCase {
         Segment completedSegment =
                 completeInprogressSegment(segmentPair.getRight(), lastSSN, numRecords * numLoops);
 
-        StreamConfiguration readConf = new StreamConfiguration();
-        readConf.setReaderCacheMaxNumRecords(99999999);
-        readConf.setReaderCacheMaxNumBytes(99999999);
-
         // Read Records
         BKSegmentReader reader = BKSegmentReader.newBuilder()
                 .conf(readConf)
                 .segment(completedSegment)
-                .startEntryId(0L)
+                .startSSN(startSSN)
                 .bookkeeper(bkc)
                 .scheduler(scheduler)
                 .statsLogger(NullStatsLogger.INSTANCE)
@@ -135,8 +718,9 @@ public class TestBKSegmentReader extends BKSegmentTestCase {
         // wait until reaching end of segment
         eosLatch.await();
 
-        int numReads = 0;
+        int numReads = startRecordId;
         Record record = recordCache.pollNextRecord();
+        assertEquals(startSSN, record.getSSN());
         while (null != record) {
             assertEquals(numReads, record.getRecordId());
             assertEquals("record-" + numReads, new String(record.getData(), UTF_8));
@@ -24,9 +24,12 @@ import org.apache.bookkeeper.client.LedgerEntry;
 import org.apache.bookkeeper.client.LedgerHandle;
 import org.apache.bookkeeper.stats.NullStatsLogger;
 import org.apache.bookkeeper.stream.SSN;
+import org.apache.bookkeeper.stream.common.Resumeable;
 import org.apache.bookkeeper.stream.common.Scheduler.OrderingListenableFuture;
 import org.apache.bookkeeper.stream.conf.StreamConfiguration;
+import org.apache.bookkeeper.stream.exceptions.StreamException;
 import org.apache.bookkeeper.stream.exceptions.WriteCancelledException;
+import org.apache.bookkeeper.stream.exceptions.WriteRejectedException;
 import org.apache.bookkeeper.stream.io.Entry;
 import org.apache.bookkeeper.stream.io.Record;
 import org.apache.bookkeeper.stream.io.RecordReader;
@@ -36,7 +39,10 @@ import org.junit.Test;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.apache.bookkeeper.stream.Constants.BK_DIGEST_TYPE;
 import static org.apache.bookkeeper.stream.Constants.BK_PASSWD;
@@ -132,6 +138,495 @@ public class TestBKSegmentWriter extends BKSegmentTestCase {
         assertEquals(SSN.of(segmentId, 0L, numRecords - 1), lastSSN);
     }
 
+    @Test(timeout = 60000)
+    public void testWriteBatch() throws Exception {
+        StreamConfiguration conf = new StreamConfiguration();
+        conf.setSegmentWriterEntryBufferSize(128);
+        conf.setSegmentWriterFlushIntervalMs(999999000);
+        conf.setSegmentWriterCommitDelayMs(999999000);
+
+        String streamName = "test-write-batch";
+        long segmentId = 1L;
+        Pair<LedgerHandle, Segment> segmentPair = createInprogressSegment(streamName, segmentId);
+
+        BKSegmentWriter writer = BKSegmentWriter.newBuilder()
+                .conf(conf)
+                .segment(segmentPair.getRight())
+                .ledgerHandle(segmentPair.getLeft())
+                .scheduler(scheduler)
+                .statsLogger(NullStatsLogger.INSTANCE)
+                .build();
+
+        // a record written before the batch
+        OrderingListenableFuture<SSN> writeFuture = writer.write(Record.newBuilder()
+                .setRecordId(0L)
+                .setData("record-0".getBytes(UTF_8))
+                .build());
+
+        int numRecords = 20;
+        List<Record> records = new ArrayList<>(numRecords);
+        for (int i = 1; i <= numRecords; i++) {
+            records.add(Record.newBuilder()
+                    .setRecordId(i)
+                    .setData(("record-" + i).getBytes(UTF_8))
+                    .build());
+        }
+        SSN[] ssns = new SSN[numRecords];
+        OrderingListenableFuture<SSN> batchFuture = writer.writeBatch(records, ssns);
+        OrderingListenableFuture<SSN> flushFuture = writer.flush();
+        SSN lastFlushedSSN = flushFuture.get();
+        SSN lastSSN = batchFuture.get();
+        assertEquals(lastFlushedSSN, lastSSN);
+        assertEquals(ssns[numRecords - 1], lastSSN);
+        assertTrue("batch should span multiple entries", lastSSN.getEntryId() > 0);
+        assertEquals(SSN.of(segmentId, 0L, 0L), writeFuture.get());
+
+        writer.commit().get();
+
+        // verify the ssns of the batch against the records read from the ledger
+        LedgerHandle openLh = this.bkc.openLedgerNoRecovery(segmentPair.getLeft().getId(), BK_DIGEST_TYPE, BK_PASSWD);
+        Enumeration<LedgerEntry> entries = openLh.readEntries(0L, lastSSN.getEntryId());
+        int numReads = 0;
+        while (entries.hasMoreElements()) {
+            LedgerEntry entry = entries.nextElement();
+            byte[] entryData = entry.getEntry();
+            RecordReader rr = Entry.of(segmentId, entry.getEntryId(), entryData, 0, entryData.length)
+                    .asRecordReader();
+            Record record;
+            while (null != (record = rr.readRecord())) {
+                assertEquals(numReads, record.getRecordId());
+                if (numReads > 0) {
+                    assertEquals(ssns[numReads - 1], record.getSSN());
+                }
+                ++numReads;
+            }
+        }
+        assertEquals(numRecords + 1, numReads);
+
+        assertEquals(lastSSN, writer.close().get());
+    }
+
+    @Test(timeout = 60000)
+    public void testWriteBatchAfterClose() throws Exception {
+        StreamConfiguration conf = new StreamConfiguration();
+        String streamName = "test-write-batch-after-close";
+        long segmentId = 1L;
+        Pair<LedgerHandle, Segment> segmentPair = createInprogressSegment(streamName, segmentId);
+
+        BKSegmentWriter writer = BKSegmentWriter.newBuilder()
+                .conf(conf)
+                .segment(segmentPair.getRight())
+                .ledgerHandle(segmentPair.getLeft())
+                .scheduler(scheduler)
+                .statsLogger(NullStatsLogger.INSTANCE)
+                .build();
+        writer.close().get();
+
+        List<Record> records = new ArrayList<>();
+        records.add(Record.newBuilder().setRecordId(0L).setData("record-0".getBytes(UTF_8)).build());
+        assertFuture(writer.writeBatch(records), WriteCancelledException.class);
+    }
+
+    @Test(timeout = 60000)
+    public void testWriteRecordsThroughIngestQueue() throws Exception {
+        StreamConfiguration conf = new StreamConfiguration();
+        conf.setSegmentWriterEntryBufferSize(1024);
+        conf.setSegmentWriterFlushIntervalMs(999999000);
+        conf.setSegmentWriterCommitDelayMs(999999000);
+        conf.setSegmentWriterIngestQueueSize(4096);
+
+        String streamName = "test-write-records-through-ingest-queue";
+        long segmentId = 1L;
+        Pair<LedgerHandle, Segment> segmentPair = createInprogressSegment(streamName, segmentId);
+
+        final BKSegmentWriter writer = BKSegmentWriter.newBuilder()
+                .conf(conf)
+                .segment(segmentPair.getRight())
+                .ledgerHandle(segmentPair.getLeft())
+                .scheduler(scheduler)
+                .statsLogger(NullStatsLogger.INSTANCE)
+                .build();
+
+        int numProducers = 4;
+        final int numRecordsPerProducer = 500;
+        final List<List<OrderingListenableFuture<SSN>>> writeFutures = new ArrayList<>(numProducers);
+        List<Thread> producers = new ArrayList<>(numProducers);
+        for (int i = 0; i < numProducers; i++) {
+            final List<OrderingListenableFuture<SSN>> producerFutures = new ArrayList<>(numRecordsPerProducer);
+            writeFutures.add(producerFutures);
+            final int producerId = i;
+            Thread producer = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < numRecordsPerProducer; j++) {
+                        Record record = Record.newBuilder()
+                                .setRecordId(producerId * numRecordsPerProducer + j)
+                                .setData(("record-" + producerId + "-" + j).getBytes(UTF_8))
+                                .build();
+                        producerFutures.add(writer.write(record));
+                    }
+                }
+            };
+            producer.start();
+            producers.add(producer);
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        SSN lastFlushedSSN = writer.flush().get();
+
+        // records of each producer are written in order
+        for (List<OrderingListenableFuture<SSN>> producerFutures : writeFutures) {
+            List<SSN> results = Futures.allAsList(producerFutures).get();
+            assertEquals(numRecordsPerProducer, results.size());
+            SSN lastSSN = SSN.of(segmentId, -1L, -1L);
+            for (SSN ssn : results) {
+                assertTrue(ssn.compareTo(lastSSN) > 0);
+                assertTrue(ssn.compareTo(lastFlushedSSN) <= 0);
+                lastSSN = ssn;
+            }
+        }
+
+        assertEquals(lastFlushedSSN, writer.close().get());
+    }
+
+    @Test(timeout = 60000)
+    public void testFlushRecordsQueuedBehindAnotherProducer() throws Exception {
+        StreamConfiguration conf = new StreamConfiguration();
+        conf.setSegmentWriterEntryBufferSize(1024);
+        conf.setSegmentWriterFlushIntervalMs(999999000);
+        conf.setSegmentWriterCommitDelayMs(999999000);
+        conf.setSegmentWriterIngestQueueSize(4096);
+
+        String streamName = "test-flush-records-queued-behind-another-producer";
+        long segmentId = 1L;
+        Pair<LedgerHandle, Segment> segmentPair = createInprogressSegment(streamName, segmentId);
+
+        final BKSegmentWriter writer = BKSegmentWriter.newBuilder()
+                .conf(conf)
+                .segment(segmentPair.getRight())
+                .ledgerHandle(segmentPair.getLeft())
+                .scheduler(scheduler)
+                .statsLogger(NullStatsLogger.INSTANCE)
+                .build();
+
+        final CountDownLatch drainScheduledLatch = new CountDownLatch(1);
+        final CountDownLatch flushedLatch = new CountDownLatch(1);
+        final AtomicReference<Throwable> error = new AtomicReference<>(null);
+        final List<OrderingListenableFuture<SSN>> writeFutures = new ArrayList<>(2);
+        // producer A wins scheduling the drain task, but doesn't submit it
+        // until producer B flushed its record.
+        Thread producerA = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    assertTrue(writer.getIngestDrainScheduled().compareAndSet(false, true));
+                    drainScheduledLatch.countDown();
+                    flushedLatch.await();
+                    writer.getIngestDrainScheduled().set(false);
+                    writeFutures.add(writer.write(Record.newBuilder().setRecordId(0L)
+                            .setData("record-a".getBytes(UTF_8)).build()));
+                } catch (Throwable t) {
+                    error.set(t);
+                }
+            }
+        };
+        final SSN[] flushedSSN = new SSN[1];
+        Thread producerB = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    drainScheduledLatch.await();
+                    writeFutures.add(writer.write(Record.newBuilder().setRecordId(1L)
+                            .setData("record-b".getBytes(UTF_8)).build()));
+                    flushedSSN[0] = writer.flush().get();
+                    flushedLatch.countDown();
+                } catch (Throwable t) {
+                    error.set(t);
+                }
+            }
+        };
+        producerA.start();
+        producerB.start();
+        producerB.join();
+        producerA.join();
+        assertNull(error.get());
+
+        // the record written by producer B before the flush is flushed by it
+        SSN ssnB = writeFutures.get(0).get();
+        assertEquals(flushedSSN[0], ssnB);
+        SSN lastFlushedSSN = writer.flush().get();
+        SSN ssnA = writeFutures.get(1).get();
+        assertTrue(ssnA.compareTo(ssnB) > 0);
+        assertEquals(lastFlushedSSN, ssnA);
+
+        writer.close().get();
+    }
+
+    @Test(timeout = 60000)
+    public void testFlushRecordsAfterFlushInterval() throws Exception {
+        StreamConfiguration conf = new StreamConfiguration();
+        conf.setSegmentWriterEntryBufferSize(1024);
+        conf.setSegmentWriterFlushIntervalMs(100);
+        conf.setSegmentWriterCommitDelayMs(999999000);
+
+        String streamName = "test-flush-records-after-flush-interval";
+        long segmentId = 1L;
+        Pair<LedgerHandle, Segment> segmentPair = createInprogressSegment(streamName, segmentId);
+
+        BKSegmentWriter writer = BKSegmentWriter.newBuilder()
+                .conf(conf)
+                .segment(segmentPair.getRight())
+                .ledgerHandle(segmentPair.getLeft())
+                .scheduler(scheduler)
+                .statsLogger(NullStatsLogger.INSTANCE)
+                .build();
+
+        int numRecords = 3;
+        for (int i = 0; i < 2; i++) {
+            List<OrderingListenableFuture<SSN>> writeFutures = new ArrayList<>(numRecords);
+            for (int j = 0; j < numRecords; j++) {
+                int recordId = i * numRecords + j;
+                Record record = Record.newBuilder()
+                        .setRecordId(recordId)
+                        .setData(("record-" + recordId).getBytes(UTF_8))
+                        .build();
+                writeFutures.add(writer.write(record));
+            }
+            // records are flushed without an explicit flush
+            List<SSN> results = Futures.allAsList(writeFutures).get();
+            assertEquals(numRecords, results.size());
+            for (int j = 0; j < numRecords; j++) {
+                assertEquals(SSN.of(segmentId, i, j), results.get(j));
+            }
+        }
+
+        SSN lastSSN = writer.close().get();
+        assertEquals(SSN.of(segmentId, 1L, numRecords - 1), lastSSN);
+    }
+
+    @Test(timeout = 60000)
+    public void testRejectWritesWhenOutstandingWindowIsFull() throws Exception {
+        StreamConfiguration conf = new StreamConfiguration();
+        conf.setSegmentWriterEntryBufferSize(64);
+        conf.setSegmentWriterFlushIntervalMs(999999000);
+        conf.setSegmentWriterCommitDelayMs(999999000);
+        conf.setSegmentWriterMaxOutstandingEntries(1);
+
+        String streamName = "test-reject-writes-when-outstanding-window-is-full";
+        long segmentId = 1L;
+        Pair<LedgerHandle, Segment> segmentPair = createInprogressSegment(streamName, segmentId);
+
+        BKSegmentWriter writer = BKSegmentWriter.newBuilder()
+                .conf(conf)
+                .segment(segmentPair.getRight())
+                .ledgerHandle(segmentPair.getLeft())
+                .scheduler(scheduler)
+                .statsLogger(NullStatsLogger.INSTANCE)
+                .build();
+
+        // suspend bookies to keep entries outstanding
+        List<CountDownLatch> sleepLatches = new ArrayList<>(numBookies);
+        for (int i = 0; i < numBookies; i++) {
+            sleepLatches.add(sleepBookie(getBookie(i), 2));
+        }
+        for (CountDownLatch latch : sleepLatches) {
+            latch.await();
+        }
+
+        List<OrderingListenableFuture<SSN>> writeFutures = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Record record = Record.newBuilder()
+                    .setRecordId(i)
+                    .setData(new byte[100])
+                    .build();
+            writeFutures.add(writer.write(record));
+        }
+        // 1st entry is outstanding, 2nd entry is held by the window, 3rd record is rejected
+        try {
+            writeFutures.get(2).get();
+            fail("Should reject writes when outstanding window is full");
+        } catch (ExecutionException ee) {
+            assertEquals(WriteRejectedException.class, ee.getCause().getClass());
+            assertEquals(StreamException.Code.WRITE_REJECTED,
+                    ((WriteRejectedException) ee.getCause()).getCode());
+        }
+
+        // held entry is flushed after bookies are resumed
+        assertEquals(SSN.of(segmentId, 0L, 0L), writeFutures.get(0).get());
+        assertEquals(SSN.of(segmentId, 1L, 0L), writeFutures.get(1).get());
+
+        SSN lastSSN = writer.close().get();
+        assertEquals(SSN.of(segmentId, 1L, 0L), lastSSN);
+    }
+
+    @Test(timeout = 60000)
+    public void testAdaptiveBatching() throws Exception {
+        StreamConfiguration conf = new StreamConfiguration();
+        conf.setSegmentWriterEntryBufferSize(4096);
+        conf.setSegmentWriterFlushIntervalMs(999999000);
+        conf.setSegmentWriterCommitDelayMs(999999000);
+        conf.setSegmentWriterAdaptiveBatchingEnabled(true);
+        conf.setSegmentWriterAdaptiveBatchingMinEntrySize(64);
+        conf.setSegmentWriterAdaptiveBatchingTargetAddLatencyMs(1000);
+        conf.setSegmentWriterAdaptiveBatchingMaxOutstandingEntries(100);
+
+        String streamName = "test-adaptive-batching";
+        long segmentId = 1L;
+        Pair<LedgerHandle, Segment> segmentPair = createInprogressSegment(streamName, segmentId);
+
+        BKSegmentWriter writer = BKSegmentWriter.newBuilder()
+                .conf(conf)
+                .segment(segmentPair.getRight())
+                .ledgerHandle(segmentPair.getLeft())
+                .scheduler(scheduler)
+                .statsLogger(NullStatsLogger.INSTANCE)
+                .build();
+
+        assertEquals(4096, writer.getFlushThreshold());
+
+        // fast adds shrink the flush threshold down to the minimum entry size
+        long recordId = 0L;
+        for (int i = 0; i < 20; i++) {
+            writer.write(Record.newBuilder()
+                    .setRecordId(recordId++)
+                    .setData(new byte[10])
+                    .build());
+            assertEquals(SSN.of(segmentId, i, 0L), writer.flush().get());
+        }
+        assertEquals(64, writer.getFlushThreshold());
+
+        // suspend bookies to slow down adds
+        List<CountDownLatch> sleepLatches = new ArrayList<>(numBookies);
+        for (int i = 0; i < numBookies; i++) {
+            sleepLatches.add(sleepBookie(getBookie(i), 2));
+        }
+        for (CountDownLatch latch : sleepLatches) {
+            latch.await();
+        }
+
+        // a slow add grows the flush threshold back
+        writer.write(Record.newBuilder()
+                .setRecordId(recordId++)
+                .setData(new byte[10])
+                .build());
+        assertEquals(SSN.of(segmentId, 20L, 0L), writer.flush().get());
+        assertEquals(128, writer.getFlushThreshold());
+
+        writer.close().get();
+    }
+
+    @Test(timeout = 60000)
+    public void testCoordinatedCommits() throws Exception {
+        int commitIntervalMs = 500;
+        StreamConfiguration conf = new StreamConfiguration();
+        conf.setSegmentWriterCommitDelayMs(commitIntervalMs);
+        conf.setSegmentWriterCommitMaxPerInterval(2);
+        conf.setSegmentWriterFlushIntervalMs(999999000);
+
+        CommitCoordinator coordinator = CommitCoordinator.newBuilder()
+                .conf(conf)
+                .scheduler(scheduler)
+                .statsLogger(NullStatsLogger.INSTANCE)
+                .build();
+
+        int numWriters = 5;
+        List<LedgerHandle> lhs = new ArrayList<>(numWriters);
+        List<BKSegmentWriter> writers = new ArrayList<>(numWriters);
+        for (int i = 0; i < numWriters; i++) {
+            Pair<LedgerHandle, Segment> segmentPair =
+                    createInprogressSegment("test-coordinated-commits-" + i, 1L);
+            lhs.add(segmentPair.getLeft());
+            writers.add(BKSegmentWriter.newBuilder()
+                    .conf(conf)
+                    .segment(segmentPair.getRight())
+                    .ledgerHandle(segmentPair.getLeft())
+                    .scheduler(scheduler)
+                    .statsLogger(NullStatsLogger.INSTANCE)
+                    .commitCoordinator(coordinator)
+                    .build());
+        }
+
+        long startTime = System.currentTimeMillis();
+        for (BKSegmentWriter writer : writers) {
+            writer.write(Record.newBuilder().setRecordId(0L).setData("record-0".getBytes(UTF_8)).build());
+            writer.flush().get();
+        }
+        // each writer adds a commit entry after its data entry
+        for (LedgerHandle lh : lhs) {
+            while (lh.getLastAddConfirmed() < 1L) {
+                Thread.sleep(10);
+            }
+            assertEquals(1L, lh.getLastAddConfirmed());
+        }
+        long elapsedMs = System.currentTimeMillis() - startTime;
+        // 5 commits emitted at most 2 per interval take at least 3 intervals
+        assertTrue("Commits should be rate limited : elapsed = " + elapsedMs + " ms",
+                elapsedMs >= 2 * commitIntervalMs);
+
+        coordinator.close();
+        for (BKSegmentWriter writer : writers) {
+            writer.close().get();
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testNotifyCommits() throws Exception {
+        StreamConfiguration conf = new StreamConfiguration();
+        conf.setSegmentWriterCommitDelayMs(999999000);
+        conf.setSegmentWriterFlushIntervalMs(999999000);
+
+        String streamName = "test-notify-commits";
+        long segmentId = 1L;
+        Pair<LedgerHandle, Segment> segmentPair = createInprogressSegment(streamName, segmentId);
+        CommitNotifier notifier = new CommitNotifier();
+        BKSegmentWriter writer = BKSegmentWriter.newBuilder()
+                .conf(conf)
+                .segment(segmentPair.getRight())
+                .ledgerHandle(segmentPair.getLeft())
+                .scheduler(scheduler)
+                .statsLogger(NullStatsLogger.INSTANCE)
+                .commitNotifier(notifier)
+                .build();
+
+        final AtomicInteger numNotifications = new AtomicInteger(0);
+        Resumeable listener = new Resumeable() {
+            @Override
+            public void onResume() {
+                numNotifications.incrementAndGet();
+            }
+        };
+        notifier.addListener(streamName, segmentId, listener);
+        // listeners of other segments aren't notified
+        final AtomicInteger numOtherNotifications = new AtomicInteger(0);
+        notifier.addListener(streamName, segmentId + 1, new Resumeable() {
+            @Override
+            public void onResume() {
+                numOtherNotifications.incrementAndGet();
+            }
+        });
+
+        writer.write(Record.newBuilder().setRecordId(0L).setData("record-0".getBytes(UTF_8)).build());
+        writer.flush().get();
+        // the flushed entry isn't confirmed until the next entry is added
+        assertEquals(0, numNotifications.get());
+        // the commit entry confirms the flushed entry
+        writer.commit().get();
+        while (numNotifications.get() < 1) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, numNotifications.get());
+
+        // removed listener isn't notified any more
+        notifier.removeListener(streamName, segmentId, listener);
+        writer.write(Record.newBuilder().setRecordId(1L).setData("record-1".getBytes(UTF_8)).build());
+        writer.flush().get();
+        assertEquals(1, numNotifications.get());
+        assertEquals(0, numOtherNotifications.get());
+
+        writer.close().get();
+    }
+
     @Test(timeout = 60000)
     public void testWriteRecordsAfterClose() throws Exception {
         StreamConfiguration conf = new StreamConfiguration();
@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.stream.segment;
+
+import org.apache.bookkeeper.stream.common.Resumeable;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test Case for {@link org.apache.bookkeeper.stream.segment.CommitNotifier}
+ */
+public class TestCommitNotifier {
+
+    @Test(timeout = 60000)
+    public void testNotifyCommit() throws Exception {
+        CommitNotifier notifier = new CommitNotifier();
+        final AtomicInteger numNotifications = new AtomicInteger(0);
+        Resumeable listener = new Resumeable() {
+            @Override
+            public void onResume() {
+                numNotifications.incrementAndGet();
+            }
+        };
+        notifier.addListener("test-stream", 1L, listener);
+        notifier.notifyCommit("test-stream", 1L);
+        notifier.notifyCommit("test-stream", 2L);
+        notifier.notifyCommit("another-stream", 1L);
+        assertEquals(1, numNotifications.get());
+
+        notifier.removeListener("test-stream", 1L, listener);
+        notifier.notifyCommit("test-stream", 1L);
+        assertEquals(1, numNotifications.get());
+    }
+
+    @Test(timeout = 60000)
+    public void testAddListenerWhileRemovingOtherListener() throws Exception {
+        final CommitNotifier notifier = new CommitNotifier();
+        final Resumeable otherListener = new Resumeable() {
+            @Override
+            public void onResume() {
+                // no-op
+            }
+        };
+        for (int i = 0; i < 1000; i++) {
+            final long segmentId = i;
+            notifier.addListener("test-stream", segmentId, otherListener);
+            Thread remover = new Thread() {
+                @Override
+                public void run() {
+                    notifier.removeListener("test-stream", segmentId, otherListener);
+                }
+            };
+            final AtomicInteger numNotifications = new AtomicInteger(0);
+            Resumeable listener = new Resumeable() {
+                @Override
+                public void onResume() {
+                    numNotifications.incrementAndGet();
+                }
+            };
+            remover.start();
+            notifier.addListener("test-stream", segmentId, listener);
+            remover.join();
+            // the listener added concurrently is still notified
+            notifier.notifyCommit("test-stream", segmentId);
+            assertEquals(1, numNotifications.get());
+            notifier.removeListener("test-stream", segmentId, listener);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.stream.segment;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test Cases for {@link org.apache.bookkeeper.stream.segment.EntryBatchingController}
+ */
+public class TestEntryBatchingController {
+
+    @Test(timeout = 60000)
+    public void testAdaptFlushThreshold() throws Exception {
+        EntryBatchingController controller = new EntryBatchingController(1024, 1024 + 16 * 100, 1000L, 2);
+        // start from max threshold
+        assertEquals(2624, controller.getFlushThreshold());
+
+        // fast adds shrink the threshold additively
+        controller.onEntryAdded(500L, 0);
+        assertEquals(2524, controller.getFlushThreshold());
+        for (int i = 0; i < 100; i++) {
+            controller.onEntryAdded(500L, 0);
+        }
+        assertEquals(1024, controller.getFlushThreshold());
+
+        // slow adds grow the threshold multiplicatively
+        controller.onEntryAdded(2000L, 0);
+        assertEquals(2048, controller.getFlushThreshold());
+        controller.onEntryAdded(500L, 0);
+        assertEquals(1948, controller.getFlushThreshold());
+
+        // too many outstanding entries grow the threshold
+        controller.onEntryAdded(500L, 3);
+        assertEquals(2624, controller.getFlushThreshold());
+        controller.onEntryAdded(500L, 2);
+        assertEquals(2524, controller.getFlushThreshold());
+    }
+
+    @Test(timeout = 60000)
+    public void testGrowFromZeroThreshold() throws Exception {
+        EntryBatchingController controller = new EntryBatchingController(0, 8, 1000L, 1);
+        for (int i = 0; i < 8; i++) {
+            controller.onEntryAdded(0L, 0);
+        }
+        assertEquals(0, controller.getFlushThreshold());
+        controller.onEntryAdded(1001L, 0);
+        assertEquals(1, controller.getFlushThreshold());
+        controller.onEntryAdded(1001L, 0);
+        assertEquals(2, controller.getFlushThreshold());
+    }
+
+    @Test(timeout = 60000, expected = IllegalArgumentException.class)
+    public void testInvalidThresholdRange() throws Exception {
+        new EntryBatchingController(2048, 1024, 1000L, 1);
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.stream.segment;
+
+import com.google.common.util.concurrent.Futures;
+import org.apache.bookkeeper.client.LedgerHandle;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.stream.SSN;
+import org.apache.bookkeeper.stream.cache.RecordCache;
+import org.apache.bookkeeper.stream.cache.RecordCacheBytesPolicy;
+import org.apache.bookkeeper.stream.cache.RecordCacheImpl;
+import org.apache.bookkeeper.stream.cache.RecordCacheItemsPolicy;
+import org.apache.bookkeeper.stream.cache.RecordCachePolicy;
+import org.apache.bookkeeper.stream.common.Scheduler.OrderingListenableFuture;
+import org.apache.bookkeeper.stream.conf.StreamConfiguration;
+import org.apache.bookkeeper.stream.io.Record;
+import org.apache.bookkeeper.stream.segment.SegmentReader.Listener;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static org.junit.Assert.*;
+
+/**
+ * Test Case for {@link org.apache.bookkeeper.stream.segment.MultiSegmentReader}
+ */
+public class TestMultiSegmentReader extends BKSegmentTestCase {
+
+    private static final int NUM_BOOKIES = 3;
+
+    public TestMultiSegmentReader() {
+        super(NUM_BOOKIES);
+    }
+
+    @Test(timeout = 60000)
+    public void testReadSegmentsWithPrefetching() throws Exception {
+        String streamName = "test-read-segments-with-prefetching";
+        int numSegments = 4;
+        int numRecordsPerSegment = 10;
+        List<Segment> segments = new ArrayList<>(numSegments);
+        List<SSN> ssns = new ArrayList<>(numSegments * numRecordsPerSegment);
+        for (int i = 0; i < numSegments; i++) {
+            segments.add(writeSegment(streamName, i + 1, i * numRecordsPerSegment, numRecordsPerSegment, ssns));
+        }
+
+        for (int prefetchNumSegments : new int[] { 0, 1, 2 }) {
+            // start from the middle of second segment
+            int startRecordId = numRecordsPerSegment + 5;
+            StreamConfiguration readConf = new StreamConfiguration();
+            readConf.setReaderCacheMaxNumRecords(99999999);
+            // buffer a few entries for each prefetched segment
+            readConf.setReaderCacheMaxNumBytes(64);
+            readConf.setSegmentReaderPrefetchNumSegments(prefetchNumSegments);
+            RecordCache recordCache = RecordCacheImpl.newBuilder()
+                    .streamName(streamName)
+                    .streamConf(readConf)
+                    .cachePolicy(new RecordCacheItemsPolicy(readConf))
+                    .statsLogger(NullStatsLogger.INSTANCE)
+                    .build();
+            MultiSegmentReader reader = MultiSegmentReader.newBuilder()
+                    .conf(readConf)
+                    .segments(segments)
+                    .startSSN(ssns.get(startRecordId))
+                    .bookkeeper(bkc)
+                    .scheduler(scheduler)
+                    .statsLogger(NullStatsLogger.INSTANCE)
+                    .build();
+            final CountDownLatch eosLatch = new CountDownLatch(1);
+            reader.start(recordCache, new Listener() {
+                @Override
+                public void onEndOfSegment() {
+                    eosLatch.countDown();
+                }
+
+                @Override
+                public void onError() {
+                    // no-op
+                }
+            });
+            eosLatch.await();
+
+            int numReads = startRecordId;
+            Record record;
+            while (null != (record = recordCache.pollNextRecord())) {
+                assertEquals(ssns.get(numReads), record.getSSN());
+                assertEquals("record-" + numReads, new String(record.getData(), UTF_8));
+                ++numReads;
+            }
+            assertEquals(numSegments * numRecordsPerSegment, numReads);
+            reader.close().get();
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testPrefetchWithinCacheBytes() throws Exception {
+        String streamName = "test-prefetch-within-cache-bytes";
+        int numSegments = 4;
+        int numRecordsPerSegment = 10;
+        List<Segment> segments = new ArrayList<>(numSegments);
+        List<SSN> ssns = new ArrayList<>(numSegments * numRecordsPerSegment);
+        for (int i = 0; i < numSegments; i++) {
+            segments.add(writeSegment(streamName, i + 1, i * numRecordsPerSegment, numRecordsPerSegment, ssns));
+        }
+
+        int maxCacheBytes = 64;
+        StreamConfiguration readConf = new StreamConfiguration();
+        readConf.setReaderCacheMaxNumBytes(maxCacheBytes);
+        readConf.setSegmentReaderPrefetchNumSegments(2);
+        RecordCachePolicy cachePolicy = new RecordCacheBytesPolicy(readConf);
+        RecordCache recordCache = RecordCacheImpl.newBuilder()
+                .streamName(streamName)
+                .streamConf(readConf)
+                .cachePolicy(cachePolicy)
+                .statsLogger(NullStatsLogger.INSTANCE)
+                .build();
+        MultiSegmentReader reader = MultiSegmentReader.newBuilder()
+                .conf(readConf)
+                .segments(segments)
+                .bookkeeper(bkc)
+                .scheduler(scheduler)
+                .statsLogger(NullStatsLogger.INSTANCE)
+                .build();
+        reader.start(recordCache, new Listener() {
+            @Override
+            public void onEndOfSegment() {
+                // no-op
+            }
+
+            @Override
+            public void onError() {
+                // no-op
+            }
+        });
+
+        // record bytes of an entry are bounded by the entry buffer size of the writer
+        int maxEntryBytes = 32;
+        int numReads = 0;
+        while (numReads < numSegments * numRecordsPerSegment) {
+            // the prefetched entries are charged to the cache, also across activating segments
+            long usedBytes = maxCacheBytes - cachePolicy.getAvailableBytes();
+            assertTrue("Cache exceeds its limit : used bytes = " + usedBytes,
+                    usedBytes <= maxCacheBytes + maxEntryBytes);
+            Record record = recordCache.pollNextRecord();
+            if (null == record) {
+                TimeUnit.MILLISECONDS.sleep(1);
+                continue;
+            }
+            assertEquals(ssns.get(numReads), record.getSSN());
+            ++numReads;
+        }
+        reader.close().get();
+    }
+
+    @Test(timeout = 60000)
+    public void testReleasePrefetchedBytesOnClose() throws Exception {
+        String streamName = "test-release-prefetched-bytes-on-close";
+        int numSegments = 3;
+        int numRecordsPerSegment = 10;
+        // the segment being consumed is in progress, so the reader keeps waiting for
+        // its records while prefetching the segments after it
+        Pair<LedgerHandle, Segment> inprogressPair = createInprogressSegment(streamName, 1L);
+        List<Segment> segments = new ArrayList<>(numSegments);
+        segments.add(inprogressPair.getRight());
+        List<SSN> ssns = new ArrayList<>((numSegments - 1) * numRecordsPerSegment);
+        for (int i = 1; i < numSegments; i++) {
+            segments.add(writeSegment(streamName, i + 1, i * numRecordsPerSegment, numRecordsPerSegment, ssns));
+        }
+
+        int maxCacheBytes = 1024;
+        StreamConfiguration readConf = new StreamConfiguration();
+        readConf.setReaderCacheMaxNumBytes(maxCacheBytes);
+        readConf.setSegmentReaderPrefetchNumSegments(2);
+        RecordCache recordCache = RecordCacheImpl.newBuilder()
+                .streamName(streamName)
+                .streamConf(readConf)
+                .cachePolicy(new RecordCacheBytesPolicy(readConf))
+                .statsLogger(NullStatsLogger.INSTANCE)
+                .build();
+        MultiSegmentReader reader = MultiSegmentReader.newBuilder()
+                .conf(readConf)
+                .segments(segments)
+                .bookkeeper(bkc)
+                .scheduler(scheduler)
+                .statsLogger(NullStatsLogger.INSTANCE)
+                .build();
+        reader.start(recordCache, new Listener() {
+            @Override
+            public void onEndOfSegment() {
+                // no-op
+            }
+
+            @Override
+            public void onError() {
+                // no-op
+            }
+        });
+
+        // wait for the entries of the prefetched segments to be buffered
+        long availableBytes = maxCacheBytes;
+        while (availableBytes == maxCacheBytes || availableBytes != recordCache.getAvailableBytes()) {
+            availableBytes = recordCache.getAvailableBytes();
+            TimeUnit.MILLISECONDS.sleep(200);
+        }
+        reader.close().get();
+
+        // the bytes charged for the prefetched segments are released on close
+        for (int i = 0; i < 100 && recordCache.getAvailableBytes() < maxCacheBytes; i++) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        assertEquals(maxCacheBytes, recordCache.getAvailableBytes());
+        assertNull(recordCache.pollNextRecord());
+        inprogressPair.getLeft().close();
+    }
+
+    private Segment writeSegment(String streamName,
+                                 long segmentId,
+                                 int startRecordId,
+                                 int numRecords,
+                                 List<SSN> ssns) throws Exception {
+        Pair<LedgerHandle, Segment> segmentPair = createInprogressSegment(streamName, segmentId);
+        StreamConfiguration conf = new StreamConfiguration();
+        // a few records per entry
+        conf.setSegmentWriterEntryBufferSize(32);
+        conf.setSegmentWriterFlushIntervalMs(999999000);
+        conf.setSegmentWriterCommitDelayMs(999999000);
+        BKSegmentWriter writer = BKSegmentWriter.newBuilder()
+                .conf(conf)
+                .segment(segmentPair.getRight())
+                .ledgerHandle(segmentPair.getLeft())
+                .scheduler(scheduler)
+                .statsLogger(NullStatsLogger.INSTANCE)
+                .build();
+        List<OrderingListenableFuture<SSN>> writeFutures = new ArrayList<>(numRecords);
+        for (int i = startRecordId; i < startRecordId + numRecords; i++) {
+            writeFutures.add(writer.write(Record.newBuilder()
+                    .setRecordId(i)
+                    .setData(("record-" + i).getBytes(UTF_8))
+                    .build()));
+        }
+        writer.commit().get();
+        ssns.addAll(Futures.allAsList(writeFutures).get());
+        SSN lastSSN = writer.close().get();
+        return completeInprogressSegment(segmentPair.getRight(), lastSSN, numRecords);
+    }
+}
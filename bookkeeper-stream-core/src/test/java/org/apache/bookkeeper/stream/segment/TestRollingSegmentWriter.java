@@ -0,0 +1,258 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.stream.segment;
+
+import com.google.common.util.concurrent.Futures;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.stream.SSN;
+import org.apache.bookkeeper.stream.common.Scheduler.OrderingListenableFuture;
+import org.apache.bookkeeper.stream.conf.StreamConfiguration;
+import org.apache.bookkeeper.stream.exceptions.WriteCancelledException;
+import org.apache.bookkeeper.stream.io.Record;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static org.junit.Assert.*;
+
+/**
+ * Test Case for {@link org.apache.bookkeeper.stream.segment.RollingSegmentWriter}
+ */
+public class TestRollingSegmentWriter extends BKSegmentTestCase {
+
+    private static final int NUM_BOOKIES = 3;
+
+    public TestRollingSegmentWriter() {
+        super(NUM_BOOKIES);
+    }
+
+    private static Record newRecord(int recordId) {
+        return Record.newBuilder()
+                .setRecordId(recordId)
+                .setData(String.format("record-%04d", recordId).getBytes(UTF_8))
+                .build();
+    }
+
+    @Test(timeout = 60000)
+    public void testRollSegments() throws Exception {
+        StreamConfiguration conf = new StreamConfiguration();
+        conf.setSegmentWriterEntryBufferSize(4096);
+        conf.setSegmentWriterFlushIntervalMs(999999000);
+        conf.setSegmentWriterCommitDelayMs(999999000);
+        conf.setSegmentLedgerEnsembleSize(2);
+        conf.setSegmentLedgerWriteQuorumSize(2);
+        conf.setSegmentLedgerAckQuorumSize(2);
+        // each record is 11 bytes, roll a segment after flushing 10 records
+        conf.setSegmentRollingMaxBytes(110);
+
+        final List<StreamSegmentMetadata> changes = new CopyOnWriteArrayList<>();
+        RollingSegmentWriter writer = RollingSegmentWriter.newBuilder()
+                .conf(conf)
+                .streamName("test-roll-segments")
+                .startSegmentId(1L)
+                .bookkeeper(bkc)
+                .scheduler(scheduler)
+                .statsLogger(NullStatsLogger.INSTANCE)
+                .segmentListener(new Segment.Listener() {
+                    @Override
+                    public void onSegmentChanged(StreamSegmentMetadata metadata) {
+                        changes.add(metadata);
+                    }
+                })
+                .build()
+                .get();
+        assertEquals(1L, writer.getCurrentSegment().getSegmentMetadata().getSegmentFormat().getSegmentId());
+
+        int numSegments = 3;
+        int numRecordsPerSegment = 10;
+        List<OrderingListenableFuture<SSN>> writeFutures = new ArrayList<>();
+        for (int i = 0; i < numSegments; i++) {
+            // wait until next segment is allocated, so the writer rolls exactly at the threshold
+            while (!writer.isNextSegmentReady()) {
+                Thread.sleep(10);
+            }
+            for (int j = 0; j < numRecordsPerSegment; j++) {
+                writeFutures.add(writer.write(newRecord(i * numRecordsPerSegment + j)));
+            }
+            // the writer rolls after flushing the records reaching the threshold
+            writer.flush().get();
+            assertEquals(2L + i, writer.getCurrentSegment().getSegmentMetadata().getSegmentFormat().getSegmentId());
+        }
+        writer.commit().get();
+        List<SSN> ssns = Futures.allAsList(writeFutures).get();
+        for (int i = 0; i < ssns.size(); i++) {
+            SSN ssn = ssns.get(i);
+            assertEquals(1L + i / numRecordsPerSegment, ssn.getSegmentId());
+            assertEquals((long) (i % numRecordsPerSegment), ssn.getSlotId());
+        }
+        writer.close().get();
+
+        // inprogress and completed metadata for each segment, including the empty segment
+        // rolled to after flushing the last records
+        assertEquals(2 * (numSegments + 1), changes.size());
+        List<StreamSegmentMetadata> completed = new ArrayList<>();
+        int numInprogress = 0;
+        for (StreamSegmentMetadata metadata : changes) {
+            if (metadata.isInprogress()) {
+                ++numInprogress;
+            } else {
+                assertTrue(metadata.isCompleted());
+                completed.add(metadata);
+            }
+        }
+        assertEquals(numSegments + 1, numInprogress);
+        assertEquals(numSegments + 1, completed.size());
+        for (StreamSegmentMetadata metadata : completed) {
+            long segmentId = metadata.getSegmentFormat().getSegmentId();
+            if (segmentId > numSegments) {
+                assertEquals(0, metadata.getSegmentFormat().getRecordCount());
+                continue;
+            }
+            assertEquals(numRecordsPerSegment, metadata.getSegmentFormat().getRecordCount());
+            assertEquals(ssns.get((int) (segmentId * numRecordsPerSegment - 1)),
+                    SSN.of(metadata.getSegmentFormat().getLastSSN()));
+        }
+
+        // writes after close are cancelled
+        assertFuture(writer.write(newRecord(999)), WriteCancelledException.class);
+    }
+
+    @Test(timeout = 60000)
+    public void testRollStripedSegments() throws Exception {
+        StreamConfiguration conf = new StreamConfiguration();
+        conf.setSegmentWriterEntryBufferSize(64);
+        conf.setSegmentWriterFlushIntervalMs(999999000);
+        conf.setSegmentWriterCommitDelayMs(999999000);
+        conf.setSegmentLedgerEnsembleSize(2);
+        conf.setSegmentLedgerWriteQuorumSize(2);
+        conf.setSegmentLedgerAckQuorumSize(2);
+        conf.setSegmentLedgerNumStripes(2);
+        conf.setSegmentRollingMaxBytes(110);
+
+        final List<StreamSegmentMetadata> changes = new CopyOnWriteArrayList<>();
+        RollingSegmentWriter writer = RollingSegmentWriter.newBuilder()
+                .conf(conf)
+                .streamName("test-roll-striped-segments")
+                .startSegmentId(1L)
+                .bookkeeper(bkc)
+                .scheduler(scheduler)
+                .statsLogger(NullStatsLogger.INSTANCE)
+                .segmentListener(new Segment.Listener() {
+                    @Override
+                    public void onSegmentChanged(StreamSegmentMetadata metadata) {
+                        changes.add(metadata);
+                    }
+                })
+                .build()
+                .get();
+        List<OrderingListenableFuture<SSN>> writeFutures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            while (i % 10 == 0 && !writer.isNextSegmentReady()) {
+                Thread.sleep(10);
+            }
+            writeFutures.add(writer.write(newRecord(i)));
+        }
+        // flush before closing, so the writer rolls before it is closed
+        writer.flush().get();
+        writer.close().get();
+        List<SSN> ssns = Futures.allAsList(writeFutures).get();
+        for (int i = 1; i < ssns.size(); i++) {
+            assertTrue(ssns.get(i - 1).compareTo(ssns.get(i)) < 0);
+        }
+        assertEquals(4, changes.size());
+        for (StreamSegmentMetadata metadata : changes) {
+            assertEquals(2, metadata.getNumStripes());
+            assertEquals(metadata.getSegmentFormat().getLedgerId(), (long) metadata.getLedgerIds().get(0));
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testRollWithConcurrentWriters() throws Exception {
+        StreamConfiguration conf = new StreamConfiguration();
+        conf.setSegmentWriterEntryBufferSize(64);
+        conf.setSegmentWriterFlushIntervalMs(999999000);
+        conf.setSegmentWriterCommitDelayMs(999999000);
+        conf.setSegmentLedgerEnsembleSize(2);
+        conf.setSegmentLedgerWriteQuorumSize(2);
+        conf.setSegmentLedgerAckQuorumSize(2);
+        conf.setSegmentRollingMaxBytes(110);
+
+        final List<StreamSegmentMetadata> changes = new CopyOnWriteArrayList<>();
+        final RollingSegmentWriter writer = RollingSegmentWriter.newBuilder()
+                .conf(conf)
+                .streamName("test-roll-with-concurrent-writers")
+                .startSegmentId(1L)
+                .bookkeeper(bkc)
+                .scheduler(scheduler)
+                .statsLogger(NullStatsLogger.INSTANCE)
+                .segmentListener(new Segment.Listener() {
+                    @Override
+                    public void onSegmentChanged(StreamSegmentMetadata metadata) {
+                        changes.add(metadata);
+                    }
+                })
+                .build()
+                .get();
+
+        final int numWriters = 4;
+        final int numRecordsPerWriter = 100;
+        final List<List<OrderingListenableFuture<SSN>>> writeFutures = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < numWriters; i++) {
+            final int writerId = i;
+            final List<OrderingListenableFuture<SSN>> futures = new ArrayList<>();
+            writeFutures.add(futures);
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < numRecordsPerWriter; j++) {
+                        futures.add(writer.write(newRecord(writerId * numRecordsPerWriter + j)));
+                    }
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        writer.flush().get();
+        writer.close().get();
+
+        // no writes are cancelled by rolling, and records of each writer are written in order
+        for (List<OrderingListenableFuture<SSN>> futures : writeFutures) {
+            List<SSN> ssns = Futures.allAsList(futures).get();
+            for (int i = 1; i < ssns.size(); i++) {
+                assertTrue(ssns.get(i - 1).compareTo(ssns.get(i)) < 0);
+            }
+        }
+        int numCompletedRecords = 0;
+        for (StreamSegmentMetadata metadata : changes) {
+            if (metadata.isCompleted()) {
+                numCompletedRecords += metadata.getSegmentFormat().getRecordCount();
+            }
+        }
+        assertTrue(changes.size() > 2);
+        assertEquals(numWriters * numRecordsPerWriter, numCompletedRecords);
+    }
+}
@@ -19,6 +19,7 @@
 package org.apache.bookkeeper.stream.segment;
 
 import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
 import org.apache.bookkeeper.stream.SSN;
 import org.apache.bookkeeper.stream.exceptions.MetadataException;
 import org.apache.bookkeeper.stream.proto.DataFormats.StreamSegmentMetadataFormat;
@@ -397,6 +398,58 @@ public class TestStreamSegmentMetadata {
         assertEquals("Deserialized stream segment metadata should not be changed", ssm, dSSM);
     }
 
+    @Test(timeout = 60000)
+    public void testSerializeDeserializeStripedSegment() throws Exception {
+        long curTime = System.currentTimeMillis();
+        StreamSegmentMetadataFormat.Builder segmentBuilder =
+                StreamSegmentMetadataFormat.newBuilder()
+                        .setSegmentId(1L)
+                        .setLedgerId(10L)
+                        .addStripeLedgerIds(10L)
+                        .addStripeLedgerIds(11L)
+                        .addStripeLedgerIds(12L)
+                        .setState(State.INPROGRESS)
+                        .setCTime(curTime)
+                        .setMTime(curTime);
+        StreamSegmentMetadata ssm = StreamSegmentMetadata.newBuilder()
+                .setSegmentName(StreamSegmentMetadata.segmentName(1L, true))
+                .setStreamSegmentMetadataFormatBuilder(segmentBuilder).build();
+        assertEquals(3, ssm.getNumStripes());
+        assertEquals(Lists.newArrayList(10L, 11L, 12L), ssm.getLedgerIds());
+
+        StreamSegmentMetadata completedSSM = ssm.complete(SSN.of(1L, 100L, 0L), 100);
+        assertEquals(ssm.getLedgerIds(), completedSSM.getLedgerIds());
+
+        byte[] data = completedSSM.serialize();
+        StreamSegmentMetadata dSSM =
+                StreamSegmentMetadata.deserialize(StreamSegmentMetadata.segmentName(1L, false), data);
+        assertEquals("Deserialized stream segment metadata should not be changed", completedSSM, dSSM);
+        assertEquals(3, dSSM.getNumStripes());
+
+        // non-striped segment
+        StreamSegmentMetadata nonStripedSSM = buildInprogressStreamSegment(2L);
+        assertEquals(1, nonStripedSSM.getNumStripes());
+        assertEquals(Lists.newArrayList(2L), nonStripedSSM.getLedgerIds());
+    }
+
+    @Test(timeout = 60000, expected = IllegalArgumentException.class)
+    public void testFormatMismatchedStripeLedgerIds() throws Exception {
+        long curTime = System.currentTimeMillis();
+        StreamSegmentMetadataFormat.Builder segmentBuilder =
+                StreamSegmentMetadataFormat.newBuilder()
+                        .setSegmentId(1L)
+                        .setLedgerId(10L)
+                        .addStripeLedgerIds(11L)
+                        .addStripeLedgerIds(12L)
+                        .setState(State.INPROGRESS)
+                        .setCTime(curTime)
+                        .setMTime(curTime);
+        StreamSegmentMetadata.newBuilder()
+                .setSegmentName("mismatched-stripe-ledger-ids")
+                .setStreamSegmentMetadataFormatBuilder(segmentBuilder)
+                .build();
+    }
+
     @Test(timeout = 60000)
     public void testComparator() throws Exception {
         StreamSegmentMetadata segment1 = buildCompletedStreamSegment(1L, SSN.of(1L, 100L, 0L), 100);